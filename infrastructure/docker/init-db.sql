@@ -1,43 +1,86 @@
 -- Create extensions
 CREATE EXTENSION IF NOT EXISTS "uuid-ossp";
 
--- Create notifications table
+-- Create notifications table, range-partitioned by day on created_at. The primary key has to
+-- include the partition key; partitions are pre-created and expired by the ingestion service
 CREATE TABLE IF NOT EXISTS notifications (
-    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    id UUID NOT NULL DEFAULT uuid_generate_v4(),
     user_id VARCHAR(255) NOT NULL,
     event_type VARCHAR(100) NOT NULL,
     priority VARCHAR(20) NOT NULL DEFAULT 'MEDIUM',
     status VARCHAR(50) NOT NULL DEFAULT 'PENDING',
     template_id VARCHAR(100),
     data JSONB,
+    data_ref VARCHAR(100),  -- payload store key when data is offloaded (data is then NULL)
+    data_hash VARCHAR(64),  -- SHA-256 of the offloaded data
     created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-    scheduled_at TIMESTAMP
-);
+    scheduled_at TIMESTAMP,
+    read_at TIMESTAMP,
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
 
--- Create indexes
+-- Create indexes (inherited by every partition). Time ranges use BRIN, which stays tiny on
+-- append-only data; status is only indexed for the few rows that are not final yet
 CREATE INDEX idx_notifications_user_created ON notifications(user_id, created_at DESC);
-CREATE INDEX idx_notifications_status ON notifications(status);
-CREATE INDEX idx_notifications_event_type ON notifications(event_type);
+CREATE INDEX idx_notifications_created_brin ON notifications USING BRIN (created_at);
+CREATE INDEX idx_notifications_open ON notifications(created_at) WHERE status IN ('PENDING', 'PROCESSED');
 CREATE INDEX idx_notifications_scheduled ON notifications(scheduled_at) WHERE scheduled_at IS NOT NULL;
+CREATE INDEX idx_notifications_unread ON notifications(user_id) WHERE read_at IS NULL;
 
--- Create delivery_logs table
+-- Create delivery_logs table, partitioned like notifications. Rows are expired by partition
+-- together with their notifications, so there is no foreign key (it would have to include
+-- the notification's created_at)
 CREATE TABLE IF NOT EXISTS delivery_logs (
-    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
-    notification_id UUID NOT NULL REFERENCES notifications(id) ON DELETE CASCADE,
+    id UUID NOT NULL DEFAULT uuid_generate_v4(),
+    notification_id UUID NOT NULL,
     channel VARCHAR(50) NOT NULL,
     status VARCHAR(50) NOT NULL DEFAULT 'PENDING',
     attempt_count INT DEFAULT 1,
     error_message TEXT,
     delivered_at TIMESTAMP,
     created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
-);
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
 
 -- Create indexes for delivery_logs
 CREATE INDEX idx_delivery_logs_notification ON delivery_logs(notification_id);
-CREATE INDEX idx_delivery_logs_status ON delivery_logs(status);
-CREATE INDEX idx_delivery_logs_channel ON delivery_logs(channel);
+CREATE INDEX idx_delivery_logs_created_brin ON delivery_logs USING BRIN (created_at);
+CREATE INDEX idx_delivery_logs_failed ON delivery_logs(channel, created_at) WHERE status <> 'DELIVERED';
+
+-- Delivery statistics rollups, maintained incrementally by the delivery service. Each table
+-- holds one row per bucket and dimension combination; finer resolutions are kept shorter
+CREATE TABLE IF NOT EXISTS delivery_stats_minute (
+    bucket TIMESTAMP NOT NULL,
+    channel VARCHAR(50) NOT NULL,
+    status VARCHAR(50) NOT NULL,
+    event_type VARCHAR(100) NOT NULL,
+    priority VARCHAR(20) NOT NULL,
+    count BIGINT NOT NULL,
+    PRIMARY KEY (bucket, channel, status, event_type, priority)
+);
+
+CREATE TABLE IF NOT EXISTS delivery_stats_hour (LIKE delivery_stats_minute INCLUDING ALL);
+CREATE TABLE IF NOT EXISTS delivery_stats_day (LIKE delivery_stats_minute INCLUDING ALL);
+
+-- Rows outside every partition land here; the partition managers keep it empty
+CREATE TABLE IF NOT EXISTS notifications_default PARTITION OF notifications DEFAULT;
+CREATE TABLE IF NOT EXISTS delivery_logs_default PARTITION OF delivery_logs DEFAULT;
+
+-- Create the first daily partitions so inserts work before the services start
+DO $$
+DECLARE
+    day DATE;
+BEGIN
+    FOR day IN SELECT generate_series(CURRENT_DATE - 1, CURRENT_DATE + 7, INTERVAL '1 day')::date LOOP
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF notifications FOR VALUES FROM (%L) TO (%L)',
+                'notifications_p' || to_char(day, 'YYYYMMDD'), day, day + 1);
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF delivery_logs FOR VALUES FROM (%L) TO (%L)',
+                'delivery_logs_p' || to_char(day, 'YYYYMMDD'), day, day + 1);
+    END LOOP;
+END;
+$$;
 
 -- Create users table
 CREATE TABLE IF NOT EXISTS users (
@@ -51,6 +94,55 @@ CREATE TABLE IF NOT EXISTS users (
 
 -- Create index for users
 CREATE INDEX idx_users_email ON users(email);
+CREATE INDEX idx_users_preferences ON users USING GIN (preferences jsonb_path_ops);
+
+-- Audience segments: the users whose preferences contain the segment's filter document
+CREATE TABLE IF NOT EXISTS segments (
+    id VARCHAR(100) PRIMARY KEY,
+    description VARCHAR(255),
+    filter JSONB NOT NULL DEFAULT '{}'::jsonb,  -- matched with preferences @> filter; {} is every user
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+INSERT INTO segments (id, description, filter) VALUES
+    ('all-users', 'Every user', '{}'::jsonb),
+    ('sms-users', 'Users with SMS enabled', '{"channels": ["SMS"]}'::jsonb)
+ON CONFLICT (id) DO NOTHING;
+
+-- Segment-targeted notifications, expanded to one notification per user in the background.
+-- The user id range is split into shards that workers claim with a lease and checkpoint
+CREATE TABLE IF NOT EXISTS fanout_jobs (
+    id UUID PRIMARY KEY,
+    segment_id VARCHAR(100) NOT NULL,
+    event_type VARCHAR(100) NOT NULL,
+    priority VARCHAR(20) NOT NULL,
+    template_id VARCHAR(100),
+    channels VARCHAR(100) NOT NULL,  -- comma-separated
+    data JSONB,
+    data_ref VARCHAR(100),
+    data_hash VARCHAR(64),
+    scheduled_at TIMESTAMP,
+    status VARCHAR(20) NOT NULL DEFAULT 'RUNNING',  -- RUNNING, COMPLETED
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS fanout_job_shards (
+    job_id UUID NOT NULL REFERENCES fanout_jobs(id) ON DELETE CASCADE,
+    shard INT NOT NULL,
+    lower_bound VARCHAR(255),  -- exclusive user id; NULL for the first shard
+    upper_bound VARCHAR(255),  -- inclusive user id; NULL for the last shard
+    checkpoint VARCHAR(255),  -- last user id emitted
+    emitted BIGINT NOT NULL DEFAULT 0,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING',  -- PENDING, COMPLETED
+    lease_owner VARCHAR(100),
+    lease_until TIMESTAMP,
+    last_error TEXT,
+    PRIMARY KEY (job_id, shard)
+);
+
+CREATE INDEX idx_fanout_job_shards_pending ON fanout_job_shards(job_id, shard) WHERE status = 'PENDING';
 
 -- Insert sample users for testing
 INSERT INTO users (id, email, phone, preferences) VALUES
@@ -67,13 +159,30 @@ BEGIN
 END;
 $$ language 'plpgsql';
 
--- Create triggers for auto-updating updated_at
-CREATE TRIGGER update_notifications_updated_at BEFORE UPDATE ON notifications
+-- Create triggers for auto-updating updated_at. notifications and delivery_logs have none:
+-- the services set updated_at themselves on every write
+CREATE TRIGGER update_users_updated_at BEFORE UPDATE ON users
     FOR EACH ROW EXECUTE FUNCTION update_updated_at_column();
 
-CREATE TRIGGER update_delivery_logs_updated_at BEFORE UPDATE ON delivery_logs
+CREATE TRIGGER update_segments_updated_at BEFORE UPDATE ON segments
     FOR EACH ROW EXECUTE FUNCTION update_updated_at_column();
 
-CREATE TRIGGER update_users_updated_at BEFORE UPDATE ON users
+CREATE TRIGGER update_fanout_jobs_updated_at BEFORE UPDATE ON fanout_jobs
     FOR EACH ROW EXECUTE FUNCTION update_updated_at_column();
 
+-- Tell the delivery services' contact caches about new, changed and deleted addresses
+CREATE OR REPLACE FUNCTION notify_user_contact_change()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('user_contacts', OLD.id);
+    ELSE
+        PERFORM pg_notify('user_contacts', NEW.id);
+    END IF;
+    RETURN NULL;
+END;
+$$ language 'plpgsql';
+
+CREATE TRIGGER notify_users_contact_change AFTER INSERT OR UPDATE OF email, phone OR DELETE ON users
+    FOR EACH ROW EXECUTE FUNCTION notify_user_contact_change();
+
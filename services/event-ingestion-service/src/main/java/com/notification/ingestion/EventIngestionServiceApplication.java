@@ -2,8 +2,10 @@ package com.notification.ingestion;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class EventIngestionServiceApplication {
     public static void main(String[] args) {
         SpringApplication.run(EventIngestionServiceApplication.class, args);
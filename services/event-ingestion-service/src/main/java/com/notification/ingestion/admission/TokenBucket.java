@@ -0,0 +1,56 @@
+package com.notification.ingestion.admission;
+
+/**
+ * Token bucket refilled continuously at {@code rate} tokens per second up to {@code capacity}.
+ * A request for more tokens than the capacity is admitted once the bucket is full and leaves it
+ * in debt, so large batches are slowed down instead of being rejected forever.
+ */
+public final class TokenBucket {
+    
+    private double rate;
+    private double capacity;
+    private double tokens;
+    private long refilledAt;
+    
+    public TokenBucket(double rate, double capacity) {
+        this.rate = rate;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+    
+    /**
+     * @return 0 if the tokens were taken, otherwise the nanoseconds until they could be
+     */
+    public synchronized long tryAcquire(int permits) {
+        refill();
+        double needed = Math.min(permits, capacity);
+        if (tokens >= needed) {
+            tokens -= permits;
+            return 0;
+        }
+        return (long) Math.ceil((needed - tokens) / rate * 1_000_000_000L);
+    }
+    
+    /**
+     * Changes rate and capacity, keeping the tokens saved up so far within the new capacity.
+     */
+    public synchronized void resize(double rate, double capacity) {
+        refill();
+        this.rate = rate;
+        this.capacity = capacity;
+        tokens = Math.min(tokens, capacity);
+    }
+    
+    public synchronized boolean isFull() {
+        refill();
+        return tokens >= capacity;
+    }
+    
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) / 1_000_000_000.0 * rate);
+        refilledAt = now;
+    }
+}
+
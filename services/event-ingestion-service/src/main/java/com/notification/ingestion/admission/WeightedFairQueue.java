@@ -0,0 +1,117 @@
+package com.notification.ingestion.admission;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Start-time fair queuing over a fixed number of permits. Each tenant's work gets a virtual
+ * start tag, and its tenant's finish tag advances by {@code cost / weight}; whenever a permit
+ * frees, the waiting work with the smallest start tag runs next. A tenant with a backlog thus
+ * waits behind its own earlier work while other tenants get their weighted share of the
+ * permits, instead of first come, first served. Work that gives up waiting takes its cost back
+ * off its tenant's finish tag, so timed-out requests do not push the tenant's later work back.
+ */
+public final class WeightedFairQueue {
+    
+    private final int permits;
+    private int running;
+    private double virtualTime;
+    private long sequence;
+    
+    private final Map<String, Double> finishTags = new HashMap<>();
+    private final PriorityQueue<Waiter> waiting = new PriorityQueue<>(
+            Comparator.comparingDouble(Waiter::start).thenComparingLong(Waiter::sequence));
+    
+    private static final class Waiter {
+        private final double start;
+        private final long sequence;
+        private boolean granted;
+        
+        private Waiter(double start, long sequence) {
+            this.start = start;
+            this.sequence = sequence;
+        }
+        
+        private double start() {
+            return start;
+        }
+        
+        private long sequence() {
+            return sequence;
+        }
+    }
+    
+    public WeightedFairQueue(int permits) {
+        this.permits = permits;
+    }
+    
+    /**
+     * Waits for a permit; every successful call must be followed by {@link #release()}.
+     *
+     * @return false if no permit was granted within the timeout
+     */
+    public synchronized boolean acquire(String tenant, double weight, int cost, long timeoutNanos)
+            throws InterruptedException {
+        double start = Math.max(virtualTime, finishTags.getOrDefault(tenant, 0.0));
+        double charge = cost / weight;
+        finishTags.put(tenant, start + charge);
+        if (running < permits && waiting.isEmpty()) {
+            grant(start);
+            return true;
+        }
+        
+        Waiter waiter = new Waiter(start, sequence++);
+        waiting.add(waiter);
+        long deadline = System.nanoTime() + timeoutNanos;
+        try {
+            while (!waiter.granted) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    waiting.remove(waiter);
+                    refund(tenant, charge);
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            if (waiter.granted) {
+                release();
+            } else {
+                waiting.remove(waiter);
+                refund(tenant, charge);
+            }
+            throw e;
+        }
+    }
+    
+    public synchronized void release() {
+        running--;
+        Waiter next = waiting.poll();
+        if (next != null) {
+            grant(next.start);
+            next.granted = true;
+            notifyAll();
+        } else {
+            // Without a backlog, tags at or behind the virtual time make no difference
+            finishTags.values().removeIf(finish -> finish <= virtualTime);
+        }
+    }
+    
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+    
+    private void refund(String tenant, double charge) {
+        finishTags.computeIfPresent(tenant, (key, finish) -> finish - charge);
+    }
+    
+    private void grant(double start) {
+        running++;
+        virtualTime = Math.max(virtualTime, start);
+    }
+}
+
@@ -0,0 +1,37 @@
+package com.notification.ingestion.archive;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Sidecar of an archive file ({@code <file>.stats.json}), written after the file itself, so a
+ * file without stats is incomplete and ignored. Min/max values compare as strings, which
+ * orders the UUIDs, user ids and timestamps stored.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchiveFileStats {
+    private String file;
+    private int rowCount;
+    private Map<String, String> min;
+    private Map<String, String> max;
+    
+    public boolean mightContain(String column, String value) {
+        String low = min.get(column);
+        String high = max.get(column);
+        return low == null || high == null || (value.compareTo(low) >= 0 && value.compareTo(high) <= 0);
+    }
+    
+    public boolean mightOverlap(String column, String from, String to) {
+        String low = min.get(column);
+        String high = max.get(column);
+        return low == null || high == null || (high.compareTo(from) >= 0 && low.compareTo(to) < 0);
+    }
+}
+
@@ -0,0 +1,24 @@
+package com.notification.ingestion.archive;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where archive files live. Paths are relative and '/'-separated, so an object store
+ * implementation can map them to keys directly.
+ */
+public interface ArchiveStore {
+    
+    /**
+     * Stores a complete file. Readers never see a partially written file.
+     */
+    void write(String path, byte[] content) throws IOException;
+    
+    byte[] read(String path) throws IOException;
+    
+    /**
+     * Names of the entries directly under a directory in name order; empty if it does not exist.
+     */
+    List<String> list(String directory) throws IOException;
+}
+
@@ -0,0 +1,52 @@
+package com.notification.ingestion.archive;
+
+import java.util.List;
+
+/**
+ * Tables that are archived, with the columns written and the order rows are written in.
+ * Sorting by the lookup key keeps each file's min/max range of that key narrow, so lookups can
+ * skip most files of a day.
+ */
+public enum ArchivedTable {
+    
+    NOTIFICATIONS("notifications",
+            List.of("id", "user_id", "event_type", "priority", "status", "template_id", "data",
+                    "data_ref", "data_hash", "created_at", "updated_at", "scheduled_at", "read_at"),
+            "user_id, created_at",
+            List.of("id", "user_id", "created_at")),
+    
+    DELIVERY_LOGS("delivery_logs",
+            List.of("id", "notification_id", "channel", "status", "attempt_count", "error_message",
+                    "delivered_at", "created_at", "updated_at"),
+            "notification_id, created_at",
+            List.of("id", "notification_id", "created_at"));
+    
+    private final String tableName;
+    private final List<String> columns;
+    private final String orderBy;
+    private final List<String> statsColumns;
+    
+    ArchivedTable(String tableName, List<String> columns, String orderBy, List<String> statsColumns) {
+        this.tableName = tableName;
+        this.columns = columns;
+        this.orderBy = orderBy;
+        this.statsColumns = statsColumns;
+    }
+    
+    public String getTableName() {
+        return tableName;
+    }
+    
+    public List<String> getColumns() {
+        return columns;
+    }
+    
+    public String getOrderBy() {
+        return orderBy;
+    }
+    
+    public List<String> getStatsColumns() {
+        return statsColumns;
+    }
+}
+
@@ -0,0 +1,101 @@
+package com.notification.ingestion.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minimal gzip-compressed columnar file format for archived rows. Values of a column are
+ * stored next to each other, so similar values (statuses, event types, timestamps) sit together
+ * and compress far better than row by row.
+ * <pre>
+ * gzip(
+ *   "NCOL" version:int
+ *   columnCount:int  name:utf * columnCount
+ *   rowCount:int
+ *   per column, per row:  present:byte [length:int utf8-bytes]
+ * )
+ * </pre>
+ * All values are stored as their text form; null is a value that is not present.
+ */
+public final class ColumnarFile {
+    
+    public static final String EXTENSION = ".ncol.gz";
+    
+    private static final int MAGIC = 0x4E434F4C;  // "NCOL"
+    private static final int VERSION = 1;
+    
+    private ColumnarFile() {
+    }
+    
+    public static byte[] write(List<String> columns, List<String[]> rows) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(columns.size());
+            for (String column : columns) {
+                out.writeUTF(column);
+            }
+            out.writeInt(rows.size());
+            for (int column = 0; column < columns.size(); column++) {
+                for (String[] row : rows) {
+                    String value = row[column];
+                    if (value == null) {
+                        out.writeByte(0);
+                    } else {
+                        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                        out.writeByte(1);
+                        out.writeInt(encoded.length);
+                        out.write(encoded);
+                    }
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * @return the rows, with values in the order of {@code columns}
+     */
+    public static List<String[]> read(byte[] content, List<String> columns) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(content)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a version " + VERSION + " archive file");
+            }
+            int columnCount = in.readInt();
+            int[] target = new int[columnCount];
+            for (int column = 0; column < columnCount; column++) {
+                target[column] = columns.indexOf(in.readUTF());
+            }
+            
+            int rowCount = in.readInt();
+            List<String[]> rows = new ArrayList<>(rowCount);
+            for (int row = 0; row < rowCount; row++) {
+                rows.add(new String[columns.size()]);
+            }
+            for (int column = 0; column < columnCount; column++) {
+                for (String[] row : rows) {
+                    if (in.readByte() == 0) {
+                        continue;
+                    }
+                    int length = in.readInt();
+                    if (target[column] < 0) {
+                        in.skipNBytes(length);  // Column not requested
+                    } else {
+                        row[target[column]] = new String(in.readNBytes(length), StandardCharsets.UTF_8);
+                    }
+                }
+            }
+            return rows;
+        }
+    }
+}
+
@@ -0,0 +1,52 @@
+package com.notification.ingestion.archive;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Component
+@ConditionalOnProperty(name = "notification.archive.store", havingValue = "local", matchIfMissing = true)
+public class LocalArchiveStore implements ArchiveStore {
+    
+    private final Path root;
+    
+    public LocalArchiveStore(@Value("${notification.archive.local-path}") String root) {
+        this.root = Path.of(root);
+    }
+    
+    @Override
+    public void write(String path, byte[] content) throws IOException {
+        Path target = root.resolve(path);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temp, content);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    @Override
+    public byte[] read(String path) throws IOException {
+        return Files.readAllBytes(root.resolve(path));
+    }
+    
+    @Override
+    public List<String> list(String directory) throws IOException {
+        Path dir = root.resolve(directory);
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> entries = Files.list(dir)) {
+            return entries.map(entry -> entry.getFileName().toString())
+                    .filter(name -> !name.endsWith(".tmp"))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
+
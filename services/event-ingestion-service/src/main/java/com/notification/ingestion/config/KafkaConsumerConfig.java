@@ -0,0 +1,77 @@
+package com.notification.ingestion.config;
+
+import com.notification.ingestion.dto.StatusUpdate;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+public class KafkaConsumerConfig {
+    
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+    
+    @Value("${notification.status-writer.group-id}")
+    private String groupId;
+    
+    @Value("${notification.status-writer.concurrency:3}")
+    private int concurrency;
+    
+    @Value("${notification.status-writer.window-ms:500}")
+    private int windowMs;
+    
+    @Value("${notification.status-writer.min-batch-bytes:65536}")
+    private int minBatchBytes;
+    
+    @Value("${notification.status-writer.max-batch-size:5000}")
+    private int maxBatchSize;
+    
+    @Bean
+    public ConsumerFactory<String, StatusUpdate> statusConsumerFactory() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class);
+        config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        config.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        // The broker holds each fetch until the window passes or enough updates are available,
+        // so every poll coalesces a window's worth of transitions
+        config.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, windowMs);
+        config.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, minBatchBytes);
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxBatchSize);
+        config.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
+        config.put(JsonDeserializer.VALUE_DEFAULT_TYPE, StatusUpdate.class.getName());
+        config.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);
+        return new DefaultKafkaConsumerFactory<>(config);
+    }
+    
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, StatusUpdate> statusListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, StatusUpdate> factory =
+            new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(statusConsumerFactory());
+        factory.setBatchListener(true);
+        factory.setConcurrency(concurrency);
+        // A failed write (database unavailable) is retried until it succeeds; the batch is only
+        // committed once written, and compaction keeps the topic small in the meantime
+        factory.setCommonErrorHandler(new DefaultErrorHandler(
+            new FixedBackOff(5000L, FixedBackOff.UNLIMITED_ATTEMPTS)));
+        return factory;
+    }
+}
+
@@ -0,0 +1,40 @@
+package com.notification.ingestion.consumer;
+
+import com.notification.ingestion.dto.StatusUpdate;
+import com.notification.ingestion.service.NotificationStatusWriter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StatusUpdateConsumer {
+    
+    private final NotificationStatusWriter notificationStatusWriter;
+    
+    @KafkaListener(
+        id = "statusUpdateConsumer",
+        topics = "${notification.kafka.topic.status}",
+        containerFactory = "statusListenerContainerFactory"
+    )
+    public void consume(List<ConsumerRecord<String, StatusUpdate>> records) {
+        List<StatusUpdate> updates = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, StatusUpdate> record : records) {
+            // Undeserializable records arrive as null values; nothing can be written for them
+            if (record.value() != null && record.value().getNotificationId() != null) {
+                updates.add(record.value());
+            } else {
+                log.warn("Skipping unreadable status update at partition {}, offset {}",
+                        record.partition(), record.offset());
+            }
+        }
+        notificationStatusWriter.write(updates);
+    }
+}
+
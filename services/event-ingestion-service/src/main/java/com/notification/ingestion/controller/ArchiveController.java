@@ -0,0 +1,43 @@
+package com.notification.ingestion.controller;
+
+import com.notification.ingestion.dto.ArchivedNotification;
+import com.notification.ingestion.exception.NotificationNotFoundException;
+import com.notification.ingestion.service.ArchiveQueryService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/v1/notifications/archive")
+@RequiredArgsConstructor
+@Tag(name = "Notification Archive", description = "APIs for notifications moved out of the database")
+public class ArchiveController {
+    
+    private final ArchiveQueryService archiveQueryService;
+    
+    @GetMapping("/{notificationId}")
+    @Operation(summary = "Get archived notification", description = "An archived notification with its delivery logs")
+    public ResponseEntity<ArchivedNotification> getNotification(@PathVariable UUID notificationId) {
+        return ResponseEntity.ok(archiveQueryService.findNotification(notificationId)
+                .orElseThrow(() -> new NotificationNotFoundException("Archived notification not found: " + notificationId)));
+    }
+    
+    @GetMapping
+    @Operation(summary = "List archived user notifications",
+            description = "A user's archived notifications created between from and to (ISO dates, inclusive)")
+    public ResponseEntity<List<Map<String, String>>> getUserNotifications(
+            @RequestParam String userId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(archiveQueryService.findUserNotifications(userId, from, to));
+    }
+}
+
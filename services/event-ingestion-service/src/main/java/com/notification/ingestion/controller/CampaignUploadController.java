@@ -0,0 +1,60 @@
+package com.notification.ingestion.controller;
+
+import com.notification.ingestion.dto.NotificationRequest;
+import com.notification.ingestion.dto.RecipientRequest;
+import com.notification.ingestion.dto.UploadJob;
+import com.notification.ingestion.service.CampaignUploadService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+@RestController
+@RequestMapping("/api/v1/notifications/uploads")
+@RequiredArgsConstructor
+@Tag(name = "Campaign Uploads", description = "APIs for ingesting recipient files")
+public class CampaignUploadController {
+    
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String CSV = "text/csv";
+    
+    private final CampaignUploadService campaignUploadService;
+    
+    @PostMapping(consumes = {NDJSON, CSV})
+    @Operation(summary = "Upload recipients",
+            description = "Stream an NDJSON or CSV recipient file (optionally gzip-encoded); one notification per valid line")
+    public ResponseEntity<UploadJob> upload(
+            HttpServletRequest request,
+            @RequestParam String eventType,
+            @RequestParam NotificationRequest.Priority priority,
+            @RequestParam(required = false) String templateId,
+            @RequestParam(required = false) List<RecipientRequest.Channel> channels,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime scheduledAt,
+            @RequestHeader(value = "X-Tenant-Id", required = false) String tenantId)
+            throws IOException {
+        CampaignUploadService.Format format = request.getContentType().startsWith(CSV)
+                ? CampaignUploadService.Format.CSV : CampaignUploadService.Format.NDJSON;
+        InputStream body = "gzip".equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING))
+                ? new GZIPInputStream(request.getInputStream(), 64 * 1024) : request.getInputStream();
+        
+        return ResponseEntity.ok(campaignUploadService.upload(body, format,
+                new CampaignUploadService.Campaign(eventType, priority, templateId, channels, scheduledAt, tenantId)));
+    }
+    
+    @GetMapping("/{jobId}")
+    @Operation(summary = "Get upload", description = "Progress of an upload, also while it is running")
+    public ResponseEntity<UploadJob> getUpload(@PathVariable String jobId) {
+        return ResponseEntity.of(campaignUploadService.getJob(jobId));
+    }
+}
+
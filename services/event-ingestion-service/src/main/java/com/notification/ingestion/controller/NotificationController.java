@@ -1,8 +1,17 @@
 package com.notification.ingestion.controller;
 
+import com.notification.ingestion.dto.FanoutJobView;
+import com.notification.ingestion.dto.NotificationPage;
 import com.notification.ingestion.dto.NotificationRequest;
 import com.notification.ingestion.dto.NotificationResponse;
+import com.notification.ingestion.dto.NotificationView;
+import com.notification.ingestion.dto.UnreadCountResponse;
+import com.notification.ingestion.service.IdempotencyService;
 import com.notification.ingestion.service.NotificationIngestionService;
+import com.notification.ingestion.service.NotificationQueryService;
+import com.notification.ingestion.service.SegmentFanoutService;
+import com.notification.ingestion.service.TenantAdmissionService;
+import com.notification.ingestion.service.UnreadCounterService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
@@ -12,6 +21,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/v1/notifications")
@@ -19,14 +29,71 @@ import java.util.Map;
 @Tag(name = "Notification Ingestion", description = "APIs for ingesting notification requests")
 public class NotificationController {
     
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final String TENANT_HEADER = "X-Tenant-Id";
+    
     private final NotificationIngestionService notificationIngestionService;
+    private final NotificationQueryService notificationQueryService;
+    private final UnreadCounterService unreadCounterService;
+    private final SegmentFanoutService segmentFanoutService;
+    private final IdempotencyService idempotencyService;
+    private final TenantAdmissionService tenantAdmissionService;
     
     @PostMapping
-    @Operation(summary = "Send notification", description = "Submit a new notification request")
+    @Operation(summary = "Send notification",
+            description = "Submit a new notification request; retries with the same Idempotency-Key return the first response. "
+                    + "Answers 429 with Retry-After when the tenant is over its quota and 400 for tenants that are not configured")
     public ResponseEntity<NotificationResponse> sendNotification(
-            @Valid @RequestBody NotificationRequest request) {
-        NotificationResponse response = notificationIngestionService.ingestNotification(request);
-        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+            @Valid @RequestBody NotificationRequest request,
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @RequestHeader(value = TENANT_HEADER, required = false) String tenantId) {
+        String key = idempotencyKey != null ? idempotencyKey : request.getIdempotencyKey();
+        String tenant = tenantAdmissionService.tenantOf(tenantId, request);
+        IdempotencyService.Result result = idempotencyService.execute(tenant, key, request,
+                () -> tenantAdmissionService.admit(tenant, TenantAdmissionService.costOf(request),
+                        () -> notificationIngestionService.ingestNotification(request)));
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .header(IDEMPOTENT_REPLAYED_HEADER, String.valueOf(result.replayed()))
+                .body(result.response());
+    }
+    
+    @GetMapping("/{notificationId}")
+    @Operation(summary = "Get notification", description = "Get a notification and its current status")
+    public ResponseEntity<NotificationView> getNotification(@PathVariable UUID notificationId) {
+        return ResponseEntity.ok(notificationQueryService.getNotification(notificationId));
+    }
+    
+    @GetMapping
+    @Operation(summary = "List user notifications",
+            description = "A user's notifications, newest first. Pass nextCursor of a page as cursor to get the next one")
+    public ResponseEntity<NotificationPage> getInbox(
+            @RequestParam String userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(notificationQueryService.getInbox(userId, cursor, limit));
+    }
+    
+    @GetMapping("/unread-count")
+    @Operation(summary = "Unread count", description = "Number of a user's notifications not marked read")
+    public ResponseEntity<UnreadCountResponse> getUnreadCount(@RequestParam String userId) {
+        return ResponseEntity.ok(UnreadCountResponse.builder()
+                .userId(userId)
+                .unread(unreadCounterService.getUnreadCount(userId))
+                .build());
+    }
+    
+    @PostMapping("/{notificationId}/read")
+    @Operation(summary = "Mark as read", description = "Mark a notification read")
+    public ResponseEntity<Void> markAsRead(@PathVariable UUID notificationId) {
+        notificationQueryService.markAsRead(notificationId);
+        return ResponseEntity.noContent().build();
+    }
+    
+    @GetMapping("/fanout/{jobId}")
+    @Operation(summary = "Get fan-out job", description = "Progress of a segment-targeted notification")
+    public ResponseEntity<FanoutJobView> getFanoutJob(@PathVariable UUID jobId) {
+        return ResponseEntity.ok(segmentFanoutService.getJob(jobId));
     }
     
     @GetMapping("/health")
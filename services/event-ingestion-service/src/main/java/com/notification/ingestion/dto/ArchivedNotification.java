@@ -0,0 +1,19 @@
+package com.notification.ingestion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedNotification {
+    private Map<String, String> notification;  // archived columns in their text form
+    private List<Map<String, String>> deliveries;
+}
+
@@ -0,0 +1,25 @@
+package com.notification.ingestion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FanoutJobView {
+    private UUID jobId;
+    private String segmentId;
+    private String status;  // RUNNING, COMPLETED
+    private int shards;
+    private int completedShards;
+    private long emitted;  // notifications created so far
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
+
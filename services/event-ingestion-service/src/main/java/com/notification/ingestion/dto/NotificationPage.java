@@ -0,0 +1,18 @@
+package com.notification.ingestion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationPage {
+    private List<NotificationView> notifications;
+    private String nextCursor;  // null on the last page
+}
+
@@ -1,7 +1,8 @@
 package com.notification.ingestion.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.AssertTrue;
 import jakarta.validation.constraints.NotBlank;
-import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -21,9 +22,13 @@ public class NotificationRequest {
     @NotBlank(message = "Event type is required")
     private String eventType;
     
-    @NotEmpty(message = "At least one recipient is required")
     private List<RecipientRequest> recipients;
     
+    // Instead of recipients: every user of the segment, on these channels
+    private String segmentId;
+    
+    private List<RecipientRequest.Channel> channels;
+    
     @NotNull(message = "Priority is required")
     private Priority priority;
     
@@ -33,6 +38,17 @@ public class NotificationRequest {
     
     private LocalDateTime scheduledAt;
     
+    // Alternative to the Idempotency-Key header; retries with the same key are ingested once
+    private String idempotencyKey;
+    
+    @JsonIgnore
+    @AssertTrue(message = "Either recipients, or segmentId and channels are required")
+    public boolean isTargetValid() {
+        boolean hasRecipients = recipients != null && !recipients.isEmpty();
+        boolean hasSegment = segmentId != null && channels != null && !channels.isEmpty();
+        return hasRecipients != hasSegment;
+    }
+    
     public enum Priority {
         HIGH, MEDIUM, LOW
     }
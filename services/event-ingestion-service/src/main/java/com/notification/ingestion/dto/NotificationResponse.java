@@ -14,6 +14,7 @@ import java.util.UUID;
 @AllArgsConstructor
 public class NotificationResponse {
     private UUID notificationId;
+    private UUID fanoutJobId;  // segment-targeted requests
     private String status;
     private LocalDateTime createdAt;
     private String message;
@@ -0,0 +1,30 @@
+package com.notification.ingestion.dto;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationView {
+    private UUID notificationId;
+    private String userId;
+    private String eventType;
+    private String priority;
+    private String status;
+    private String templateId;
+    @JsonRawValue
+    private String data;  // stored JSON, passed through unparsed
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime scheduledAt;
+    private LocalDateTime readAt;
+}
+
@@ -0,0 +1,24 @@
+package com.notification.ingestion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A notification status transition on the compacted status topic, keyed by notification id.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatusUpdate {
+    private String notificationId;
+    private String status;  // PROCESSED, FILTERED, EXPIRED, DELIVERED, RATE_LIMITED, SKIPPED, FAILED
+    private String stage;
+    private LocalDateTime createdAt;  // of the notification; locates its partition
+    private LocalDateTime updatedAt;
+}
+
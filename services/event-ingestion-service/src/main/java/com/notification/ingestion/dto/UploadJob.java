@@ -0,0 +1,27 @@
+package com.notification.ingestion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadJob {
+    private String jobId;
+    private String format;  // NDJSON, CSV
+    private String status;  // RUNNING, COMPLETED, FAILED
+    private long lines;
+    private long accepted;
+    private long rejected;
+    private List<String> errors;  // the first rejected lines
+    private String lastError;
+    private Instant createdAt;
+    private Instant updatedAt;
+}
+
@@ -0,0 +1,23 @@
+package com.notification.ingestion.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One recipient of an NDJSON upload; channels default to the upload's channels.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadLine {
+    private String userId;
+    private List<RecipientRequest.Channel> channels;
+    private Map<String, Object> data;
+}
+
@@ -22,7 +22,7 @@ import java.util.UUID;
 public class Notification {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @UuidV7Id
     private UUID id;
     
     @Column(name = "user_id", nullable = false)
@@ -42,7 +42,13 @@ public class Notification {
     
     @JdbcTypeCode(SqlTypes.JSON)
     @Column(name = "data", columnDefinition = "jsonb")
-    private String data;
+    private String data;  // null when offloaded to the payload store
+    
+    @Column(name = "data_ref")
+    private String dataRef;
+    
+    @Column(name = "data_hash")
+    private String dataHash;
     
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
@@ -54,5 +60,8 @@ public class Notification {
     
     @Column(name = "scheduled_at")
     private LocalDateTime scheduledAt;
+    
+    @Column(name = "read_at")
+    private LocalDateTime readAt;
 }
 
@@ -0,0 +1,67 @@
+package com.notification.ingestion.entity;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates time-ordered UUIDv7 ids (RFC 9562) in-process. New ids land at the right edge of
+ * the primary key index instead of on random pages, and are known before the insert, which
+ * lets Hibernate batch inserts.
+ * <p>
+ * The 48-bit millisecond timestamp is followed by a 12-bit sequence, so ids generated by this
+ * JVM are strictly increasing: within a millisecond the sequence counts up, and once it runs
+ * out the timestamp is advanced ahead of the clock until the clock catches up. The remaining 62
+ * bits are random. Generation is a single CAS, without locks.
+ */
+public class UuidV7Generator implements BeforeExecutionGenerator {
+    
+    // Unix millis << 12 | sequence of the last id handed out
+    private static final AtomicLong LAST = new AtomicLong();
+    
+    public static UUID next() {
+        long now = System.currentTimeMillis() << 12;
+        long current;
+        long next;
+        do {
+            current = LAST.get();
+            next = Math.max(now, current + 1);
+        } while (!LAST.compareAndSet(current, next));
+        
+        long mostSigBits = (next >>> 12) << 16   // unix_ts_ms
+                | 0x7000L                        // version 7
+                | (next & 0xFFFL);               // sequence (rand_a)
+        long leastSigBits = ThreadLocalRandom.current().nextLong() >>> 2
+                | 0x8000000000000000L;           // variant 10, rand_b
+        return new UUID(mostSigBits, leastSigBits);
+    }
+    
+    /**
+     * @return when a UUIDv7 was generated, or null for other UUID versions
+     */
+    public static Instant timestampOf(UUID id) {
+        if (id.version() != 7) {
+            return null;
+        }
+        return Instant.ofEpochMilli(id.getMostSignificantBits() >>> 16);
+    }
+    
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue,
+                           EventType eventType) {
+        return next();
+    }
+    
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+}
+
@@ -0,0 +1,8 @@
+package com.notification.ingestion.exception;
+
+public class NotificationNotFoundException extends RuntimeException {
+    public NotificationNotFoundException(String message) {
+        super(message);
+    }
+}
+
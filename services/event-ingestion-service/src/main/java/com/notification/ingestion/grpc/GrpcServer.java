@@ -0,0 +1,95 @@
+package com.notification.ingestion.grpc;
+
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the gRPC ingestion server on its own port next to the HTTP server. Calls run on a bounded
+ * pool, since ingestion blocks on the database.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class GrpcServer implements SmartLifecycle {
+    
+    private final NotificationIngestionGrpcService ingestionService;
+    
+    @Value("${notification.grpc.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${notification.grpc.port:9091}")
+    private int port;
+    
+    @Value("${notification.grpc.handler-threads:32}")
+    private int handlerThreads;
+    
+    @Value("${notification.grpc.max-message-bytes:4194304}")
+    private int maxMessageBytes;
+    
+    @Value("${notification.grpc.shutdown-grace-seconds:10}")
+    private long shutdownGraceSeconds;
+    
+    private Server server;
+    private ExecutorService executor;
+    
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(handlerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "grpc-ingest-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            server = NettyServerBuilder.forPort(port)
+                    .addService(ingestionService)
+                    .executor(executor)
+                    .maxInboundMessageSize(maxMessageBytes)
+                    .build()
+                    .start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start gRPC server on port " + port, e);
+        }
+        log.info("gRPC ingestion server listening on port {}", port);
+    }
+    
+    @Override
+    public void stop() {
+        if (server == null) {
+            return;
+        }
+        // Running calls get the grace period to finish their current request
+        server.shutdown();
+        try {
+            if (!server.awaitTermination(shutdownGraceSeconds, TimeUnit.SECONDS)) {
+                server.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            server.shutdownNow();
+        }
+        executor.shutdown();
+        server = null;
+    }
+    
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+}
+
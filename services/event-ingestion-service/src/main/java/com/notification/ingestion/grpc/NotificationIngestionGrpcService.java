@@ -0,0 +1,162 @@
+package com.notification.ingestion.grpc;
+
+import com.notification.ingestion.dto.NotificationRequest;
+import com.notification.ingestion.dto.NotificationResponse;
+import com.notification.ingestion.exception.IdempotencyConflictException;
+import com.notification.ingestion.exception.TooManyRequestsException;
+import com.notification.ingestion.grpc.proto.NotificationIngestionGrpc;
+import com.notification.ingestion.grpc.proto.SendAck;
+import com.notification.ingestion.grpc.proto.SendRequest;
+import com.notification.ingestion.grpc.proto.SendSummary;
+import com.notification.ingestion.service.IdempotencyService;
+import com.notification.ingestion.service.NotificationIngestionService;
+import com.notification.ingestion.service.TenantAdmissionService;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * gRPC front end of {@link NotificationIngestionService}. Requests are validated with the same
+ * constraints as the REST API and ingested one at a time per stream.
+ * <p>
+ * Streams use manual flow control: the next request is only taken from the transport once the
+ * current one is ingested and, for bidi streams, its ack could be written. A client sending
+ * faster than requests are ingested (or reading acks slower) fills the HTTP/2 flow-control
+ * window and is held back by the transport, so no stream buffers more than one request here.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationIngestionGrpcService extends NotificationIngestionGrpc.NotificationIngestionImplBase {
+    
+    private static final int MAX_REPORTED_FAILURES = 100;
+    
+    private final NotificationIngestionService notificationIngestionService;
+    private final IdempotencyService idempotencyService;
+    private final TenantAdmissionService tenantAdmissionService;
+    private final Validator validator;
+    
+    @Override
+    public void send(SendRequest request, StreamObserver<SendAck> responseObserver) {
+        responseObserver.onNext(ingest(request));
+        responseObserver.onCompleted();
+    }
+    
+    @Override
+    public StreamObserver<SendRequest> sendStream(StreamObserver<SendSummary> responseObserver) {
+        ServerCallStreamObserver<SendSummary> call = (ServerCallStreamObserver<SendSummary>) responseObserver;
+        call.disableAutoRequest();
+        call.request(1);
+        
+        SendSummary.Builder summary = SendSummary.newBuilder();
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(SendRequest request) {
+                SendAck ack = ingest(request);
+                switch (ack.getStatus()) {
+                    case ACCEPTED -> summary.setAccepted(summary.getAccepted() + 1);
+                    case INVALID -> summary.setInvalid(summary.getInvalid() + 1);
+                    default -> summary.setFailed(summary.getFailed() + 1);
+                }
+                if (ack.getStatus() != SendAck.Status.ACCEPTED && summary.getFailuresCount() < MAX_REPORTED_FAILURES) {
+                    summary.addFailures(ack);
+                }
+                call.request(1);
+            }
+            
+            @Override
+            public void onError(Throwable t) {
+                log.debug("Client-streaming ingestion cancelled: {}", t.getMessage());
+            }
+            
+            @Override
+            public void onCompleted() {
+                responseObserver.onNext(summary.build());
+                responseObserver.onCompleted();
+            }
+        };
+    }
+    
+    @Override
+    public StreamObserver<SendRequest> sendBidi(StreamObserver<SendAck> responseObserver) {
+        ServerCallStreamObserver<SendAck> call = (ServerCallStreamObserver<SendAck>) responseObserver;
+        call.disableAutoRequest();
+        
+        // Request the next message whenever acks can be written again
+        boolean[] waitingForReady = {true};
+        call.setOnReadyHandler(() -> {
+            if (waitingForReady[0] && call.isReady()) {
+                waitingForReady[0] = false;
+                call.request(1);
+            }
+        });
+        
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(SendRequest request) {
+                responseObserver.onNext(ingest(request));
+                if (call.isReady()) {
+                    call.request(1);
+                } else {
+                    waitingForReady[0] = true;
+                }
+            }
+            
+            @Override
+            public void onError(Throwable t) {
+                log.debug("Bidi-streaming ingestion cancelled: {}", t.getMessage());
+            }
+            
+            @Override
+            public void onCompleted() {
+                responseObserver.onCompleted();
+            }
+        };
+    }
+    
+    private SendAck ingest(SendRequest message) {
+        SendAck.Builder ack = SendAck.newBuilder().setRequestId(message.getRequestId());
+        try {
+            NotificationRequest request = ProtoMapper.toRequest(message);
+            Set<ConstraintViolation<NotificationRequest>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                return ack.setStatus(SendAck.Status.INVALID)
+                        .setMessage(violations.stream()
+                                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                                .sorted()
+                                .collect(Collectors.joining(", ")))
+                        .build();
+            }
+            
+            String tenant = tenantAdmissionService.tenantOf(message.getTenantId(), request);
+            NotificationResponse response = idempotencyService.execute(tenant, request.getIdempotencyKey(), request,
+                    () -> tenantAdmissionService.admit(tenant, TenantAdmissionService.costOf(request),
+                            () -> notificationIngestionService.ingestNotification(request))).response();
+            ack.setStatus(SendAck.Status.ACCEPTED).setMessage(response.getMessage());
+            if (response.getFanoutJobId() != null) {
+                ack.setFanoutJobId(response.getFanoutJobId().toString());
+            }
+            return ack.build();
+        } catch (TooManyRequestsException e) {
+            return ack.setStatus(SendAck.Status.THROTTLED)
+                    .setMessage(e.getMessage())
+                    .setRetryAfterSeconds(e.getRetryAfterSeconds())
+                    .build();
+        } catch (IdempotencyConflictException e) {
+            return ack.setStatus(SendAck.Status.FAILED).setMessage(e.getMessage()).build();
+        } catch (IllegalArgumentException e) {
+            return ack.setStatus(SendAck.Status.INVALID).setMessage(String.valueOf(e.getMessage())).build();
+        } catch (Exception e) {
+            log.warn("gRPC ingestion of request {} failed: {}", message.getRequestId(), e.getMessage());
+            return ack.setStatus(SendAck.Status.FAILED).setMessage(String.valueOf(e.getMessage())).build();
+        }
+    }
+}
+
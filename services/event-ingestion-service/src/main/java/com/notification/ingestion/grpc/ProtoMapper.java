@@ -0,0 +1,102 @@
+package com.notification.ingestion.grpc;
+
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import com.notification.ingestion.dto.NotificationRequest;
+import com.notification.ingestion.dto.RecipientRequest;
+import com.notification.ingestion.grpc.proto.Channel;
+import com.notification.ingestion.grpc.proto.Priority;
+import com.notification.ingestion.grpc.proto.SendRequest;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts gRPC messages to the REST request model, so both APIs share validation and
+ * ingestion. Unset proto3 fields become null.
+ */
+final class ProtoMapper {
+    
+    private ProtoMapper() {
+    }
+    
+    static NotificationRequest toRequest(SendRequest message) {
+        return NotificationRequest.builder()
+                .eventType(emptyToNull(message.getEventType()))
+                .recipients(message.getRecipientsList().stream()
+                        .map(recipient -> RecipientRequest.builder()
+                                .userId(emptyToNull(recipient.getUserId()))
+                                .channels(channels(recipient.getChannelsList()))
+                                .build())
+                        .toList())
+                .priority(priority(message.getPriority()))
+                .templateId(emptyToNull(message.getTemplateId()))
+                .data(message.hasData() ? toMap(message.getData()) : null)
+                .scheduledAt(message.hasScheduledAt()
+                        ? LocalDateTime.ofInstant(Instant.ofEpochSecond(message.getScheduledAt().getSeconds(),
+                                message.getScheduledAt().getNanos()), ZoneId.systemDefault())
+                        : null)
+                .segmentId(emptyToNull(message.getSegmentId()))
+                .channels(message.getChannelsCount() > 0 ? channels(message.getChannelsList()) : null)
+                .idempotencyKey(emptyToNull(message.getIdempotencyKey()))
+                .build();
+    }
+    
+    private static NotificationRequest.Priority priority(Priority priority) {
+        return switch (priority) {
+            case HIGH -> NotificationRequest.Priority.HIGH;
+            case MEDIUM -> NotificationRequest.Priority.MEDIUM;
+            case LOW -> NotificationRequest.Priority.LOW;
+            default -> null;
+        };
+    }
+    
+    private static List<RecipientRequest.Channel> channels(List<Channel> channels) {
+        List<RecipientRequest.Channel> converted = new ArrayList<>(channels.size());
+        for (Channel channel : channels) {
+            if (channel == Channel.CHANNEL_UNSPECIFIED || channel == Channel.UNRECOGNIZED) {
+                throw new IllegalArgumentException("Unknown channel");
+            }
+            converted.add(RecipientRequest.Channel.valueOf(channel.name()));
+        }
+        return converted;
+    }
+    
+    static Map<String, Object> toMap(Struct struct) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        struct.getFieldsMap().forEach((name, value) -> map.put(name, toObject(value)));
+        return map;
+    }
+    
+    private static Object toObject(Value value) {
+        return switch (value.getKindCase()) {
+            case STRUCT_VALUE -> toMap(value.getStructValue());
+            case LIST_VALUE -> toList(value.getListValue());
+            case STRING_VALUE -> value.getStringValue();
+            case BOOL_VALUE -> value.getBoolValue();
+            case NUMBER_VALUE -> {
+                double number = value.getNumberValue();
+                // JSON numbers arrive as doubles; keep integral ones integral
+                yield number == Math.rint(number) && Math.abs(number) < 1e15 ? (Object) (long) number : number;
+            }
+            default -> null;
+        };
+    }
+    
+    private static List<Object> toList(ListValue list) {
+        List<Object> values = new ArrayList<>(list.getValuesCount());
+        list.getValuesList().forEach(value -> values.add(toObject(value)));
+        return values;
+    }
+    
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
+
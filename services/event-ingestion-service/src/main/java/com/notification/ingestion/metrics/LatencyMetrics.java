@@ -0,0 +1,66 @@
+package com.notification.ingestion.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stage pipeline latency timers, tagged by stage, priority and channel.
+ * Timers are cached so the hot path is a couple of map lookups and no allocation.
+ * Percentiles and histogram buckets are configured under
+ * {@code management.metrics.distribution} in application.yml.
+ * <p>
+ * The delivery and processing services carry their own copies with the stages they measure
+ * (see Shared Code in docs/architecture.md); keep the timer layout the same in all of them.
+ */
+@Component
+@RequiredArgsConstructor
+public class LatencyMetrics {
+    
+    public static final String STAGE_TIMER = "notification.pipeline.stage";
+    
+    public static final String STAGE_INGEST = "ingest";
+    public static final String STAGE_PUBLISH = "publish";
+    
+    public static final String ALL_CHANNELS = "all";
+    private static final String UNKNOWN = "UNKNOWN";
+    
+    private final MeterRegistry meterRegistry;
+    
+    private final ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, Timer>>> stageTimers =
+            new ConcurrentHashMap<>();
+    
+    public void recordStage(String stage, String priority, String channel, long nanos) {
+        timer(stage, priority, channel).record(nanos, TimeUnit.NANOSECONDS);
+    }
+    
+    private Timer timer(String stage, String priority, String channel) {
+        String priorityTag = priority != null ? priority : UNKNOWN;
+        String channelTag = channel != null ? channel : ALL_CHANNELS;
+        
+        ConcurrentMap<String, ConcurrentMap<String, Timer>> byPriority = stageTimers.get(stage);
+        if (byPriority == null) {
+            byPriority = stageTimers.computeIfAbsent(stage, k -> new ConcurrentHashMap<>());
+        }
+        ConcurrentMap<String, Timer> byChannel = byPriority.get(priorityTag);
+        if (byChannel == null) {
+            byChannel = byPriority.computeIfAbsent(priorityTag, k -> new ConcurrentHashMap<>());
+        }
+        Timer timer = byChannel.get(channelTag);
+        if (timer == null) {
+            timer = byChannel.computeIfAbsent(channelTag, k -> Timer.builder(STAGE_TIMER)
+                    .description("Time a notification spends in each pipeline stage")
+                    .tag("stage", stage)
+                    .tag("priority", priorityTag)
+                    .tag("channel", channelTag)
+                    .register(meterRegistry));
+        }
+        return timer;
+    }
+}
+
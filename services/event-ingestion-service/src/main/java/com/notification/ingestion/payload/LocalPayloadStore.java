@@ -0,0 +1,87 @@
+package com.notification.ingestion.payload;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Payloads as files under {@code local-path}, fanned out by the first two characters of the
+ * key. The directory must be shared with the delivery service, which reads the payloads.
+ */
+@Component
+@ConditionalOnProperty(name = "notification.payload.store", havingValue = "local", matchIfMissing = true)
+public class LocalPayloadStore implements PayloadStore {
+    
+    private final Path root;
+    
+    public LocalPayloadStore(@Value("${notification.payload.local-path}") String root) {
+        this.root = Path.of(root);
+    }
+    
+    @Override
+    public void put(String key, byte[] content) throws IOException {
+        Path target = pathOf(key);
+        try {
+            // The last-modified time records the last use
+            Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+            return;
+        } catch (NoSuchFileException e) {
+            // Not stored yet
+        }
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), key, ".tmp");
+        Files.write(temp, content);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    @Override
+    public byte[] get(String key) throws IOException {
+        return Files.readAllBytes(pathOf(key));
+    }
+    
+    @Override
+    public int deleteUnusedSince(Instant cutoff) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        List<Path> expired;
+        try (Stream<Path> files = Files.walk(root, 2)) {
+            expired = files.filter(Files::isRegularFile)
+                    .filter(file -> lastModified(file).isBefore(cutoff))
+                    .toList();
+        }
+        int deleted = 0;
+        for (Path file : expired) {
+            if (Files.deleteIfExists(file)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+    
+    private Path pathOf(String key) {
+        if (!key.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Invalid payload key: " + key);
+        }
+        return root.resolve(key.substring(0, 2)).resolve(key);
+    }
+    
+    private static Instant lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toInstant();
+        } catch (IOException e) {
+            return Instant.MAX;  // Deleted meanwhile
+        }
+    }
+}
+
@@ -0,0 +1,27 @@
+package com.notification.ingestion.payload;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Content-addressed store for notification payloads too large to travel in every event. A
+ * payload's key is derived from its hash, so storing the same payload again stores nothing.
+ */
+public interface PayloadStore {
+    
+    /**
+     * Stores the content under its key unless it is already there; either way marks the key
+     * as used now.
+     */
+    void put(String key, byte[] content) throws IOException;
+    
+    byte[] get(String key) throws IOException;
+    
+    /**
+     * Deletes payloads last used before the cutoff.
+     *
+     * @return the number of payloads deleted
+     */
+    int deleteUnusedSince(Instant cutoff) throws IOException;
+}
+
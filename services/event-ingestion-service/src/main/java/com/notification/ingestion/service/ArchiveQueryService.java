@@ -0,0 +1,143 @@
+package com.notification.ingestion.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notification.ingestion.archive.ArchiveFileStats;
+import com.notification.ingestion.archive.ArchiveStore;
+import com.notification.ingestion.archive.ArchivedTable;
+import com.notification.ingestion.archive.ColumnarFile;
+import com.notification.ingestion.dto.ArchivedNotification;
+import com.notification.ingestion.entity.UuidV7Generator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Reads archived rows back. Only the day directories a lookup can match are listed, and within
+ * them only files whose min/max stats can contain the key are read.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ArchiveQueryService {
+    
+    public static final String STATS_SUFFIX = ".stats.json";
+    
+    private static final String DATE_PREFIX = "date=";
+    
+    private final ArchiveStore archiveStore;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${notification.archive.max-query-days:31}")
+    private int maxQueryDays;
+    
+    // Delivery logs are written within this many days of their notification
+    @Value("${notification.archive.delivery-window-days:7}")
+    private int deliveryWindowDays;
+    
+    public Optional<ArchivedNotification> findNotification(UUID notificationId) {
+        String id = notificationId.toString();
+        List<LocalDate> days = daysOf(notificationId, 0);
+        List<Map<String, String>> notifications = scan(ArchivedTable.NOTIFICATIONS, days,
+                stats -> stats.mightContain("id", id), row -> id.equals(row.get("id")));
+        if (notifications.isEmpty()) {
+            return Optional.empty();
+        }
+        
+        List<Map<String, String>> deliveries = scan(ArchivedTable.DELIVERY_LOGS, daysOf(notificationId, deliveryWindowDays),
+                stats -> stats.mightContain("notification_id", id), row -> id.equals(row.get("notification_id")));
+        return Optional.of(ArchivedNotification.builder()
+                .notification(notifications.get(0))
+                .deliveries(deliveries)
+                .build());
+    }
+    
+    public List<Map<String, String>> findUserNotifications(String userId, LocalDate from, LocalDate to) {
+        if (ChronoUnit.DAYS.between(from, to) >= maxQueryDays || to.isBefore(from)) {
+            throw new IllegalArgumentException("Date range must be ascending and at most " + maxQueryDays + " days");
+        }
+        List<LocalDate> days = from.datesUntil(to.plusDays(1)).toList();
+        return scan(ArchivedTable.NOTIFICATIONS, days,
+                stats -> stats.mightContain("user_id", userId), row -> userId.equals(row.get("user_id")));
+    }
+    
+    /**
+     * The archived day of a UUIDv7 id is known from its timestamp (plus the window after it);
+     * for other ids every archived day has to be searched.
+     */
+    private List<LocalDate> daysOf(UUID notificationId, int windowDays) {
+        Instant generatedAt = UuidV7Generator.timestampOf(notificationId);
+        if (generatedAt == null) {
+            return null;
+        }
+        LocalDate day = LocalDate.ofInstant(generatedAt, ZoneId.systemDefault());
+        return day.minusDays(1).datesUntil(day.plusDays(windowDays + 2)).toList();
+    }
+    
+    /**
+     * @param days the days to search, or null for all archived days
+     */
+    private List<Map<String, String>> scan(ArchivedTable table, List<LocalDate> days,
+                                           Predicate<ArchiveFileStats> fileFilter,
+                                           Predicate<Map<String, String>> rowFilter) {
+        try {
+            List<String> directories = days != null
+                    ? days.stream().map(day -> DATE_PREFIX + day).toList()
+                    : archiveStore.list(table.getTableName()).stream().filter(name -> name.startsWith(DATE_PREFIX)).toList();
+            
+            // Keyed by id: a row updated while its day was archived, or a day archived twice after an
+            // interrupted run, is in several files; files are listed oldest run first, so the last wins
+            Map<String, Map<String, String>> matches = new LinkedHashMap<>();
+            int filesRead = 0;
+            for (String directory : directories) {
+                String path = table.getTableName() + "/" + directory;
+                for (String name : archiveStore.list(path)) {
+                    if (!name.endsWith(STATS_SUFFIX)) {
+                        continue;
+                    }
+                    ArchiveFileStats stats = objectMapper.readValue(archiveStore.read(path + "/" + name),
+                            ArchiveFileStats.class);
+                    if (!fileFilter.test(stats)) {
+                        continue;
+                    }
+                    filesRead++;
+                    for (String[] values : ColumnarFile.read(archiveStore.read(path + "/" + stats.getFile()),
+                            table.getColumns())) {
+                        Map<String, String> row = toRow(table.getColumns(), values);
+                        if (rowFilter.test(row)) {
+                            matches.put(row.get("id"), row);
+                        }
+                    }
+                }
+            }
+            log.debug("Archive lookup in {} read {} files of {} days", table.getTableName(), filesRead,
+                    directories.size());
+            return new ArrayList<>(matches.values());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read archive of " + table.getTableName(), e);
+        }
+    }
+    
+    private Map<String, String> toRow(List<String> columns, String[] values) {
+        Map<String, String> row = new LinkedHashMap<>();
+        for (int column = 0; column < values.length; column++) {
+            row.put(columns.get(column), values[column]);
+        }
+        return row;
+    }
+}
+
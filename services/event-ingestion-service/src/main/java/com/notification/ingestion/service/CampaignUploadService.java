@@ -0,0 +1,256 @@
+package com.notification.ingestion.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notification.ingestion.dto.NotificationRequest;
+import com.notification.ingestion.dto.RecipientRequest;
+import com.notification.ingestion.dto.UploadJob;
+import com.notification.ingestion.dto.UploadLine;
+import com.notification.ingestion.entity.Notification;
+import com.notification.ingestion.upload.BoundedLineReader;
+import com.notification.ingestion.upload.CsvLineParser;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Ingests recipient files streamed as NDJSON or CSV. The body is read line by line while it
+ * arrives and never held in memory as a whole: each line is parsed and validated on its own
+ * (invalid lines are counted and reported, not fatal), and valid recipients are ingested in
+ * chunks of {@code chunk-size}. Reading pauses while a chunk is stored and published, so a slow
+ * database or broker slows the upload down instead of filling the heap.
+ * <p>
+ * Progress is kept in Redis after every chunk and can be followed from any instance while the
+ * upload runs. Chunks already ingested stay ingested if the upload fails or is cut off.
+ * <p>
+ * CSV files need a header row with a {@code userId} column; {@code channels} holds
+ * {@code |}-separated channels, and every other column becomes a data field.
+ * <p>
+ * Chunks count against the tenant's admission quota; over quota the upload waits instead of
+ * failing. Uploads for a tenant that is not configured are rejected before anything is read.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CampaignUploadService {
+    
+    private static final String KEY_PREFIX = "notification:upload:job:";
+    private static final int MAX_REPORTED_ERRORS = 100;
+    
+    private final NotificationBatchPublisher notificationPublisher;
+    private final ClaimCheckService claimCheckService;
+    private final TransactionTemplate transactionTemplate;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final TenantAdmissionService tenantAdmissionService;
+    
+    @Value("${notification.upload.chunk-size:1000}")
+    private int chunkSize;
+    
+    @Value("${notification.upload.max-line-bytes:1048576}")
+    private int maxLineBytes;
+    
+    @Value("${notification.upload.job-ttl-hours:24}")
+    private long jobTtlHours;
+    
+    public enum Format {
+        NDJSON, CSV
+    }
+    
+    /**
+     * Upload-wide fields of every notification; channels are the default for lines without any.
+     */
+    public record Campaign(String eventType, NotificationRequest.Priority priority, String templateId,
+                           List<RecipientRequest.Channel> channels, LocalDateTime scheduledAt, String tenantId) {
+    }
+    
+    public UploadJob upload(InputStream body, Format format, Campaign campaign) {
+        String tenant = tenantAdmissionService.requireListed(
+                campaign.tenantId() != null && !campaign.tenantId().isBlank()
+                        ? campaign.tenantId() : TenantAdmissionService.DEFAULT_TENANT);
+        Instant now = Instant.now();
+        UploadJob job = UploadJob.builder()
+                .jobId(UUID.randomUUID().toString())
+                .format(format.name())
+                .status("RUNNING")
+                .errors(new ArrayList<>())
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+        save(job);
+        log.info("Started {} upload {} for event type {}", format, job.getJobId(), campaign.eventType());
+        
+        BoundedLineReader reader = new BoundedLineReader(body, maxLineBytes);
+        List<NotificationBatchPublisher.Recipient> chunk = new ArrayList<>(chunkSize);
+        List<String> header = null;
+        try {
+            while (true) {
+                String line;
+                try {
+                    line = reader.readLine();
+                } catch (BoundedLineReader.LineTooLongException e) {
+                    job.setLines(job.getLines() + 1);
+                    reject(job, reader.getLineNumber(), e.getMessage());
+                    continue;
+                }
+                if (line == null) {
+                    break;
+                }
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (format == Format.CSV && header == null) {
+                    header = CsvLineParser.parse(line).stream().map(String::trim).toList();
+                    if (!header.contains("userId")) {
+                        throw new IllegalArgumentException("CSV header has no userId column");
+                    }
+                    continue;
+                }
+                
+                job.setLines(job.getLines() + 1);
+                try {
+                    UploadLine parsed = format == Format.CSV
+                            ? parseCsv(header, line)
+                            : objectMapper.readValue(line, UploadLine.class);
+                    chunk.add(toRecipient(parsed, campaign));
+                } catch (IllegalArgumentException | JsonProcessingException e) {
+                    reject(job, reader.getLineNumber(), e.getMessage());
+                }
+                
+                if (chunk.size() >= chunkSize) {
+                    ingest(job, chunk, tenant);
+                }
+            }
+            ingest(job, chunk, tenant);
+            job.setStatus("COMPLETED");
+        } catch (Exception e) {
+            log.error("Upload {} failed at line {}: {}", job.getJobId(), reader.getLineNumber(), e.getMessage(), e);
+            job.setStatus("FAILED");
+            job.setLastError("Line " + reader.getLineNumber() + ": " + e.getMessage());
+        }
+        save(job);
+        log.info("Upload {} {}: {} lines, {} accepted, {} rejected", job.getJobId(), job.getStatus(),
+                job.getLines(), job.getAccepted(), job.getRejected());
+        return job;
+    }
+    
+    public Optional<UploadJob> getJob(String jobId) {
+        String json = redisTemplate.opsForValue().get(KEY_PREFIX + jobId);
+        if (json == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(json, UploadJob.class));
+        } catch (JsonProcessingException e) {
+            log.error("Unreadable upload job {}: {}", jobId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+    
+    private void ingest(UploadJob job, List<NotificationBatchPublisher.Recipient> chunk, String tenant) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        // Waits for the tenant's quota, so an upload is slowed down rather than failed
+        tenantAdmissionService.admitWaiting(tenant, chunk.size(), () -> {
+            transactionTemplate.executeWithoutResult(status -> notificationPublisher.saveAndPublish(chunk));
+            return null;
+        });
+        notificationPublisher.afterCommit(chunk.stream().map(recipient -> recipient.notification().getUserId()).toList());
+        job.setAccepted(job.getAccepted() + chunk.size());
+        chunk.clear();
+        save(job);
+    }
+    
+    private UploadLine parseCsv(List<String> header, String line) {
+        List<String> fields = CsvLineParser.parse(line);
+        if (fields.size() != header.size()) {
+            throw new IllegalArgumentException("Expected " + header.size() + " fields, got " + fields.size());
+        }
+        UploadLine parsed = new UploadLine();
+        Map<String, Object> data = new LinkedHashMap<>();
+        for (int column = 0; column < header.size(); column++) {
+            String name = header.get(column);
+            String value = fields.get(column);
+            switch (name) {
+                case "userId" -> parsed.setUserId(value.trim());
+                case "channels" -> parsed.setChannels(value.isBlank() ? null : Arrays.stream(value.split("\\|"))
+                        .map(channel -> RecipientRequest.Channel.valueOf(channel.trim().toUpperCase(Locale.ROOT)))
+                        .toList());
+                default -> data.put(name, value);
+            }
+        }
+        parsed.setData(data.isEmpty() ? null : data);
+        return parsed;
+    }
+    
+    private NotificationBatchPublisher.Recipient toRecipient(UploadLine line, Campaign campaign)
+            throws JsonProcessingException {
+        RecipientRequest recipient = RecipientRequest.builder()
+                .userId(line.getUserId())
+                .channels(line.getChannels() != null ? line.getChannels() : campaign.channels())
+                .build();
+        Set<ConstraintViolation<RecipientRequest>> violations = validator.validate(recipient);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+        }
+        
+        String dataJson = line.getData() != null ? objectMapper.writeValueAsString(line.getData()) : null;
+        ClaimCheckService.ClaimCheck claimCheck = claimCheckService.offload(dataJson);
+        Notification notification = Notification.builder()
+                .userId(recipient.getUserId())
+                .eventType(campaign.eventType())
+                .priority(campaign.priority().name())
+                .status("PENDING")
+                .templateId(campaign.templateId())
+                .data(claimCheck == null ? dataJson : null)
+                .dataRef(claimCheck != null ? claimCheck.ref() : null)
+                .dataHash(claimCheck != null ? claimCheck.hash() : null)
+                .scheduledAt(campaign.scheduledAt())
+                .build();
+        return new NotificationBatchPublisher.Recipient(notification, recipient.getChannels(), line.getData());
+    }
+    
+    private void reject(UploadJob job, long lineNumber, String message) {
+        job.setRejected(job.getRejected() + 1);
+        if (job.getErrors().size() < MAX_REPORTED_ERRORS) {
+            job.getErrors().add("Line " + lineNumber + ": " + message);
+        }
+    }
+    
+    private void save(UploadJob job) {
+        job.setUpdatedAt(Instant.now());
+        try {
+            redisTemplate.opsForValue().set(KEY_PREFIX + job.getJobId(), objectMapper.writeValueAsString(job),
+                    Duration.ofHours(jobTtlHours));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize upload job " + job.getJobId(), e);
+        }
+    }
+}
+
@@ -0,0 +1,100 @@
+package com.notification.ingestion.service;
+
+import com.notification.ingestion.payload.PayloadStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+
+/**
+ * Claim check for large notification data: data above {@code threshold-bytes} is stored once
+ * in the {@link PayloadStore}, and notifications and events carry only its reference and
+ * SHA-256 hash instead of a copy per recipient and per Kafka hop. Consumers fetch the data by
+ * reference when they need it and verify it against the hash.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ClaimCheckService {
+    
+    private final PayloadStore payloadStore;
+    
+    @Value("${notification.payload.claim-check.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${notification.payload.claim-check.threshold-bytes:16384}")
+    private int thresholdBytes;
+    
+    @Value("${notification.payload.retention-days:120}")
+    private int retentionDays;
+    
+    public record ClaimCheck(String ref, String hash) {
+    }
+    
+    /**
+     * @return the claim check for the stored data, or null if the data stays inline
+     */
+    public ClaimCheck offload(String dataJson) {
+        if (!enabled || dataJson == null || dataJson.length() < thresholdBytes / 4) {
+            return null;  // At most 4 bytes per char, so certainly below the threshold
+        }
+        byte[] content = dataJson.getBytes(StandardCharsets.UTF_8);
+        if (content.length < thresholdBytes) {
+            return null;
+        }
+        String hash = sha256(content);
+        try {
+            // Content-addressed: the hash is the key
+            payloadStore.put(hash, content);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store notification data", e);
+        }
+        log.debug("Offloaded {} bytes of notification data as {}", content.length, hash);
+        return new ClaimCheck(hash, hash);
+    }
+    
+    public String resolve(String ref, String hash) {
+        try {
+            byte[] content = payloadStore.get(ref);
+            if (!sha256(content).equals(hash)) {
+                throw new IllegalStateException("Notification data " + ref + " does not match its hash");
+            }
+            return new String(content, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read notification data " + ref, e);
+        }
+    }
+    
+    /**
+     * Every use refreshes a payload, so it outlives the notifications referring to it as long
+     * as the retention is longer than theirs.
+     */
+    @Scheduled(cron = "${notification.payload.cleanup-cron:0 0 4 * * *}")
+    public void deleteUnused() {
+        try {
+            int deleted = payloadStore.deleteUnusedSince(Instant.now().minus(Duration.ofDays(retentionDays)));
+            log.info("Deleted {} notification payloads unused for {} days", deleted, retentionDays);
+        } catch (IOException e) {
+            log.error("Could not delete unused notification payloads: {}", e.getMessage(), e);
+        }
+    }
+    
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
+
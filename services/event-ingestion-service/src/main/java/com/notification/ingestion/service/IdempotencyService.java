@@ -0,0 +1,196 @@
+package com.notification.ingestion.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notification.ingestion.dto.NotificationResponse;
+import com.notification.ingestion.exception.IdempotencyConflictException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Client idempotency keys for ingestion, scoped to the tenant: tenants choose their keys
+ * independently, so the same key from two tenants names two requests. The response to the first
+ * request with a key is remembered for {@code window-hours} in Redis
+ * ({@code notification:idempotency:<tenant>:<key>}) and in a local LRU, and a retry with the same
+ * key gets that response back without touching the database or Kafka.
+ * <p>
+ * The first request claims its key in Redis before ingesting; a retry that arrives while it is
+ * still running, or that reuses the key for a different request, is rejected with a conflict.
+ * A failed request releases its key, so it can be retried. The claim outlives the longest wait for
+ * an admission slot plus {@code in-progress-seconds} of ingesting, so it cannot expire under a
+ * request that is still queued. Without Redis, requests are ingested without deduplication.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyService {
+    
+    private static final String KEY_PREFIX = "notification:idempotency:";
+    private static final String IN_PROGRESS = "IN_PROGRESS";
+    private static final int MAX_KEY_LENGTH = 255;
+    
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${notification.idempotency.window-hours:24}")
+    private long windowHours;
+    
+    @Value("${notification.idempotency.in-progress-seconds:60}")
+    private long inProgressSeconds;
+    
+    @Value("${notification.admission.queue-timeout-ms:2000}")
+    private long admissionQueueTimeoutMs;
+    
+    @Value("${notification.idempotency.cache.max-entries:100000}")
+    private int cacheMaxEntries;
+    
+    private final Map<String, StoredResponse> recent = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, StoredResponse> eldest) {
+            return size() > cacheMaxEntries;
+        }
+    };
+    
+    /**
+     * What is remembered per key: a fingerprint of the request and the response to it.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StoredResponse {
+        private String fingerprint;
+        private NotificationResponse response;
+        private long expiresAt;
+    }
+    
+    public record Result(NotificationResponse response, boolean replayed) {
+    }
+    
+    /**
+     * Runs {@code ingest} unless a request with the key was already ingested, in which case its
+     * response is returned instead.
+     *
+     * @param tenant the tenant the request is ingested for, whose keys it is looked up among
+     * @param key the client's idempotency key, or null to always ingest
+     * @param request the request, to detect a key reused for a different request
+     */
+    public Result execute(String tenant, String key, Object request, Supplier<NotificationResponse> ingest) {
+        if (key == null || key.isBlank()) {
+            return new Result(ingest.get(), false);
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency key longer than " + MAX_KEY_LENGTH + " characters");
+        }
+        String fingerprint = fingerprint(request);
+        long now = System.currentTimeMillis();
+        String scopedKey = tenant + ":" + key;
+        
+        synchronized (recent) {
+            StoredResponse cached = recent.get(scopedKey);
+            if (cached != null && cached.getExpiresAt() > now) {
+                return replay(key, cached, fingerprint);
+            }
+        }
+        
+        String redisKey = KEY_PREFIX + scopedKey;
+        Boolean claimed;
+        try {
+            claimed = redisTemplate.opsForValue().setIfAbsent(redisKey, IN_PROGRESS,
+                    Duration.ofSeconds(inProgressSeconds).plusMillis(admissionQueueTimeoutMs));
+        } catch (Exception e) {
+            log.warn("Idempotency check unavailable, ingesting request with key {}: {}", key, e.getMessage());
+            return new Result(ingest.get(), false);
+        }
+        
+        if (!Boolean.TRUE.equals(claimed)) {
+            String stored;
+            try {
+                stored = redisTemplate.opsForValue().get(redisKey);
+            } catch (Exception e) {
+                // Another request holds the key; ingesting as well could duplicate it
+                log.warn("Could not read idempotency record for key {}: {}", key, e.getMessage());
+                throw new IdempotencyConflictException("Request with idempotency key " + key + " could not be checked");
+            }
+            if (stored == null) {
+                // Released or expired in between; the client can simply retry
+                throw new IdempotencyConflictException("Request with idempotency key " + key + " is being retried");
+            }
+            if (IN_PROGRESS.equals(stored)) {
+                throw new IdempotencyConflictException("Request with idempotency key " + key + " is still in progress");
+            }
+            StoredResponse response = read(stored);
+            remember(scopedKey, response);
+            return replay(key, response, fingerprint);
+        }
+        
+        NotificationResponse response;
+        try {
+            response = ingest.get();
+        } catch (RuntimeException e) {
+            try {
+                redisTemplate.delete(redisKey);
+            } catch (Exception releaseFailure) {
+                // The claim expires by itself; until then retries get a conflict
+                log.warn("Could not release idempotency key {}: {}", key, releaseFailure.getMessage());
+            }
+            throw e;
+        }
+        
+        StoredResponse stored = new StoredResponse(fingerprint, response, now + Duration.ofHours(windowHours).toMillis());
+        try {
+            redisTemplate.opsForValue().set(redisKey, objectMapper.writeValueAsString(stored), Duration.ofHours(windowHours));
+        } catch (Exception e) {
+            // Ingested; only retries on other instances lose the protection
+            log.warn("Could not store response for idempotency key {}: {}", key, e.getMessage());
+        }
+        remember(scopedKey, stored);
+        return new Result(response, false);
+    }
+    
+    private Result replay(String key, StoredResponse stored, String fingerprint) {
+        if (!stored.getFingerprint().equals(fingerprint)) {
+            throw new IdempotencyConflictException("Idempotency key " + key + " was used for a different request");
+        }
+        log.debug("Replaying response for idempotency key {}", key);
+        return new Result(stored.getResponse(), true);
+    }
+    
+    private void remember(String scopedKey, StoredResponse stored) {
+        synchronized (recent) {
+            recent.put(scopedKey, stored);
+        }
+    }
+    
+    private StoredResponse read(String json) {
+        try {
+            return objectMapper.readValue(json, StoredResponse.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable idempotency record", e);
+        }
+    }
+    
+    private String fingerprint(Object request) {
+        try {
+            byte[] content = objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint request", e);
+        }
+    }
+}
+
@@ -0,0 +1,218 @@
+package com.notification.ingestion.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notification.ingestion.archive.ArchiveFileStats;
+import com.notification.ingestion.archive.ArchiveStore;
+import com.notification.ingestion.archive.ArchivedTable;
+import com.notification.ingestion.archive.ColumnarFile;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Moves rows older than {@code after-days} out of Postgres into compressed columnar files,
+ * one directory per table and day ({@code <table>/date=YYYY-MM-DD/}). A day is streamed with a
+ * server-side cursor in lookup-key order, written in files of {@code rows-per-file} rows with
+ * min/max stats, and only then deleted from the table in small batches.
+ * <p>
+ * Only the row versions that were archived are deleted, by the ctid read with them: a row
+ * updated or inserted while the day was being written has a new ctid, stays in the table and is
+ * archived again, with its new values, by the next run. If a run dies between writing and
+ * deleting, the next run likewise archives the remaining rows of the day again into new files;
+ * readers keep the most recently archived copy of each id.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationArchiver {
+    
+    private static final String LOCK_KEY = "notification:archive:lock:";
+    
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ArchiveStore archiveStore;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${notification.archive.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${notification.archive.after-days:30}")
+    private int afterDays;
+    
+    @Value("${notification.archive.lookback-days:90}")
+    private int lookbackDays;
+    
+    @Value("${notification.archive.rows-per-file:20000}")
+    private int rowsPerFile;
+    
+    @Value("${notification.archive.delete-batch-size:5000}")
+    private int deleteBatchSize;
+    
+    @Value("${notification.archive.lock-hours:6}")
+    private long lockHours;
+    
+    private JdbcTemplate streamingJdbcTemplate;
+    
+    @PostConstruct
+    public void init() {
+        // Inside a transaction the driver then reads through a cursor, rows-per-file at a time
+        streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        streamingJdbcTemplate.setFetchSize(rowsPerFile);
+    }
+    
+    @Scheduled(cron = "${notification.archive.cron:0 45 2 * * *}")
+    public void archive() {
+        if (!enabled) {
+            return;
+        }
+        LocalDate cutoff = LocalDate.now().minusDays(afterDays);
+        for (ArchivedTable table : ArchivedTable.values()) {
+            String lock = LOCK_KEY + table.getTableName();
+            if (!Boolean.TRUE.equals(redisTemplate.opsForValue()
+                    .setIfAbsent(lock, "1", Duration.ofHours(lockHours)))) {
+                log.debug("Archival of {} is running elsewhere", table.getTableName());
+                continue;
+            }
+            try {
+                for (LocalDate day = cutoff.minusDays(lookbackDays); day.isBefore(cutoff); day = day.plusDays(1)) {
+                    if (hasRows(table, day)) {
+                        archiveDay(table, day);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Archival of {} failed: {}", table.getTableName(), e.getMessage(), e);
+            } finally {
+                redisTemplate.delete(lock);
+            }
+        }
+    }
+    
+    private boolean hasRows(ArchivedTable table, LocalDate day) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + table.getTableName()
+                + " WHERE created_at >= ? AND created_at < ?)", Boolean.class, start(day), end(day)));
+    }
+    
+    private void archiveDay(ArchivedTable table, LocalDate day) {
+        String directory = table.getTableName() + "/date=" + day;
+        String run = Long.toString(System.currentTimeMillis());
+        List<String> columns = table.getColumns();
+        String select = "SELECT " + columns.stream().map(column -> column + "::text").collect(Collectors.joining(", "))
+                + ", ctid::text FROM " + table.getTableName() + " WHERE created_at >= ? AND created_at < ? ORDER BY "
+                + table.getOrderBy();
+        
+        List<String[]> buffer = new ArrayList<>(rowsPerFile);
+        int[] files = {0};
+        long[] archived = {0};
+        LongStream.Builder ctids = LongStream.builder();
+        transactionTemplate.executeWithoutResult(status -> streamingJdbcTemplate.query(select, rs -> {
+            String[] row = new String[columns.size()];
+            for (int column = 0; column < row.length; column++) {
+                row[column] = rs.getString(column + 1);
+            }
+            buffer.add(row);
+            ctids.add(packCtid(rs.getString(columns.size() + 1)));
+            if (buffer.size() >= rowsPerFile) {
+                writeFile(table, directory, run + "-" + files[0]++, buffer);
+                archived[0] += buffer.size();
+                buffer.clear();
+            }
+        }, start(day), end(day)));
+        if (!buffer.isEmpty()) {
+            writeFile(table, directory, run + "-" + files[0]++, buffer);
+            archived[0] += buffer.size();
+        }
+        
+        // Every archived row is in a complete file now. Batches keep row locks and WAL bursts
+        // small; ctid is unique within the single partition holding the day
+        long[] archivedCtids = ctids.build().toArray();
+        long deleted = 0;
+        for (int from = 0; from < archivedCtids.length; from += deleteBatchSize) {
+            String[] batch = new String[Math.min(deleteBatchSize, archivedCtids.length - from)];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = unpackCtid(archivedCtids[from + i]);
+            }
+            deleted += jdbcTemplate.update("DELETE FROM " + table.getTableName()
+                    + " WHERE created_at >= ? AND created_at < ? AND ctid = ANY(?::tid[])",
+                    start(day), end(day), batch);
+        }
+        
+        log.info("Archived {} rows of {} for {} into {} files, deleted {}",
+                archived[0], table.getTableName(), day, files[0], deleted);
+    }
+    
+    private void writeFile(ArchivedTable table, String directory, String name, List<String[]> rows) {
+        List<String> columns = table.getColumns();
+        Map<String, String> min = new HashMap<>();
+        Map<String, String> max = new HashMap<>();
+        for (String column : table.getStatsColumns()) {
+            int index = columns.indexOf(column);
+            for (String[] row : rows) {
+                String value = row[index];
+                if (value != null) {
+                    min.merge(column, value, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+                    max.merge(column, value, (a, b) -> a.compareTo(b) >= 0 ? a : b);
+                }
+            }
+        }
+        
+        String file = "part-" + name + ColumnarFile.EXTENSION;
+        ArchiveFileStats stats = ArchiveFileStats.builder()
+                .file(file)
+                .rowCount(rows.size())
+                .min(min)
+                .max(max)
+                .build();
+        try {
+            // Stats last: they mark the file complete
+            archiveStore.write(directory + "/" + file, ColumnarFile.write(columns, rows));
+            archiveStore.write(directory + "/" + file + ArchiveQueryService.STATS_SUFFIX,
+                    objectMapper.writeValueAsBytes(stats));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write archive file " + directory + "/" + file, e);
+        }
+    }
+    
+    /**
+     * Packs a ctid "(block,offset)" into a long, 8 bytes per archived row instead of a string.
+     */
+    private static long packCtid(String ctid) {
+        int comma = ctid.indexOf(',');
+        long block = Long.parseLong(ctid.substring(1, comma));
+        long offset = Long.parseLong(ctid.substring(comma + 1, ctid.length() - 1));
+        return block << 16 | offset;
+    }
+    
+    private static String unpackCtid(long ctid) {
+        return "(" + (ctid >>> 16) + "," + (ctid & 0xFFFF) + ")";
+    }
+    
+    private static Timestamp start(LocalDate day) {
+        return Timestamp.valueOf(day.atStartOfDay());
+    }
+    
+    private static Timestamp end(LocalDate day) {
+        return Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+    }
+}
+
@@ -0,0 +1,69 @@
+package com.notification.ingestion.service;
+
+import com.notification.ingestion.entity.Notification;
+import com.notification.ingestion.repository.NotificationRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores and publishes notifications a chunk at a time for the bulk ingestion paths (segment
+ * fan-out, uploads). Waiting for the broker's acknowledgements of a chunk before taking the
+ * next one bounds how far producers can run ahead of Kafka.
+ */
+@Service
+@RequiredArgsConstructor
+public class NotificationBatchPublisher {
+    
+    private final NotificationRepository notificationRepository;
+    private final NotificationIngestionService notificationIngestionService;
+    private final UnreadCounterService unreadCounterService;
+    private final NotificationQueryService notificationQueryService;
+    
+    @Value("${notification.bulk.publish-timeout-seconds:30}")
+    private long publishTimeoutSeconds;
+    
+    /**
+     * A notification with the channels and data its event is published with.
+     */
+    public record Recipient(Notification notification, List<?> channels, Map<String, ?> data) {
+    }
+    
+    /**
+     * Inserts the notifications and publishes their events, returning once the broker has
+     * acknowledged all of them. Meant to run in the caller's transaction, so a failed chunk
+     * leaves no rows behind (its events may have been published).
+     */
+    public void saveAndPublish(List<Recipient> chunk) {
+        // Flushed, so ids and creation times are assigned before the events are built
+        notificationRepository.saveAllAndFlush(chunk.stream().map(Recipient::notification).toList());
+        
+        long acceptedAt = System.currentTimeMillis();
+        CompletableFuture<?>[] sent = chunk.stream()
+                .map(recipient -> notificationIngestionService.publishToKafka(
+                        recipient.notification(), recipient.channels(), recipient.data(), acceptedAt))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(sent).get(publishTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing notification events", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not publish notification events: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Updates the recipients' unread counters and cached inboxes; call after the chunk committed.
+     */
+    public void afterCommit(List<String> userIds) {
+        unreadCounterService.incrementAll(userIds);
+        userIds.forEach(notificationQueryService::evictInbox);
+    }
+}
+
@@ -1,23 +1,31 @@
 package com.notification.ingestion.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.notification.ingestion.dto.NotificationRequest;
 import com.notification.ingestion.dto.NotificationResponse;
 import com.notification.ingestion.dto.RecipientRequest;
 import com.notification.ingestion.entity.Notification;
 import com.notification.ingestion.exception.NotificationProcessingException;
+import com.notification.ingestion.metrics.LatencyMetrics;
+import com.notification.ingestion.metrics.PipelineTimestamps;
 import com.notification.ingestion.repository.NotificationRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
@@ -27,6 +35,12 @@ public class NotificationIngestionService {
     private final NotificationRepository notificationRepository;
     private final KafkaTemplate<String, Object> kafkaTemplate;
     private final ObjectMapper objectMapper;
+    private final PartitionKeyResolver partitionKeyResolver;
+    private final UnreadCounterService unreadCounterService;
+    private final NotificationQueryService notificationQueryService;
+    private final LatencyMetrics latencyMetrics;
+    private final ClaimCheckService claimCheckService;
+    private final SegmentFanoutService segmentFanoutService;
     
     @Value("${notification.kafka.topic.events}")
     private String eventsTopic;
@@ -34,16 +48,39 @@ public class NotificationIngestionService {
     @Transactional
     public NotificationResponse ingestNotification(NotificationRequest request) {
         log.info("Ingesting notification for event type: {}", request.getEventType());
+        long acceptedAt = System.currentTimeMillis();
+        long acceptedNanos = System.nanoTime();
         
         try {
+            // Serialized (and offloaded if large) once, however many recipients
+            String dataJson = request.getData() != null ? objectMapper.writeValueAsString(request.getData()) : null;
+            ClaimCheckService.ClaimCheck claimCheck = claimCheckService.offload(dataJson);
+            
+            if (request.getSegmentId() != null) {
+                // Expanded to the segment's users in the background
+                UUID jobId = segmentFanoutService.submit(request, dataJson, claimCheck);
+                return NotificationResponse.builder()
+                        .fanoutJobId(jobId)
+                        .status("ACCEPTED")
+                        .createdAt(LocalDateTime.now())
+                        .message("Notification request accepted for segment " + request.getSegmentId())
+                        .build();
+            }
+            
             // Process each recipient
+            List<String> userIds = new ArrayList<>(request.getRecipients().size());
             for (RecipientRequest recipient : request.getRecipients()) {
                 // Save to database
-                Notification notification = saveNotification(request, recipient);
+                Notification notification = saveNotification(request, recipient, dataJson, claimCheck);
+                userIds.add(recipient.getUserId());
                 
                 // Publish to Kafka
-                publishToKafka(notification, recipient);
+                publishToKafka(notification, recipient.getChannels(), request.getData(), acceptedAt);
             }
+            afterCommit(userIds);
+            
+            latencyMetrics.recordStage(LatencyMetrics.STAGE_INGEST, request.getPriority().name(),
+                    LatencyMetrics.ALL_CHANNELS, System.nanoTime() - acceptedNanos);
             
             return NotificationResponse.builder()
                     .status("ACCEPTED")
@@ -51,47 +88,88 @@ public class NotificationIngestionService {
                     .message("Notification request accepted and queued for processing")
                     .build();
             
+        } catch (IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error ingesting notification", e);
             throw new NotificationProcessingException("Failed to ingest notification: " + e.getMessage());
         }
     }
     
-    private Notification saveNotification(NotificationRequest request, RecipientRequest recipient) {
-        try {
-            String dataJson = request.getData() != null ? 
-                    objectMapper.writeValueAsString(request.getData()) : null;
-            
-            Notification notification = Notification.builder()
-                    .userId(recipient.getUserId())
-                    .eventType(request.getEventType())
-                    .priority(request.getPriority().name())
-                    .status("PENDING")
-                    .templateId(request.getTemplateId())
-                    .data(dataJson)
-                    .scheduledAt(request.getScheduledAt())
-                    .build();
-            
-            return notificationRepository.save(notification);
-        } catch (JsonProcessingException e) {
-            throw new NotificationProcessingException("Failed to serialize notification data", e);
+    /**
+     * Updates the recipients' unread counters and cached inboxes once the rows are committed: a
+     * rollback then leaves the counters alone, and a counter rebuilt from the table meanwhile
+     * cannot count the new rows twice.
+     */
+    private void afterCommit(List<String> userIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            updateRecipients(userIds);
+            return;
         }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                updateRecipients(userIds);
+            }
+        });
+    }
+    
+    private void updateRecipients(List<String> userIds) {
+        unreadCounterService.incrementAll(userIds);
+        userIds.forEach(notificationQueryService::evictInbox);
+    }
+    
+    private Notification saveNotification(NotificationRequest request, RecipientRequest recipient,
+                                          String dataJson, ClaimCheckService.ClaimCheck claimCheck) {
+        Notification notification = Notification.builder()
+                .userId(recipient.getUserId())
+                .eventType(request.getEventType())
+                .priority(request.getPriority().name())
+                .status("PENDING")
+                .templateId(request.getTemplateId())
+                .data(claimCheck == null ? dataJson : null)
+                .dataRef(claimCheck != null ? claimCheck.ref() : null)
+                .dataHash(claimCheck != null ? claimCheck.hash() : null)
+                .scheduledAt(request.getScheduledAt())
+                .build();
+        
+        return notificationRepository.save(notification);
     }
     
-    private void publishToKafka(Notification notification, RecipientRequest recipient) {
+    /**
+     * @return completes when the broker acknowledged the event
+     */
+    CompletableFuture<?> publishToKafka(Notification notification, List<?> channels,
+                                        Map<String, ?> data, long acceptedAt) {
         Map<String, Object> event = new HashMap<>();
         event.put("notificationId", notification.getId().toString());
         event.put("userId", notification.getUserId());
         event.put("eventType", notification.getEventType());
         event.put("priority", notification.getPriority());
-        event.put("channels", recipient.getChannels());
+        event.put("channels", channels);
         event.put("templateId", notification.getTemplateId());
         event.put("data", notification.getData());
+        event.put("dataRef", notification.getDataRef());
+        event.put("dataHash", notification.getDataHash());
         event.put("scheduledAt", notification.getScheduledAt());
         event.put("createdAt", notification.getCreatedAt());
         
-        kafkaTemplate.send(eventsTopic, notification.getId().toString(), event);
-        log.info("Published notification event to Kafka: {}", notification.getId());
+        String notificationId = notification.getId().toString();
+        String key = partitionKeyResolver.resolve(notificationId, notification.getUserId(), data);
+        ProducerRecord<String, Object> record = new ProducerRecord<>(eventsTopic, key, event);
+        PipelineTimestamps.write(record.headers(), PipelineTimestamps.INGEST_ACCEPT, acceptedAt);
+        
+        // Time from hand-off to the broker acknowledging the append
+        String priority = notification.getPriority();
+        long sendNanos = System.nanoTime();
+        CompletableFuture<?> sent = kafkaTemplate.send(record).whenComplete((result, ex) -> {
+            if (ex == null) {
+                latencyMetrics.recordStage(LatencyMetrics.STAGE_PUBLISH, priority,
+                        LatencyMetrics.ALL_CHANNELS, System.nanoTime() - sendNanos);
+            }
+        });
+        log.debug("Published notification event to Kafka: {}", notification.getId());
+        return sent;
     }
 }
 
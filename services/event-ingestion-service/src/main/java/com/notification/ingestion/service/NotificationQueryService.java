@@ -0,0 +1,220 @@
+package com.notification.ingestion.service;
+
+import com.notification.ingestion.dto.NotificationPage;
+import com.notification.ingestion.dto.NotificationView;
+import com.notification.ingestion.entity.UuidV7Generator;
+import com.notification.ingestion.exception.NotificationNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Read side of the notifications table: single notifications, a user's inbox and marking
+ * notifications read.
+ * <p>
+ * The inbox is paged with a keyset cursor over {@code (created_at, id)}, so every page is a
+ * short range scan of {@code idx_notifications_user_created} however deep the history goes,
+ * instead of an OFFSET that reads and discards all earlier rows. First pages, which hot users
+ * poll, are kept in a small local cache for a couple of seconds.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationQueryService {
+    
+    private static final String COLUMNS =
+            "id, user_id, event_type, priority, status, template_id, data::text AS data, "
+                    + "data_ref, data_hash, created_at, updated_at, scheduled_at, read_at";
+    
+    // How far created_at may be from the time embedded in a UUIDv7 id
+    private static final Duration ID_TIME_TOLERANCE = Duration.ofMinutes(1);
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final UnreadCounterService unreadCounterService;
+    private final ClaimCheckService claimCheckService;
+    
+    @Value("${notification.query.default-page-size:20}")
+    private int defaultPageSize;
+    
+    @Value("${notification.query.max-page-size:100}")
+    private int maxPageSize;
+    
+    @Value("${notification.query.first-page-cache.max-entries:10000}")
+    private int cacheMaxEntries;
+    
+    @Value("${notification.query.first-page-cache.ttl-ms:2000}")
+    private long cacheTtlMs;
+    
+    private final Map<String, CachedPage> firstPages = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedPage> eldest) {
+            return size() > cacheMaxEntries;
+        }
+    };
+    
+    private record CachedPage(NotificationPage page, int limit, long expiresAt) {
+    }
+    
+    public NotificationView getNotification(UUID notificationId) {
+        List<Object> args = new ArrayList<>();
+        String where = byId(notificationId, args);
+        List<NotificationView> result = jdbcTemplate.query(
+                "SELECT " + COLUMNS + " FROM notifications WHERE " + where, this::toView, args.toArray());
+        if (result.isEmpty()) {
+            throw new NotificationNotFoundException("Notification not found: " + notificationId);
+        }
+        return result.get(0);
+    }
+    
+    /**
+     * @param cursor the {@code nextCursor} of the previous page, or null for the newest page
+     */
+    public NotificationPage getInbox(String userId, String cursor, Integer pageSize) {
+        int limit = pageSize == null ? defaultPageSize : Math.max(1, Math.min(pageSize, maxPageSize));
+        long now = System.currentTimeMillis();
+        
+        if (cursor == null) {
+            synchronized (firstPages) {
+                CachedPage cached = firstPages.get(userId);
+                if (cached != null && cached.limit() == limit && cached.expiresAt() > now) {
+                    return cached.page();
+                }
+            }
+        }
+        
+        // One extra row tells whether there is a next page
+        List<NotificationView> rows;
+        if (cursor == null) {
+            rows = jdbcTemplate.query("SELECT " + COLUMNS + " FROM notifications WHERE user_id = ? "
+                    + "ORDER BY created_at DESC, id DESC LIMIT ?", this::toView, userId, limit + 1);
+        } else {
+            Cursor position = Cursor.decode(cursor);
+            rows = jdbcTemplate.query("SELECT " + COLUMNS + " FROM notifications WHERE user_id = ? "
+                    + "AND (created_at, id) < (?, ?) ORDER BY created_at DESC, id DESC LIMIT ?",
+                    this::toView, userId, Timestamp.valueOf(position.createdAt()), position.id(), limit + 1);
+        }
+        
+        String nextCursor = null;
+        if (rows.size() > limit) {
+            rows = rows.subList(0, limit);
+            NotificationView last = rows.get(limit - 1);
+            nextCursor = new Cursor(last.getCreatedAt(), last.getNotificationId()).encode();
+        }
+        NotificationPage page = NotificationPage.builder()
+                .notifications(List.copyOf(rows))
+                .nextCursor(nextCursor)
+                .build();
+        
+        if (cursor == null) {
+            synchronized (firstPages) {
+                firstPages.put(userId, new CachedPage(page, limit, now + cacheTtlMs));
+            }
+        }
+        return page;
+    }
+    
+    public void markAsRead(UUID notificationId) {
+        // Only the first read changes the row and the unread count
+        List<Object> args = new ArrayList<>();
+        String where = byId(notificationId, args);
+        List<String> users = jdbcTemplate.queryForList("UPDATE notifications SET read_at = now(), updated_at = now() "
+                + "WHERE " + where + " AND read_at IS NULL RETURNING user_id", String.class, args.toArray());
+        if (users.isEmpty()) {
+            getNotification(notificationId);  // Throws if it does not exist; already read otherwise
+            return;
+        }
+        
+        String userId = users.get(0);
+        unreadCounterService.decrement(userId);
+        evictInbox(userId);
+        log.debug("Marked notification {} as read for user {}", notificationId, userId);
+    }
+    
+    /**
+     * Drops this instance's cached first page of the user; other instances catch up within
+     * the cache TTL.
+     */
+    public void evictInbox(String userId) {
+        synchronized (firstPages) {
+            firstPages.remove(userId);
+        }
+    }
+    
+    /**
+     * Condition matching one notification. For UUIDv7 ids the creation time embedded in the id
+     * bounds created_at, so only the partition holding the row is searched instead of all.
+     */
+    private String byId(UUID notificationId, List<Object> args) {
+        args.add(notificationId);
+        Instant generatedAt = UuidV7Generator.timestampOf(notificationId);
+        if (generatedAt == null) {
+            return "id = ?";
+        }
+        // created_at is stored in JVM local time
+        LocalDateTime createdAt = LocalDateTime.ofInstant(generatedAt, ZoneId.systemDefault());
+        args.add(Timestamp.valueOf(createdAt.minus(ID_TIME_TOLERANCE)));
+        args.add(Timestamp.valueOf(createdAt.plus(ID_TIME_TOLERANCE)));
+        return "id = ? AND created_at BETWEEN ? AND ?";
+    }
+    
+    private NotificationView toView(ResultSet rs, int rowNum) throws SQLException {
+        String dataRef = rs.getString("data_ref");
+        return NotificationView.builder()
+                .notificationId(rs.getObject("id", UUID.class))
+                .userId(rs.getString("user_id"))
+                .eventType(rs.getString("event_type"))
+                .priority(rs.getString("priority"))
+                .status(rs.getString("status"))
+                .templateId(rs.getString("template_id"))
+                .data(dataRef != null ? claimCheckService.resolve(dataRef, rs.getString("data_hash")) : rs.getString("data"))
+                .createdAt(toLocalDateTime(rs.getTimestamp("created_at")))
+                .updatedAt(toLocalDateTime(rs.getTimestamp("updated_at")))
+                .scheduledAt(toLocalDateTime(rs.getTimestamp("scheduled_at")))
+                .readAt(toLocalDateTime(rs.getTimestamp("read_at")))
+                .build();
+    }
+    
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+    
+    /**
+     * Position after the last notification of a page; opaque to clients.
+     */
+    private record Cursor(LocalDateTime createdAt, UUID id) {
+        
+        String encode() {
+            String value = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        static Cursor decode(String cursor) {
+            try {
+                String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = value.indexOf('|');
+                return new Cursor(LocalDateTime.parse(value.substring(0, separator)),
+                        UUID.fromString(value.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+    }
+}
+
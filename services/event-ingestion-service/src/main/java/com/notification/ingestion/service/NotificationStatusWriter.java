@@ -0,0 +1,139 @@
+package com.notification.ingestion.service;
+
+import com.notification.ingestion.dto.StatusUpdate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes notification status transitions back to the notifications table. Each batch is
+ * coalesced to the most advanced status per notification and applied with a few
+ * {@code UPDATE ... FROM (VALUES ...)} statements, so the write cost is bounded by the number
+ * of notifications per window rather than the number of transitions.
+ * <p>
+ * Statuses only move forward ({@code PENDING < PROCESSED < FAILED < FILTERED, EXPIRED, DELIVERED,
+ * RATE_LIMITED, SKIPPED}), so a transition that arrives late from another stage never overwrites a
+ * later one; a replayed notification that failed before can still complete. The last five are
+ * final: whichever is written first stays, so an expired notification is never reported as
+ * delivered or vice versa.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationStatusWriter {
+    
+    private static final Map<String, Integer> STATUS_RANK = Map.of(
+            "PENDING", 0,
+            "PROCESSED", 1,
+            "FAILED", 2,
+            "FILTERED", 3,
+            "EXPIRED", 3,
+            "DELIVERED", 3,
+            "RATE_LIMITED", 3,
+            "SKIPPED", 3);
+    private static final int FINAL_RANK = 3;
+    
+    // created_at only narrows the lookup to the notification's partition; it is matched within
+    // a second to tolerate the precision lost when it was stored
+    private static final String UPDATE_SQL = """
+            UPDATE notifications AS n
+            SET status = v.status, updated_at = v.updated_at
+            FROM (VALUES %s) AS v(id, status, rank, created_at, updated_at)
+            WHERE n.id = v.id
+              AND (v.created_at IS NULL
+                   OR n.created_at BETWEEN v.created_at - INTERVAL '1 second' AND v.created_at + INTERVAL '1 second')
+              AND n.status <> v.status
+              AND CASE n.status WHEN 'PENDING' THEN 0 WHEN 'PROCESSED' THEN 1 WHEN 'FAILED' THEN 2 ELSE 3 END < 3
+              AND CASE n.status WHEN 'PENDING' THEN 0 WHEN 'PROCESSED' THEN 1 WHEN 'FAILED' THEN 2 ELSE 3 END <= v.rank
+            """;
+    private static final String VALUES_ROW = "(?::uuid, ?, ?, ?::timestamp, ?::timestamp)";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${notification.status-writer.max-rows-per-statement:1000}")
+    private int maxRowsPerStatement;
+    
+    private Counter received;
+    private Counter written;
+    
+    @PostConstruct
+    public void init() {
+        received = Counter.builder("notification.status.updates")
+                .description("Status transitions received from the status topic")
+                .tag("result", "received")
+                .register(meterRegistry);
+        written = Counter.builder("notification.status.updates")
+                .description("Notification rows whose status was updated")
+                .tag("result", "written")
+                .register(meterRegistry);
+    }
+    
+    public void write(List<StatusUpdate> updates) {
+        received.increment(updates.size());
+        
+        Map<String, StatusUpdate> latest = new LinkedHashMap<>();
+        for (StatusUpdate update : updates) {
+            // A malformed update would otherwise fail its whole batch on every retry
+            if (update.getStatus() == null || !STATUS_RANK.containsKey(update.getStatus())
+                    || !isUuid(update.getNotificationId())) {
+                log.warn("Ignoring invalid status update {} for notification {}",
+                        update.getStatus(), update.getNotificationId());
+                continue;
+            }
+            latest.merge(update.getNotificationId(), update,
+                    (current, next) -> rank(current) < FINAL_RANK && rank(next) >= rank(current) ? next : current);
+        }
+        
+        List<StatusUpdate> rows = new ArrayList<>(latest.values());
+        int updated = 0;
+        for (int from = 0; from < rows.size(); from += maxRowsPerStatement) {
+            updated += update(rows.subList(from, Math.min(from + maxRowsPerStatement, rows.size())));
+        }
+        written.increment(updated);
+        
+        log.debug("Applied {} status transitions as {} notifications, {} rows updated",
+                updates.size(), rows.size(), updated);
+    }
+    
+    private int update(List<StatusUpdate> rows) {
+        List<String> placeholders = new ArrayList<>(rows.size());
+        List<Object> args = new ArrayList<>(rows.size() * 5);
+        for (StatusUpdate row : rows) {
+            placeholders.add(VALUES_ROW);
+            args.add(UUID.fromString(row.getNotificationId()));
+            args.add(row.getStatus());
+            args.add(rank(row));
+            args.add(row.getCreatedAt() != null ? Timestamp.valueOf(row.getCreatedAt()) : null);
+            args.add(Timestamp.valueOf(row.getUpdatedAt() != null ? row.getUpdatedAt() : LocalDateTime.now()));
+        }
+        return jdbcTemplate.update(String.format(UPDATE_SQL, String.join(", ", placeholders)), args.toArray());
+    }
+    
+    private boolean isUuid(String notificationId) {
+        try {
+            UUID.fromString(notificationId);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+    
+    private int rank(StatusUpdate update) {
+        return STATUS_RANK.get(update.getStatus());
+    }
+}
+
@@ -0,0 +1,120 @@
+package com.notification.ingestion.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chooses the record key, and with it the partition, for notification records. Keying by user
+ * (or tenant) keeps all of a user's notifications on one partition and therefore one consumer,
+ * in order, so per-user state can be cached in-process downstream. Configured hot keys are
+ * spread over {@code hot-key-splits} sub-keys; those users trade ordering for throughput.
+ * <p>
+ * Must be configured the same way in every service that produces notification records. The
+ * processing service has an identical copy (see Shared Code in docs/architecture.md); change both
+ * together.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PartitionKeyResolver {
+    
+    private static final TypeReference<Map<String, Object>> DATA_TYPE = new TypeReference<>() {};
+    
+    private final ObjectMapper objectMapper;
+    
+    @Value("${notification.kafka.partitioning.strategy:user}")
+    private String strategy;  // notification, user, tenant, custom
+    
+    @Value("${notification.kafka.partitioning.tenant-field:tenantId}")
+    private String tenantField;
+    
+    @Value("${notification.kafka.partitioning.tenant-delimiter::}")
+    private String tenantDelimiter;
+    
+    @Value("${notification.kafka.partitioning.custom-field:}")
+    private String customField;
+    
+    @Value("${notification.kafka.partitioning.hot-keys:}")
+    private List<String> hotKeyList;
+    
+    @Value("${notification.kafka.partitioning.hot-key-splits:8}")
+    private int hotKeySplits;
+    
+    private Set<String> hotKeys;
+    
+    @PostConstruct
+    public void init() {
+        hotKeys = new HashSet<>(hotKeyList);
+        hotKeys.remove("");
+        log.info("Partitioning notification records by {} with {} hot keys split {} ways",
+                strategy, hotKeys.size(), hotKeySplits);
+    }
+    
+    /**
+     * @param dataJson the event's data as JSON; only parsed when the strategy reads a field from it
+     */
+    public String resolve(String notificationId, String userId, String dataJson) {
+        Map<String, ?> data = null;
+        if (dataJson != null && (strategy.equals("tenant") || strategy.equals("custom"))) {
+            try {
+                data = objectMapper.readValue(dataJson, DATA_TYPE);
+            } catch (Exception e) {
+                log.debug("Could not read partitioning field from data of notification {}: {}",
+                        notificationId, e.getMessage());
+            }
+        }
+        return resolve(notificationId, userId, data);
+    }
+    
+    public String resolve(String notificationId, String userId, Map<String, ?> data) {
+        String key = switch (strategy) {
+            case "notification" -> notificationId;
+            case "tenant" -> tenantOf(userId, data);
+            case "custom" -> customField.isEmpty() ? null : stringValue(data, customField);
+            default -> userId;
+        };
+        if (key == null) {
+            key = userId != null ? userId : notificationId;
+        }
+        
+        if (hotKeys.contains(key)) {
+            // Same notification always maps to the same sub-key, so redeliveries stay ordered
+            key = key + "#" + Math.floorMod(notificationId.hashCode(), hotKeySplits);
+        }
+        return key;
+    }
+    
+    private String tenantOf(String userId, Map<String, ?> data) {
+        String tenant = explicitTenantOf(userId, data);
+        return tenant != null ? tenant : userId;
+    }
+    
+    /**
+     * @return the tenant named in the data or the user id, or null if there is none
+     */
+    public String explicitTenantOf(String userId, Map<String, ?> data) {
+        String tenant = stringValue(data, tenantField);
+        if (tenant != null) {
+            return tenant;
+        }
+        // Tenant-qualified user ids such as "acme:user-42"
+        int delimiter = userId != null ? userId.indexOf(tenantDelimiter) : -1;
+        return delimiter > 0 ? userId.substring(0, delimiter) : null;
+    }
+    
+    private String stringValue(Map<String, ?> data, String field) {
+        Object value = data != null ? data.get(field) : null;
+        return value != null ? value.toString() : null;
+    }
+}
+
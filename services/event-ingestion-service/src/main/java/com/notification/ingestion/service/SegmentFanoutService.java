@@ -0,0 +1,125 @@
+package com.notification.ingestion.service;
+
+import com.notification.ingestion.dto.FanoutJobView;
+import com.notification.ingestion.dto.NotificationRequest;
+import com.notification.ingestion.dto.RecipientRequest;
+import com.notification.ingestion.entity.UuidV7Generator;
+import com.notification.ingestion.exception.NotificationNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Accepts segment-targeted notifications as fan-out jobs. Submitting only records the job and
+ * splits the user id range into shards; {@link SegmentFanoutWorker}s expand the shards into
+ * per-user notifications in the background, so the request returns at once however large the
+ * segment is.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SegmentFanoutService {
+    
+    // Sampled user ids per shard when choosing shard boundaries
+    private static final int SAMPLES_PER_SHARD = 100;
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Value("${notification.fanout.max-shards:16}")
+    private int maxShards;
+    
+    @Value("${notification.fanout.min-users-per-shard:50000}")
+    private long minUsersPerShard;
+    
+    @Transactional
+    public UUID submit(NotificationRequest request, String dataJson, ClaimCheckService.ClaimCheck claimCheck) {
+        Integer segments = jdbcTemplate.queryForObject("SELECT count(*) FROM segments WHERE id = ?",
+                Integer.class, request.getSegmentId());
+        if (segments == null || segments == 0) {
+            throw new IllegalArgumentException("Unknown segment: " + request.getSegmentId());
+        }
+        
+        UUID jobId = UuidV7Generator.next();
+        String channels = request.getChannels().stream()
+                .map(RecipientRequest.Channel::name)
+                .distinct()
+                .collect(Collectors.joining(","));
+        jdbcTemplate.update("INSERT INTO fanout_jobs (id, segment_id, event_type, priority, template_id, channels, "
+                        + "data, data_ref, data_hash, scheduled_at) VALUES (?, ?, ?, ?, ?, ?, ?::jsonb, ?, ?, ?)",
+                jobId, request.getSegmentId(), request.getEventType(), request.getPriority().name(),
+                request.getTemplateId(), channels, claimCheck == null ? dataJson : null,
+                claimCheck != null ? claimCheck.ref() : null, claimCheck != null ? claimCheck.hash() : null,
+                request.getScheduledAt() != null ? Timestamp.valueOf(request.getScheduledAt()) : null);
+        
+        List<String> boundaries = shardBoundaries();
+        List<Object[]> shards = new ArrayList<>();
+        for (int shard = 0; shard <= boundaries.size(); shard++) {
+            shards.add(new Object[] {jobId, shard,
+                    shard > 0 ? boundaries.get(shard - 1) : null,
+                    shard < boundaries.size() ? boundaries.get(shard) : null});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO fanout_job_shards (job_id, shard, lower_bound, upper_bound) "
+                + "VALUES (?, ?, ?, ?)", shards);
+        
+        log.info("Accepted fan-out job {} to segment {} in {} shards", jobId, request.getSegmentId(), shards.size());
+        return jobId;
+    }
+    
+    public FanoutJobView getJob(UUID jobId) {
+        List<FanoutJobView> jobs = jdbcTemplate.query("""
+                SELECT j.id, j.segment_id, j.status, j.created_at, j.updated_at, count(*) AS shards,
+                       count(*) FILTER (WHERE s.status = 'COMPLETED') AS completed_shards,
+                       coalesce(sum(s.emitted), 0) AS emitted
+                FROM fanout_jobs j JOIN fanout_job_shards s ON s.job_id = j.id
+                WHERE j.id = ?
+                GROUP BY j.id
+                """, (rs, rowNum) -> FanoutJobView.builder()
+                .jobId(rs.getObject("id", UUID.class))
+                .segmentId(rs.getString("segment_id"))
+                .status(rs.getString("status"))
+                .shards(rs.getInt("shards"))
+                .completedShards(rs.getInt("completed_shards"))
+                .emitted(rs.getLong("emitted"))
+                .createdAt(rs.getTimestamp("created_at").toLocalDateTime())
+                .updatedAt(rs.getTimestamp("updated_at").toLocalDateTime())
+                .build(), jobId);
+        if (jobs.isEmpty()) {
+            throw new NotificationNotFoundException("Fan-out job not found: " + jobId);
+        }
+        return jobs.get(0);
+    }
+    
+    /**
+     * Splits the user id space into ranges of roughly equal size from a sample of the users
+     * table, so shards can be expanded in parallel. The planner's row estimate decides how many
+     * shards are worth it.
+     */
+    private List<String> shardBoundaries() {
+        Long estimate = jdbcTemplate.queryForObject(
+                "SELECT greatest(reltuples, 0)::bigint FROM pg_class WHERE oid = 'users'::regclass", Long.class);
+        int shards = (int) Math.min(maxShards, (estimate != null ? estimate : 0) / minUsersPerShard);
+        if (shards < 2) {
+            return List.of();
+        }
+        
+        double percent = Math.min(100.0, 100.0 * shards * SAMPLES_PER_SHARD / estimate);
+        List<String> sample = jdbcTemplate.queryForList(
+                "SELECT id FROM users TABLESAMPLE SYSTEM (?::real) ORDER BY id", String.class, percent);
+        TreeSet<String> boundaries = new TreeSet<>();
+        for (int shard = 1; shard < shards && !sample.isEmpty(); shard++) {
+            boundaries.add(sample.get(shard * sample.size() / shards));
+        }
+        return new ArrayList<>(boundaries);
+    }
+}
+
@@ -0,0 +1,246 @@
+package com.notification.ingestion.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notification.ingestion.entity.Notification;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Expands fan-out jobs into per-user notifications. Each instance claims pending shards with a
+ * lease ({@code FOR UPDATE SKIP LOCKED}, so instances never claim the same shard) and runs up to
+ * {@code workers} of them at a time. A shard is walked in user id order in chunks of
+ * {@code chunk-size} users; memory use is one chunk however large the segment.
+ * <p>
+ * Per chunk, the notifications are inserted, their events published and acknowledged by the
+ * broker ({@link NotificationBatchPublisher}), and the shard's checkpoint advanced, all in one
+ * transaction. A shard whose worker dies
+ * is claimed again after its lease expires and resumes after the last committed chunk; events of
+ * the interrupted chunk may then be published twice.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SegmentFanoutWorker {
+    
+    private static final TypeReference<Map<String, Object>> DATA_TYPE = new TypeReference<>() {};
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final NotificationBatchPublisher notificationPublisher;
+    private final ClaimCheckService claimCheckService;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${notification.fanout.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${notification.fanout.workers:4}")
+    private int workers;
+    
+    @Value("${notification.fanout.chunk-size:1000}")
+    private int chunkSize;
+    
+    @Value("${notification.fanout.lease-seconds:60}")
+    private int leaseSeconds;
+    
+    private final String workerId = UUID.randomUUID().toString();
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile boolean stopping;
+    private ExecutorService executor;
+    
+    private record Shard(UUID jobId, int shard, String upperBound, String position) {
+    }
+    
+    private record Job(String segmentFilter, String eventType, String priority, String templateId,
+                       List<String> channels, String data, String dataRef, String dataHash,
+                       LocalDateTime scheduledAt) {
+    }
+    
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "segment-fanout-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Workers stop after their current chunk; the shards are claimed again after the lease
+        stopping = true;
+        executor.shutdown();
+        executor.awaitTermination(leaseSeconds, TimeUnit.SECONDS);
+    }
+    
+    @Scheduled(fixedDelayString = "${notification.fanout.poll-interval-ms:1000}")
+    public void claimShards() {
+        while (enabled && !stopping && running.get() < workers) {
+            Shard shard = claim();
+            if (shard == null) {
+                return;
+            }
+            running.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    expand(shard);
+                } finally {
+                    running.decrementAndGet();
+                }
+            });
+        }
+    }
+    
+    private Shard claim() {
+        List<Shard> claimed = jdbcTemplate.query("""
+                UPDATE fanout_job_shards SET lease_owner = ?, lease_until = now() + make_interval(secs => ?)
+                WHERE (job_id, shard) = (
+                    SELECT job_id, shard FROM fanout_job_shards
+                    WHERE status = 'PENDING' AND (lease_until IS NULL OR lease_until < now())
+                    ORDER BY job_id, shard
+                    LIMIT 1
+                    FOR UPDATE SKIP LOCKED)
+                RETURNING job_id, shard, upper_bound, coalesce(checkpoint, lower_bound) AS position
+                """, (rs, rowNum) -> new Shard(rs.getObject("job_id", UUID.class), rs.getInt("shard"),
+                rs.getString("upper_bound"), rs.getString("position")), workerId, leaseSeconds);
+        return claimed.isEmpty() ? null : claimed.get(0);
+    }
+    
+    private void expand(Shard shard) {
+        try {
+            Job job = loadJob(shard.jobId());
+            Map<String, Object> data = data(job);
+            String position = shard.position();
+            log.info("Expanding shard {} of fan-out job {} from user {}", shard.shard(), shard.jobId(), position);
+            
+            boolean done = false;
+            while (!done && !stopping) {
+                String from = position;
+                ChunkResult result = transactionTemplate.execute(status -> expandChunk(shard, job, data, from));
+                notificationPublisher.afterCommit(result.userIds());
+                position = result.lastUserId();
+                done = result.userIds().size() < chunkSize;
+            }
+            if (done) {
+                completeShard(shard);
+            }
+        } catch (Exception e) {
+            // The lease runs out and the shard is claimed again, resuming at the checkpoint
+            log.error("Fan-out of shard {} of job {} failed: {}", shard.shard(), shard.jobId(), e.getMessage(), e);
+            jdbcTemplate.update("UPDATE fanout_job_shards SET last_error = ? WHERE job_id = ? AND shard = ?",
+                    e.getMessage(), shard.jobId(), shard.shard());
+        }
+    }
+    
+    private record ChunkResult(List<String> userIds, String lastUserId) {
+    }
+    
+    private ChunkResult expandChunk(Shard shard, Job job, Map<String, Object> data, String from) {
+        List<String> userIds = selectUsers(job, shard, from);
+        
+        List<NotificationBatchPublisher.Recipient> recipients = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            Notification notification = Notification.builder()
+                    .userId(userId)
+                    .eventType(job.eventType())
+                    .priority(job.priority())
+                    .status("PENDING")
+                    .templateId(job.templateId())
+                    .data(job.data())
+                    .dataRef(job.dataRef())
+                    .dataHash(job.dataHash())
+                    .scheduledAt(job.scheduledAt())
+                    .build();
+            recipients.add(new NotificationBatchPublisher.Recipient(notification, job.channels(), data));
+        }
+        notificationPublisher.saveAndPublish(recipients);
+        
+        String lastUserId = userIds.isEmpty() ? from : userIds.get(userIds.size() - 1);
+        int updated = jdbcTemplate.update("UPDATE fanout_job_shards SET checkpoint = ?, emitted = emitted + ?, "
+                        + "lease_until = now() + make_interval(secs => ?), last_error = NULL "
+                        + "WHERE job_id = ? AND shard = ? AND lease_owner = ?",
+                lastUserId, userIds.size(), leaseSeconds, shard.jobId(), shard.shard(), workerId);
+        if (updated == 0) {
+            // Another instance took over the shard after the lease ran out; roll back this chunk
+            throw new IllegalStateException("Lost the lease on shard " + shard.shard() + " of job " + shard.jobId());
+        }
+        return new ChunkResult(userIds, lastUserId);
+    }
+    
+    private List<String> selectUsers(Job job, Shard shard, String from) {
+        // A range scan of the primary key per chunk; the segment filter uses the preferences index
+        StringBuilder sql = new StringBuilder("SELECT id FROM users WHERE true");
+        List<Object> args = new ArrayList<>();
+        if (from != null) {
+            sql.append(" AND id > ?");
+            args.add(from);
+        }
+        if (shard.upperBound() != null) {
+            sql.append(" AND id <= ?");
+            args.add(shard.upperBound());
+        }
+        if (!"{}".equals(job.segmentFilter())) {
+            sql.append(" AND preferences @> ?::jsonb");
+            args.add(job.segmentFilter());
+        }
+        sql.append(" ORDER BY id LIMIT ?");
+        args.add(chunkSize);
+        return jdbcTemplate.queryForList(sql.toString(), String.class, args.toArray());
+    }
+    
+    private void completeShard(Shard shard) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("UPDATE fanout_job_shards SET status = 'COMPLETED', lease_owner = NULL, "
+                    + "lease_until = NULL WHERE job_id = ? AND shard = ? AND lease_owner = ?",
+                    shard.jobId(), shard.shard(), workerId);
+            jdbcTemplate.update("UPDATE fanout_jobs SET status = 'COMPLETED' WHERE id = ? AND NOT EXISTS "
+                    + "(SELECT 1 FROM fanout_job_shards WHERE job_id = ? AND status <> 'COMPLETED')",
+                    shard.jobId(), shard.jobId());
+        });
+        log.info("Completed shard {} of fan-out job {}", shard.shard(), shard.jobId());
+    }
+    
+    private Job loadJob(UUID jobId) {
+        return jdbcTemplate.queryForObject("""
+                SELECT s.filter::text AS segment_filter, j.event_type, j.priority, j.template_id, j.channels,
+                       j.data::text AS data, j.data_ref, j.data_hash, j.scheduled_at
+                FROM fanout_jobs j JOIN segments s ON s.id = j.segment_id
+                WHERE j.id = ?
+                """, (rs, rowNum) -> {
+            Timestamp scheduledAt = rs.getTimestamp("scheduled_at");
+            return new Job(rs.getString("segment_filter"), rs.getString("event_type"), rs.getString("priority"),
+                    rs.getString("template_id"), Arrays.asList(rs.getString("channels").split(",")),
+                    rs.getString("data"), rs.getString("data_ref"), rs.getString("data_hash"),
+                    scheduledAt != null ? scheduledAt.toLocalDateTime() : null);
+        }, jobId);
+    }
+    
+    /**
+     * The job's data as a map, for partition keys derived from data fields; read once per shard.
+     */
+    private Map<String, Object> data(Job job) throws Exception {
+        String json = job.dataRef() != null ? claimCheckService.resolve(job.dataRef(), job.dataHash()) : job.data();
+        return json != null ? objectMapper.readValue(json, DATA_TYPE) : null;
+    }
+}
+
@@ -0,0 +1,353 @@
+package com.notification.ingestion.service;
+
+import com.notification.ingestion.admission.TokenBucket;
+import com.notification.ingestion.admission.WeightedFairQueue;
+import com.notification.ingestion.dto.NotificationRequest;
+import com.notification.ingestion.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Per-tenant admission control in front of {@link NotificationIngestionService}.
+ * <p>
+ * Each tenant may ingest {@code rate} notifications per second over all instances, with bursts
+ * of {@code burst-seconds} worth. Requests only check a local token bucket; every
+ * {@code sync-interval-ms} each instance adds how many notifications each tenant asked for here
+ * to a Redis hash and resizes its buckets to its share of that demand, so busy instances get
+ * most of a tenant's quota. Requests over quota are rejected with 429 and a Retry-After.
+ * <p>
+ * Clients name their tenant themselves, so only the tenants listed in {@code tenants} and the
+ * {@code default} tenant of requests that name none are accepted; requests naming any other
+ * tenant are rejected as invalid rather than counted against the default tenant's quota, and
+ * neither the buckets nor the per-tenant meters grow with made-up tenants. Idle tenants are
+ * evicted with their meters.
+ * <p>
+ * Admitted requests then pass a weighted fair queue that allows {@code max-concurrent} ingests
+ * at a time, below the connection pool size. A tenant with a backlog queues behind its own work
+ * there while other tenants keep getting their weighted share of connections and the producer.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TenantAdmissionService {
+    
+    public static final String DEFAULT_TENANT = "default";
+    
+    private static final String DEMAND_KEY = "notification:admission:demand:";
+    
+    // An instance's demand counts this many sync intervals after it was reported
+    private static final int STALE_INTERVALS = 5;
+    
+    private final RedisTemplate<String, String> redisTemplate;
+    private final PartitionKeyResolver partitionKeyResolver;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${notification.admission.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${notification.admission.default-rate:500}")
+    private double defaultRate;
+    
+    @Value("${notification.admission.burst-seconds:2}")
+    private double burstSeconds;
+    
+    // tenant=rate[:weight] overriding the default rate and weight 1
+    @Value("${notification.admission.tenants:}")
+    private List<String> tenantQuotas;
+    
+    @Value("${notification.admission.max-concurrent:8}")
+    private int maxConcurrent;
+    
+    @Value("${notification.admission.queue-timeout-ms:2000}")
+    private long queueTimeoutMs;
+    
+    @Value("${notification.admission.sync-interval-ms:1000}")
+    private long syncIntervalMs;
+    
+    @Value("${notification.admission.idle-evict-seconds:300}")
+    private long idleEvictSeconds;
+    
+    private final String instanceId = UUID.randomUUID().toString();
+    private final ConcurrentMap<String, TenantState> tenants = new ConcurrentHashMap<>();
+    private final Map<String, Quota> quotas = new HashMap<>();
+    private WeightedFairQueue queue;
+    
+    private record Quota(double rate, double weight) {
+    }
+    
+    private static final class TenantState {
+        private final Quota quota;
+        private final TokenBucket bucket;
+        private final LongAdder demand = new LongAdder();
+        private final Counter admitted;
+        private final Counter throttled;
+        private final Counter busy;
+        private final Timer queueWait;
+        private volatile long lastActiveAt = System.currentTimeMillis();
+        
+        private TenantState(Quota quota, TokenBucket bucket, Counter admitted, Counter throttled, Counter busy,
+                            Timer queueWait) {
+            this.quota = quota;
+            this.bucket = bucket;
+            this.admitted = admitted;
+            this.throttled = throttled;
+            this.busy = busy;
+            this.queueWait = queueWait;
+        }
+    }
+    
+    @PostConstruct
+    public void init() {
+        for (String entry : tenantQuotas) {
+            int separator = entry.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            String[] values = entry.substring(separator + 1).split(":");
+            quotas.put(entry.substring(0, separator).trim(), new Quota(Double.parseDouble(values[0].trim()),
+                    values.length > 1 ? Double.parseDouble(values[1].trim()) : 1));
+        }
+        queue = new WeightedFairQueue(maxConcurrent);
+        Gauge.builder("notification.admission.queue.waiting", queue, WeightedFairQueue::getWaiting)
+                .description("Admitted requests waiting for an ingestion slot")
+                .register(meterRegistry);
+        log.info("Admission control {} with {} notifications/s per tenant, {} overrides and {} concurrent ingests",
+                enabled ? "enabled" : "disabled", defaultRate, quotas.size(), maxConcurrent);
+    }
+    
+    /**
+     * The tenant of a request: the tenant header if given, otherwise the tenant named in the
+     * data or the first recipient's user id (see {@link PartitionKeyResolver}).
+     *
+     * @throws IllegalArgumentException if the request names a tenant that is not listed
+     */
+    public String tenantOf(String tenantId, NotificationRequest request) {
+        if (tenantId != null && !tenantId.isBlank()) {
+            return requireListed(tenantId);
+        }
+        String userId = request.getRecipients() != null && !request.getRecipients().isEmpty()
+                ? request.getRecipients().get(0).getUserId() : null;
+        String tenant = partitionKeyResolver.explicitTenantOf(userId, request.getData());
+        return tenant != null ? requireListed(tenant) : DEFAULT_TENANT;
+    }
+    
+    /**
+     * @throws IllegalArgumentException if the tenant is neither listed nor the default
+     */
+    public String requireListed(String tenant) {
+        if (!DEFAULT_TENANT.equals(tenant) && !quotas.containsKey(tenant)) {
+            throw new IllegalArgumentException("Unknown tenant: " + tenant);
+        }
+        return tenant;
+    }
+    
+    /**
+     * Notifications a request creates now; a segment is expanded later by the fan-out workers.
+     */
+    public static int costOf(NotificationRequest request) {
+        return request.getRecipients() != null ? Math.max(1, request.getRecipients().size()) : 1;
+    }
+    
+    /**
+     * Runs {@code ingest} if the tenant is within its quota and a slot frees up in time.
+     *
+     * @throws TooManyRequestsException otherwise
+     */
+    public <T> T admit(String tenant, int cost, Supplier<T> ingest) {
+        if (!enabled) {
+            return ingest.get();
+        }
+        TenantState state = state(tenant);
+        state.demand.add(cost);
+        long waitNanos = state.bucket.tryAcquire(cost);
+        if (waitNanos > 0) {
+            state.throttled.increment(cost);
+            throw new TooManyRequestsException("Tenant " + tenant + " is over its notification quota",
+                    Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999)));
+        }
+        return runQueued(state, tenant, cost, TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs), ingest);
+    }
+    
+    /**
+     * Like {@link #admit}, but waits for the tenant's quota and a slot instead of rejecting; for
+     * uploads, which are paced by their chunks anyway.
+     */
+    public <T> T admitWaiting(String tenant, int cost, Supplier<T> ingest) {
+        if (!enabled) {
+            return ingest.get();
+        }
+        TenantState state = state(tenant);
+        state.demand.add(cost);
+        long waitNanos;
+        try {
+            while ((waitNanos = state.bucket.tryAcquire(cost)) > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the quota of tenant " + tenant, e);
+        }
+        return runQueued(state, tenant, cost, Long.MAX_VALUE, ingest);
+    }
+    
+    private <T> T runQueued(TenantState state, String tenant, int cost, long timeoutNanos, Supplier<T> ingest) {
+        long queuedAt = System.nanoTime();
+        try {
+            if (!queue.acquire(tenant, state.quota.weight(), cost, timeoutNanos)) {
+                state.busy.increment(cost);
+                throw new TooManyRequestsException("Ingestion is busy, retry shortly", 1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an ingestion slot", e);
+        }
+        state.queueWait.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+        state.admitted.increment(cost);
+        try {
+            return ingest.get();
+        } finally {
+            queue.release();
+        }
+    }
+    
+    /**
+     * Reports this instance's demand per tenant and resizes the local buckets to this instance's
+     * share of the demand over all instances. The share is smoothed by one notification per
+     * instance, so an instance without demand keeps a small bucket until the next sync.
+     */
+    @Scheduled(fixedDelayString = "${notification.admission.sync-interval-ms:1000}")
+    public void sync() {
+        if (!enabled || tenants.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<String> names = new ArrayList<>();
+        List<Long> demands = new ArrayList<>();
+        tenants.forEach((tenant, state) -> {
+            long demand = state.demand.sumThenReset();
+            if (demand > 0) {
+                state.lastActiveAt = now;
+            } else if (now - state.lastActiveAt > TimeUnit.SECONDS.toMillis(idleEvictSeconds) && state.bucket.isFull()) {
+                tenants.remove(tenant);
+                removeMeters(state);
+                return;
+            }
+            names.add(tenant);
+            demands.add(demand);
+        });
+        if (names.isEmpty()) {
+            return;
+        }
+        
+        long staleMs = syncIntervalMs * STALE_INTERVALS;
+        byte[] field = instanceId.getBytes(StandardCharsets.UTF_8);
+        List<Object> results;
+        try {
+            results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < names.size(); i++) {
+                    report(connection, DEMAND_KEY + names.get(i), field, demands.get(i) + ":" + now, staleMs);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // Buckets keep their current size until Redis is back
+            log.warn("Could not sync tenant admission demand: {}", e.getMessage());
+            return;
+        }
+        
+        for (int i = 0; i < names.size(); i++) {
+            TenantState state = tenants.get(names.get(i));
+            Object reported = results.get(i * 3 + 2);
+            if (state == null || !(reported instanceof Map<?, ?> instances)) {
+                continue;
+            }
+            long total = 0;
+            int live = 0;
+            List<Object> stale = new ArrayList<>();
+            for (Map.Entry<?, ?> instance : instances.entrySet()) {
+                String value = String.valueOf(instance.getValue());
+                int separator = value.indexOf(':');
+                if (separator < 0 || now - Long.parseLong(value.substring(separator + 1)) > staleMs) {
+                    stale.add(instance.getKey());
+                    continue;
+                }
+                total += Long.parseLong(value.substring(0, separator));
+                live++;
+            }
+            double share = (demands.get(i) + 1.0) / (total + Math.max(live, 1));
+            double rate = state.quota.rate() * share;
+            state.bucket.resize(rate, Math.max(1, rate * burstSeconds));
+            if (!stale.isEmpty()) {
+                redisTemplate.opsForHash().delete(DEMAND_KEY + names.get(i), stale.toArray());
+            }
+        }
+    }
+    
+    private static void report(RedisConnection connection, String key, byte[] field, String value, long ttlMs) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        connection.hashCommands().hSet(rawKey, field, value.getBytes(StandardCharsets.UTF_8));
+        connection.keyCommands().pExpire(rawKey, ttlMs);
+        connection.hashCommands().hGetAll(rawKey);
+    }
+    
+    private TenantState state(String tenant) {
+        TenantState state = tenants.get(tenant);
+        if (state == null) {
+            // New tenants start with the whole quota until the next sync
+            state = tenants.computeIfAbsent(tenant, this::newState);
+        }
+        return state;
+    }
+    
+    private TenantState newState(String tenant) {
+        Quota quota = quotas.getOrDefault(tenant, new Quota(defaultRate, 1));
+        return new TenantState(quota,
+                new TokenBucket(quota.rate(), Math.max(1, quota.rate() * burstSeconds)),
+                counter(tenant, "admitted"),
+                counter(tenant, "throttled"),
+                counter(tenant, "busy"),
+                Timer.builder("notification.admission.queue.wait")
+                        .description("Time admitted requests wait for an ingestion slot")
+                        .tag("tenant", tenant)
+                        .register(meterRegistry));
+    }
+    
+    private void removeMeters(TenantState state) {
+        meterRegistry.remove(state.admitted);
+        meterRegistry.remove(state.throttled);
+        meterRegistry.remove(state.busy);
+        meterRegistry.remove(state.queueWait);
+    }
+    
+    private Counter counter(String tenant, String outcome) {
+        return Counter.builder("notification.admission.notifications")
+                .description("Notifications admitted or rejected by admission control")
+                .tag("tenant", tenant)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
+
@@ -0,0 +1,113 @@
+package com.notification.ingestion.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Per-user unread counters in Redis ({@code notification:unread:<userId>}). A counter is built
+ * from the database on first read and then kept up to date incrementally as notifications are
+ * ingested and read. Increments only apply to existing counters, so a counter that has expired
+ * or was never read is not resurrected with a partial count; the TTL bounds any drift.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UnreadCounterService {
+    
+    private static final String KEY_PREFIX = "notification:unread:";
+    
+    private static final RedisScript<Long> ADJUST_IF_EXISTS = new DefaultRedisScript<>("""
+            if redis.call('exists', KEYS[1]) == 0 then
+                return -1
+            end
+            local value = redis.call('incrby', KEYS[1], ARGV[1])
+            if value < 0 then
+                redis.call('set', KEYS[1], 0, 'keepttl')
+                return 0
+            end
+            return value
+            """, Long.class);
+    
+    private final RedisTemplate<String, String> redisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Value("${notification.query.unread-counter-ttl-hours:24}")
+    private long counterTtlHours;
+    
+    public long getUnreadCount(String userId) {
+        String key = KEY_PREFIX + userId;
+        String cached = redisTemplate.opsForValue().get(key);
+        if (cached != null) {
+            return Long.parseLong(cached);
+        }
+        
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM notifications WHERE user_id = ? AND read_at IS NULL", Long.class, userId);
+        long unread = count != null ? count : 0;
+        // Another request may have built it first; either value is current
+        redisTemplate.opsForValue().setIfAbsent(key, String.valueOf(unread), Duration.ofHours(counterTtlHours));
+        return unread;
+    }
+    
+    public void increment(String userId) {
+        adjust(userId, 1);
+    }
+    
+    /**
+     * Increments many counters in one pipelined round trip.
+     */
+    public void incrementAll(List<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        byte[] script = ADJUST_IF_EXISTS.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        byte[] delta = "1".getBytes(StandardCharsets.UTF_8);
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String userId : userIds) {
+                    connection.scriptingCommands().eval(script, ReturnType.INTEGER, 1,
+                            (KEY_PREFIX + userId).getBytes(StandardCharsets.UTF_8), delta);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("Could not adjust unread counters of {} users: {}", userIds.size(), e.getMessage());
+            try {
+                redisTemplate.delete(userIds.stream().map(userId -> KEY_PREFIX + userId).toList());
+            } catch (Exception ignored) {
+                // Redis is unavailable; the counters expire on their own
+            }
+        }
+    }
+    
+    public void decrement(String userId) {
+        adjust(userId, -1);
+    }
+    
+    private void adjust(String userId, long delta) {
+        try {
+            redisTemplate.execute(ADJUST_IF_EXISTS, List.of(KEY_PREFIX + userId), String.valueOf(delta));
+        } catch (Exception e) {
+            // The notification itself is stored; drop the counter so the next read rebuilds it
+            log.warn("Could not adjust unread counter for user {}: {}", userId, e.getMessage());
+            try {
+                redisTemplate.delete(KEY_PREFIX + userId);
+            } catch (Exception ignored) {
+                // Redis is unavailable; the counter expires on its own
+            }
+        }
+    }
+}
+
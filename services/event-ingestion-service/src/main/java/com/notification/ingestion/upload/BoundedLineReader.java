@@ -0,0 +1,90 @@
+package com.notification.ingestion.upload;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads UTF-8 text line by line through a fixed buffer, holding at most one line of at most
+ * {@code maxLineBytes} in memory however large the input is. A longer line is skipped and
+ * reported with {@link LineTooLongException}; reading continues with the next line.
+ */
+public final class BoundedLineReader {
+    
+    private final InputStream in;
+    private final int maxLineBytes;
+    private final byte[] buffer = new byte[64 * 1024];
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(1024);
+    private int position;
+    private int limit;
+    private long lineNumber;
+    
+    public BoundedLineReader(InputStream in, int maxLineBytes) {
+        this.in = in;
+        this.maxLineBytes = maxLineBytes;
+    }
+    
+    /**
+     * @return the next line without its terminator, or null at the end of the input
+     */
+    public String readLine() throws IOException {
+        line.reset();
+        boolean tooLong = false;
+        boolean found = false;
+        while (!found) {
+            if (position == limit) {
+                limit = in.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    if (line.size() == 0 && !tooLong) {
+                        return null;
+                    }
+                    break;
+                }
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            int length = position - start;
+            if (position < limit) {
+                position++;  // Past the newline
+                found = true;
+            }
+            if (line.size() + length > maxLineBytes) {
+                tooLong = true;
+            } else if (!tooLong) {
+                line.write(buffer, start, length);
+            }
+        }
+        
+        lineNumber++;
+        if (tooLong) {
+            throw new LineTooLongException("Line " + lineNumber + " is longer than " + maxLineBytes + " bytes");
+        }
+        String text = line.toString(StandardCharsets.UTF_8);
+        if (text.endsWith("\r")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        if (lineNumber == 1 && text.startsWith("\uFEFF")) {
+            text = text.substring(1);  // Byte order mark
+        }
+        return text;
+    }
+    
+    /**
+     * Number of the line last returned (or skipped), starting at 1.
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+    
+    public static class LineTooLongException extends IOException {
+        public LineTooLongException(String message) {
+            super(message);
+        }
+    }
+}
+
@@ -0,0 +1,46 @@
+package com.notification.ingestion.upload;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits one CSV line (RFC 4180 quoting, comma separated) into its fields. Quoted fields cannot
+ * span lines, so every record is a single line.
+ */
+public final class CsvLineParser {
+    
+    private CsvLineParser() {
+    }
+    
+    public static List<String> parse(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
+
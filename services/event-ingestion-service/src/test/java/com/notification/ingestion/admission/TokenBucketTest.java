@@ -0,0 +1,58 @@
+package com.notification.ingestion.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+    
+    @Test
+    void admitsUpToTheCapacityThenReportsTheWait() {
+        TokenBucket bucket = new TokenBucket(1, 5);
+        
+        for (int i = 0; i < 5; i++) {
+            assertThat(bucket.tryAcquire(1)).isZero();
+        }
+        
+        // One token refills in a second at one per second
+        assertThat(bucket.tryAcquire(1)).isBetween(TimeUnit.MILLISECONDS.toNanos(500), TimeUnit.SECONDS.toNanos(1));
+    }
+    
+    @Test
+    void refillsOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100, 1);
+        long wait = bucket.tryAcquire(1);
+        boolean fullRightAway = bucket.isFull();
+        assertThat(wait).isZero();
+        assertThat(fullRightAway).isFalse();
+        
+        Thread.sleep(50);
+        
+        assertThat(bucket.isFull()).isTrue();
+        assertThat(bucket.tryAcquire(1)).isZero();
+    }
+    
+    @Test
+    void admitsARequestLargerThanTheCapacityOnceFullAndLeavesItInDebt() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        
+        assertThat(bucket.tryAcquire(25)).isZero();
+        
+        // 20 tokens in debt plus the one requested take about two seconds
+        assertThat(bucket.tryAcquire(1)).isBetween(TimeUnit.MILLISECONDS.toNanos(1900), TimeUnit.MILLISECONDS.toNanos(2100));
+    }
+    
+    @Test
+    void resizeKeepsTheSavedTokensWithinTheNewCapacity() {
+        TokenBucket bucket = new TokenBucket(1, 100);
+        
+        bucket.resize(1, 3);
+        
+        assertThat(bucket.isFull()).isTrue();
+        assertThat(bucket.tryAcquire(3)).isZero();
+        assertThat(bucket.tryAcquire(1)).isPositive();
+    }
+}
+
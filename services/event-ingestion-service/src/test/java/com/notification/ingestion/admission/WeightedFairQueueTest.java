@@ -0,0 +1,112 @@
+package com.notification.ingestion.admission;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WeightedFairQueueTest {
+    
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    
+    private final WeightedFairQueue queue = new WeightedFairQueue(1);
+    private final List<String> granted = Collections.synchronizedList(new ArrayList<>());
+    private final List<Thread> threads = new ArrayList<>();
+    
+    @AfterEach
+    void joinThreads() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.NANOSECONDS.toMillis(TIMEOUT_NANOS));
+        }
+    }
+    
+    @Test
+    void grantsImmediatelyWhileAPermitIsFree() throws InterruptedException {
+        assertThat(queue.acquire("a", 1, 1, 0)).isTrue();
+        assertThat(queue.getWaiting()).isZero();
+        queue.release();
+    }
+    
+    @Test
+    void aTenantWithABacklogWaitsBehindItsOwnWork() throws InterruptedException {
+        assertThat(queue.acquire("holder", 1, 1, TIMEOUT_NANOS)).isTrue();
+        enqueue("a", 1);
+        enqueue("a", 1);
+        enqueue("a", 1);
+        enqueue("b", 1);
+        
+        queue.release();
+        joinThreads();
+        
+        assertThat(granted).containsExactly("a", "b", "a", "a");
+    }
+    
+    @Test
+    void sharesPermitsByWeight() throws InterruptedException {
+        assertThat(queue.acquire("holder", 1, 1, TIMEOUT_NANOS)).isTrue();
+        for (int i = 0; i < 4; i++) {
+            enqueue("heavy", 3);
+        }
+        for (int i = 0; i < 4; i++) {
+            enqueue("light", 1);
+        }
+        
+        queue.release();
+        joinThreads();
+        
+        assertThat(granted).containsExactly("heavy", "light", "heavy", "heavy", "heavy", "light", "light", "light");
+    }
+    
+    @Test
+    void givesUpAfterTheTimeout() throws InterruptedException {
+        assertThat(queue.acquire("holder", 1, 1, TIMEOUT_NANOS)).isTrue();
+        
+        assertThat(queue.acquire("a", 1, 1, TimeUnit.MILLISECONDS.toNanos(20))).isFalse();
+        
+        assertThat(queue.getWaiting()).isZero();
+        queue.release();
+        assertThat(queue.acquire("a", 1, 1, 0)).isTrue();
+    }
+    
+    @Test
+    void workThatTimedOutDoesNotDelayItsTenant() throws InterruptedException {
+        assertThat(queue.acquire("holder", 1, 1, TIMEOUT_NANOS)).isTrue();
+        assertThat(queue.acquire("a", 1, 100, TimeUnit.MILLISECONDS.toNanos(20))).isFalse();
+        enqueue("a", 1);
+        enqueue("b", 1);
+        
+        queue.release();
+        joinThreads();
+        
+        assertThat(granted).containsExactly("a", "b");
+    }
+    
+    /**
+     * Starts a thread that waits for a permit, records its tenant and releases the permit right
+     * away; returns once it is queued, so tenants queue in call order.
+     */
+    private void enqueue(String tenant, double weight) throws InterruptedException {
+        int waiting = queue.getWaiting();
+        Thread thread = new Thread(() -> {
+            try {
+                if (queue.acquire(tenant, weight, 1, TIMEOUT_NANOS)) {
+                    granted.add(tenant);
+                    queue.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        threads.add(thread);
+        while (queue.getWaiting() == waiting) {
+            Thread.sleep(1);
+        }
+    }
+}
+
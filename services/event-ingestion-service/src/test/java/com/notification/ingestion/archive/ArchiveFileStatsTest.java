@@ -0,0 +1,39 @@
+package com.notification.ingestion.archive;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArchiveFileStatsTest {
+    
+    private final ArchiveFileStats stats = ArchiveFileStats.builder()
+            .file("part-0001.ncol.gz")
+            .rowCount(2)
+            .min(Map.of("user_id", "user-200", "created_at", "2026-01-05T00:00:00"))
+            .max(Map.of("user_id", "user-500", "created_at", "2026-01-05T23:59:59"))
+            .build();
+    
+    @Test
+    void prunesValuesOutsideTheRange() {
+        assertThat(stats.mightContain("user_id", "user-300")).isTrue();
+        assertThat(stats.mightContain("user_id", "user-200")).isTrue();
+        assertThat(stats.mightContain("user_id", "user-500")).isTrue();
+        assertThat(stats.mightContain("user_id", "user-100")).isFalse();
+        assertThat(stats.mightContain("user_id", "user-600")).isFalse();
+    }
+    
+    @Test
+    void keepsColumnsWithoutStats() {
+        assertThat(stats.mightContain("id", "anything")).isTrue();
+    }
+    
+    @Test
+    void overlapsRangesWithAnExclusiveEnd() {
+        assertThat(stats.mightOverlap("created_at", "2026-01-05T12:00:00", "2026-01-06T00:00:00")).isTrue();
+        assertThat(stats.mightOverlap("created_at", "2026-01-04T00:00:00", "2026-01-05T00:00:00")).isFalse();
+        assertThat(stats.mightOverlap("created_at", "2026-01-06T00:00:00", "2026-01-07T00:00:00")).isFalse();
+    }
+}
+
@@ -0,0 +1,68 @@
+package com.notification.ingestion.archive;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ColumnarFileTest {
+    
+    private static final List<String> COLUMNS = List.of("id", "user_id", "status", "data");
+    
+    @Test
+    void readsBackWhatWasWrittenIncludingNullsAndUnicode() throws IOException {
+        List<String[]> rows = List.of(
+                new String[]{"1", "user-1", "DELIVERED", "{\"text\": \"Grüße ✓\"}"},
+                new String[]{"2", "user-2", null, ""},
+                new String[]{"3", null, "FAILED", null});
+        
+        List<String[]> read = ColumnarFile.read(ColumnarFile.write(COLUMNS, rows), COLUMNS);
+        
+        assertThat(read).containsExactlyElementsOf(rows);
+    }
+    
+    @Test
+    void readsRequestedColumnsInTheRequestedOrder() throws IOException {
+        byte[] file = ColumnarFile.write(COLUMNS, List.<String[]>of(new String[]{"1", "user-1", "SENT", "{}"}));
+        
+        List<String[]> read = ColumnarFile.read(file, List.of("status", "id", "read_at"));
+        
+        // Columns not in the file are null, columns not requested are skipped
+        assertThat(read).containsExactly(new String[]{"SENT", "1", null});
+    }
+    
+    @Test
+    void writesAnEmptyFile() throws IOException {
+        assertThat(ColumnarFile.read(ColumnarFile.write(COLUMNS, List.of()), COLUMNS)).isEmpty();
+    }
+    
+    @Test
+    void compressesRepetitiveColumns() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            rows.add(new String[]{String.valueOf(i), "user-" + (i % 100), i % 10 == 0 ? "FAILED" : "DELIVERED",
+                    "{\"orderId\": \"" + i + "\"}"});
+        }
+        int raw = rows.stream().mapToInt(row -> String.join(",", row).length()).sum();
+        
+        assertThat(ColumnarFile.write(COLUMNS, rows).length).isLessThan(raw / 5);
+    }
+    
+    @Test
+    void rejectsOtherGzipContent() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write("id,user_id\n1,user-1\n".getBytes());
+        }
+        
+        assertThatThrownBy(() -> ColumnarFile.read(bytes.toByteArray(), COLUMNS))
+                .isInstanceOf(IOException.class);
+    }
+}
+
@@ -0,0 +1,123 @@
+package com.notification.ingestion.entity;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Insert throughput, primary key index size and WAL volume of random UUIDv4 ids against
+ * {@link UuidV7Generator} ids. Each id type fills its own table shaped like notifications, in
+ * batches as the ingestion service writes them.
+ * <p>
+ * Not part of the regular build. Run against the Postgres from docker-compose up, in which it
+ * creates and drops the tables {@code benchmark_ids_v4} and {@code benchmark_ids_v7}:
+ * <pre>
+ * mvn test -Dtest=UuidInsertBenchmark [-Dbenchmark.rows=1000000] [-Dbenchmark.batch-size=500]
+ *          [-Dbenchmark.db.url=jdbc:postgresql://localhost:5432/notification_db?reWriteBatchedInserts=true]
+ *          [-Dbenchmark.db.user=notification_user] [-Dbenchmark.db.password=notification_pass]
+ * </pre>
+ * The difference shows once the index outgrows shared_buffers, so use enough rows for that.
+ */
+class UuidInsertBenchmark {
+    
+    private static final String[] TABLES = {"benchmark_ids_v4", "benchmark_ids_v7"};
+    
+    private final int rows = Integer.getInteger("benchmark.rows", 1_000_000);
+    private final int batchSize = Integer.getInteger("benchmark.batch-size", 500);
+    
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    
+    @BeforeEach
+    void connect() {
+        dataSource = new SingleConnectionDataSource(
+                System.getProperty("benchmark.db.url",
+                        "jdbc:postgresql://localhost:5432/notification_db?reWriteBatchedInserts=true"),
+                System.getProperty("benchmark.db.user", "notification_user"),
+                System.getProperty("benchmark.db.password", "notification_pass"), true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        Assumptions.assumeTrue(postgresAvailable(), "No Postgres to measure");
+        dropTables();
+    }
+    
+    @AfterEach
+    void disconnect() {
+        if (jdbcTemplate != null) {
+            dropTables();
+        }
+        dataSource.destroy();
+    }
+    
+    @Test
+    void insertThroughputAndIndexSize() {
+        Result v4 = insert("benchmark_ids_v4", UUID::randomUUID);
+        Result v7 = insert("benchmark_ids_v7", UuidV7Generator::next);
+        
+        for (Result result : List.of(v4, v7)) {
+            System.out.printf("%s: %d rows, %.0f rows/s, primary key %d MB, WAL %d MB%n", result.table(), rows,
+                    result.rowsPerSecond(), result.indexBytes() >> 20, result.walBytes() >> 20);
+        }
+        System.out.printf("v7 against v4: %.2fx the insert rate, %.0f%% of the index, %.0f%% of the WAL%n",
+                v7.rowsPerSecond() / v4.rowsPerSecond(), 100.0 * v7.indexBytes() / v4.indexBytes(),
+                100.0 * v7.walBytes() / v4.walBytes());
+        assertThat(v7.indexBytes()).isLessThanOrEqualTo(v4.indexBytes());
+    }
+    
+    private record Result(String table, double rowsPerSecond, long indexBytes, long walBytes) {
+    }
+    
+    private Result insert(String table, Supplier<UUID> ids) {
+        jdbcTemplate.execute("CREATE TABLE " + table + " (id UUID PRIMARY KEY, user_id VARCHAR(255) NOT NULL, "
+                + "event_type VARCHAR(100) NOT NULL, data JSONB, created_at TIMESTAMP NOT NULL)");
+        // Both runs start right after a checkpoint, so both pay the same full-page writes
+        jdbcTemplate.execute("CHECKPOINT");
+        String walStart = jdbcTemplate.queryForObject("SELECT pg_current_wal_lsn()::text", String.class);
+        
+        long start = System.nanoTime();
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < rows; i++) {
+            batch.add(new Object[]{ids.get(), "user-" + (i % 10_000), "ORDER_SHIPPED",
+                    "{\"orderId\": \"" + i + "\"}", new Timestamp(System.currentTimeMillis())});
+            if (batch.size() == batchSize || i == rows - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO " + table + " (id, user_id, event_type, data, created_at) "
+                        + "VALUES (?, ?, ?, ?::jsonb, ?)", batch);
+                batch.clear();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        Long walBytes = jdbcTemplate.queryForObject("SELECT pg_wal_lsn_diff(pg_current_wal_lsn(), ?::pg_lsn)::bigint",
+                Long.class, walStart);
+        Long indexBytes = jdbcTemplate.queryForObject("SELECT pg_relation_size(?::regclass)", Long.class,
+                table + "_pkey");
+        return new Result(table, rows / seconds, indexBytes != null ? indexBytes : 0, walBytes != null ? walBytes : 0);
+    }
+    
+    private void dropTables() {
+        for (String table : TABLES) {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+        }
+    }
+    
+    private boolean postgresAvailable() {
+        try {
+            jdbcTemplate.queryForObject("SELECT 1", Integer.class);
+            return true;
+        } catch (Exception e) {
+            jdbcTemplate = null;
+            return false;
+        }
+    }
+}
+
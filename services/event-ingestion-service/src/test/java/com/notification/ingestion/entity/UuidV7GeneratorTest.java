@@ -0,0 +1,85 @@
+package com.notification.ingestion.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UuidV7GeneratorTest {
+    
+    private static final int IDS = 100_000;
+    
+    @Test
+    void generatesVersion7WithTheRfcVariant() {
+        UUID id = UuidV7Generator.next();
+        
+        assertThat(id.version()).isEqualTo(7);
+        assertThat(id.variant()).isEqualTo(2);
+    }
+    
+    @Test
+    void idsIncreaseStrictlyEvenWithinOneMillisecond() {
+        // Far more ids than milliseconds pass, so the sequence and its overflow are exercised
+        UUID previous = UuidV7Generator.next();
+        for (int i = 0; i < IDS; i++) {
+            UUID id = UuidV7Generator.next();
+            assertThat(Long.compareUnsigned(id.getMostSignificantBits(), previous.getMostSignificantBits()))
+                    .isPositive();
+            previous = id;
+        }
+    }
+    
+    @Test
+    void concurrentGenerationNeverRepeatsATimestampAndSequence() throws InterruptedException {
+        int threads = 8;
+        Set<Long> prefixes = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < IDS / threads; i++) {
+                    prefixes.add(UuidV7Generator.next().getMostSignificantBits());
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        
+        assertThat(prefixes).hasSize(IDS / threads * threads);
+    }
+    
+    @Test
+    void timestampIsTheGenerationTime() {
+        long before = System.currentTimeMillis();
+        UUID id = UuidV7Generator.next();
+        long after = System.currentTimeMillis();
+        
+        Instant generatedAt = UuidV7Generator.timestampOf(id);
+        
+        // The sequence may run ahead of the clock after a burst of earlier tests
+        assertThat(generatedAt.toEpochMilli()).isGreaterThanOrEqualTo(before).isLessThanOrEqualTo(after + 1000);
+    }
+    
+    @Test
+    void timestampOfOtherVersionsIsNull() {
+        assertThat(UuidV7Generator.timestampOf(UUID.randomUUID())).isNull();
+    }
+}
+
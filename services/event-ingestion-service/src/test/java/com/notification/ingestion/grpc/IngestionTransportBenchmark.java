@@ -0,0 +1,280 @@
+package com.notification.ingestion.grpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import com.notification.ingestion.grpc.proto.Channel;
+import com.notification.ingestion.grpc.proto.NotificationIngestionGrpc;
+import com.notification.ingestion.grpc.proto.Priority;
+import com.notification.ingestion.grpc.proto.Recipient;
+import com.notification.ingestion.grpc.proto.SendAck;
+import com.notification.ingestion.grpc.proto.SendRequest;
+import io.grpc.ManagedChannel;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Events per second and service CPU per event of the ingestion transports under the same load:
+ * REST (one HTTP/1.1 request per event on keep-alive connections), gRPC unary calls and gRPC
+ * bidi streams with one ack per event. Every run sends the same single-recipient requests from
+ * the same number of concurrent clients.
+ * <p>
+ * CPU per event is the service's process CPU time over the run divided by the events sent,
+ * sampled from its {@code process.cpu.usage} metric, so run the service alone on its host.
+ * <p>
+ * Not part of the regular build. Run against an ingestion service started with the
+ * infrastructure from docker-compose up; the events go through the whole pipeline to users
+ * that do not exist, whose deliveries are skipped. Raise the tenant quota of the service if
+ * requests come back throttled.
+ * <pre>
+ * mvn test -Dtest=IngestionTransportBenchmark [-Dbenchmark.events=20000] [-Dbenchmark.concurrency=16]
+ *          [-Dbenchmark.http-url=http://localhost:8081] [-Dbenchmark.grpc-target=localhost:9091]
+ * </pre>
+ * Without a reachable service nothing is measured.
+ */
+class IngestionTransportBenchmark {
+    
+    private static final long CPU_SAMPLE_INTERVAL_MS = 250;
+    
+    private final int concurrency = Integer.getInteger("benchmark.concurrency", 16);
+    private final int eventsPerClient = Integer.getInteger("benchmark.events", 20_000) / concurrency;
+    private final String httpUrl = System.getProperty("benchmark.http-url", "http://localhost:8081");
+    private final String grpcTarget = System.getProperty("benchmark.grpc-target", "localhost:9091");
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger sequence = new AtomicInteger();
+    
+    private HttpClient httpClient;
+    private ManagedChannel channel;
+    private int cpuCount;
+    
+    private interface Transport {
+        /**
+         * Sends {@code eventsPerClient} events from each of {@code concurrency} clients.
+         *
+         * @return the number of events accepted
+         */
+        int send() throws Exception;
+    }
+    
+    @BeforeEach
+    void connect() {
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(2))
+                .build();
+        Assumptions.assumeTrue(serviceAvailable(), "No ingestion service at " + httpUrl);
+        cpuCount = (int) metric("system.cpu.count");
+        channel = NettyChannelBuilder.forTarget(grpcTarget).usePlaintext().build();
+    }
+    
+    @AfterEach
+    void disconnect() throws InterruptedException {
+        if (channel != null) {
+            channel.shutdown().awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+    
+    @Test
+    void compareTransports() throws Exception {
+        // Warms up the service and both clients
+        measure("warm-up", this::sendRest);
+        measure("warm-up", this::sendGrpcUnary);
+        
+        double rest = measure("REST", this::sendRest);
+        double unary = measure("gRPC unary", this::sendGrpcUnary);
+        double bidi = measure("gRPC bidi", this::sendGrpcBidi);
+        System.out.printf("Against REST: gRPC unary %.2fx, gRPC bidi %.2fx the events per second%n",
+                unary / rest, bidi / rest);
+    }
+    
+    /**
+     * @return events per second
+     */
+    private double measure(String name, Transport transport) throws Exception {
+        DoubleAdder cpuSeconds = new DoubleAdder();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        // The usage metric is the share of all cores since its previous read
+        metric("process.cpu.usage");
+        sampler.scheduleAtFixedRate(() -> cpuSeconds.add(metric("process.cpu.usage") * cpuCount
+                * CPU_SAMPLE_INTERVAL_MS / 1000.0), CPU_SAMPLE_INTERVAL_MS, CPU_SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        
+        long start = System.nanoTime();
+        int accepted;
+        try {
+            accepted = transport.send();
+        } finally {
+            sampler.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        int events = eventsPerClient * concurrency;
+        double rate = events / seconds;
+        System.out.printf("%s: %d events in %.2f s, %.0f events/s, %.3f ms CPU per event, %d not accepted%n",
+                name, events, seconds, rate, cpuSeconds.sum() * 1000 / events, events - accepted);
+        assertThat(accepted).as("%s accepted events", name).isPositive();
+        return rate;
+    }
+    
+    private int sendRest() throws Exception {
+        return runClients(() -> {
+            int accepted = 0;
+            for (int i = 0; i < eventsPerClient; i++) {
+                int event = sequence.incrementAndGet();
+                HttpRequest request = HttpRequest.newBuilder(URI.create(httpUrl + "/api/v1/notifications"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"eventType\":\"BENCHMARK\",\"priority\":\"LOW\","
+                                + "\"recipients\":[{\"userId\":\"benchmark-user-" + event + "\",\"channels\":[\"EMAIL\"]}],"
+                                + "\"data\":{\"orderId\":\"" + event + "\"}}"))
+                        .build();
+                if (httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 202) {
+                    accepted++;
+                }
+            }
+            return accepted;
+        });
+    }
+    
+    private int sendGrpcUnary() throws Exception {
+        return runClients(() -> {
+            NotificationIngestionGrpc.NotificationIngestionBlockingStub stub = NotificationIngestionGrpc.newBlockingStub(channel);
+            int accepted = 0;
+            for (int i = 0; i < eventsPerClient; i++) {
+                if (stub.send(grpcRequest(sequence.incrementAndGet())).getStatus() == SendAck.Status.ACCEPTED) {
+                    accepted++;
+                }
+            }
+            return accepted;
+        });
+    }
+    
+    /**
+     * One stream per client, sending whenever the transport is ready for more.
+     */
+    private int sendGrpcBidi() throws Exception {
+        CountDownLatch done = new CountDownLatch(concurrency);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        NotificationIngestionGrpc.NotificationIngestionStub stub = NotificationIngestionGrpc.newStub(channel);
+        for (int client = 0; client < concurrency; client++) {
+            stub.sendBidi(new ClientResponseObserver<SendRequest, SendAck>() {
+                private int sent;
+                
+                @Override
+                public void beforeStart(ClientCallStreamObserver<SendRequest> requests) {
+                    requests.setOnReadyHandler(() -> {
+                        while (requests.isReady() && sent < eventsPerClient) {
+                            requests.onNext(grpcRequest(sequence.incrementAndGet()));
+                            if (++sent == eventsPerClient) {
+                                requests.onCompleted();
+                            }
+                        }
+                    });
+                }
+                
+                @Override
+                public void onNext(SendAck ack) {
+                    if (ack.getStatus() == SendAck.Status.ACCEPTED) {
+                        accepted.incrementAndGet();
+                    }
+                }
+                
+                @Override
+                public void onError(Throwable t) {
+                    failure.set(t);
+                    done.countDown();
+                }
+                
+                @Override
+                public void onCompleted() {
+                    done.countDown();
+                }
+            });
+        }
+        assertThat(done.await(10, TimeUnit.MINUTES)).as("bidi streams finished").isTrue();
+        assertThat(failure.get()).as("bidi stream failure").isNull();
+        return accepted.get();
+    }
+    
+    private int runClients(Transport client) throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        for (int i = 0; i < concurrency; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    accepted.addAndGet(client.send());
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+            }, "benchmark-client-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return accepted.get();
+    }
+    
+    private static SendRequest grpcRequest(int event) {
+        return SendRequest.newBuilder()
+                .setRequestId(String.valueOf(event))
+                .setEventType("BENCHMARK")
+                .setPriority(Priority.LOW)
+                .addRecipients(Recipient.newBuilder()
+                        .setUserId("benchmark-user-" + event)
+                        .addChannels(Channel.EMAIL))
+                .setData(Struct.newBuilder()
+                        .putFields("orderId", Value.newBuilder().setStringValue(String.valueOf(event)).build()))
+                .build();
+    }
+    
+    private double metric(String name) {
+        try {
+            HttpResponse<String> response = httpClient.send(
+                    HttpRequest.newBuilder(URI.create(httpUrl + "/actuator/metrics/" + name)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            JsonNode measurements = objectMapper.readTree(response.body()).path("measurements");
+            return measurements.path(0).path("value").asDouble();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+    
+    private boolean serviceAvailable() {
+        try {
+            return httpClient.send(HttpRequest.newBuilder(URI.create(httpUrl + "/api/v1/notifications/health"))
+                    .timeout(Duration.ofSeconds(2)).build(), HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
+
@@ -0,0 +1,104 @@
+package com.notification.ingestion.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.notification.ingestion.dto.NotificationResponse;
+import com.notification.ingestion.exception.IdempotencyConflictException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IdempotencyServiceTest {
+    
+    // Redis as the service sees it
+    private final Map<String, String> redis = new HashMap<>();
+    private final AtomicInteger ingested = new AtomicInteger();
+    
+    private IdempotencyService service;
+    
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class)))
+                .thenAnswer(invocation -> redis.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1)) == null);
+        when(values.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> redis.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(values).set(anyString(), anyString(), any(Duration.class));
+        
+        service = new IdempotencyService(redisTemplate, new ObjectMapper().registerModule(new JavaTimeModule()));
+        ReflectionTestUtils.setField(service, "windowHours", 24L);
+        ReflectionTestUtils.setField(service, "inProgressSeconds", 60L);
+        ReflectionTestUtils.setField(service, "admissionQueueTimeoutMs", 2000L);
+        ReflectionTestUtils.setField(service, "cacheMaxEntries", 100);
+    }
+    
+    @Test
+    void retryWithTheSameKeyReplaysTheFirstResponse() {
+        NotificationResponse first = service.execute("acme", "1", "request", this::ingest).response();
+        IdempotencyService.Result retry = service.execute("acme", "1", "request", this::ingest);
+        
+        assertThat(retry.replayed()).isTrue();
+        assertThat(retry.response().getNotificationId()).isEqualTo(first.getNotificationId());
+        assertThat(ingested).hasValue(1);
+    }
+    
+    @Test
+    void sameKeyFromTwoTenantsDoesNotCollide() {
+        NotificationResponse acme = service.execute("acme", "1", "acme request", this::ingest).response();
+        IdempotencyService.Result globex = service.execute("globex", "1", "globex request", this::ingest);
+        
+        // Neither a conflict nor a replay of the other tenant's notification
+        assertThat(globex.replayed()).isFalse();
+        assertThat(globex.response().getNotificationId()).isNotEqualTo(acme.getNotificationId());
+        assertThat(ingested).hasValue(2);
+        assertThat(redis).containsOnlyKeys("notification:idempotency:acme:1", "notification:idempotency:globex:1");
+    }
+    
+    @Test
+    void sameKeyFromTwoTenantsDoesNotCollideOnAnotherInstance() {
+        service.execute("acme", "1", "acme request", this::ingest);
+        // Only Redis is shared with the instance that ingested acme's request
+        ((Map<?, ?>) ReflectionTestUtils.getField(service, "recent")).clear();
+        
+        IdempotencyService.Result globex = service.execute("globex", "1", "globex request", this::ingest);
+        
+        assertThat(globex.replayed()).isFalse();
+        assertThat(ingested).hasValue(2);
+    }
+    
+    @Test
+    void keyReusedForADifferentRequestOfTheSameTenantConflicts() {
+        service.execute("acme", "1", "request", this::ingest);
+        
+        assertThatThrownBy(() -> service.execute("acme", "1", "other request", this::ingest))
+                .isInstanceOf(IdempotencyConflictException.class);
+    }
+    
+    private NotificationResponse ingest() {
+        ingested.incrementAndGet();
+        return NotificationResponse.builder()
+                .notificationId(UUID.randomUUID())
+                .status("PENDING")
+                .build();
+    }
+}
+
@@ -0,0 +1,98 @@
+package com.notification.ingestion.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notification.ingestion.dto.NotificationRequest;
+import com.notification.ingestion.dto.RecipientRequest;
+import com.notification.ingestion.entity.Notification;
+import com.notification.ingestion.metrics.LatencyMetrics;
+import com.notification.ingestion.repository.NotificationRepository;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class NotificationIngestionServiceTest {
+    
+    private final NotificationRepository notificationRepository = mock(NotificationRepository.class);
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, Object> kafkaTemplate = mock(KafkaTemplate.class);
+    private final UnreadCounterService unreadCounterService = mock(UnreadCounterService.class);
+    private final NotificationQueryService notificationQueryService = mock(NotificationQueryService.class);
+    
+    private NotificationIngestionService service;
+    
+    @BeforeEach
+    void setUp() {
+        service = new NotificationIngestionService(notificationRepository, kafkaTemplate, new ObjectMapper(),
+                mock(PartitionKeyResolver.class), unreadCounterService, notificationQueryService,
+                mock(LatencyMetrics.class), mock(ClaimCheckService.class), mock(SegmentFanoutService.class));
+        ReflectionTestUtils.setField(service, "eventsTopic", "notification-events");
+        when(notificationRepository.save(any(Notification.class))).thenAnswer(invocation -> {
+            Notification notification = invocation.getArgument(0);
+            notification.setId(UUID.randomUUID());
+            return notification;
+        });
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.completedFuture(null));
+        // As in the transaction ingestNotification runs in
+        TransactionSynchronizationManager.initSynchronization();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+    
+    @Test
+    void countersAreUpdatedOnlyAfterCommit() {
+        service.ingestNotification(request("alice", "bob"));
+        
+        verifyNoInteractions(unreadCounterService, notificationQueryService);
+        
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        
+        verify(unreadCounterService).incrementAll(List.of("alice", "bob"));
+        verify(notificationQueryService).evictInbox("alice");
+        verify(notificationQueryService).evictInbox("bob");
+    }
+    
+    @Test
+    void rollbackLeavesCountersAlone() {
+        service.ingestNotification(request("alice"));
+        
+        TransactionSynchronizationManager.getSynchronizations().forEach(synchronization ->
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        
+        verify(unreadCounterService, never()).incrementAll(any());
+        verifyNoInteractions(notificationQueryService);
+    }
+    
+    private static NotificationRequest request(String... userIds) {
+        return NotificationRequest.builder()
+                .eventType("ORDER_SHIPPED")
+                .priority(NotificationRequest.Priority.HIGH)
+                .recipients(Arrays.stream(userIds)
+                        .map(userId -> RecipientRequest.builder()
+                                .userId(userId)
+                                .channels(List.of(RecipientRequest.Channel.EMAIL))
+                                .build())
+                        .toList())
+                .build();
+    }
+}
+
@@ -0,0 +1,224 @@
+package com.notification.ingestion.service;
+
+import com.notification.ingestion.dto.NotificationPage;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Read latency of the notification query API for a user with a long history: single
+ * notifications by id, every page of the inbox walked with the keyset cursor, and the unread
+ * count. The first-page cache is off, so every page is read from Postgres. Each read type must
+ * stay under 10ms at p99.
+ * <p>
+ * Not part of the regular build. Run against the Postgres and Redis from docker-compose up; the
+ * benchmark user's notifications are inserted first and deleted afterwards:
+ * <pre>
+ * mvn test -Dtest=NotificationReadLatencyBenchmark [-Dbenchmark.notifications=100000] [-Dbenchmark.reads=10000]
+ *          [-Dbenchmark.db.url=jdbc:postgresql://localhost:5432/notification_db]
+ *          [-Dbenchmark.db.user=notification_user] [-Dbenchmark.db.password=notification_pass]
+ *          [-Dbenchmark.redis.host=localhost] [-Dbenchmark.redis.port=6379]
+ * </pre>
+ * Without a reachable Postgres nothing is measured, and without Redis the unread count is not.
+ */
+class NotificationReadLatencyBenchmark {
+    
+    private static final String USER_ID = "benchmark-read-latency-user";
+    private static final long P99_LIMIT_NANOS = 10_000_000;
+    private static final int PAGE_SIZE = 20;
+    
+    private static final int notifications = Integer.getInteger("benchmark.notifications", 100_000);
+    private static final int reads = Integer.getInteger("benchmark.reads", 10_000);
+    
+    private static SingleConnectionDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static LettuceConnectionFactory connectionFactory;
+    private static RedisTemplate<String, String> redisTemplate;
+    private static UnreadCounterService unreadCounterService;
+    private static NotificationQueryService queryService;
+    private static List<UUID> ids;
+    
+    @BeforeAll
+    static void insertHistory() {
+        // One reused connection stands in for the service's warm connection pool
+        dataSource = new SingleConnectionDataSource(
+                System.getProperty("benchmark.db.url", "jdbc:postgresql://localhost:5432/notification_db"),
+                System.getProperty("benchmark.db.user", "notification_user"),
+                System.getProperty("benchmark.db.password", "notification_pass"), true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        Assumptions.assumeTrue(postgresAvailable(), "No Postgres to measure");
+        jdbcTemplate.update("DELETE FROM notifications WHERE user_id = ?", USER_ID);
+        
+        // One notification a minute back from now, ids generated as UUIDv7 at their creation time;
+        // the newest tenth is unread
+        ids = new ArrayList<>(notifications);
+        List<Object[]> rows = new ArrayList<>(1000);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < notifications; i++) {
+            long createdMillis = now - i * 60_000L;
+            UUID id = uuidV7(createdMillis);
+            ids.add(id);
+            Timestamp createdAt = Timestamp.valueOf(LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(createdMillis), ZoneId.systemDefault()));
+            rows.add(new Object[]{id, "ORDER_SHIPPED", "{\"orderId\": \"" + i + "\"}", createdAt, createdAt,
+                    i < notifications / 10 ? null : createdAt});
+            if (rows.size() == 1000 || i == notifications - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO notifications (id, user_id, event_type, priority, status, data, "
+                        + "created_at, updated_at, read_at) VALUES (?, '" + USER_ID + "', ?, 'MEDIUM', 'DELIVERED', "
+                        + "?::jsonb, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+        jdbcTemplate.execute("ANALYZE notifications");
+        
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("benchmark.redis.host", "localhost"), Integer.getInteger("benchmark.redis.port", 6379));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(new StringRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+        
+        unreadCounterService = new UnreadCounterService(redisTemplate, jdbcTemplate);
+        ReflectionTestUtils.setField(unreadCounterService, "counterTtlHours", 24L);
+        // No offloaded payloads are inserted, so the claim-check store is never asked
+        queryService = new NotificationQueryService(jdbcTemplate, unreadCounterService, null);
+        ReflectionTestUtils.setField(queryService, "defaultPageSize", PAGE_SIZE);
+        ReflectionTestUtils.setField(queryService, "maxPageSize", 100);
+        ReflectionTestUtils.setField(queryService, "cacheMaxEntries", 10_000);
+        ReflectionTestUtils.setField(queryService, "cacheTtlMs", 0L);
+    }
+    
+    @AfterAll
+    static void deleteHistory() {
+        if (jdbcTemplate == null) {
+            return;
+        }
+        jdbcTemplate.update("DELETE FROM notifications WHERE user_id = ?", USER_ID);
+        if (redisAvailable()) {
+            redisTemplate.delete("notification:unread:" + USER_ID);
+        }
+        connectionFactory.destroy();
+        dataSource.destroy();
+    }
+    
+    @Test
+    void notificationById() {
+        long[] latencies = measure(reads, () -> queryService.getNotification(
+                ids.get(ThreadLocalRandom.current().nextInt(ids.size()))));
+        assertP99("GET /{id}", latencies);
+    }
+    
+    @Test
+    void inboxPages() {
+        // Every page from the newest to the oldest, twice: the first walk warms up the JIT and the
+        // buffer cache
+        int pages = (notifications + PAGE_SIZE - 1) / PAGE_SIZE;
+        long[] latencies = new long[pages];
+        for (int walk = 0; walk < 2; walk++) {
+            String cursor = null;
+            int read = 0;
+            for (int page = 0; page < pages; page++) {
+                long start = System.nanoTime();
+                NotificationPage result = queryService.getInbox(USER_ID, cursor, PAGE_SIZE);
+                latencies[page] = System.nanoTime() - start;
+                read += result.getNotifications().size();
+                cursor = result.getNextCursor();
+            }
+            assertThat(read).isEqualTo(notifications);
+            assertThat(cursor).isNull();
+        }
+        assertP99("GET ?userId= (all " + pages + " pages)", latencies);
+    }
+    
+    @Test
+    void unreadCount() {
+        Assumptions.assumeTrue(redisAvailable(), "No Redis to measure");
+        redisTemplate.delete("notification:unread:" + USER_ID);
+        long start = System.nanoTime();
+        long unread = unreadCounterService.getUnreadCount(USER_ID);
+        System.out.printf("unread count built from Postgres in %.2f ms%n", (System.nanoTime() - start) / 1e6);
+        assertThat(unread).isEqualTo(notifications / 10);
+        
+        long[] latencies = measure(reads, () -> unreadCounterService.getUnreadCount(USER_ID));
+        assertP99("GET /unread-count", latencies);
+    }
+    
+    /**
+     * Runs the read as often again unmeasured first, to warm up the JIT and the buffer cache.
+     */
+    private static long[] measure(int count, Supplier<?> read) {
+        for (int i = 0; i < count; i++) {
+            read.get();
+        }
+        long[] latencies = new long[count];
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            read.get();
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+    
+    private static void assertP99(String name, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        long p50 = sorted[sorted.length / 2];
+        long p99 = sorted[(int) Math.ceil(sorted.length * 0.99) - 1];
+        System.out.printf("%s: %d reads, p50 %.2f ms, p99 %.2f ms, max %.2f ms%n", name, sorted.length,
+                p50 / 1e6, p99 / 1e6, sorted[sorted.length - 1] / 1e6);
+        assertThat(p99).as("%s p99", name).isLessThan(P99_LIMIT_NANOS);
+    }
+    
+    /**
+     * A UUIDv7 as UuidV7Generator would have generated it at the given time.
+     */
+    private static UUID uuidV7(long millis) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new UUID(millis << 16 | 0x7000L | random.nextInt(0x1000),
+                random.nextLong() >>> 2 | 0x8000000000000000L);
+    }
+    
+    private static boolean postgresAvailable() {
+        try {
+            jdbcTemplate.queryForObject("SELECT 1", Integer.class);
+            return true;
+        } catch (Exception e) {
+            jdbcTemplate = null;
+            return false;
+        }
+    }
+    
+    private static boolean redisAvailable() {
+        try {
+            return "PONG".equals(redisTemplate.execute(RedisConnection::ping));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
+
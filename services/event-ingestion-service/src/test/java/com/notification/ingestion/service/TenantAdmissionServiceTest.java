@@ -0,0 +1,68 @@
+package com.notification.ingestion.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notification.ingestion.dto.NotificationRequest;
+import com.notification.ingestion.dto.RecipientRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class TenantAdmissionServiceTest {
+    
+    private TenantAdmissionService service;
+    
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        PartitionKeyResolver partitionKeyResolver = new PartitionKeyResolver(new ObjectMapper());
+        ReflectionTestUtils.setField(partitionKeyResolver, "tenantField", "tenantId");
+        ReflectionTestUtils.setField(partitionKeyResolver, "tenantDelimiter", ":");
+        
+        service = new TenantAdmissionService(mock(RedisTemplate.class), partitionKeyResolver, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "defaultRate", 500.0);
+        ReflectionTestUtils.setField(service, "burstSeconds", 2.0);
+        ReflectionTestUtils.setField(service, "tenantQuotas", List.of("acme=2000:4"));
+        ReflectionTestUtils.setField(service, "maxConcurrent", 8);
+        ReflectionTestUtils.setField(service, "queueTimeoutMs", 2000L);
+        service.init();
+    }
+    
+    @Test
+    void acceptsListedTenants() {
+        assertThat(service.tenantOf("acme", request("user-1", Map.of()))).isEqualTo("acme");
+        assertThat(service.tenantOf(null, request("acme:user-1", Map.of()))).isEqualTo("acme");
+    }
+    
+    @Test
+    void requestsNamingNoTenantAreTheDefaultTenant() {
+        assertThat(service.tenantOf(" ", request("user-1", Map.of())))
+                .isEqualTo(TenantAdmissionService.DEFAULT_TENANT);
+    }
+    
+    @Test
+    void rejectsTenantsThatAreNotListed() {
+        assertThatThrownBy(() -> service.tenantOf("made-up", request("user-1", Map.of())))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.tenantOf(null, request("user-1", Map.of("tenantId", "made-up"))))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    private static NotificationRequest request(String userId, Map<String, Object> data) {
+        return NotificationRequest.builder()
+                .eventType("ORDER_SHIPPED")
+                .recipients(List.of(RecipientRequest.builder().userId(userId).build()))
+                .data(data)
+                .build();
+    }
+}
+
@@ -7,5 +7,19 @@ public interface NotificationChannel {
     String getChannelName();
     DeliveryResult deliver(DeliveryRequest request);
     boolean supportsChannel(String channelName);
+    
+    /**
+     * Sets what the channel reads from the data on the request, once before it is delivered.
+     */
+    default void prepare(DeliveryRequest request) {
+    }
+    
+    /**
+     * Calls with the same key share one adaptive concurrency limit; by default the channel.
+     * Null if {@link #deliver} takes its slots itself, e.g. one per retry attempt.
+     */
+    default String getLimitKey(DeliveryRequest request) {
+        return getChannelName();
+    }
 }
 
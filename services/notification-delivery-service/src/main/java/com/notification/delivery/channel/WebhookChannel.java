@@ -1,17 +1,20 @@
 package com.notification.delivery.channel;
 
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.notification.delivery.dto.DeliveryRequest;
 import com.notification.delivery.dto.DeliveryResult;
-import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
-import io.github.resilience4j.retry.annotation.Retry;
+import com.notification.delivery.exception.ChannelOverloadedException;
+import com.notification.delivery.service.ChannelConcurrencyLimiter;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.*;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
-import java.util.HashMap;
+import java.net.URI;
 import java.util.Map;
 
 @Component
@@ -19,58 +22,86 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class WebhookChannel implements NotificationChannel {
     
+    private static final TypeReference<Map<String, Object>> DATA_TYPE = new TypeReference<>() {
+    };
+    
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
+    private final WebhookEndpointRegistry webhookEndpointRegistry;
+    private final ChannelConcurrencyLimiter channelConcurrencyLimiter;
+    
+    /**
+     * The data is embedded as it came, so it is only parsed once, for the URL.
+     */
+    private record WebhookPayload(String notificationId, String userId, String eventType,
+                                  @JsonRawValue String data, long timestamp) {
+    }
     
     @Override
     public String getChannelName() {
         return "WEBHOOK";
     }
     
+    /**
+     * Reads the webhook URL from the data; an unreadable data leaves it unset.
+     */
+    @Override
+    public void prepare(DeliveryRequest request) {
+        try {
+            Object webhookUrl = objectMapper.readValue(request.getData(), DATA_TYPE).get("webhookUrl");
+            request.setWebhookUrl(webhookUrl instanceof String url && !url.isEmpty() ? url : null);
+        } catch (Exception e) {
+            log.warn("Unreadable webhook data for notification {}: {}", request.getNotificationId(), e.getMessage());
+        }
+    }
+    
+    /**
+     * Calls go through the circuit breaker and retry of the webhook's host, so a failing
+     * endpoint is shed without affecting the others. Each attempt takes its own slot of the
+     * host's concurrency limit, so the retry backoff does not hold one.
+     */
     @Override
-    @CircuitBreaker(name = "webhookChannel", fallbackMethod = "deliverFallback")
-    @Retry(name = "webhookChannel")
     public DeliveryResult deliver(DeliveryRequest request) {
         log.info("🔗 Delivering WEBHOOK notification");
         log.info("   NotificationId: {}", request.getNotificationId());
         log.info("   User: {}", request.getUserId());
         
+        String webhookUrl = request.getWebhookUrl();
+        if (webhookUrl == null) {
+            log.warn("⚠️ No webhook URL provided, skipping webhook delivery");
+            return DeliveryResult.success("WEBHOOK", "No webhook URL provided");
+        }
+        
         try {
-            // Extract webhook URL from data
-            Map<String, Object> dataMap = objectMapper.readValue(request.getData(), Map.class);
-            String webhookUrl = (String) dataMap.get("webhookUrl");
-            
-            if (webhookUrl == null || webhookUrl.isEmpty()) {
-                log.warn("⚠️ No webhook URL provided, skipping webhook delivery");
-                return DeliveryResult.success("WEBHOOK", "No webhook URL provided");
-            }
-            
-            // Prepare webhook payload
-            Map<String, Object> payload = new HashMap<>();
-            payload.put("notificationId", request.getNotificationId());
-            payload.put("userId", request.getUserId());
-            payload.put("eventType", request.getEventType());
-            payload.put("data", dataMap);
-            payload.put("timestamp", System.currentTimeMillis());
+            WebhookPayload payload = new WebhookPayload(request.getNotificationId(), request.getUserId(),
+                    request.getEventType(), request.getData(), System.currentTimeMillis());
             
             // Set headers
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
             
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(payload, headers);
+            HttpEntity<WebhookPayload> entity = new HttpEntity<>(payload, headers);
             
-            // Make HTTP POST request
+            // Make HTTP POST request; error statuses throw and count as failures of the host
             log.info("📤 Sending webhook to: {}", webhookUrl);
-            ResponseEntity<String> response = restTemplate.postForEntity(webhookUrl, entity, String.class);
-            
-            if (response.getStatusCode().is2xxSuccessful()) {
-                log.info("✅ WEBHOOK delivered successfully to: {}", webhookUrl);
-                return DeliveryResult.success("WEBHOOK", "Webhook delivered to " + webhookUrl);
-            } else {
-                log.error("❌ Webhook delivery failed with status: {}", response.getStatusCode());
-                return DeliveryResult.failure("WEBHOOK", "HTTP " + response.getStatusCode());
-            }
+            String host = hostOf(webhookUrl);
+            return webhookEndpointRegistry.endpointOf(host).call(breaker -> channelConcurrencyLimiter.execute(
+                    "WEBHOOK:" + host, () -> {
+                        ResponseEntity<String> response = breaker.get(
+                                () -> restTemplate.postForEntity(webhookUrl, entity, String.class));
+                        if (response.getStatusCode().is2xxSuccessful()) {
+                            log.info("✅ WEBHOOK delivered successfully to: {}", webhookUrl);
+                            return DeliveryResult.success("WEBHOOK", "Webhook delivered to " + webhookUrl);
+                        }
+                        log.error("❌ Webhook delivery failed with status: {}", response.getStatusCode());
+                        return DeliveryResult.failure("WEBHOOK", "HTTP " + response.getStatusCode());
+                    }));
             
+        } catch (ChannelOverloadedException e) {
+            throw e;
+        } catch (CallNotPermittedException e) {
+            log.warn("🔴 Circuit breaker open, not calling webhook: {}", e.getMessage());
+            return DeliveryResult.failure("WEBHOOK", "Circuit breaker open: " + e.getMessage());
         } catch (Exception e) {
             log.error("❌ Failed to deliver WEBHOOK: {}", e.getMessage());
             return DeliveryResult.failure("WEBHOOK", e.getMessage());
@@ -82,10 +113,18 @@ public class WebhookChannel implements NotificationChannel {
         return "WEBHOOK".equalsIgnoreCase(channelName);
     }
     
-    // Fallback method for circuit breaker
-    public DeliveryResult deliverFallback(DeliveryRequest request, Exception e) {
-        log.error("🔴 Circuit breaker/Retry fallback for WEBHOOK. Error: {}", e.getMessage());
-        return DeliveryResult.failure("WEBHOOK", "Circuit breaker open or max retries: " + e.getMessage());
+    /**
+     * Webhook receivers are independent services, so each host gets its own limit, which
+     * {@link #deliver} takes once per attempt.
+     */
+    @Override
+    public String getLimitKey(DeliveryRequest request) {
+        return null;
+    }
+    
+    private static String hostOf(String url) {
+        URI uri = URI.create(url);
+        return uri.getPort() != -1 ? uri.getHost() + ":" + uri.getPort() : uri.getHost();
     }
 }
 
@@ -0,0 +1,182 @@
+package com.notification.delivery.channel;
+
+import com.notification.delivery.dto.WebhookEndpointStats;
+import com.notification.delivery.exception.ChannelOverloadedException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker and retry per webhook host, so one customer's dead endpoint is shed on its
+ * own while every other endpoint keeps being called normally. Configured by the
+ * {@code webhookEndpoint} entries under {@code resilience4j.*.configs}.
+ * <p>
+ * Breakers are created outside the resilience4j registries, in a map bounded to
+ * {@code max-endpoints} (least recently used evicted first) from which endpoints idle for
+ * {@code expire-after-idle-minutes} are swept, so any number of distinct URLs cannot leak memory.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookEndpointRegistry {
+    
+    private static final String CONFIG_NAME = "webhookEndpoint";
+    
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final RetryRegistry retryRegistry;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${notification.delivery.channels.webhook.max-endpoints:10000}")
+    private int maxEndpoints;
+    
+    @Value("${notification.delivery.channels.webhook.expire-after-idle-minutes:30}")
+    private long expireAfterIdleMinutes;
+    
+    private CircuitBreakerConfig circuitBreakerConfig;
+    private RetryConfig retryConfig;
+    
+    private final Map<String, Endpoint> endpoints = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Endpoint> eldest) {
+            return size() > maxEndpoints;
+        }
+    };
+    
+    /**
+     * Breaker and retry of one host.
+     */
+    public static final class Endpoint {
+        private final CircuitBreaker circuitBreaker;
+        private final Retry retry;
+        private volatile long lastUsedAt = System.currentTimeMillis();
+        
+        private Endpoint(CircuitBreaker circuitBreaker, Retry retry) {
+            this.circuitBreaker = circuitBreaker;
+            this.retry = retry;
+        }
+        
+        /**
+         * Runs an attempt per try, retrying failed attempts while the breaker permits calls. An
+         * attempt passes its call through the {@link Breaker} it is given; every call counts
+         * towards the breaker. The attempt can wrap that call, e.g. in a concurrency slot that
+         * is then not held during the backoff between attempts.
+         *
+         * @throws CallNotPermittedException if the breaker is open
+         */
+        public <T> T call(Function<Breaker, T> attempt) {
+            lastUsedAt = System.currentTimeMillis();
+            return Retry.decorateSupplier(retry, () -> attempt.apply(this::callThroughBreaker)).get();
+        }
+        
+        private <R> R callThroughBreaker(Supplier<R> call) {
+            return circuitBreaker.executeSupplier(call);
+        }
+    }
+    
+    /**
+     * The circuit breaker of a host, as seen by one attempt.
+     */
+    @FunctionalInterface
+    public interface Breaker {
+        <R> R get(Supplier<R> call);
+    }
+    
+    @PostConstruct
+    public void init() {
+        circuitBreakerConfig = circuitBreakerRegistry.getConfiguration(CONFIG_NAME)
+                .orElse(circuitBreakerRegistry.getDefaultConfig());
+        // An open breaker or a full concurrency limit fails fast; retrying would only wait for nothing
+        retryConfig = RetryConfig.from(retryRegistry.getConfiguration(CONFIG_NAME)
+                        .orElse(retryRegistry.getDefaultConfig()))
+                .ignoreExceptions(CallNotPermittedException.class, ChannelOverloadedException.class)
+                .build();
+        Gauge.builder("notification.webhook.endpoints", this, registry -> registry.count(null))
+                .description("Webhook hosts with a circuit breaker")
+                .register(meterRegistry);
+        Gauge.builder("notification.webhook.endpoints.open", this, registry -> registry.count(CircuitBreaker.State.OPEN))
+                .description("Webhook hosts whose circuit breaker is open")
+                .register(meterRegistry);
+    }
+    
+    public Endpoint endpointOf(String host) {
+        synchronized (endpoints) {
+            return endpoints.computeIfAbsent(host, key -> new Endpoint(
+                    CircuitBreaker.of("webhook:" + key, circuitBreakerConfig),
+                    Retry.of("webhook:" + key, retryConfig)));
+        }
+    }
+    
+    /**
+     * @return the hosts with the highest failure rates first
+     */
+    public List<WebhookEndpointStats> getStats(int limit) {
+        List<Map.Entry<String, Endpoint>> entries;
+        synchronized (endpoints) {
+            entries = new ArrayList<>(endpoints.entrySet());
+        }
+        return entries.stream()
+                .map(entry -> {
+                    CircuitBreaker.Metrics metrics = entry.getValue().circuitBreaker.getMetrics();
+                    return WebhookEndpointStats.builder()
+                            .host(entry.getKey())
+                            .state(entry.getValue().circuitBreaker.getState().name())
+                            .failureRate(metrics.getFailureRate())
+                            .bufferedCalls(metrics.getNumberOfBufferedCalls())
+                            .failedCalls(metrics.getNumberOfFailedCalls())
+                            .notPermittedCalls(metrics.getNumberOfNotPermittedCalls())
+                            .lastUsedAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.getValue().lastUsedAt),
+                                    ZoneId.systemDefault()))
+                            .build();
+                })
+                .sorted(Comparator.comparing(WebhookEndpointStats::getFailureRate).reversed())
+                .limit(limit)
+                .toList();
+    }
+    
+    @Scheduled(fixedDelayString = "${notification.delivery.channels.webhook.sweep-interval-ms:60000}")
+    public void expireIdle() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(expireAfterIdleMinutes);
+        int expired;
+        synchronized (endpoints) {
+            int before = endpoints.size();
+            endpoints.values().removeIf(endpoint -> endpoint.lastUsedAt < cutoff);
+            expired = before - endpoints.size();
+        }
+        if (expired > 0) {
+            log.debug("Expired {} idle webhook endpoints", expired);
+        }
+    }
+    
+    private int count(CircuitBreaker.State state) {
+        synchronized (endpoints) {
+            return state == null ? endpoints.size() : (int) endpoints.values().stream()
+                    .filter(endpoint -> endpoint.circuitBreaker.getState() == state)
+                    .count();
+        }
+    }
+}
+
@@ -1,16 +1,38 @@
 package com.notification.delivery.config;
 
+import com.notification.delivery.consumer.ParallelRecordDispatcher;
+import com.notification.delivery.handler.RetryHandler;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ContainerPausingBackOffHandler;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.listener.ListenerContainerPauseService;
+import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.scheduling.TaskScheduler;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Configuration
@@ -22,14 +44,28 @@ public class KafkaConfig {
     @Value("${spring.kafka.consumer.group-id}")
     private String groupId;
     
+    @Value("${spring.kafka.listener.concurrency:3}")
+    private int concurrency;
+    
+    @Value("${spring.kafka.listener.auto-startup:true}")
+    private boolean autoStartup;
+    
+    @Value("${notification.kafka.topics.dlq}")
+    private String dlqTopic;
+    
     @Bean
     public ConsumerFactory<String, Object> consumerFactory() {
         Map<String, Object> config = new HashMap<>();
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
+        // Poison pills surface as DeserializationException to the error handler instead of
+        // failing every poll
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class);
         config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        // Skips records of aborted processing transactions (exactly-once mode upstream)
+        config.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
         config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
         config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 50);
         config.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
@@ -39,14 +75,90 @@ public class KafkaConfig {
     }
     
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(
+            ParallelRecordDispatcher parallelRecordDispatcher, DefaultErrorHandler kafkaErrorHandler) {
         ConcurrentKafkaListenerContainerFactory<String, Object> factory = 
             new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
         factory.getContainerProperties().setAckMode(
             org.springframework.kafka.listener.ContainerProperties.AckMode.MANUAL);
-        factory.setConcurrency(3);
+        factory.setConcurrency(concurrency);
+        factory.setAutoStartup(autoStartup);
+        // Drops offset tracking for revoked partitions in parallel consumer mode
+        factory.getContainerProperties().setConsumerRebalanceListener(parallelRecordDispatcher);
+        factory.setCommonErrorHandler(kafkaErrorHandler);
+        // Lets a redelivered record skip the channels an earlier attempt already delivered to
+        factory.getContainerProperties().setDeliveryAttemptHeader(true);
         return factory;
     }
+    
+    /**
+     * Retries retryable failures with exponential backoff and publishes the record to the DLQ
+     * once attempts are exhausted, or immediately for non-retryable failures. The backoff pauses
+     * the container instead of sleeping on the consumer thread, so polling continues.
+     */
+    @Bean
+    public DefaultErrorHandler kafkaErrorHandler(RetryHandler retryHandler,
+                                                 KafkaListenerEndpointRegistry listenerEndpointRegistry,
+                                                 TaskScheduler taskScheduler) {
+        ExponentialBackOffWithMaxRetries backOff =
+            new ExponentialBackOffWithMaxRetries(retryHandler.getMaxAttempts() - 1);
+        backOff.setInitialInterval(retryHandler.getInitialIntervalMs());
+        backOff.setMultiplier(retryHandler.getMultiplier());
+        backOff.setMaxInterval(retryHandler.getMaxIntervalMs());
+        
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(retryHandler::sendToDLQ, backOff,
+            new ContainerPausingBackOffHandler(
+                new ListenerContainerPauseService(listenerEndpointRegistry, taskScheduler)));
+        RetryHandler.NON_RETRYABLE_EXCEPTIONS.forEach(errorHandler::addNotRetryableExceptions);
+        return errorHandler;
+    }
+    
+    @Bean
+    public DeadLetterPublishingRecoverer deadLetterPublishingRecoverer(KafkaTemplate<String, Object> kafkaTemplate) {
+        Map<Class<?>, KafkaOperations<?, ?>> templates = new LinkedHashMap<>();
+        // Payloads that could not be deserialized are republished as the raw bytes received
+        templates.put(byte[].class, new KafkaTemplate<>(dlqBytesProducerFactory()));
+        templates.put(Object.class, kafkaTemplate);
+        
+        // Partition left to the producer; the original partition/offset travel as headers
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(templates,
+            (record, exception) -> new TopicPartition(dlqTopic, -1));
+        recoverer.setHeadersFunction((record, exception) -> {
+            RecordHeaders headers = new RecordHeaders();
+            headers.add(RetryHandler.FAILURE_STAGE_HEADER,
+                RetryHandler.FAILURE_STAGE.getBytes(StandardCharsets.UTF_8));
+            return headers;
+        });
+        return recoverer;
+    }
+    
+    @Bean
+    public ProducerFactory<String, Object> producerFactory() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        config.put(ProducerConfig.ACKS_CONFIG, "all");
+        config.put(ProducerConfig.RETRIES_CONFIG, 3);
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        return new DefaultKafkaProducerFactory<>(config);
+    }
+    
+    @Bean
+    public KafkaTemplate<String, Object> kafkaTemplate() {
+        return new KafkaTemplate<>(producerFactory());
+    }
+    
+    @Bean
+    public ProducerFactory<String, byte[]> dlqBytesProducerFactory() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        config.put(ProducerConfig.ACKS_CONFIG, "all");
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        return new DefaultKafkaProducerFactory<>(config);
+    }
 }
 
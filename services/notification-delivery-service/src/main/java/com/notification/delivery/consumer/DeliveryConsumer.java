@@ -1,62 +1,167 @@
 package com.notification.delivery.consumer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notification.delivery.metrics.PipelineTimestamps;
 import com.notification.delivery.model.ProcessedEvent;
 import com.notification.delivery.service.DeliveryService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.AbstractConsumerSeekAware;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.kafka.support.KafkaHeaders;
-import org.springframework.messaging.handler.annotation.Header;
-import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @RequiredArgsConstructor
 @Slf4j
-public class DeliveryConsumer {
+public class DeliveryConsumer extends AbstractConsumerSeekAware {
+    
+    public static final String LISTENER_ID = "deliveryConsumer";
+    public static final String DEFERRED_LISTENER_ID = "deferredDeliveryConsumer";
     
     private final DeliveryService deliveryService;
     private final ObjectMapper objectMapper;
+    private final ParallelRecordDispatcher parallelRecordDispatcher;
+    private final OverloadController overloadController;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${notification.kafka.topics.deferred}")
+    private String deferredTopic;
+    
+    @Value("${notification.delivery.overload.defer-timeout-ms:10000}")
+    private long deferTimeoutMs;
+    
+    private final Map<String, Counter> deferredCounters = new ConcurrentHashMap<>();
     
     @KafkaListener(
+        id = LISTENER_ID,
         topics = "${notification.kafka.topics.input}",
         groupId = "${spring.kafka.consumer.group-id}",
         containerFactory = "kafkaListenerContainerFactory"
     )
-    public void consume(
-            @Payload Map<String, Object> message,
-            @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
-            @Header(KafkaHeaders.OFFSET) long offset,
-            Acknowledgment acknowledgment) {
+    public void consume(ConsumerRecord<String, Object> record, Acknowledgment acknowledgment) {
+        if (parallelRecordDispatcher.isEnabled()) {
+            // Offsets are acknowledged by the dispatcher once all earlier records have completed
+            parallelRecordDispatcher.dispatch(record, acknowledgment, seekCallbackOf(record),
+                    attempt -> processOrDefer(record, attempt));
+            return;
+        }
+        
+        processOrDefer(record, deliveryAttempt(record));
         
+        // Acknowledge message
+        acknowledgment.acknowledge();
+    }
+    
+    /**
+     * Deliveries deferred under overload. Paused by the {@link OverloadController} while it sheds
+     * load; records taken are delivered whatever the level, so nothing is deferred twice. They are
+     * delivered one at a time on the listener thread even in parallel mode: handed to the worker
+     * pool, the deferred backlog would queue ahead of new HIGH deliveries.
+     */
+    @KafkaListener(
+        id = DEFERRED_LISTENER_ID,
+        topics = "${notification.kafka.topics.deferred}",
+        groupId = "${spring.kafka.consumer.group-id}-deferred",
+        containerFactory = "kafkaListenerContainerFactory",
+        concurrency = "1"
+    )
+    public void consumeDeferred(ConsumerRecord<String, Object> record, Acknowledgment acknowledgment) {
+        process(record, deliveryAttempt(record));
+        acknowledgment.acknowledge();
+    }
+    
+    private void processOrDefer(ConsumerRecord<String, Object> record, int attempt) {
+        Object priority = record.value() instanceof Map<?, ?> value ? value.get("priority") : null;
+        if (attempt == 1 && overloadController.shouldDefer(priority != null ? priority.toString() : null)
+                && defer(record, priority)) {
+            return;
+        }
+        process(record, attempt);
+    }
+    
+    /**
+     * Republishes the record to the deferral topic with its headers, so pipeline timestamps keep
+     * counting the time deferred.
+     *
+     * @return false if it could not be published; it is then delivered right away
+     */
+    private boolean defer(ConsumerRecord<String, Object> record, Object priority) {
+        ProducerRecord<String, Object> deferred = new ProducerRecord<>(deferredTopic, null, record.key(),
+                record.value());
+        for (Header header : record.headers()) {
+            if (!KafkaHeaders.DELIVERY_ATTEMPT.equals(header.key())) {
+                deferred.headers().add(header);
+            }
+        }
         try {
-            log.info("📬 Received processed notification from partition: {}, offset: {}", partition, offset);
-            
-            // Convert Map to ProcessedEvent
-            ProcessedEvent event = objectMapper.convertValue(message, ProcessedEvent.class);
-            
-            log.info("📦 Processing delivery for notification: {}", event.getNotificationId());
-            
-            // Process delivery through all channels
-            deliveryService.processDelivery(event);
-            
-            // Acknowledge message
-            acknowledgment.acknowledge();
-            
-            log.info("✅ Successfully processed and acknowledged delivery. NotificationId: {}", 
-                    event.getNotificationId());
-            
+            kafkaTemplate.send(deferred).get(deferTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         } catch (Exception e) {
-            log.error("❌ Error consuming message from partition: {}, offset: {}. Error: {}", 
-                    partition, offset, e.getMessage(), e);
-            
-            // Acknowledge anyway to avoid blocking the consumer
-            acknowledgment.acknowledge();
+            log.warn("Could not defer offset {} of {}-{}, delivering now: {}", record.offset(), record.topic(),
+                    record.partition(), e.getMessage());
+            return false;
         }
+        deferredCounters.computeIfAbsent(String.valueOf(priority), this::deferredCounter).increment();
+        log.debug("Deferred {} priority offset {} of {}-{}", priority, record.offset(), record.topic(),
+                record.partition());
+        return true;
+    }
+    
+    private Counter deferredCounter(String priority) {
+        return Counter.builder("notification.delivery.deferred")
+                .description("Deliveries deferred by load shedding")
+                .tag("priority", priority)
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Failures propagate: the container's error handler (or the parallel dispatcher) retries
+     * retryable ones with backoff and publishes the record to the DLQ when it gives up.
+     */
+    private void process(ConsumerRecord<String, Object> record, int attempt) {
+        log.info("📬 Received processed notification from partition: {}, offset: {}, attempt: {}",
+                record.partition(), record.offset(), attempt);
+        
+        // Convert Map to ProcessedEvent
+        ProcessedEvent event = objectMapper.convertValue(record.value(), ProcessedEvent.class);
+        PipelineTimestamps timestamps = PipelineTimestamps.fromHeaders(record.headers(), record.timestamp());
+        
+        log.info("📦 Processing delivery for notification: {}", event.getNotificationId());
+        
+        // Process delivery through all channels
+        deliveryService.processDelivery(event, timestamps, attempt);
+        
+        log.info("✅ Successfully processed delivery. NotificationId: {}", event.getNotificationId());
+    }
+    
+    private int deliveryAttempt(ConsumerRecord<String, Object> record) {
+        Header header = record.headers().lastHeader(KafkaHeaders.DELIVERY_ATTEMPT);
+        return header != null ? ByteBuffer.wrap(header.value()).getInt() : 1;
+    }
+    
+    /**
+     * Seeks requested by the dispatcher from worker threads are queued and run by the consumer.
+     */
+    private ConsumerSeekCallback seekCallbackOf(ConsumerRecord<String, Object> record) {
+        return getSeekCallbackFor(new TopicPartition(record.topic(), record.partition()));
     }
 }
 
@@ -0,0 +1,151 @@
+package com.notification.delivery.consumer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adjusts in-process parallelism within configured bounds from consumer lag samples: the worker
+ * pool size in parallel consumer mode, otherwise the listener container's concurrency.
+ * Scale-up is applied as soon as lag calls for it; scale-down happens one step at a time and only
+ * after lag has stayed low for the cooldown period, so short dips don't cause rebalance churn.
+ * <p>
+ * The processing service has its own copy for its listener (see Shared Code in
+ * docs/architecture.md); change both together.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ListenerConcurrencyController {
+    
+    private final KafkaListenerEndpointRegistry listenerEndpointRegistry;
+    private final MeterRegistry meterRegistry;
+    private final ParallelRecordDispatcher parallelRecordDispatcher;
+    
+    @Value("${notification.kafka.scaling.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${spring.kafka.listener.concurrency:3}")
+    private int initialConcurrency;
+    
+    @Value("${notification.kafka.scaling.min-concurrency:1}")
+    private int minConcurrency;
+    
+    @Value("${notification.kafka.scaling.max-concurrency:6}")
+    private int maxConcurrency;
+    
+    @Value("${notification.kafka.scaling.target-lag-per-consumer:1000}")
+    private long targetLagPerConsumer;
+    
+    @Value("${notification.kafka.scaling.scale-down-cooldown-ms:60000}")
+    private long scaleDownCooldownMs;
+    
+    @Value("${notification.kafka.parallel.workers:16}")
+    private int initialWorkers;
+    
+    @Value("${notification.kafka.parallel.min-workers:4}")
+    private int minWorkers;
+    
+    @Value("${notification.kafka.parallel.max-workers:64}")
+    private int maxWorkers;
+    
+    @Value("${notification.kafka.parallel.target-lag-per-worker:100}")
+    private long targetLagPerWorker;
+    
+    private final AtomicInteger currentConcurrency = new AtomicInteger();
+    private volatile boolean restarting;
+    private long lowLagSince;
+    
+    @PostConstruct
+    public void init() {
+        currentConcurrency.set(parallelRecordDispatcher.isEnabled() ? initialWorkers : initialConcurrency);
+        Gauge.builder("notification.consumer.concurrency", currentConcurrency, AtomicInteger::get)
+                .description("Current listener concurrency, or worker count in parallel mode")
+                .register(meterRegistry);
+    }
+    
+    public synchronized void onLagSample(long totalLag, double processingRate, int partitionCount) {
+        if (!enabled || restarting) {
+            return;
+        }
+        
+        boolean parallel = parallelRecordDispatcher.isEnabled();
+        int lowerBound = parallel ? minWorkers : minConcurrency;
+        // More consumers than partitions would just sit idle; workers are not bound by partitions
+        int upperBound = parallel ? maxWorkers : Math.max(minConcurrency, Math.min(maxConcurrency, partitionCount));
+        long lagPerUnit = parallel ? targetLagPerWorker : targetLagPerConsumer;
+        
+        int desired = (int) Math.ceil((double) totalLag / lagPerUnit);
+        desired = Math.max(lowerBound, Math.min(upperBound, desired));
+        int current = currentConcurrency.get();
+        
+        if (desired > current) {
+            lowLagSince = 0;
+            log.info("Lag {} (rate {}/s) above target, scaling concurrency {} -> {}",
+                    totalLag, String.format("%.1f", processingRate), current, desired);
+            resize(desired);
+        } else if (desired < current) {
+            long now = System.currentTimeMillis();
+            if (lowLagSince == 0) {
+                lowLagSince = now;
+            } else if (now - lowLagSince >= scaleDownCooldownMs) {
+                lowLagSince = 0;
+                log.info("Lag {} below target for {}ms, scaling concurrency {} -> {}",
+                        totalLag, scaleDownCooldownMs, current, current - 1);
+                resize(current - 1);
+            }
+        } else {
+            lowLagSince = 0;
+        }
+    }
+    
+    public int getCurrentConcurrency() {
+        return currentConcurrency.get();
+    }
+    
+    private void resize(int target) {
+        if (parallelRecordDispatcher.isEnabled()) {
+            // Resizing the worker pool needs no rebalance
+            parallelRecordDispatcher.setParallelism(target);
+            currentConcurrency.set(target);
+            return;
+        }
+        
+        MessageListenerContainer container =
+                listenerEndpointRegistry.getListenerContainer(DeliveryConsumer.LISTENER_ID);
+        if (!(container instanceof ConcurrentMessageListenerContainer<?, ?> concurrentContainer)
+                || !container.isRunning()) {
+            log.debug("Listener container not running, skipping concurrency change");
+            return;
+        }
+        
+        // Concurrency can only change while stopped; the restart triggers one rebalance. The stop
+        // is asynchronous, so the new value only counts once the container runs with it again
+        restarting = true;
+        concurrentContainer.stop(() -> {
+            try {
+                concurrentContainer.setConcurrency(target);
+                concurrentContainer.start();
+                if (concurrentContainer.isRunning()) {
+                    currentConcurrency.set(target);
+                } else {
+                    log.warn("Listener container did not restart with concurrency {}", target);
+                }
+            } catch (Exception e) {
+                log.error("Could not restart listener container with concurrency {}: {}", target, e.getMessage(), e);
+            } finally {
+                restarting = false;
+            }
+        });
+    }
+}
+
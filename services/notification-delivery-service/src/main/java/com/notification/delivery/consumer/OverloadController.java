@@ -0,0 +1,141 @@
+package com.notification.delivery.consumer;
+
+import com.notification.delivery.metrics.ConsumerLagMonitor;
+import com.notification.delivery.service.ChannelConcurrencyLimiter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Priority-aware load shedding. Pressure is the highest of consumer lag, parallel in-flight
+ * records and provider saturation (in-flight against the adaptive channel limits), each relative
+ * to its threshold. While it is at or above 1 the shedding level rises one step per
+ * {@code escalate-interval-ms}: first LOW, then also MEDIUM deliveries are deferred to the
+ * deferral topic, so the consumer gets through to HIGH ones without waiting on providers.
+ * <p>
+ * Once pressure has stayed below {@code recover-ratio} for {@code recover-cooldown-ms} the level
+ * drops one step again, and at the normal level the deferral topic is consumed again. Pressure
+ * may be low only because of the shedding, so if it returns right after a step down the level
+ * goes back up without waiting for the escalation interval.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OverloadController {
+    
+    public enum Level {
+        NORMAL, DEFER_LOW, DEFER_MEDIUM
+    }
+    
+    private final ConsumerLagMonitor consumerLagMonitor;
+    private final ParallelRecordDispatcher parallelRecordDispatcher;
+    private final ChannelConcurrencyLimiter channelConcurrencyLimiter;
+    private final KafkaListenerEndpointRegistry listenerEndpointRegistry;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${notification.delivery.overload.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${notification.delivery.overload.lag-high:5000}")
+    private long lagHigh;
+    
+    @Value("${notification.delivery.overload.in-flight-high-ratio:0.8}")
+    private double inFlightHighRatio;
+    
+    @Value("${notification.delivery.overload.saturation-high:0.9}")
+    private double saturationHigh;
+    
+    @Value("${notification.delivery.overload.recover-ratio:0.5}")
+    private double recoverRatio;
+    
+    @Value("${notification.delivery.overload.escalate-interval-ms:5000}")
+    private long escalateIntervalMs;
+    
+    @Value("${notification.delivery.overload.recover-cooldown-ms:30000}")
+    private long recoverCooldownMs;
+    
+    private volatile Level level = Level.NORMAL;
+    private volatile double pressure;
+    private long changedAt;
+    private long calmSince;
+    
+    @PostConstruct
+    public void init() {
+        Gauge.builder("notification.delivery.overload.level", this, controller -> controller.level.ordinal())
+                .description("Load shedding level: 0 normal, 1 LOW deferred, 2 LOW and MEDIUM deferred")
+                .register(meterRegistry);
+        Gauge.builder("notification.delivery.overload.pressure", this, controller -> controller.pressure)
+                .description("Highest load signal relative to its threshold")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Whether a delivery of this priority is to be deferred at the current level.
+     */
+    public boolean shouldDefer(String priority) {
+        return switch (level) {
+            case NORMAL -> false;
+            case DEFER_LOW -> "LOW".equals(priority);
+            case DEFER_MEDIUM -> !"HIGH".equals(priority);
+        };
+    }
+    
+    public Level getLevel() {
+        return level;
+    }
+    
+    @Scheduled(fixedDelayString = "${notification.delivery.overload.evaluate-interval-ms:1000}")
+    public synchronized void evaluate() {
+        if (!enabled) {
+            return;
+        }
+        pressure = Math.max((double) consumerLagMonitor.getTotalLag() / lagHigh,
+                Math.max(parallelRecordDispatcher.getInFlightRatio() / inFlightHighRatio,
+                        channelConcurrencyLimiter.getSaturation() / saturationHigh));
+        
+        long now = System.currentTimeMillis();
+        Level current = level;
+        if (pressure >= 1) {
+            calmSince = 0;
+            if (current != Level.DEFER_MEDIUM && now - changedAt >= escalateIntervalMs) {
+                changeLevel(Level.values()[current.ordinal() + 1], now);
+            }
+        } else if (pressure < recoverRatio && current != Level.NORMAL) {
+            if (calmSince == 0) {
+                calmSince = now;
+            } else if (now - calmSince >= recoverCooldownMs) {
+                calmSince = 0;
+                changeLevel(Level.values()[current.ordinal() - 1], now);
+                // Not held back by the escalation interval should pressure return
+                changedAt = 0;
+            }
+        } else {
+            calmSince = 0;
+        }
+        
+        // Deferred deliveries are only picked up again once nothing is shed
+        MessageListenerContainer deferred =
+                listenerEndpointRegistry.getListenerContainer(DeliveryConsumer.DEFERRED_LISTENER_ID);
+        if (deferred != null) {
+            if (level != Level.NORMAL && !deferred.isPauseRequested()) {
+                deferred.pause();
+            } else if (level == Level.NORMAL && deferred.isPauseRequested()) {
+                deferred.resume();
+            }
+        }
+    }
+    
+    private void changeLevel(Level next, long now) {
+        log.warn("Delivery pressure {}: load shedding level {} -> {}", String.format("%.2f", pressure), level, next);
+        level = next;
+        changedAt = now;
+    }
+}
+
@@ -0,0 +1,233 @@
+package com.notification.delivery.consumer;
+
+import com.notification.delivery.handler.RetryHandler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ConsumerSeekAware.ConsumerSeekCallback;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Parallel consumer mode: fans records of a partition out to a {@link KeyOrderedExecutor}
+ * so independent notifications are delivered concurrently while records sharing an ordering
+ * key (the record key, or the payload's userId) stay in order. Offsets are committed per
+ * partition at the highest contiguous completed offset tracked by {@link PartitionOffsetTracker}.
+ * <p>
+ * The container's error handler never sees failures in this mode, so the dispatcher applies the
+ * same {@link RetryHandler} policy itself: retries are scheduled after the backoff delay without
+ * holding a worker, later records of the same key wait, and a record given up on is published to
+ * the DLQ before its offset may be committed. Should that publish fail too, the partition is sought
+ * back to its first uncommitted offset and consumed again from there.
+ * <p>
+ * The processing service has its own copy for its consumer (see Shared Code in
+ * docs/architecture.md); change both together.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ParallelRecordDispatcher implements ConsumerAwareRebalanceListener {
+    
+    private final MeterRegistry meterRegistry;
+    private final RetryHandler retryHandler;
+    
+    @Value("${notification.kafka.parallel.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${notification.kafka.parallel.workers:16}")
+    private int initialWorkers;
+    
+    @Value("${notification.kafka.parallel.max-in-flight:1000}")
+    private int maxInFlight;
+    
+    @Value("${notification.kafka.parallel.ordering-key:key}")
+    private String orderingKey;  // key, userId
+    
+    private KeyOrderedExecutor executor;
+    private final Map<TopicPartition, PartitionOffsetTracker> trackers = new ConcurrentHashMap<>();
+    private Counter rewinds;
+    
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        executor = new KeyOrderedExecutor("delivery-worker", initialWorkers, maxInFlight);
+        Gauge.builder("notification.consumer.parallel.in_flight", executor, KeyOrderedExecutor::getInFlight)
+                .description("Records dispatched to workers and not yet completed")
+                .register(meterRegistry);
+        Gauge.builder("notification.consumer.parallel.workers", executor, KeyOrderedExecutor::getParallelism)
+                .description("Worker threads in the parallel consumer pool")
+                .register(meterRegistry);
+        Gauge.builder("notification.consumer.parallel.oldest_pending.age", this,
+                        ParallelRecordDispatcher::getOldestPendingAgeMillis)
+                .description("Age of the oldest record holding back a partition's commit")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        rewinds = Counter.builder("notification.consumer.parallel.rewinds")
+                .description("Partitions sought back after a record could not be published to the DLQ")
+                .register(meterRegistry);
+        log.info("Parallel consumer mode enabled with {} workers, max {} in flight, ordered by {}",
+                initialWorkers, maxInFlight, orderingKey);
+    }
+    
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdown(30_000);
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Hands the record to the worker pool. Blocks the listener thread while the in-flight bound
+     * is reached, which is the backpressure towards the broker.
+     *
+     * @param seekCallback the listener container's callback for the record's partition
+     */
+    public void dispatch(ConsumerRecord<String, Object> record, Acknowledgment acknowledgment,
+                         ConsumerSeekCallback seekCallback, IntConsumer work) {
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        PartitionOffsetTracker tracker = trackers.computeIfAbsent(partition, tp -> new PartitionOffsetTracker());
+        if (!tracker.dispatched(record.offset(), acknowledgment)) {
+            log.debug("Skipping offset {} of {} fetched before the partition was rewound", record.offset(), partition);
+            return;
+        }
+        
+        try {
+            executor.submit(orderingKey(record), () -> attempt(record, work, 1)).whenComplete((result, error) -> {
+                if (error != null) {
+                    rewind(partition, tracker, seekCallback, record.offset(), error);
+                    return;
+                }
+                // Partition revoked meanwhile; its new owner will redeliver from the last commit
+                if (trackers.get(partition) != tracker) {
+                    return;
+                }
+                Acknowledgment commit = tracker.completed(record.offset());
+                if (commit != null) {
+                    commit.acknowledge();
+                }
+            });
+        } catch (InterruptedException e) {
+            // Left pending on purpose so later offsets of this partition are not committed past it
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while dispatching offset {} of {}", record.offset(), partition);
+        }
+    }
+    
+    private CompletableFuture<Void> attempt(ConsumerRecord<String, Object> record, IntConsumer work, int attempt) {
+        Executor workers = executor.getExecutor();
+        return CompletableFuture.runAsync(() -> work.accept(attempt), workers)
+                .exceptionallyCompose(error -> {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    if (retryHandler.shouldRetry(cause, attempt)) {
+                        long backoff = retryHandler.calculateBackoffTime(attempt);
+                        log.warn("Attempt {} failed for offset {} of {}-{}, retrying in {}ms: {}", attempt,
+                                record.offset(), record.topic(), record.partition(), backoff, cause.getMessage());
+                        Executor delayed = CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS, workers);
+                        return CompletableFuture.supplyAsync(() -> attempt(record, work, attempt + 1), delayed)
+                                .thenCompose(next -> next);
+                    }
+                    retryHandler.sendToDLQ(record, cause instanceof Exception exception
+                            ? exception : new IllegalStateException(cause));
+                    return CompletableFuture.completedFuture(null);
+                });
+    }
+    
+    /**
+     * A record could be neither processed nor published to the DLQ, so its offset can never be
+     * committed: seek the partition back to the first uncommitted offset. Work still in flight
+     * from before is not committed and is repeated after the seek.
+     */
+    private void rewind(TopicPartition partition, PartitionOffsetTracker tracker, ConsumerSeekCallback seekCallback,
+                        long failedOffset, Throwable error) {
+        long offset = tracker.firstPendingOffset();
+        if (seekCallback == null) {
+            log.error("Giving up on offset {} of {} without DLQ publish and no seek callback, not committing past it: {}",
+                    failedOffset, partition, error.getMessage());
+            return;
+        }
+        // Already rewound by another failure, or revoked meanwhile
+        if (offset < 0 || !trackers.replace(partition, tracker, new PartitionOffsetTracker(offset))) {
+            return;
+        }
+        log.error("Giving up on offset {} of {} without DLQ publish, rewinding to offset {}: {}",
+                failedOffset, partition, offset, error.getMessage());
+        rewinds.increment();
+        seekCallback.seek(partition.topic(), partition.partition(), offset);
+    }
+    
+    /**
+     * @return milliseconds since the oldest record still holding back a commit was dispatched
+     */
+    public long getOldestPendingAgeMillis() {
+        long now = System.currentTimeMillis();
+        return trackers.values().stream()
+                .mapToLong(PartitionOffsetTracker::oldestPendingMillis)
+                .filter(dispatchedAt -> dispatchedAt > 0)
+                .map(dispatchedAt -> now - dispatchedAt)
+                .max()
+                .orElse(0);
+    }
+    
+    public void setParallelism(int parallelism) {
+        if (executor != null) {
+            executor.setParallelism(parallelism);
+        }
+    }
+    
+    public int getParallelism() {
+        return executor != null ? executor.getParallelism() : 0;
+    }
+    
+    /**
+     * @return the share of the in-flight bound in use, 0 outside parallel mode
+     */
+    public double getInFlightRatio() {
+        return executor != null ? (double) executor.getInFlight() / maxInFlight : 0;
+    }
+    
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitions.forEach(trackers::remove);
+    }
+    
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitions.forEach(trackers::remove);
+    }
+    
+    private String orderingKey(ConsumerRecord<String, Object> record) {
+        if ("userId".equals(orderingKey) && record.value() instanceof Map<?, ?> payload) {
+            Object userId = payload.get("userId");
+            if (userId != null) {
+                return userId.toString();
+            }
+        }
+        return record.key() != null ? record.key() : "partition-" + record.partition();
+    }
+}
+
@@ -0,0 +1,55 @@
+package com.notification.delivery.controller;
+
+import com.notification.delivery.channel.WebhookEndpointRegistry;
+import com.notification.delivery.dto.StatsResponse;
+import com.notification.delivery.dto.WebhookEndpointStats;
+import com.notification.delivery.service.DeliveryStatsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/stats")
+@RequiredArgsConstructor
+public class StatsController {
+    
+    private final DeliveryStatsService deliveryStatsService;
+    private final WebhookEndpointRegistry webhookEndpointRegistry;
+    
+    /**
+     * Delivery counts from the rollups, e.g. SMS failures of the last hour per event type:
+     * {@code ?resolution=minute&channel=SMS&status=FAILED&groupBy=eventType}
+     */
+    @GetMapping
+    public ResponseEntity<StatsResponse> getStats(
+            @RequestParam(defaultValue = "minute") String resolution,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String channel,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String eventType,
+            @RequestParam(required = false) String priority,
+            @RequestParam(defaultValue = "bucket") List<String> groupBy) {
+        try {
+            return ResponseEntity.ok(deliveryStatsService.query(
+                    resolution, from, to, channel, status, eventType, priority, groupBy));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+    
+    /**
+     * Circuit breaker state and recent failure rate per webhook host, worst first.
+     */
+    @GetMapping("/webhooks")
+    public ResponseEntity<List<WebhookEndpointStats>> getWebhookStats(@RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(webhookEndpointRegistry.getStats(limit));
+    }
+}
+
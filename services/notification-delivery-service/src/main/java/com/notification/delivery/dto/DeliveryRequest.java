@@ -16,5 +16,8 @@ public class DeliveryRequest {
     private String templateId;
     private String data;
     private String eventType;
+    private String email;  // EMAIL deliveries only
+    private String phone;  // SMS deliveries only
+    private String webhookUrl;  // WEBHOOK deliveries only
 }
 
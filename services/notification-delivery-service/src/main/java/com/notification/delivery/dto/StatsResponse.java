@@ -0,0 +1,23 @@
+package com.notification.delivery.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatsResponse {
+    private String resolution;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private List<String> groupBy;
+    private List<StatsRow> rows;
+    private long total;
+}
+
@@ -0,0 +1,27 @@
+package com.notification.delivery.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of delivery statistics; dimensions that were not grouped by are left out.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StatsRow {
+    private LocalDateTime bucket;
+    private String channel;
+    private String status;
+    private String eventType;
+    private String priority;
+    private long count;
+}
+
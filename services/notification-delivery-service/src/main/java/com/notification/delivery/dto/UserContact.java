@@ -0,0 +1,20 @@
+package com.notification.delivery.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Addresses of a user from the users table; either may be null, both are for users
+ * that do not exist.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserContact {
+    private String email;
+    private String phone;
+}
+
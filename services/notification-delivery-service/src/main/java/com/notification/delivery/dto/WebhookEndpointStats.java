@@ -0,0 +1,27 @@
+package com.notification.delivery.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Circuit breaker state and failure statistics of one webhook host, over the breaker's
+ * sliding window.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebhookEndpointStats {
+    private String host;
+    private String state;
+    private float failureRate;  // percent, -1 until the window has enough calls
+    private int bufferedCalls;
+    private int failedCalls;
+    private long notPermittedCalls;
+    private LocalDateTime lastUsedAt;
+}
+
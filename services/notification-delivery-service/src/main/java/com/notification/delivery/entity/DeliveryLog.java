@@ -20,7 +20,7 @@ import java.util.UUID;
 public class DeliveryLog {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @UuidV7Id
     private UUID id;
     
     @Column(name = "notification_id", nullable = false)
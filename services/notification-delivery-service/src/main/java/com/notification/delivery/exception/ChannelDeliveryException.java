@@ -0,0 +1,18 @@
+package com.notification.delivery.exception;
+
+import java.util.List;
+
+public class ChannelDeliveryException extends RuntimeException {
+    
+    private final List<String> failedChannels;
+    
+    public ChannelDeliveryException(String message, List<String> failedChannels, Throwable cause) {
+        super(message, cause);
+        this.failedChannels = failedChannels;
+    }
+    
+    public List<String> getFailedChannels() {
+        return failedChannels;
+    }
+}
+
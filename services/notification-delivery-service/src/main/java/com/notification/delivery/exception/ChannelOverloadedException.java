@@ -0,0 +1,8 @@
+package com.notification.delivery.exception;
+
+public class ChannelOverloadedException extends RuntimeException {
+    public ChannelOverloadedException(String message) {
+        super(message);
+    }
+}
+
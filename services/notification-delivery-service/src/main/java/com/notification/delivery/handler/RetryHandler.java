@@ -0,0 +1,123 @@
+package com.notification.delivery.handler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notification.delivery.model.ProcessedEvent;
+import com.notification.delivery.service.StatusPublisher;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Retry policy for failed records: which exceptions are worth retrying, how long to back off
+ * between attempts, and publishing to the DLQ once a record is given up on. Used by the
+ * container's error handler and by the parallel consumer mode alike.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RetryHandler {
+    
+    public static final String FAILURE_STAGE_HEADER = "x-failure-stage";
+    public static final String FAILURE_STAGE = "delivery";
+    
+    // Records that cannot be read or are invalid fail the same way on every attempt and go straight
+    // to the DLQ; anything else, including bugs, is retried
+    public static final List<Class<? extends Exception>> NON_RETRYABLE_EXCEPTIONS = List.of(
+            DeserializationException.class,
+            MessageConversionException.class,
+            JsonProcessingException.class,
+            IllegalArgumentException.class);
+    
+    private final DeadLetterPublishingRecoverer deadLetterPublishingRecoverer;
+    private final StatusPublisher statusPublisher;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${notification.delivery.retry.max-attempts}")
+    private int maxAttempts;
+    
+    @Value("${notification.delivery.retry.initial-interval-ms}")
+    private long initialIntervalMs;
+    
+    @Value("${notification.delivery.retry.multiplier}")
+    private double multiplier;
+    
+    @Value("${notification.delivery.retry.max-interval-ms}")
+    private long maxIntervalMs;
+    
+    @Value("${notification.kafka.topics.dlq}")
+    private String dlqTopic;
+    
+    public boolean isRetryable(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            for (Class<? extends Exception> type : NON_RETRYABLE_EXCEPTIONS) {
+                if (type.isInstance(cause)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    public boolean shouldRetry(Throwable exception, int attempt) {
+        return attempt < maxAttempts && isRetryable(exception);
+    }
+    
+    /**
+     * Publishes the original record to the DLQ with its headers, the exception details and the
+     * failing stage, and marks the notification FAILED. Throws if the DLQ write or the status
+     * publish fails, so the record is not committed.
+     */
+    public void sendToDLQ(ConsumerRecord<?, ?> record, Exception exception) {
+        log.error("Sending record to DLQ {}. Key: {}, partition: {}, offset: {}, Error: {}",
+                dlqTopic, record.key(), record.partition(), record.offset(), exception.getMessage());
+        
+        deadLetterPublishingRecoverer.accept(record, exception);
+        log.info("Record sent to DLQ: {}", record.key());
+        publishFailed(record.value());
+    }
+    
+    private void publishFailed(Object value) {
+        if (value == null) {
+            return;  // Not deserializable; the notification id is unknown
+        }
+        try {
+            ProcessedEvent event = value instanceof ProcessedEvent processedEvent
+                    ? processedEvent : objectMapper.convertValue(value, ProcessedEvent.class);
+            if (event.getNotificationId() != null) {
+                statusPublisher.publishAndWait(event.getNotificationId(), event.getCreatedAt(), "FAILED");
+            }
+        } catch (IllegalArgumentException e) {
+            log.debug("DLQ record is not a processed event: {}", e.getMessage());
+        }
+    }
+    
+    public long calculateBackoffTime(int retryCount) {
+        long backoff = (long) (initialIntervalMs * Math.pow(multiplier, retryCount - 1));
+        return Math.min(backoff, maxIntervalMs);
+    }
+    
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+    
+    public long getInitialIntervalMs() {
+        return initialIntervalMs;
+    }
+    
+    public double getMultiplier() {
+        return multiplier;
+    }
+    
+    public long getMaxIntervalMs() {
+        return maxIntervalMs;
+    }
+}
+
@@ -0,0 +1,100 @@
+package com.notification.delivery.limit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrency limit that adapts to the latency and errors a provider shows, in the style of
+ * the gradient algorithm of Netflix' concurrency-limits:
+ * <ul>
+ *   <li>A long-term average of the round-trip time serves as the no-load baseline. The ratio of
+ *   baseline to the latest sample (clamped to 0.5..1) shrinks the limit as soon as requests
+ *   start to queue at the provider, and a headroom of sqrt(limit) lets it grow while they do
+ *   not.</li>
+ *   <li>Failed calls decrease the limit multiplicatively (AIMD), so an erroring provider is
+ *   backed off even when it answers fast.</li>
+ *   <li>The limit only grows while at least half of it is used, so an idle period does not
+ *   inflate it.</li>
+ * </ul>
+ * Each new limit is blended with the previous one by {@code smoothing}.
+ */
+public final class AdaptiveConcurrencyLimit {
+    
+    // Number of samples the baseline RTT averages over
+    private static final int BASELINE_WINDOW = 600;
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double backoffRatio;
+    
+    private double limit;
+    private int inFlight;
+    private double baselineRttNanos;
+    
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double smoothing,
+                                    double backoffRatio) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.backoffRatio = backoffRatio;
+    }
+    
+    /**
+     * Waits until a call fits within the limit; every successful call must be followed by
+     * {@link #release}.
+     *
+     * @return false if none did within the timeout
+     */
+    public synchronized boolean acquire(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (inFlight >= (int) limit) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        inFlight++;
+        return true;
+    }
+    
+    /**
+     * @param rttNanos how long the call took
+     * @param dropped  whether it failed
+     */
+    public synchronized void release(long rttNanos, boolean dropped) {
+        int used = inFlight;
+        inFlight--;
+        
+        double next;
+        if (dropped) {
+            next = limit * backoffRatio;
+        } else {
+            baselineRttNanos = baselineRttNanos == 0 ? rttNanos
+                    : baselineRttNanos + (rttNanos - baselineRttNanos) / BASELINE_WINDOW;
+            if (baselineRttNanos > 2.0 * rttNanos) {
+                // Latency fell well below the baseline (the provider recovered); catch up faster
+                baselineRttNanos *= 0.95;
+            }
+            if (used < limit / 2) {
+                notifyAll();
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, baselineRttNanos / Math.max(1, rttNanos)));
+            next = limit * gradient + Math.sqrt(limit);
+            next = limit * (1 - smoothing) + next * smoothing;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+        notifyAll();
+    }
+    
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+    
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
+
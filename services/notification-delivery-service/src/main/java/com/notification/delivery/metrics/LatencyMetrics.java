@@ -0,0 +1,90 @@
+package com.notification.delivery.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stage and end-to-end pipeline latency timers, tagged by stage, priority and channel.
+ * Timers are cached so the hot path is a couple of map lookups and no allocation.
+ * Percentiles and histogram buckets are configured under
+ * {@code management.metrics.distribution} in application.yml.
+ * <p>
+ * The ingestion and processing services carry their own copies with the stages they measure
+ * (see Shared Code in docs/architecture.md); keep the timer layout the same in all of them.
+ */
+@Component
+@RequiredArgsConstructor
+public class LatencyMetrics {
+    
+    public static final String STAGE_TIMER = "notification.pipeline.stage";
+    public static final String END_TO_END_TIMER = "notification.pipeline.end_to_end";
+    
+    public static final String STAGE_PROCESSED_QUEUE = "processed_queue";
+    public static final String STAGE_DELIVERY = "delivery";
+    public static final String STAGE_PROVIDER = "provider";
+    private static final String END_TO_END = "end_to_end";
+    
+    public static final String ALL_CHANNELS = "all";
+    private static final String UNKNOWN = "UNKNOWN";
+    
+    private final MeterRegistry meterRegistry;
+    
+    private final ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, Timer>>> stageTimers =
+            new ConcurrentHashMap<>();
+    
+    public void recordStage(String stage, String priority, String channel, long nanos) {
+        timer(STAGE_TIMER, stage, priority, channel).record(nanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Records a cross-service hop measured from header stamps; unknown hops ({@code millis < 0}) are skipped.
+     */
+    public void recordStageMillis(String stage, String priority, String channel, long millis) {
+        if (millis >= 0) {
+            timer(STAGE_TIMER, stage, priority, channel).record(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Records ingest-accept to channel-completion latency; skipped when the ingest stamp is missing.
+     */
+    public void recordEndToEnd(String priority, String channel, long millis) {
+        if (millis >= 0) {
+            timer(END_TO_END_TIMER, END_TO_END, priority, channel).record(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private Timer timer(String name, String stage, String priority, String channel) {
+        String priorityTag = priority != null ? priority : UNKNOWN;
+        String channelTag = channel != null ? channel : ALL_CHANNELS;
+        
+        ConcurrentMap<String, ConcurrentMap<String, Timer>> byPriority = stageTimers.get(stage);
+        if (byPriority == null) {
+            byPriority = stageTimers.computeIfAbsent(stage, k -> new ConcurrentHashMap<>());
+        }
+        ConcurrentMap<String, Timer> byChannel = byPriority.get(priorityTag);
+        if (byChannel == null) {
+            byChannel = byPriority.computeIfAbsent(priorityTag, k -> new ConcurrentHashMap<>());
+        }
+        Timer timer = byChannel.get(channelTag);
+        if (timer == null) {
+            Timer.Builder builder = Timer.builder(name)
+                    .tag("priority", priorityTag)
+                    .tag("channel", channelTag);
+            if (STAGE_TIMER.equals(name)) {
+                builder.description("Time a notification spends in each pipeline stage").tag("stage", stage);
+            } else {
+                builder.description("Time from ingest accept to channel delivery");
+            }
+            timer = byChannel.computeIfAbsent(channelTag, k -> builder.register(meterRegistry));
+        }
+        return timer;
+    }
+}
+
@@ -0,0 +1,32 @@
+package com.notification.delivery.payload;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Payloads as files under {@code local-path}, the directory the ingestion service writes them to.
+ */
+@Component
+@ConditionalOnProperty(name = "notification.payload.store", havingValue = "local", matchIfMissing = true)
+public class LocalPayloadStore implements PayloadStore {
+    
+    private final Path root;
+    
+    public LocalPayloadStore(@Value("${notification.payload.local-path}") String root) {
+        this.root = Path.of(root);
+    }
+    
+    @Override
+    public byte[] get(String key) throws IOException {
+        if (!key.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Invalid payload key: " + key);
+        }
+        return Files.readAllBytes(root.resolve(key.substring(0, 2)).resolve(key));
+    }
+}
+
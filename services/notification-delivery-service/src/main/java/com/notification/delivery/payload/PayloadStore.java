@@ -0,0 +1,13 @@
+package com.notification.delivery.payload;
+
+import java.io.IOException;
+
+/**
+ * Read side of the content-addressed payload store the ingestion service offloads large
+ * notification data to.
+ */
+public interface PayloadStore {
+    
+    byte[] get(String key) throws IOException;
+}
+
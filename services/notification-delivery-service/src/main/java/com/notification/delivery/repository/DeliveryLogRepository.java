@@ -2,11 +2,17 @@ package com.notification.delivery.repository;
 
 import com.notification.delivery.entity.DeliveryLog;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.UUID;
 
 @Repository
 public interface DeliveryLogRepository extends JpaRepository<DeliveryLog, UUID> {
+    
+    @Query("SELECT d.channel FROM DeliveryLog d WHERE d.notificationId = :notificationId AND d.status = 'DELIVERED'")
+    List<String> findDeliveredChannels(@Param("notificationId") UUID notificationId);
 }
 
@@ -0,0 +1,150 @@
+package com.notification.delivery.service;
+
+import com.notification.delivery.dto.DeliveryResult;
+import com.notification.delivery.exception.ChannelOverloadedException;
+import com.notification.delivery.limit.AdaptiveConcurrencyLimit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive in-flight limits on provider calls, one per limit key: the channel name, or the
+ * webhook host for webhooks, whose channel takes a slot per attempt (see
+ * {@link com.notification.delivery.channel.NotificationChannel#getLimitKey}).
+ * Calls beyond the limit wait up to {@code queue-timeout-ms} for a slot and are then shed with a
+ * {@link ChannelOverloadedException}, which retries the record with backoff.
+ * <p>
+ * Limits of keys not used for a while are dropped once there are more than {@code max-keys}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChannelConcurrencyLimiter {
+    
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${notification.delivery.concurrency.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${notification.delivery.concurrency.initial-limit:20}")
+    private int initialLimit;
+    
+    @Value("${notification.delivery.concurrency.min-limit:1}")
+    private int minLimit;
+    
+    @Value("${notification.delivery.concurrency.max-limit:200}")
+    private int maxLimit;
+    
+    @Value("${notification.delivery.concurrency.smoothing:0.2}")
+    private double smoothing;
+    
+    @Value("${notification.delivery.concurrency.backoff-ratio:0.9}")
+    private double backoffRatio;
+    
+    @Value("${notification.delivery.concurrency.queue-timeout-ms:1000}")
+    private long queueTimeoutMs;
+    
+    @Value("${notification.delivery.concurrency.max-keys:1000}")
+    private int maxKeys;
+    
+    private record KeyLimit(AdaptiveConcurrencyLimit limit, Gauge limitGauge, Gauge inFlightGauge, Counter shed) {
+    }
+    
+    private final Map<String, KeyLimit> limits = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, KeyLimit> eldest) {
+            if (size() <= maxKeys) {
+                return false;
+            }
+            meterRegistry.remove(eldest.getValue().limitGauge());
+            meterRegistry.remove(eldest.getValue().inFlightGauge());
+            meterRegistry.remove(eldest.getValue().shed());
+            return true;
+        }
+    };
+    
+    /**
+     * Runs the provider call within the key's limit. Failed results and exceptions count as
+     * drops and shrink the limit.
+     *
+     * @throws ChannelOverloadedException if no slot freed up in time
+     */
+    public DeliveryResult execute(String key, Supplier<DeliveryResult> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        KeyLimit keyLimit = limitOf(key);
+        try {
+            if (!keyLimit.limit().acquire(TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs))) {
+                keyLimit.shed().increment();
+                throw new ChannelOverloadedException("Concurrency limit of " + key + " reached ("
+                        + keyLimit.limit().getLimit() + " in flight)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a " + key + " slot", e);
+        }
+        
+        long start = System.nanoTime();
+        boolean dropped = true;
+        try {
+            DeliveryResult result = call.get();
+            dropped = !result.isSuccess();
+            return result;
+        } finally {
+            keyLimit.limit().release(System.nanoTime() - start, dropped);
+        }
+    }
+    
+    /**
+     * Highest in-flight to limit ratio over the channel-wide limits; a single webhook host at its
+     * limit says nothing about the load of the service.
+     */
+    public double getSaturation() {
+        synchronized (limits) {
+            return limits.entrySet().stream()
+                    .filter(entry -> entry.getKey().indexOf(':') < 0)
+                    .mapToDouble(entry -> (double) entry.getValue().limit().getInFlight()
+                            / Math.max(1, entry.getValue().limit().getLimit()))
+                    .max()
+                    .orElse(0);
+        }
+    }
+    
+    private KeyLimit limitOf(String key) {
+        synchronized (limits) {
+            KeyLimit keyLimit = limits.get(key);
+            if (keyLimit == null) {
+                AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit,
+                        smoothing, backoffRatio);
+                keyLimit = new KeyLimit(limit,
+                        Gauge.builder("notification.delivery.concurrency.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                                .description("Current adaptive in-flight limit of provider calls")
+                                .tag("key", key)
+                                .register(meterRegistry),
+                        Gauge.builder("notification.delivery.concurrency.in_flight", limit,
+                                        AdaptiveConcurrencyLimit::getInFlight)
+                                .description("Provider calls in flight")
+                                .tag("key", key)
+                                .register(meterRegistry),
+                        Counter.builder("notification.delivery.concurrency.shed")
+                                .description("Deliveries shed at the concurrency limit")
+                                .tag("key", key)
+                                .register(meterRegistry));
+                limits.put(key, keyLimit);
+                log.debug("Created adaptive concurrency limit for {}", key);
+            }
+            return keyLimit;
+        }
+    }
+}
+
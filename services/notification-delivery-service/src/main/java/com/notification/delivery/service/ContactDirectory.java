@@ -0,0 +1,321 @@
+package com.notification.delivery.service;
+
+import com.notification.delivery.dto.UserContact;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Email addresses and phone numbers of users for the EMAIL and SMS channels.
+ * <p>
+ * Contacts are kept in a local LRU cache with a TTL, so a lookup is normally a map access.
+ * Misses are not queried one by one: a loader thread collects the user ids missed within
+ * {@code batch-window-ms} (at most {@code batch-size}) and reads them with a single
+ * {@code WHERE id = ANY(?)} query, and concurrent lookups of the same user wait for the same load.
+ * Unknown users are cached too, for the shorter {@code negative-ttl-seconds}.
+ * <p>
+ * A trigger on the users table sends the id of every inserted, changed or deleted contact on the
+ * {@code user_contacts} channel; a listener thread evicts those users right away, and drops the
+ * whole cache whenever it (re)connects, as notifications sent while it was away are lost. The TTL
+ * bounds staleness should the listener be down.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ContactDirectory {
+    
+    public static final String NOTIFY_CHANNEL = "user_contacts";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${notification.delivery.contacts.cache.max-entries:100000}")
+    private int cacheMaxEntries;
+    
+    @Value("${notification.delivery.contacts.cache.ttl-seconds:300}")
+    private long cacheTtlSeconds;
+    
+    @Value("${notification.delivery.contacts.cache.negative-ttl-seconds:30}")
+    private long negativeTtlSeconds;
+    
+    @Value("${notification.delivery.contacts.batch-size:200}")
+    private int batchSize;
+    
+    @Value("${notification.delivery.contacts.batch-window-ms:2}")
+    private long batchWindowMs;
+    
+    @Value("${notification.delivery.contacts.lookup-timeout-ms:5000}")
+    private long lookupTimeoutMs;
+    
+    @Value("${notification.delivery.contacts.invalidation.enabled:true}")
+    private boolean invalidationEnabled;
+    
+    @Value("${notification.delivery.contacts.invalidation.reconnect-delay-ms:5000}")
+    private long reconnectDelayMs;
+    
+    private final Map<String, CachedContact> cache = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedContact> eldest) {
+            return size() > cacheMaxEntries;
+        }
+    };
+    
+    // Loads not yet completed by user id; guarded by cache
+    private final Map<String, PendingLoad> pending = new HashMap<>();
+    private final BlockingQueue<PendingLoad> queue = new LinkedBlockingQueue<>();
+    
+    private volatile boolean running = true;
+    private Thread loader;
+    private Thread listener;
+    private Counter hits;
+    private Counter misses;
+    private Counter invalidations;
+    private DistributionSummary batchSizes;
+    
+    private record CachedContact(UserContact contact, long expiresAt) {
+    }
+    
+    private static final class PendingLoad {
+        private final String userId;
+        private final CompletableFuture<UserContact> future = new CompletableFuture<>();
+        private boolean invalidated;  // guarded by cache
+        
+        private PendingLoad(String userId) {
+            this.userId = userId;
+        }
+    }
+    
+    @PostConstruct
+    public void init() {
+        hits = Counter.builder("notification.delivery.contacts.lookups")
+                .description("Contact lookups")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        misses = Counter.builder("notification.delivery.contacts.lookups")
+                .description("Contact lookups")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        invalidations = Counter.builder("notification.delivery.contacts.invalidations")
+                .description("Cached contacts evicted on a change of the user")
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("notification.delivery.contacts.batch.size")
+                .description("Users read per contact query")
+                .register(meterRegistry);
+        Gauge.builder("notification.delivery.contacts.cache.size", this, directory -> directory.cacheSize())
+                .description("Contacts in the local cache")
+                .register(meterRegistry);
+        
+        loader = new Thread(this::loadBatches, "contact-loader");
+        loader.setDaemon(true);
+        loader.start();
+        if (invalidationEnabled) {
+            listener = new Thread(this::listenForChanges, "contact-invalidation");
+            listener.setDaemon(true);
+            listener.start();
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        loader.interrupt();
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+    
+    /**
+     * Returns the user's contact, from the cache or batched with other misses.
+     *
+     * @throws IllegalStateException if the contact could not be read in time
+     */
+    public UserContact lookup(String userId) {
+        long now = System.currentTimeMillis();
+        PendingLoad load;
+        synchronized (cache) {
+            CachedContact cached = cache.get(userId);
+            if (cached != null && cached.expiresAt() > now) {
+                hits.increment();
+                return cached.contact();
+            }
+            misses.increment();
+            load = pending.get(userId);
+            if (load == null) {
+                load = new PendingLoad(userId);
+                pending.put(userId, load);
+                queue.add(load);
+            }
+        }
+        
+        try {
+            return load.future.get(lookupTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while looking up the contact of " + userId, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not look up the contact of " + userId + ": "
+                    + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Contact lookup of " + userId + " timed out after "
+                    + lookupTimeoutMs + "ms");
+        }
+    }
+    
+    /**
+     * Evicts the user's cached contact; a load in progress is returned to its callers but not cached.
+     */
+    public void invalidate(String userId) {
+        synchronized (cache) {
+            cache.remove(userId);
+            PendingLoad load = pending.get(userId);
+            if (load != null) {
+                load.invalidated = true;
+            }
+        }
+        invalidations.increment();
+    }
+    
+    public void invalidateAll() {
+        synchronized (cache) {
+            cache.clear();
+            pending.values().forEach(load -> load.invalidated = true);
+        }
+    }
+    
+    private int cacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+    
+    private void loadBatches() {
+        List<PendingLoad> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                // Give concurrent misses a moment to join the query
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMs);
+                while (batch.size() < batchSize) {
+                    PendingLoad next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                load(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+        log.debug("Contact loader stopped");
+    }
+    
+    private void load(List<PendingLoad> batch) {
+        String[] userIds = batch.stream().map(load -> load.userId).toArray(String[]::new);
+        Map<String, UserContact> contacts = new HashMap<>();
+        try {
+            jdbcTemplate.query("SELECT id, email, phone FROM users WHERE id = ANY(?)",
+                    rs -> {
+                        contacts.put(rs.getString("id"), UserContact.builder()
+                                .email(rs.getString("email"))
+                                .phone(rs.getString("phone"))
+                                .build());
+                    },
+                    (Object) userIds);
+        } catch (Exception e) {
+            log.warn("Could not load contacts of {} users: {}", batch.size(), e.getMessage());
+            synchronized (cache) {
+                batch.forEach(load -> pending.remove(load.userId));
+            }
+            batch.forEach(load -> load.future.completeExceptionally(e));
+            return;
+        }
+        batchSizes.record(batch.size());
+        
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            for (PendingLoad load : batch) {
+                pending.remove(load.userId);
+                UserContact contact = contacts.get(load.userId);
+                if (load.invalidated) {
+                    continue;
+                }
+                cache.put(load.userId, contact != null
+                        ? new CachedContact(contact, now + cacheTtlSeconds * 1000)
+                        : new CachedContact(new UserContact(), now + negativeTtlSeconds * 1000));
+            }
+        }
+        for (PendingLoad load : batch) {
+            UserContact contact = contacts.get(load.userId);
+            load.future.complete(contact != null ? contact : new UserContact());
+        }
+    }
+    
+    /**
+     * Holds one pooled connection for LISTEN while running.
+     */
+    private void listenForChanges() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN " + NOTIFY_CHANNEL);
+                invalidateAll();
+                log.info("Listening for contact changes on {}", NOTIFY_CHANNEL);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(1000);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        invalidate(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    break;
+                }
+                log.warn("Contact change listener disconnected, reconnecting in {}ms: {}",
+                        reconnectDelayMs, e.getMessage());
+                try {
+                    Thread.sleep(reconnectDelayMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        log.debug("Contact change listener stopped");
+    }
+}
+
@@ -4,6 +4,11 @@ import com.notification.delivery.channel.NotificationChannel;
 import com.notification.delivery.dto.DeliveryRequest;
 import com.notification.delivery.dto.DeliveryResult;
 import com.notification.delivery.entity.DeliveryLog;
+import com.notification.delivery.exception.ChannelDeliveryException;
+import com.notification.delivery.exception.ChannelOverloadedException;
+import com.notification.delivery.handler.RetryHandler;
+import com.notification.delivery.metrics.LatencyMetrics;
+import com.notification.delivery.metrics.PipelineTimestamps;
 import com.notification.delivery.model.ProcessedEvent;
 import com.notification.delivery.repository.DeliveryLogRepository;
 import lombok.RequiredArgsConstructor;
@@ -11,38 +16,124 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class DeliveryService {
     
+    /**
+     * What became of a delivery to one channel.
+     */
+    private enum ChannelOutcome {
+        DELIVERED, FAILED, RATE_LIMITED, SKIPPED
+    }
+    
     private final ChannelFactory channelFactory;
     private final RateLimitService rateLimitService;
     private final DeliveryLogRepository deliveryLogRepository;
     private final WebSocketNotificationService webSocketNotificationService;
+    private final LatencyMetrics latencyMetrics;
+    private final RetryHandler retryHandler;
+    private final StatusPublisher statusPublisher;
+    private final DeliveryStatsAggregator deliveryStatsAggregator;
+    private final PayloadResolver payloadResolver;
+    private final ChannelConcurrencyLimiter channelConcurrencyLimiter;
+    private final ExpiryPolicy expiryPolicy;
+    private final ContactDirectory contactDirectory;
     
-    public void processDelivery(ProcessedEvent event) {
+    /**
+     * Delivers to every channel of the event. Channels that fail are reported together in a
+     * {@link ChannelDeliveryException} once all channels were tried; on a redelivery
+     * ({@code attempt > 1}) channels already delivered by an earlier attempt are skipped.
+     * <p>
+     * The notification is reported DELIVERED if at least one channel delivered. If none did
+     * because all were rate limited or skipped for a missing address, it is reported
+     * RATE_LIMITED (any channel rate limited) or SKIPPED instead; all three are final.
+     */
+    public void processDelivery(ProcessedEvent event, PipelineTimestamps timestamps, int attempt) {
         log.info("🚀 Processing delivery for notification: {}", event.getNotificationId());
         log.info("   User: {}, Priority: {}, Channels: {}", 
                 event.getUserId(), event.getPriority(), event.getChannels());
         
+        long startNanos = System.nanoTime();
+        timestamps.setDeliveryStart(System.currentTimeMillis());
+        latencyMetrics.recordStageMillis(LatencyMetrics.STAGE_PROCESSED_QUEUE, event.getPriority(),
+                LatencyMetrics.ALL_CHANNELS,
+                PipelineTimestamps.elapsedMillis(timestamps.getProcessingEnd(), timestamps.getDeliveryStart()));
+        
+        // Only redeliveries pay for the lookup
+        List<String> alreadyDelivered = attempt > 1
+                ? deliveryLogRepository.findDeliveredChannels(UUID.fromString(event.getNotificationId()))
+                : List.of();
+        
+        // Too late to be useful (e.g. after a backlog): no lookups, payloads or provider calls. Once
+        // a channel has delivered, the rest are delivered too rather than reporting it as expired
+        if (alreadyDelivered.isEmpty() && expiryPolicy.isExpired(event.getEventType(), timestamps)) {
+            log.info("⌛ Dropping expired {} notification: {}", event.getEventType(), event.getNotificationId());
+            event.getChannels().forEach(channel -> deliveryStatsAggregator.record(channel, ExpiryPolicy.EXPIRED,
+                    event.getEventType(), event.getPriority()));
+            statusPublisher.publish(event.getNotificationId(), event.getCreatedAt(), ExpiryPolicy.EXPIRED);
+            return;
+        }
+        
+        List<String> failedChannels = new ArrayList<>();
+        Exception nonRetryableCause = null;
+        boolean delivered = false;
+        boolean rateLimited = false;
         for (String channelName : event.getChannels()) {
-            deliverToChannel(event, channelName);
+            if (alreadyDelivered.contains(channelName)) {
+                log.info("⏭️ Channel {} already delivered for notification: {}", channelName, event.getNotificationId());
+                delivered = true;
+                continue;
+            }
+            try {
+                switch (deliverToChannel(event, channelName, timestamps, attempt)) {
+                    case DELIVERED -> delivered = true;
+                    case FAILED -> failedChannels.add(channelName);
+                    case RATE_LIMITED -> rateLimited = true;
+                    case SKIPPED -> {
+                    }
+                }
+            } catch (Exception e) {
+                failedChannels.add(channelName);
+                if (nonRetryableCause == null && !retryHandler.isRetryable(e)) {
+                    nonRetryableCause = e;
+                }
+            }
+        }
+        
+        latencyMetrics.recordStage(LatencyMetrics.STAGE_DELIVERY, event.getPriority(),
+                LatencyMetrics.ALL_CHANNELS, System.nanoTime() - startNanos);
+        
+        if (!failedChannels.isEmpty()) {
+            // A non-retryable cause makes the whole record go to the DLQ without further attempts
+            throw new ChannelDeliveryException("Delivery failed for notification " + event.getNotificationId()
+                    + " on channels " + failedChannels, failedChannels, nonRetryableCause);
         }
         
-        log.info("✅ Completed delivery processing for notification: {}", event.getNotificationId());
+        String status = delivered ? "DELIVERED" : rateLimited ? "RATE_LIMITED" : "SKIPPED";
+        statusPublisher.publish(event.getNotificationId(), event.getCreatedAt(), status);
+        log.info("✅ Completed delivery processing for notification: {} ({})", event.getNotificationId(), status);
     }
     
-    private void deliverToChannel(ProcessedEvent event, String channelName) {
+    /**
+     * Returns {@link ChannelOutcome#FAILED} when the channel reported a failed delivery and throws
+     * when the delivery could not be attempted; both are logged as FAILED.
+     */
+    private ChannelOutcome deliverToChannel(ProcessedEvent event, String channelName, PipelineTimestamps timestamps,
+                                     int attempt) {
         try {
             // Check rate limit
             if (!rateLimitService.isAllowed(event.getUserId(), channelName)) {
                 log.warn("⚠️ Rate limit exceeded for channel: {}. Skipping delivery", channelName);
-                logDelivery(event.getNotificationId(), channelName, "RATE_LIMITED", 
-                        "Rate limit exceeded", null);
-                return;
+                logDelivery(event, channelName, "RATE_LIMITED", 
+                        "Rate limit exceeded", null, attempt);
+                return ChannelOutcome.RATE_LIMITED;
             }
             
             // Get appropriate channel
@@ -54,19 +145,40 @@ public class DeliveryService {
                     .userId(event.getUserId())
                     .channel(channelName)
                     .templateId(event.getTemplateId())
-                    .data(event.getData())
+                    .data(payloadResolver.resolve(event))
                     .eventType(event.getEventType())
                     .build();
+            String missingAddress = addAddress(request);
+            if (missingAddress != null) {
+                // Retrying cannot help until the user's contact changes
+                log.warn("⚠️ {}. Skipping delivery to channel: {}", missingAddress, channelName);
+                logDelivery(event, channelName, "SKIPPED", missingAddress, null, attempt);
+                return ChannelOutcome.SKIPPED;
+            }
+            channel.prepare(request);
             
-            // Deliver
-            DeliveryResult result = channel.deliver(request);
+            // Deliver within the adaptive concurrency limit of the channel; webhooks take their
+            // host's limit per attempt
+            Supplier<DeliveryResult> delivery = () -> {
+                long providerStart = System.nanoTime();
+                DeliveryResult delivered = channel.deliver(request);
+                latencyMetrics.recordStage(LatencyMetrics.STAGE_PROVIDER, event.getPriority(), channelName,
+                        System.nanoTime() - providerStart);
+                return delivered;
+            };
+            String limitKey = channel.getLimitKey(request);
+            DeliveryResult result = limitKey != null
+                    ? channelConcurrencyLimiter.execute(limitKey, delivery)
+                    : delivery.get();
             
             // Log result
             String status = result.isSuccess() ? "DELIVERED" : "FAILED";
             String errorMessage = result.isSuccess() ? null : result.getErrorDetails();
             LocalDateTime deliveredAt = result.isSuccess() ? LocalDateTime.now() : null;
             
-            logDelivery(event.getNotificationId(), channelName, status, errorMessage, deliveredAt);
+            logDelivery(event, channelName, status, errorMessage, deliveredAt, attempt);
+            latencyMetrics.recordEndToEnd(event.getPriority(), channelName,
+                    PipelineTimestamps.elapsedMillis(timestamps.getIngestAccept(), System.currentTimeMillis()));
             
             // Send WebSocket notification for real-time updates
             webSocketNotificationService.sendDeliveryStatus(
@@ -78,24 +190,54 @@ public class DeliveryService {
                     event.getPriority()
             );
             
+            return result.isSuccess() ? ChannelOutcome.DELIVERED : ChannelOutcome.FAILED;
+            
+        } catch (ChannelOverloadedException e) {
+            // Shed before the provider was called; the record is retried with backoff
+            log.warn("⚠️ Shedding delivery to {}: {}", channelName, e.getMessage());
+            throw e;
         } catch (Exception e) {
             log.error("❌ Error delivering to channel {}: {}", channelName, e.getMessage(), e);
-            logDelivery(event.getNotificationId(), channelName, "FAILED", e.getMessage(), null);
+            logDelivery(event, channelName, "FAILED", e.getMessage(), null, attempt);
+            throw e;
+        }
+    }
+    
+    /**
+     * Sets the user's email address or phone number on EMAIL and SMS requests.
+     *
+     * @return why the user cannot be reached on the channel, or null if they can
+     */
+    private String addAddress(DeliveryRequest request) {
+        String channel = request.getChannel();
+        if ("EMAIL".equals(channel)) {
+            request.setEmail(contactDirectory.lookup(request.getUserId()).getEmail());
+            if (request.getEmail() == null || request.getEmail().isBlank()) {
+                return "No email address for user " + request.getUserId();
+            }
+        } else if ("SMS".equals(channel)) {
+            request.setPhone(contactDirectory.lookup(request.getUserId()).getPhone());
+            if (request.getPhone() == null || request.getPhone().isBlank()) {
+                return "No phone number for user " + request.getUserId();
+            }
         }
+        return null;
     }
     
-    private void logDelivery(String notificationId, String channel, String status, 
-                            String errorMessage, LocalDateTime deliveredAt) {
+    private void logDelivery(ProcessedEvent event, String channel, String status,
+                            String errorMessage, LocalDateTime deliveredAt, int attempt) {
+        String notificationId = event.getNotificationId();
         DeliveryLog deliveryLog = DeliveryLog.builder()
                 .notificationId(UUID.fromString(notificationId))
                 .channel(channel)
                 .status(status)
-                .attemptCount(1)
+                .attemptCount(attempt)
                 .errorMessage(errorMessage)
                 .deliveredAt(deliveredAt)
                 .build();
         
         deliveryLogRepository.save(deliveryLog);
+        deliveryStatsAggregator.record(channel, status, event.getEventType(), event.getPriority());
         log.debug("📝 Logged delivery: {}, Channel: {}, Status: {}", notificationId, channel, status);
     }
 }
@@ -0,0 +1,153 @@
+package com.notification.delivery.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts delivery outcomes per minute, channel, status, event type and priority in memory and
+ * periodically adds the counts to the minute, hour and day rollup tables with batched upserts.
+ * Each flush writes one row per combination seen since the last flush, however many deliveries
+ * there were, and the rollups are additive, so every instance flushes its own counts.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DeliveryStatsAggregator {
+    
+    public static final List<String> RESOLUTIONS = List.of("minute", "hour", "day");
+    
+    private static final String UPSERT = """
+            INSERT INTO delivery_stats_%s AS s (bucket, channel, status, event_type, priority, count)
+            VALUES (?, ?, ?, ?, ?, ?)
+            ON CONFLICT (bucket, channel, status, event_type, priority)
+            DO UPDATE SET count = s.count + EXCLUDED.count
+            """;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${notification.delivery.stats.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${notification.delivery.stats.minute-retention-days:2}")
+    private int minuteRetentionDays;
+    
+    @Value("${notification.delivery.stats.hour-retention-days:90}")
+    private int hourRetentionDays;
+    
+    private record Key(LocalDateTime bucket, String channel, String status, String eventType, String priority) {
+    }
+    
+    private static final Comparator<Key> KEY_ORDER = Comparator.comparing(Key::bucket)
+            .thenComparing(Key::channel)
+            .thenComparing(Key::status)
+            .thenComparing(Key::eventType)
+            .thenComparing(Key::priority);
+    
+    // Only mutated inside compute/remove, so a flush never loses a concurrent increment
+    private final Map<Key, long[]> counts = new ConcurrentHashMap<>();
+    
+    public void record(String channel, String status, String eventType, String priority) {
+        if (!enabled) {
+            return;
+        }
+        Key key = new Key(LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES), channel, status,
+                eventType != null ? eventType : "UNKNOWN", priority != null ? priority : "UNKNOWN");
+        counts.compute(key, (k, count) -> {
+            if (count == null) {
+                return new long[] {1};
+            }
+            count[0]++;
+            return count;
+        });
+    }
+    
+    @Scheduled(fixedDelayString = "${notification.delivery.stats.flush-interval-ms:5000}")
+    public void flush() {
+        if (counts.isEmpty()) {
+            return;
+        }
+        
+        Map<Key, Long> drained = new HashMap<>();
+        for (Key key : counts.keySet()) {
+            long[] count = counts.remove(key);
+            if (count != null) {
+                drained.put(key, count[0]);
+            }
+        }
+        
+        try {
+            // All resolutions in one transaction, so a retried flush never counts twice
+            transactionTemplate.executeWithoutResult(status -> RESOLUTIONS.forEach(
+                    resolution -> upsert(resolution, drained)));
+            log.debug("Flushed {} delivery stats rows", drained.size());
+        } catch (Exception e) {
+            // Put the counts back for the next flush
+            log.warn("Could not flush delivery stats, retrying with the next flush: {}", e.getMessage());
+            drained.forEach((key, count) -> counts.compute(key, (k, current) -> {
+                if (current == null) {
+                    return new long[] {count};
+                }
+                current[0] += count;
+                return current;
+            }));
+        }
+    }
+    
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+    
+    @Scheduled(cron = "${notification.delivery.stats.cleanup-cron:0 30 * * * *}")
+    public void deleteExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        int minutes = jdbcTemplate.update("DELETE FROM delivery_stats_minute WHERE bucket < ?",
+                Timestamp.valueOf(now.minusDays(minuteRetentionDays)));
+        int hours = jdbcTemplate.update("DELETE FROM delivery_stats_hour WHERE bucket < ?",
+                Timestamp.valueOf(now.minusDays(hourRetentionDays)));
+        log.debug("Deleted {} minute and {} hour delivery stats rows past retention", minutes, hours);
+    }
+    
+    private void upsert(String resolution, Map<Key, Long> drained) {
+        // Several minutes can fold into one hour or day row; merge them before writing so the
+        // batch never updates the same row twice
+        Map<Key, Long> rows = new HashMap<>();
+        drained.forEach((key, count) -> rows.merge(
+                new Key(bucket(key.bucket(), resolution), key.channel(), key.status(), key.eventType(), key.priority()),
+                count, Long::sum));
+        
+        // Same row order on every instance, so concurrent flushes cannot deadlock
+        List<Object[]> args = new ArrayList<>(rows.size());
+        rows.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(KEY_ORDER))
+                .forEach(row -> args.add(new Object[] {Timestamp.valueOf(row.getKey().bucket()), row.getKey().channel(),
+                        row.getKey().status(), row.getKey().eventType(), row.getKey().priority(), row.getValue()}));
+        jdbcTemplate.batchUpdate(String.format(UPSERT, resolution), args);
+    }
+    
+    public static LocalDateTime bucket(LocalDateTime time, String resolution) {
+        return switch (resolution) {
+            case "hour" -> time.truncatedTo(ChronoUnit.HOURS);
+            case "day" -> time.truncatedTo(ChronoUnit.DAYS);
+            default -> time.truncatedTo(ChronoUnit.MINUTES);
+        };
+    }
+}
+
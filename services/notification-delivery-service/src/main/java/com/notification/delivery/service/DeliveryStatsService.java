@@ -0,0 +1,104 @@
+package com.notification.delivery.service;
+
+import com.notification.delivery.dto.StatsResponse;
+import com.notification.delivery.dto.StatsRow;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers delivery statistics queries from the rollup tables maintained by
+ * {@link DeliveryStatsAggregator}, so the cost depends on the time range and resolution, not
+ * on how many deliveries were logged.
+ */
+@Service
+@RequiredArgsConstructor
+public class DeliveryStatsService {
+    
+    // API dimension name to column
+    private static final Map<String, String> DIMENSIONS = new LinkedHashMap<>();
+    
+    static {
+        DIMENSIONS.put("bucket", "bucket");
+        DIMENSIONS.put("channel", "channel");
+        DIMENSIONS.put("status", "status");
+        DIMENSIONS.put("eventType", "event_type");
+        DIMENSIONS.put("priority", "priority");
+    }
+    
+    private static final Map<String, Duration> DEFAULT_RANGE = Map.of(
+            "minute", Duration.ofHours(1),
+            "hour", Duration.ofDays(1),
+            "day", Duration.ofDays(30));
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    public StatsResponse query(String resolution, LocalDateTime from, LocalDateTime to, String channel,
+                               String status, String eventType, String priority, List<String> groupBy) {
+        if (!DeliveryStatsAggregator.RESOLUTIONS.contains(resolution)) {
+            throw new IllegalArgumentException("Unknown resolution: " + resolution);
+        }
+        for (String dimension : groupBy) {
+            if (!DIMENSIONS.containsKey(dimension)) {
+                throw new IllegalArgumentException("Unknown dimension: " + dimension);
+            }
+        }
+        
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = DeliveryStatsAggregator.bucket(
+                from != null ? from : end.minus(DEFAULT_RANGE.get(resolution)), resolution);
+        
+        List<String> columns = groupBy.stream().map(DIMENSIONS::get).toList();
+        StringBuilder sql = new StringBuilder("SELECT ");
+        columns.forEach(column -> sql.append(column).append(", "));
+        sql.append("sum(count) AS count FROM delivery_stats_").append(resolution)
+                .append(" WHERE bucket >= ? AND bucket < ?");
+        
+        List<Object> args = new ArrayList<>();
+        args.add(Timestamp.valueOf(start));
+        args.add(Timestamp.valueOf(end));
+        addFilter(sql, args, "channel", channel);
+        addFilter(sql, args, "status", status);
+        addFilter(sql, args, "event_type", eventType);
+        addFilter(sql, args, "priority", priority);
+        
+        if (!columns.isEmpty()) {
+            String dimensions = String.join(", ", columns);
+            sql.append(" GROUP BY ").append(dimensions).append(" ORDER BY ").append(dimensions);
+        }
+        
+        List<StatsRow> rows = jdbcTemplate.query(sql.toString(), (rs, rowNum) -> StatsRow.builder()
+                .bucket(columns.contains("bucket") ? rs.getTimestamp("bucket").toLocalDateTime() : null)
+                .channel(columns.contains("channel") ? rs.getString("channel") : null)
+                .status(columns.contains("status") ? rs.getString("status") : null)
+                .eventType(columns.contains("event_type") ? rs.getString("event_type") : null)
+                .priority(columns.contains("priority") ? rs.getString("priority") : null)
+                .count(rs.getLong("count"))
+                .build(), args.toArray());
+        
+        return StatsResponse.builder()
+                .resolution(resolution)
+                .from(start)
+                .to(end)
+                .groupBy(groupBy)
+                .rows(rows)
+                .total(rows.stream().mapToLong(StatsRow::getCount).sum())
+                .build();
+    }
+    
+    private void addFilter(StringBuilder sql, List<Object> args, String column, String value) {
+        if (value != null) {
+            sql.append(" AND ").append(column).append(" = ?");
+            args.add(value);
+        }
+    }
+}
+
@@ -0,0 +1,84 @@
+package com.notification.delivery.service;
+
+import com.notification.delivery.metrics.PipelineTimestamps;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-event-type time to live. Notifications such as one-time codes are useless once late, so
+ * after a backlog they are dropped as EXPIRED instead of being processed and delivered.
+ * Checked against the epoch-millis ingest stamp carried on the record's headers with one map
+ * lookup, so the hosts' time zones do not matter.
+ * <p>
+ * Configured the same way in processing and delivery; {@code stage} tells their counts apart.
+ * <p>
+ * The processing service has an identical copy (see Shared Code in docs/architecture.md);
+ * change both together.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ExpiryPolicy {
+    
+    public static final String EXPIRED = "EXPIRED";
+    
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${notification.expiry.enabled:true}")
+    private boolean enabled;
+    
+    // eventType=duration, e.g. OTP_CODE=5m
+    @Value("${notification.expiry.ttl:}")
+    private List<String> ttlList;
+    
+    @Value("${notification.expiry.stage:${spring.application.name}}")
+    private String stage;
+    
+    private final Map<String, Long> ttlMillis = new HashMap<>();
+    private final Map<String, Counter> expired = new HashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        for (String entry : ttlList) {
+            int separator = entry.indexOf('=');
+            if (separator > 0) {
+                String eventType = entry.substring(0, separator).trim();
+                ttlMillis.put(eventType, DurationStyle.detectAndParse(entry.substring(separator + 1).trim()).toMillis());
+                expired.put(eventType, Counter.builder("notification.expired")
+                        .description("Notifications dropped because their event type's TTL passed")
+                        .tag("stage", stage)
+                        .tag("event_type", eventType)
+                        .register(meterRegistry));
+            }
+        }
+        log.info("Expiring {} event types: {}", ttlMillis.size(), ttlMillis.keySet());
+    }
+    
+    /**
+     * Whether the notification outlived its event type's TTL since it was ingested (or, without
+     * an ingest stamp, since the record was appended); expired ones are counted.
+     */
+    public boolean isExpired(String eventType, PipelineTimestamps timestamps) {
+        if (!enabled || eventType == null) {
+            return false;
+        }
+        Long ttl = ttlMillis.get(eventType);
+        long ingestedAt = timestamps.getIngestAccept() > 0 ? timestamps.getIngestAccept() : timestamps.getKafkaAppend();
+        if (ttl == null || ingestedAt <= 0 || ingestedAt + ttl >= System.currentTimeMillis()) {
+            return false;
+        }
+        expired.get(eventType).increment();
+        return true;
+    }
+}
+
@@ -0,0 +1,181 @@
+package com.notification.delivery.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maintains the time partitions of the {@code created_at} range-partitioned tables this service
+ * writes: creates the partitions for the coming days ahead of time, so inserts never hit the
+ * default partition, and drops (or detaches, for archiving) partitions past the retention.
+ * Instances coordinate through a Postgres advisory lock, so only one does the work per run.
+ * <p>
+ * The ingestion service has an identical copy for the tables it writes, which each
+ * service configures (see Shared Code in docs/architecture.md); change both together.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PartitionManager {
+    
+    private static final Pattern RANGE_BOUND =
+            Pattern.compile("FROM \\('(\\d{4}-\\d{2}-\\d{2})[^']*'\\) TO \\('(\\d{4}-\\d{2}-\\d{2})[^']*'\\)");
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${notification.storage.partitions.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${notification.storage.partitions.tables}")
+    private List<String> tables;
+    
+    @Value("${notification.storage.partitions.interval:daily}")
+    private String interval;  // daily or weekly
+    
+    @Value("${notification.storage.partitions.precreate-days:7}")
+    private int precreateDays;
+    
+    @Value("${notification.storage.partitions.retention-days:90}")
+    private int retentionDays;
+    
+    @Value("${notification.storage.partitions.expired-action:drop}")
+    private String expiredAction;  // drop or detach
+    
+    private record Partition(String name, LocalDate from, LocalDate to) {
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+    
+    @Scheduled(cron = "${notification.storage.partitions.cron:0 15 * * * *}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        for (String table : tables) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> maintain(table));
+            } catch (Exception e) {
+                log.error("Partition maintenance failed for table {}: {}", table, e.getMessage());
+            }
+        }
+    }
+    
+    private void maintain(String table) {
+        Boolean locked = jdbcTemplate.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(hashtext(?))", Boolean.class, "partitions:" + table);
+        if (!Boolean.TRUE.equals(locked)) {
+            log.debug("Partition maintenance for {} is running elsewhere", table);
+            return;
+        }
+        
+        List<Partition> partitions = listPartitions(table);
+        LocalDate today = LocalDate.now();
+        createMissing(table, partitions, today.minusDays(1), today.plusDays(precreateDays + 1));
+        expire(table, partitions, today.minusDays(retentionDays));
+        
+        Boolean strays = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + table + "_default)", Boolean.class);
+        if (Boolean.TRUE.equals(strays)) {
+            log.warn("Default partition {}_default holds rows; they are never expired by partition", table);
+        }
+    }
+    
+    /**
+     * Fills every gap in [start, end) with partitions, cut at period boundaries and at existing
+     * partitions so a change of interval never produces overlapping ranges.
+     */
+    private void createMissing(String table, List<Partition> partitions, LocalDate start, LocalDate end) {
+        LocalDate cursor = start;
+        while (cursor.isBefore(end)) {
+            LocalDate covering = coveredUntil(partitions, cursor);
+            if (covering != null) {
+                cursor = covering;
+                continue;
+            }
+            
+            LocalDate to = nextBoundary(cursor);
+            for (Partition partition : partitions) {
+                if (partition.from().isAfter(cursor) && partition.from().isBefore(to)) {
+                    to = partition.from();
+                }
+            }
+            
+            String name = table + "_p" + cursor.format(SUFFIX);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF " + table
+                    + " FOR VALUES FROM ('" + cursor + "') TO ('" + to + "')");
+            partitions.add(new Partition(name, cursor, to));
+            log.info("Created partition {} for [{}, {})", name, cursor, to);
+            cursor = to;
+        }
+    }
+    
+    private void expire(String table, List<Partition> partitions, LocalDate cutoff) {
+        for (Partition partition : partitions) {
+            if (partition.to().isAfter(cutoff)) {
+                continue;
+            }
+            if (expiredAction.equals("detach")) {
+                jdbcTemplate.execute("ALTER TABLE " + table + " DETACH PARTITION " + partition.name());
+                log.info("Detached expired partition {} ending {}", partition.name(), partition.to());
+            } else {
+                jdbcTemplate.execute("DROP TABLE " + partition.name());
+                log.info("Dropped expired partition {} ending {}", partition.name(), partition.to());
+            }
+        }
+    }
+    
+    private List<Partition> listPartitions(String table) {
+        List<Partition> partitions = new ArrayList<>();
+        jdbcTemplate.query("""
+                SELECT c.relname, pg_get_expr(c.relpartbound, c.oid)
+                FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = ?::regclass
+                """, rs -> {
+            Matcher bound = RANGE_BOUND.matcher(rs.getString(2));
+            if (bound.find()) {  // the default partition has no range
+                partitions.add(new Partition(rs.getString(1),
+                        LocalDate.parse(bound.group(1)), LocalDate.parse(bound.group(2))));
+            }
+        }, table);
+        partitions.sort(Comparator.comparing(Partition::from));
+        return partitions;
+    }
+    
+    private LocalDate coveredUntil(List<Partition> partitions, LocalDate day) {
+        for (Partition partition : partitions) {
+            if (!day.isBefore(partition.from()) && day.isBefore(partition.to())) {
+                return partition.to();
+            }
+        }
+        return null;
+    }
+    
+    private LocalDate nextBoundary(LocalDate day) {
+        if (interval.equals("weekly")) {
+            return day.with(TemporalAdjusters.next(DayOfWeek.MONDAY));
+        }
+        return day.plusDays(1);
+    }
+}
+
@@ -0,0 +1,87 @@
+package com.notification.delivery.service;
+
+import com.notification.delivery.model.ProcessedEvent;
+import com.notification.delivery.payload.PayloadStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Returns the data of an event, fetching offloaded data from the payload store on first use.
+ * Fetched data is kept in an LRU cache bounded by {@code cache.max-bytes}; a payload sent to
+ * many recipients is read once and then served from memory for all their deliveries. Payloads
+ * are immutable under their key, so cached entries never go stale.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PayloadResolver {
+    
+    private final PayloadStore payloadStore;
+    
+    @Value("${notification.payload.cache.max-bytes:67108864}")
+    private long cacheMaxBytes;
+    
+    private final Map<String, byte[]> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+    
+    public String resolve(ProcessedEvent event) {
+        if (event.getDataRef() == null) {
+            return event.getData();
+        }
+        return new String(fetch(event.getDataRef(), event.getDataHash()), StandardCharsets.UTF_8);
+    }
+    
+    private byte[] fetch(String ref, String hash) {
+        synchronized (cache) {
+            byte[] cached = cache.get(ref);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        
+        byte[] content;
+        try {
+            content = payloadStore.get(ref);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read notification data " + ref, e);
+        }
+        if (!sha256(content).equals(hash)) {
+            // Not retryable: the stored data will not change
+            throw new IllegalArgumentException("Notification data " + ref + " does not match its hash");
+        }
+        log.debug("Fetched {} bytes of notification data {}", content.length, ref);
+        
+        synchronized (cache) {
+            if (content.length <= cacheMaxBytes && cache.put(ref, content) == null) {
+                cachedBytes += content.length;
+                Iterator<byte[]> eldest = cache.values().iterator();
+                while (cachedBytes > cacheMaxBytes) {
+                    cachedBytes -= eldest.next().length;
+                    eldest.remove();
+                }
+            }
+        }
+        return content;
+    }
+    
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
+
@@ -0,0 +1,430 @@
+package com.notification.delivery.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notification.delivery.dto.DeliveryResult;
+import com.notification.delivery.handler.RetryHandler;
+import com.notification.delivery.metrics.ConsumerLagMonitor;
+import com.notification.delivery.model.ProcessedEvent;
+import com.notification.delivery.service.ChannelConcurrencyLimiter;
+import com.notification.delivery.service.DeliveryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Delivery latency by priority through a provider brownout, with priority load shedding
+ * (notification.delivery.overload) on and off. Records arrive at a steady rate and go through the
+ * real consumer, parallel dispatcher, adaptive channel limit, retry policy and overload
+ * controller, configured as in application.yml; only Kafka and the provider are simulated. During
+ * the brownout the provider serves fewer calls at once and each takes longer, so it falls behind
+ * the arrival rate. Deferred deliveries are consumed again once the controller is back at the
+ * normal level, as the paused deferral listener would be, retried like the container retries them.
+ * <p>
+ * Latency is from arrival to the end of the provider call that delivered; records given up on
+ * to the DLQ are counted instead. With shedding, the HIGH p99 of records arriving during the
+ * brownout must stay within {@code benchmark.high-p99-limit-ms}.
+ * <p>
+ * Not part of the regular build; needs no infrastructure and runs for a few minutes:
+ * <pre>
+ * mvn test -Dtest=DeliveryBrownoutBenchmark [-Dbenchmark.rate=150] [-Dbenchmark.before-seconds=10]
+ *          [-Dbenchmark.brownout-seconds=60] [-Dbenchmark.after-seconds=30]
+ *          [-Dbenchmark.provider-slots=20] [-Dbenchmark.provider-ms=10]
+ *          [-Dbenchmark.brownout-slots=2] [-Dbenchmark.brownout-ms=20] [-Dbenchmark.high-p99-limit-ms=500]
+ * </pre>
+ */
+class DeliveryBrownoutBenchmark {
+    
+    private static final String TOPIC = "benchmark.processed";
+    private static final String DEFERRED_TOPIC = "benchmark.deferred";
+    private static final String CHANNEL = "EMAIL";
+    private static final int PARTITIONS = 3;
+    private static final List<String> PRIORITIES = List.of("HIGH", "MEDIUM", "LOW");
+    private static final long WINDOW_MS = 10_000;
+    
+    private final int rate = Integer.getInteger("benchmark.rate", 150);
+    private final long beforeMs = TimeUnit.SECONDS.toMillis(Long.getLong("benchmark.before-seconds", 10));
+    private final long brownoutMs = TimeUnit.SECONDS.toMillis(Long.getLong("benchmark.brownout-seconds", 60));
+    private final long afterMs = TimeUnit.SECONDS.toMillis(Long.getLong("benchmark.after-seconds", 30));
+    private final int providerSlots = Integer.getInteger("benchmark.provider-slots", 20);
+    private final long providerCallMs = Long.getLong("benchmark.provider-ms", 10);
+    private final int brownoutSlots = Integer.getInteger("benchmark.brownout-slots", 2);
+    private final long brownoutCallMs = Long.getLong("benchmark.brownout-ms", 20);
+    private final long highP99LimitMs = Long.getLong("benchmark.high-p99-limit-ms", 500);
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    private enum Phase {
+        BEFORE, BROWNOUT, AFTER
+    }
+    
+    private record Delivery(String priority, long arrivalMs, long latencyMs, boolean deadLettered) {
+    }
+    
+    @Test
+    void highPriorityLatencyThroughABrownout() throws Exception {
+        System.out.printf("%d records/s, 3 in 20 HIGH; provider %d calls at once at %d ms, brownout %d at %d ms "
+                        + "from %d s to %d s%n", rate, providerSlots, providerCallMs, brownoutSlots, brownoutCallMs,
+                beforeMs / 1000, (beforeMs + brownoutMs) / 1000);
+        Run unprotected = new Run("no shedding", false);
+        unprotected.execute();
+        Run shedding = new Run("shedding", true);
+        shedding.execute();
+        
+        System.out.println("HIGH p99 by arrival time:");
+        for (long window = 0; window < beforeMs + brownoutMs + afterMs; window += WINDOW_MS) {
+            System.out.printf("  %3d-%3d s: no shedding %6d ms, shedding %6d ms%n", window / 1000,
+                    (window + WINDOW_MS) / 1000, unprotected.highP99(window, window + WINDOW_MS),
+                    shedding.highP99(window, window + WINDOW_MS));
+        }
+        
+        long brownoutP99 = shedding.percentile("HIGH", Phase.BROWNOUT, 0.99);
+        assertThat(shedding.deadLettered("HIGH", Phase.BROWNOUT)).as("HIGH given up on in the brownout").isZero();
+        assertThat(brownoutP99).as("HIGH p99 in the brownout with shedding").isLessThanOrEqualTo(highP99LimitMs);
+    }
+    
+    /**
+     * One pass of the load through a fresh set of components.
+     */
+    private final class Run {
+        
+        private final String name;
+        private final boolean shedding;
+        
+        private final Map<String, Long> arrivals = new ConcurrentHashMap<>();
+        private final Set<String> deferredIds = ConcurrentHashMap.newKeySet();
+        private final Queue<Delivery> deliveries = new ConcurrentLinkedQueue<>();
+        private final List<BlockingQueue<ConsumerRecord<String, Object>>> partitions = new ArrayList<>();
+        private final BlockingQueue<ProducerRecord<String, Object>> deferredRecords = new LinkedBlockingQueue<>();
+        private final AtomicLong produced = new AtomicLong();
+        private final AtomicLong finished = new AtomicLong();
+        private final AtomicLong inputDone = new AtomicLong();
+        private final AtomicLong deferred = new AtomicLong();
+        private final Semaphore normalProvider = new Semaphore(providerSlots, true);
+        private final Semaphore brownoutProvider = new Semaphore(brownoutSlots, true);
+        
+        private volatile boolean running = true;
+        private volatile OverloadController.Level highestLevel = OverloadController.Level.NORMAL;
+        private long startNanos;
+        
+        private Run(String name, boolean shedding) {
+            this.name = name;
+            this.shedding = shedding;
+            for (int i = 0; i < PARTITIONS; i++) {
+                partitions.add(new LinkedBlockingQueue<>());
+            }
+        }
+        
+        void execute() throws Exception {
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            
+            RetryHandler retryHandler = new RetryHandler(null, null, objectMapper) {
+                @Override
+                public void sendToDLQ(ConsumerRecord<?, ?> record, Exception exception) {
+                    Map<?, ?> value = (Map<?, ?>) record.value();
+                    finish(value.get("notificationId").toString(), value.get("priority").toString(), true);
+                }
+            };
+            ReflectionTestUtils.setField(retryHandler, "maxAttempts", 3);
+            ReflectionTestUtils.setField(retryHandler, "initialIntervalMs", 1000L);
+            ReflectionTestUtils.setField(retryHandler, "multiplier", 2.0);
+            ReflectionTestUtils.setField(retryHandler, "maxIntervalMs", 10_000L);
+            
+            ParallelRecordDispatcher dispatcher = new ParallelRecordDispatcher(meterRegistry, retryHandler);
+            ReflectionTestUtils.setField(dispatcher, "enabled", true);
+            ReflectionTestUtils.setField(dispatcher, "initialWorkers", 32);
+            ReflectionTestUtils.setField(dispatcher, "maxInFlight", 1000);
+            ReflectionTestUtils.setField(dispatcher, "orderingKey", "userId");
+            dispatcher.init();
+            
+            ChannelConcurrencyLimiter limiter = new ChannelConcurrencyLimiter(meterRegistry);
+            ReflectionTestUtils.setField(limiter, "enabled", true);
+            ReflectionTestUtils.setField(limiter, "initialLimit", 20);
+            ReflectionTestUtils.setField(limiter, "minLimit", 1);
+            ReflectionTestUtils.setField(limiter, "maxLimit", 200);
+            ReflectionTestUtils.setField(limiter, "smoothing", 0.2);
+            ReflectionTestUtils.setField(limiter, "backoffRatio", 0.9);
+            ReflectionTestUtils.setField(limiter, "queueTimeoutMs", 1000L);
+            ReflectionTestUtils.setField(limiter, "maxKeys", 1000);
+            
+            // Committed offsets of the input topic: deferred records count as consumed
+            ConsumerLagMonitor lagMonitor = new ConsumerLagMonitor(meterRegistry, null) {
+                @Override
+                public long getTotalLag() {
+                    return produced.get() - inputDone.get();
+                }
+            };
+            OverloadController controller = new OverloadController(lagMonitor, dispatcher, limiter,
+                    new KafkaListenerEndpointRegistry(), meterRegistry);
+            ReflectionTestUtils.setField(controller, "enabled", shedding);
+            ReflectionTestUtils.setField(controller, "lagHigh", 5000L);
+            ReflectionTestUtils.setField(controller, "inFlightHighRatio", 0.8);
+            ReflectionTestUtils.setField(controller, "saturationHigh", 0.9);
+            ReflectionTestUtils.setField(controller, "recoverRatio", 0.5);
+            ReflectionTestUtils.setField(controller, "escalateIntervalMs", 5000L);
+            ReflectionTestUtils.setField(controller, "recoverCooldownMs", 30_000L);
+            controller.init();
+            
+            DeliveryService deliveryService = mock(DeliveryService.class);
+            doAnswer(invocation -> {
+                ProcessedEvent event = invocation.getArgument(0);
+                limiter.execute(CHANNEL, this::callProvider);
+                finish(event.getNotificationId(), event.getPriority(), false);
+                return null;
+            }).when(deliveryService).processDelivery(any(), any(), anyInt());
+            
+            @SuppressWarnings("unchecked")
+            KafkaTemplate<String, Object> kafkaTemplate = mock(KafkaTemplate.class);
+            when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+                ProducerRecord<String, Object> record = invocation.getArgument(0);
+                deferredIds.add(((Map<?, ?>) record.value()).get("notificationId").toString());
+                inputDone.incrementAndGet();
+                deferred.incrementAndGet();
+                deferredRecords.add(record);
+                return CompletableFuture.completedFuture(null);
+            });
+            
+            DeliveryConsumer consumer = new DeliveryConsumer(deliveryService, objectMapper, dispatcher, controller,
+                    kafkaTemplate, meterRegistry);
+            ReflectionTestUtils.setField(consumer, "deferredTopic", DEFERRED_TOPIC);
+            ReflectionTestUtils.setField(consumer, "deferTimeoutMs", 10_000L);
+            
+            // Offsets are committed by the dispatcher; the simulated partitions never redeliver
+            Acknowledgment acknowledgment = () -> {
+            };
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+            scheduler.scheduleWithFixedDelay(() -> {
+                controller.evaluate();
+                if (controller.getLevel().compareTo(highestLevel) > 0) {
+                    highestLevel = controller.getLevel();
+                }
+            }, 1000, 1000, TimeUnit.MILLISECONDS);
+            
+            List<Thread> threads = new ArrayList<>();
+            for (BlockingQueue<ConsumerRecord<String, Object>> partition : partitions) {
+                threads.add(start("benchmark-consumer", () -> {
+                    ConsumerRecord<String, Object> record = partition.poll(100, TimeUnit.MILLISECONDS);
+                    if (record != null) {
+                        consumer.consume(record, acknowledgment);
+                    }
+                }));
+            }
+            AtomicLong deferredOffset = new AtomicLong();
+            threads.add(start("benchmark-deferred-consumer", () -> {
+                if (controller.getLevel() != OverloadController.Level.NORMAL) {
+                    Thread.sleep(100);
+                    return;
+                }
+                ProducerRecord<String, Object> record = deferredRecords.poll(100, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    consumeDeferred(consumer, retryHandler, new ConsumerRecord<>(DEFERRED_TOPIC, 0,
+                            deferredOffset.getAndIncrement(), record.key(), record.value()), acknowledgment);
+                }
+            }));
+            
+            startNanos = System.nanoTime();
+            try {
+                produce();
+                long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(10);
+                while (finished.get() < produced.get() && System.nanoTime() < deadline) {
+                    Thread.sleep(100);
+                }
+                assertThat(finished.get()).as("%s records finished", name).isEqualTo(produced.get());
+            } finally {
+                running = false;
+                for (Thread thread : threads) {
+                    thread.interrupt();
+                    thread.join();
+                }
+                scheduler.shutdownNow();
+                dispatcher.shutdown();
+            }
+            
+            for (Phase phase : Phase.values()) {
+                for (String priority : PRIORITIES) {
+                    System.out.printf("%-11s %-8s %-6s %5d delivered, p50 %6d ms, p99 %6d ms, %4d to the DLQ%n",
+                            name, phase, priority, delivered(priority, phase), percentile(priority, phase, 0.5),
+                            percentile(priority, phase, 0.99), deadLettered(priority, phase));
+                }
+            }
+            System.out.printf("%s: %d records, %d deferred, highest shedding level %s%n", name, produced.get(),
+                    deferred.get(), highestLevel);
+        }
+        
+        /**
+         * Emits the records at the arrival rate, round robin over the partitions, each to its own
+         * user. Arrival is the time a record was due, so falling behind does not hide latency.
+         */
+        private void produce() {
+            long records = rate * (beforeMs + brownoutMs + afterMs) / 1000;
+            for (long i = 0; i < records; i++) {
+                long due = startNanos + i * TimeUnit.SECONDS.toNanos(1) / rate;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                String id = name + "-" + i;
+                Map<String, Object> value = new HashMap<>();
+                value.put("notificationId", id);
+                value.put("userId", "user-" + i);
+                value.put("eventType", "ORDER_SHIPPED");
+                value.put("priority", i % 20 < 3 ? "HIGH" : i % 20 < 10 ? "MEDIUM" : "LOW");
+                value.put("channels", List.of(CHANNEL));
+                arrivals.put(id, due);
+                produced.incrementAndGet();
+                int partition = (int) (i % PARTITIONS);
+                partitions.get(partition).add(new ConsumerRecord<>(TOPIC, partition, i / PARTITIONS,
+                        "user-" + i, value));
+            }
+        }
+        
+        /**
+         * Delivers a deferred record as the listener container would: failures are retried after
+         * the backoff with the attempt in the delivery attempt header, then given up on to the DLQ.
+         */
+        private void consumeDeferred(DeliveryConsumer consumer, RetryHandler retryHandler,
+                                     ConsumerRecord<String, Object> record, Acknowledgment acknowledgment)
+                throws InterruptedException {
+            for (int attempt = 1; ; attempt++) {
+                record.headers().remove(KafkaHeaders.DELIVERY_ATTEMPT);
+                record.headers().add(KafkaHeaders.DELIVERY_ATTEMPT, ByteBuffer.allocate(4).putInt(attempt).array());
+                try {
+                    consumer.consumeDeferred(record, acknowledgment);
+                    return;
+                } catch (RuntimeException e) {
+                    if (!retryHandler.shouldRetry(e, attempt)) {
+                        retryHandler.sendToDLQ(record, e);
+                        return;
+                    }
+                    Thread.sleep(retryHandler.calculateBackoffTime(attempt));
+                }
+            }
+        }
+        
+        private DeliveryResult callProvider() {
+            boolean brownout = phaseAt(System.nanoTime()) == Phase.BROWNOUT;
+            Semaphore slots = brownout ? brownoutProvider : normalProvider;
+            try {
+                slots.acquire();
+                try {
+                    Thread.sleep(brownout ? brownoutCallMs : providerCallMs);
+                } finally {
+                    slots.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return DeliveryResult.failure(CHANNEL, "Interrupted");
+            }
+            return DeliveryResult.success(CHANNEL, "Sent");
+        }
+        
+        private void finish(String notificationId, String priority, boolean deadLettered) {
+            Long arrival = arrivals.remove(notificationId);
+            if (arrival == null) {
+                return;
+            }
+            if (!deferredIds.contains(notificationId)) {
+                inputDone.incrementAndGet();
+            }
+            deliveries.add(new Delivery(priority, TimeUnit.NANOSECONDS.toMillis(arrival - startNanos),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - arrival), deadLettered));
+            finished.incrementAndGet();
+        }
+        
+        private Phase phaseAt(long nanos) {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(nanos - startNanos);
+            return elapsedMs < beforeMs ? Phase.BEFORE
+                    : elapsedMs < beforeMs + brownoutMs ? Phase.BROWNOUT : Phase.AFTER;
+        }
+        
+        private Phase phaseOf(Delivery delivery) {
+            return phaseAt(startNanos + TimeUnit.MILLISECONDS.toNanos(delivery.arrivalMs()));
+        }
+        
+        long delivered(String priority, Phase phase) {
+            return deliveries.stream()
+                    .filter(delivery -> !delivery.deadLettered() && delivery.priority().equals(priority)
+                            && phaseOf(delivery) == phase)
+                    .count();
+        }
+        
+        long deadLettered(String priority, Phase phase) {
+            return deliveries.stream()
+                    .filter(delivery -> delivery.deadLettered() && delivery.priority().equals(priority)
+                            && phaseOf(delivery) == phase)
+                    .count();
+        }
+        
+        long percentile(String priority, Phase phase, double quantile) {
+            return percentile(deliveries.stream()
+                    .filter(delivery -> !delivery.deadLettered() && delivery.priority().equals(priority)
+                            && phaseOf(delivery) == phase)
+                    .mapToLong(Delivery::latencyMs)
+                    .sorted()
+                    .toArray(), quantile);
+        }
+        
+        long highP99(long fromMs, long toMs) {
+            return percentile(deliveries.stream()
+                    .filter(delivery -> !delivery.deadLettered() && delivery.priority().equals("HIGH")
+                            && delivery.arrivalMs() >= fromMs && delivery.arrivalMs() < toMs)
+                    .mapToLong(Delivery::latencyMs)
+                    .sorted()
+                    .toArray(), 0.99);
+        }
+        
+        private long percentile(long[] sorted, double quantile) {
+            return sorted.length == 0 ? 0 : sorted[(int) Math.ceil(sorted.length * quantile) - 1];
+        }
+        
+        private Thread start(String threadName, Step step) {
+            Thread thread = new Thread(() -> {
+                try {
+                    while (running) {
+                        step.run();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, threadName);
+            thread.start();
+            return thread;
+        }
+    }
+    
+    private interface Step {
+        void run() throws InterruptedException;
+    }
+}
+
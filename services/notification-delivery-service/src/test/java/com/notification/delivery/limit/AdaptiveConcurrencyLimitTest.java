@@ -0,0 +1,88 @@
+package com.notification.delivery.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimitTest {
+    
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+    
+    private final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 100, 0.2, 0.9);
+    
+    @Test
+    void admitsCallsUpToTheLimit() throws InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            assertThat(limit.acquire(0)).isTrue();
+        }
+        
+        assertThat(limit.acquire(TimeUnit.MILLISECONDS.toNanos(10))).isFalse();
+        assertThat(limit.getInFlight()).isEqualTo(10);
+        
+        limit.release(FAST, false);
+        assertThat(limit.acquire(0)).isTrue();
+    }
+    
+    @Test
+    void growsWhileFullyUsedAtSteadyLatency() throws InterruptedException {
+        for (int round = 0; round < 100; round++) {
+            saturate(FAST, false);
+        }
+        
+        assertThat(limit.getLimit()).isEqualTo(100);
+    }
+    
+    @Test
+    void doesNotGrowWhileMostlyIdle() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            assertThat(limit.acquire(0)).isTrue();
+            limit.release(FAST, false);
+        }
+        
+        assertThat(limit.getLimit()).isEqualTo(10);
+    }
+    
+    @Test
+    void shrinksWhenLatencyRisesAboveTheBaseline() throws InterruptedException {
+        for (int round = 0; round < 100; round++) {
+            saturate(FAST, false);
+        }
+        int before = limit.getLimit();
+        
+        for (int round = 0; round < 30; round++) {
+            saturate(SLOW, false);
+        }
+        
+        assertThat(limit.getLimit()).isLessThan(before / 4);
+    }
+    
+    @Test
+    void backsOffOnErrorsDownToTheMinimum() throws InterruptedException {
+        assertThat(limit.acquire(0)).isTrue();
+        limit.release(FAST, true);
+        assertThat(limit.getLimit()).isEqualTo(9);
+        
+        for (int i = 0; i < 50; i++) {
+            assertThat(limit.acquire(0)).isTrue();
+            limit.release(FAST, true);
+        }
+        assertThat(limit.getLimit()).isEqualTo(2);
+    }
+    
+    /**
+     * Fills the current limit and then completes every call with the given latency.
+     */
+    private void saturate(long rttNanos, boolean dropped) throws InterruptedException {
+        int calls = limit.getLimit();
+        for (int i = 0; i < calls; i++) {
+            assertThat(limit.acquire(0)).isTrue();
+        }
+        for (int i = 0; i < calls; i++) {
+            limit.release(rttNanos, dropped);
+        }
+    }
+}
+
@@ -0,0 +1,91 @@
+package com.notification.delivery.service;
+
+import com.notification.delivery.channel.NotificationChannel;
+import com.notification.delivery.dto.DeliveryResult;
+import com.notification.delivery.dto.UserContact;
+import com.notification.delivery.handler.RetryHandler;
+import com.notification.delivery.metrics.LatencyMetrics;
+import com.notification.delivery.metrics.PipelineTimestamps;
+import com.notification.delivery.model.ProcessedEvent;
+import com.notification.delivery.repository.DeliveryLogRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeliveryServiceTest {
+    
+    private final ChannelFactory channelFactory = mock(ChannelFactory.class);
+    private final RateLimitService rateLimitService = mock(RateLimitService.class);
+    private final StatusPublisher statusPublisher = mock(StatusPublisher.class);
+    private final ContactDirectory contactDirectory = mock(ContactDirectory.class);
+    private final NotificationChannel pushChannel = mock(NotificationChannel.class);
+    
+    private final DeliveryService service = new DeliveryService(channelFactory, rateLimitService,
+            mock(DeliveryLogRepository.class), mock(WebSocketNotificationService.class), mock(LatencyMetrics.class),
+            mock(RetryHandler.class), statusPublisher, mock(DeliveryStatsAggregator.class),
+            mock(PayloadResolver.class), mock(ChannelConcurrencyLimiter.class), mock(ExpiryPolicy.class),
+            contactDirectory);
+    
+    @BeforeEach
+    void setUp() {
+        when(rateLimitService.isAllowed(anyString(), anyString())).thenReturn(true);
+        when(channelFactory.getChannel(anyString())).thenReturn(mock(NotificationChannel.class));
+        when(channelFactory.getChannel("PUSH")).thenReturn(pushChannel);
+        when(pushChannel.deliver(any())).thenReturn(DeliveryResult.success("PUSH", "sent"));
+        // No email address or phone number
+        when(contactDirectory.lookup(anyString())).thenReturn(new UserContact());
+    }
+    
+    @Test
+    void reportsSkippedWhenNoChannelCouldBeDelivered() {
+        ProcessedEvent event = event("EMAIL", "SMS");
+        
+        service.processDelivery(event, new PipelineTimestamps(), 1);
+        
+        verify(statusPublisher).publish(event.getNotificationId(), event.getCreatedAt(), "SKIPPED");
+        verify(statusPublisher, never()).publish(anyString(), any(), eq("DELIVERED"));
+    }
+    
+    @Test
+    void reportsDeliveredWhenOneChannelDelivered() {
+        ProcessedEvent event = event("EMAIL", "PUSH");
+        
+        service.processDelivery(event, new PipelineTimestamps(), 1);
+        
+        verify(statusPublisher).publish(event.getNotificationId(), event.getCreatedAt(), "DELIVERED");
+    }
+    
+    @Test
+    void reportsRateLimitedWhenNoChannelDeliveredAndOneWasRateLimited() {
+        when(rateLimitService.isAllowed(anyString(), eq("PUSH"))).thenReturn(false);
+        ProcessedEvent event = event("EMAIL", "PUSH");
+        
+        service.processDelivery(event, new PipelineTimestamps(), 1);
+        
+        verify(statusPublisher).publish(event.getNotificationId(), event.getCreatedAt(), "RATE_LIMITED");
+        verify(pushChannel, never()).deliver(any());
+    }
+    
+    private static ProcessedEvent event(String... channels) {
+        return ProcessedEvent.builder()
+                .notificationId(UUID.randomUUID().toString())
+                .userId("user-1")
+                .eventType("ORDER_SHIPPED")
+                .priority("MEDIUM")
+                .channels(List.of(channels))
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+}
+
@@ -3,9 +3,11 @@ package com.notification.processing;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableKafka
+@EnableScheduling
 public class NotificationProcessingServiceApplication {
     public static void main(String[] args) {
         SpringApplication.run(NotificationProcessingServiceApplication.class, args);
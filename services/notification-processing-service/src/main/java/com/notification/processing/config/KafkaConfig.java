@@ -3,19 +3,37 @@ package com.notification.processing.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.notification.processing.consumer.RebalanceTracker;
+import com.notification.processing.handler.RetryHandler;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.listener.ContainerPausingBackOffHandler;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultAfterRollbackProcessor;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.listener.ListenerContainerPauseService;
+import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.scheduling.TaskScheduler;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Configuration
@@ -27,6 +45,27 @@ public class KafkaConfig {
     @Value("${spring.kafka.consumer.group-id}")
     private String groupId;
     
+    @Value("${spring.kafka.listener.concurrency:3}")
+    private int concurrency;
+    
+    @Value("${spring.kafka.listener.auto-startup:true}")
+    private boolean autoStartup;
+    
+    @Value("${notification.kafka.topics.dlq}")
+    private String dlqTopic;
+    
+    @Value("${notification.kafka.exactly-once.enabled:false}")
+    private boolean exactlyOnce;
+    
+    @Value("${notification.kafka.exactly-once.transaction-id-prefix:notification-processing-tx-}")
+    private String transactionIdPrefix;
+    
+    @Value("${notification.kafka.exactly-once.retry-backoff-ms:10}")
+    private int transactionRetryBackoffMs;
+    
+    @Value("${notification.kafka.parallel.enabled:false}")
+    private boolean parallelConsumer;
+    
     @Bean
     public ObjectMapper objectMapper() {
         ObjectMapper mapper = new ObjectMapper();
@@ -41,7 +80,10 @@ public class KafkaConfig {
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
+        // Poison pills surface as DeserializationException to the error handler instead of
+        // failing every poll
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class);
         config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
         config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 100);
@@ -51,16 +93,100 @@ public class KafkaConfig {
     }
     
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(
+            RebalanceTracker rebalanceTracker, DefaultErrorHandler kafkaErrorHandler,
+            DefaultAfterRollbackProcessor<String, Object> kafkaAfterRollbackProcessor) {
         ConcurrentKafkaListenerContainerFactory<String, Object> factory = 
             new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
-        factory.getContainerProperties().setAckMode(
-            org.springframework.kafka.listener.ContainerProperties.AckMode.MANUAL);
-        factory.setConcurrency(3);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.setConcurrency(concurrency);
+        factory.setAutoStartup(autoStartup);
+        // Drops offset tracking for revoked partitions in parallel consumer mode and times
+        // assignments for the idempotency filter
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceTracker);
+        factory.setCommonErrorHandler(kafkaErrorHandler);
+        
+        if (exactlyOnce) {
+            if (parallelConsumer) {
+                // Worker threads complete records outside the consumer thread's transaction
+                throw new IllegalStateException(
+                    "notification.kafka.exactly-once and notification.kafka.parallel cannot both be enabled");
+            }
+            // Each record is consumed, published and its offset committed in one Kafka transaction;
+            // MANUAL_IMMEDIATE sends the acknowledged offset to that transaction
+            factory.getContainerProperties().setTransactionManager(new KafkaTransactionManager<>(producerFactory()));
+            factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+            factory.setAfterRollbackProcessor(kafkaAfterRollbackProcessor);
+        }
         return factory;
     }
     
+    /**
+     * Retries retryable failures with exponential backoff and publishes the record to the DLQ
+     * once attempts are exhausted, or immediately for non-retryable failures. The backoff pauses
+     * the container instead of sleeping on the consumer thread, so polling continues.
+     */
+    @Bean
+    public DefaultErrorHandler kafkaErrorHandler(RetryHandler retryHandler,
+                                                 KafkaListenerEndpointRegistry listenerEndpointRegistry,
+                                                 TaskScheduler taskScheduler) {
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(retryHandler::sendToDLQ,
+            retryBackOff(retryHandler), pausingBackOffHandler(listenerEndpointRegistry, taskScheduler));
+        RetryHandler.NON_RETRYABLE_EXCEPTIONS.forEach(errorHandler::addNotRetryableExceptions);
+        return errorHandler;
+    }
+    
+    /**
+     * Exactly-once counterpart of {@link #kafkaErrorHandler}: runs after the transaction of a failed
+     * record was rolled back, with the same retry policy. The DLQ publish and the recovered
+     * record's offset are committed in one transaction.
+     */
+    @Bean
+    public DefaultAfterRollbackProcessor<String, Object> kafkaAfterRollbackProcessor(
+            RetryHandler retryHandler, KafkaTemplate<String, Object> kafkaTemplate,
+            KafkaListenerEndpointRegistry listenerEndpointRegistry, TaskScheduler taskScheduler) {
+        DefaultAfterRollbackProcessor<String, Object> afterRollbackProcessor = new DefaultAfterRollbackProcessor<>(
+            retryHandler::sendToDLQ, retryBackOff(retryHandler),
+            pausingBackOffHandler(listenerEndpointRegistry, taskScheduler), kafkaTemplate, true);
+        RetryHandler.NON_RETRYABLE_EXCEPTIONS.forEach(afterRollbackProcessor::addNotRetryableExceptions);
+        return afterRollbackProcessor;
+    }
+    
+    private ExponentialBackOffWithMaxRetries retryBackOff(RetryHandler retryHandler) {
+        ExponentialBackOffWithMaxRetries backOff =
+            new ExponentialBackOffWithMaxRetries(retryHandler.getMaxAttempts() - 1);
+        backOff.setInitialInterval(retryHandler.getInitialIntervalMs());
+        backOff.setMultiplier(retryHandler.getMultiplier());
+        backOff.setMaxInterval(retryHandler.getMaxIntervalMs());
+        return backOff;
+    }
+    
+    private ContainerPausingBackOffHandler pausingBackOffHandler(KafkaListenerEndpointRegistry listenerEndpointRegistry,
+                                                                 TaskScheduler taskScheduler) {
+        return new ContainerPausingBackOffHandler(
+            new ListenerContainerPauseService(listenerEndpointRegistry, taskScheduler));
+    }
+    
+    @Bean
+    public DeadLetterPublishingRecoverer deadLetterPublishingRecoverer(KafkaTemplate<String, Object> kafkaTemplate) {
+        Map<Class<?>, KafkaOperations<?, ?>> templates = new LinkedHashMap<>();
+        // Payloads that could not be deserialized are republished as the raw bytes received
+        templates.put(byte[].class, new KafkaTemplate<>(dlqBytesProducerFactory()));
+        templates.put(Object.class, kafkaTemplate);
+        
+        // Partition left to the producer; the original partition/offset travel as headers
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(templates,
+            (record, exception) -> new TopicPartition(dlqTopic, -1));
+        recoverer.setHeadersFunction((record, exception) -> {
+            RecordHeaders headers = new RecordHeaders();
+            headers.add(RetryHandler.FAILURE_STAGE_HEADER,
+                RetryHandler.FAILURE_STAGE.getBytes(StandardCharsets.UTF_8));
+            return headers;
+        });
+        return recoverer;
+    }
+    
     @Bean
     public ProducerFactory<String, Object> producerFactory() {
         Map<String, Object> config = new HashMap<>();
@@ -70,12 +196,33 @@ public class KafkaConfig {
         config.put(ProducerConfig.ACKS_CONFIG, "all");
         config.put(ProducerConfig.RETRIES_CONFIG, 3);
         config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
-        return new DefaultKafkaProducerFactory<>(config);
+        if (exactlyOnce) {
+            // Every record commits its own transaction, and the broker refuses to add partitions to
+            // the next one until the previous commit is written; at the default 100ms backoff that
+            // wait caps a consumer at a few dozen records per second
+            config.put(ProducerConfig.RETRY_BACKOFF_MS_CONFIG, transactionRetryBackoffMs);
+        }
+        DefaultKafkaProducerFactory<String, Object> factory = new DefaultKafkaProducerFactory<>(config);
+        if (exactlyOnce) {
+            factory.setTransactionIdPrefix(transactionIdPrefix);
+        }
+        return factory;
     }
     
     @Bean
     public KafkaTemplate<String, Object> kafkaTemplate() {
         return new KafkaTemplate<>(producerFactory());
     }
+    
+    @Bean
+    public ProducerFactory<String, byte[]> dlqBytesProducerFactory() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        config.put(ProducerConfig.ACKS_CONFIG, "all");
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        return new DefaultKafkaProducerFactory<>(config);
+    }
 }
 
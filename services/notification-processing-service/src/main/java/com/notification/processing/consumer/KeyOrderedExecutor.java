@@ -0,0 +1,91 @@
+package com.notification.processing.consumer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs tasks on a shared worker pool while keeping tasks with the same key in submission order.
+ * <p>
+ * Each key keeps a reference to its last submitted task; a new task for that key is chained
+ * behind it, so different keys run in parallel and equal keys run one after another without
+ * pinning a thread per key. The number of queued plus running tasks is bounded by
+ * {@code maxInFlight}; {@link #submit} blocks the caller once the bound is reached.
+ * <p>
+ * A task is a supplier of a future, so it may span several asynchronous steps (such as retries
+ * after a delay) while the next task for its key waits and no worker thread is held.
+ * <p>
+ * The delivery service has an identical copy (see Shared Code in docs/architecture.md);
+ * change both together.
+ */
+public class KeyOrderedExecutor {
+    
+    private final ThreadPoolExecutor workers;
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final ConcurrentMap<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+    
+    public KeyOrderedExecutor(String threadNamePrefix, int parallelism, int maxInFlight) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.permits = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+    }
+    
+    public CompletableFuture<Void> submit(String key, Supplier<CompletableFuture<Void>> task)
+            throws InterruptedException {
+        permits.acquire();
+        
+        CompletableFuture<Void> next = tails.compute(key, (k, tail) -> tail == null
+                ? CompletableFuture.supplyAsync(task, workers).thenCompose(Function.identity())
+                // Run after the previous task for this key regardless of how it ended
+                : tail.handle((result, error) -> null).thenComposeAsync(ignored -> task.get(), workers));
+        
+        next.whenComplete((result, error) -> {
+            tails.remove(key, next);
+            permits.release();
+        });
+        return next;
+    }
+    
+    public synchronized void setParallelism(int parallelism) {
+        if (parallelism > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(parallelism);
+            workers.setCorePoolSize(parallelism);
+        } else {
+            workers.setCorePoolSize(parallelism);
+            workers.setMaximumPoolSize(parallelism);
+        }
+    }
+    
+    public Executor getExecutor() {
+        return workers;
+    }
+    
+    public int getParallelism() {
+        return workers.getCorePoolSize();
+    }
+    
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+    
+    public void shutdown(long timeoutMs) throws InterruptedException {
+        workers.shutdown();
+        workers.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+}
+
@@ -1,67 +1,71 @@
 package com.notification.processing.consumer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notification.processing.metrics.PipelineTimestamps;
 import com.notification.processing.model.NotificationEvent;
 import com.notification.processing.service.NotificationProcessor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.AbstractConsumerSeekAware;
 import org.springframework.kafka.support.Acknowledgment;
-import org.springframework.kafka.support.KafkaHeaders;
-import org.springframework.messaging.handler.annotation.Header;
-import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
-
 @Component
 @RequiredArgsConstructor
 @Slf4j
-public class NotificationConsumer {
+public class NotificationConsumer extends AbstractConsumerSeekAware {
+    
+    public static final String LISTENER_ID = "notificationConsumer";
     
     private final NotificationProcessor notificationProcessor;
     private final ObjectMapper objectMapper;
+    private final ParallelRecordDispatcher parallelRecordDispatcher;
     
     @KafkaListener(
+        id = LISTENER_ID,
         topics = "${notification.kafka.topics.input}",
         groupId = "${spring.kafka.consumer.group-id}",
         containerFactory = "kafkaListenerContainerFactory"
     )
-    public void consume(
-            @Payload Map<String, Object> message,
-            @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
-            @Header(KafkaHeaders.OFFSET) long offset,
-            Acknowledgment acknowledgment) {
-        
-        try {
-            log.info("Received message from partition: {}, offset: {}", partition, offset);
-            log.debug("Message content: {}", message);
-            
-            // Convert Map to NotificationEvent
-            NotificationEvent event = convertToNotificationEvent(message);
-            
-            // Process the notification
-            notificationProcessor.processNotification(event);
-            
-            // Manually acknowledge the message
-            acknowledgment.acknowledge();
-            
-            log.info("Successfully processed and acknowledged message. NotificationId: {}", 
-                    event.getNotificationId());
-            
-        } catch (Exception e) {
-            log.error("Error consuming message from partition: {}, offset: {}. Error: {}", 
-                    partition, offset, e.getMessage(), e);
-            
-            // Acknowledge anyway to avoid blocking the consumer
-            // The retry logic is handled within the processor
-            acknowledgment.acknowledge();
+    public void consume(ConsumerRecord<String, Object> record, Acknowledgment acknowledgment) {
+        if (parallelRecordDispatcher.isEnabled()) {
+            // Offsets are acknowledged by the dispatcher once all earlier records have completed
+            parallelRecordDispatcher.dispatch(record, acknowledgment, seekCallbackOf(record), attempt -> process(record));
+            return;
         }
+        
+        process(record);
+        
+        // Manually acknowledge the message
+        acknowledgment.acknowledge();
+    }
+    
+    /**
+     * Failures propagate: the container's error handler (or the parallel dispatcher) retries
+     * retryable ones with backoff and publishes the record to the DLQ when it gives up.
+     */
+    private void process(ConsumerRecord<String, Object> record) {
+        log.info("Received message from partition: {}, offset: {}", record.partition(), record.offset());
+        log.debug("Message content: {}", record.value());
+        
+        // Convert payload to NotificationEvent
+        NotificationEvent event = convertToNotificationEvent(record.value());
+        
+        // Carry the upstream stage timestamps through processing
+        PipelineTimestamps timestamps = PipelineTimestamps.fromHeaders(record.headers(), record.timestamp());
+        
+        // Process the notification
+        notificationProcessor.processNotification(event, record.key(), timestamps);
+        
+        log.info("Successfully processed message. NotificationId: {}", event.getNotificationId());
     }
     
-    private NotificationEvent convertToNotificationEvent(Map<String, Object> message) {
+    private NotificationEvent convertToNotificationEvent(Object message) {
         try {
-            // Convert the Map to NotificationEvent using ObjectMapper
+            // Convert the payload (a Map, or a NotificationEvent on retries) using ObjectMapper
             NotificationEvent event = objectMapper.convertValue(message, NotificationEvent.class);
             
             // Initialize retry count if not present
@@ -72,8 +76,16 @@ public class NotificationConsumer {
             return event;
         } catch (Exception e) {
             log.error("Error converting message to NotificationEvent: {}", e.getMessage());
-            throw new RuntimeException("Failed to parse notification event", e);
+            // Not retryable: the payload will never convert
+            throw new IllegalArgumentException("Failed to parse notification event", e);
         }
     }
+    
+    /**
+     * Seeks requested by the dispatcher from worker threads are queued and run by the consumer.
+     */
+    private ConsumerSeekCallback seekCallbackOf(ConsumerRecord<String, Object> record) {
+        return getSeekCallbackFor(new TopicPartition(record.topic(), record.partition()));
+    }
 }
 
@@ -0,0 +1,84 @@
+package com.notification.processing.consumer;
+
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Tracks out-of-order completion of records from one partition and yields the acknowledgment
+ * of the highest offset below which every record has completed. Committing only that offset
+ * keeps at-least-once semantics: a crash never skips a record that was still in flight.
+ * <p>
+ * A tracker created for a partition that was rewound ignores records until the one at the
+ * rewind offset arrives; those before it are leftovers of the fetch preceding the seek.
+ * <p>
+ * The delivery service has an identical copy (see Shared Code in docs/architecture.md);
+ * change both together.
+ */
+public class PartitionOffsetTracker {
+    
+    private final TreeMap<Long, Dispatched> pending = new TreeMap<>();
+    private final Set<Long> completed = new HashSet<>();
+    private long resumeAt;
+    
+    private record Dispatched(Acknowledgment acknowledgment, long dispatchedAt) {
+    }
+    
+    public PartitionOffsetTracker() {
+        this(-1);
+    }
+    
+    /**
+     * @param resumeAt the offset the partition was rewound to, or -1
+     */
+    public PartitionOffsetTracker(long resumeAt) {
+        this.resumeAt = resumeAt;
+    }
+    
+    /**
+     * @return false if the record was fetched before the rewind and is to be skipped
+     */
+    public synchronized boolean dispatched(long offset, Acknowledgment acknowledgment) {
+        if (resumeAt >= 0) {
+            if (offset != resumeAt) {
+                return false;
+            }
+            resumeAt = -1;
+        }
+        pending.put(offset, new Dispatched(acknowledgment, System.currentTimeMillis()));
+        return true;
+    }
+    
+    /**
+     * Marks an offset complete and returns the acknowledgment to commit, or {@code null}
+     * when an earlier offset is still in flight.
+     */
+    public synchronized Acknowledgment completed(long offset) {
+        completed.add(offset);
+        
+        Acknowledgment highestContiguous = null;
+        while (!pending.isEmpty() && completed.remove(pending.firstKey())) {
+            Map.Entry<Long, Dispatched> entry = pending.pollFirstEntry();
+            highestContiguous = entry.getValue().acknowledgment();
+        }
+        return highestContiguous;
+    }
+    
+    /**
+     * @return the lowest offset not committed yet, or -1 if nothing is pending
+     */
+    public synchronized long firstPendingOffset() {
+        return pending.isEmpty() ? -1 : pending.firstKey();
+    }
+    
+    /**
+     * @return when the record holding back the commit was dispatched, or 0 if nothing is pending
+     */
+    public synchronized long oldestPendingMillis() {
+        return pending.isEmpty() ? 0 : pending.firstEntry().getValue().dispatchedAt();
+    }
+}
+
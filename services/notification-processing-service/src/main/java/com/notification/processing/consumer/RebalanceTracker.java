@@ -0,0 +1,48 @@
+package com.notification.processing.consumer;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * Rebalance listener of the listener container. Remembers when this instance last took over
+ * partitions (records appended before that may already have been processed elsewhere) and
+ * passes revocations on to the {@link ParallelRecordDispatcher}.
+ */
+@Component
+@RequiredArgsConstructor
+public class RebalanceTracker implements ConsumerAwareRebalanceListener {
+    
+    private final ParallelRecordDispatcher parallelRecordDispatcher;
+    
+    private volatile long lastAssignmentMillis = Long.MAX_VALUE;
+    
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (!partitions.isEmpty()) {
+            lastAssignmentMillis = System.currentTimeMillis();
+        }
+    }
+    
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        parallelRecordDispatcher.onPartitionsRevokedBeforeCommit(consumer, partitions);
+    }
+    
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        parallelRecordDispatcher.onPartitionsLost(consumer, partitions);
+    }
+    
+    /**
+     * Time of the latest partition assignment, {@link Long#MAX_VALUE} before the first one.
+     */
+    public long getLastAssignmentMillis() {
+        return lastAssignmentMillis;
+    }
+}
+
@@ -0,0 +1,63 @@
+package com.notification.processing.controller;
+
+import com.notification.processing.dto.ReplayFilter;
+import com.notification.processing.dto.ReplayPreview;
+import com.notification.processing.dto.ReplayRequest;
+import com.notification.processing.model.ReplayJob;
+import com.notification.processing.service.DlqReplayService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+@RestController
+@RequestMapping("/api/v1/admin/dlq")
+@RequiredArgsConstructor
+public class DlqReplayController {
+    
+    private final DlqReplayService dlqReplayService;
+    
+    @PostMapping("/preview")
+    public ResponseEntity<ReplayPreview> preview(@RequestBody(required = false) ReplayFilter filter) {
+        return ResponseEntity.ok(dlqReplayService.preview(filter));
+    }
+    
+    @PostMapping("/replays")
+    public ResponseEntity<ReplayJob> startReplay(@RequestBody ReplayRequest request) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(dlqReplayService.start(request));
+    }
+    
+    @GetMapping("/replays")
+    public ResponseEntity<List<ReplayJob>> listReplays() {
+        return ResponseEntity.ok(dlqReplayService.listJobs());
+    }
+    
+    @GetMapping("/replays/{jobId}")
+    public ResponseEntity<ReplayJob> getReplay(@PathVariable String jobId) {
+        return ResponseEntity.of(dlqReplayService.getJob(jobId));
+    }
+    
+    @PostMapping("/replays/{jobId}/pause")
+    public ResponseEntity<ReplayJob> pauseReplay(@PathVariable String jobId) {
+        return ResponseEntity.of(inState(() -> dlqReplayService.pause(jobId)));
+    }
+    
+    @PostMapping("/replays/{jobId}/resume")
+    public ResponseEntity<ReplayJob> resumeReplay(@PathVariable String jobId) {
+        return ResponseEntity.of(inState(() -> dlqReplayService.resume(jobId)));
+    }
+    
+    private Optional<ReplayJob> inState(Supplier<Optional<ReplayJob>> transition) {
+        try {
+            return transition.get();
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+}
+
@@ -0,0 +1,20 @@
+package com.notification.processing.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplayFilter {
+    private Instant from;       // dead-lettered at or after
+    private Instant to;         // dead-lettered before
+    private String eventType;   // exact match, case-insensitive
+    private String error;       // substring of the exception class or message
+}
+
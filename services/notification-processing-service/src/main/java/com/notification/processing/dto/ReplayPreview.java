@@ -0,0 +1,21 @@
+package com.notification.processing.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplayPreview {
+    private long scanned;
+    private long matched;
+    private Map<String, Long> matchedByEventType;
+    private Map<String, Long> matchedByError;
+    private boolean truncated;  // scan stopped at the preview limit
+}
+
@@ -0,0 +1,17 @@
+package com.notification.processing.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplayRequest {
+    private ReplayFilter filter;
+    private Integer ratePerSecond;
+    private Integer parallelism;
+}
+
@@ -1,20 +1,44 @@
 package com.notification.processing.handler;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.notification.processing.model.NotificationEvent;
-import com.notification.processing.service.IdempotencyService;
+import com.notification.processing.service.StatusPublisher;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.messaging.converter.MessageConversionException;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
+/**
+ * Retry policy for failed records: which exceptions are worth retrying, how long to back off
+ * between attempts, and publishing to the DLQ once a record is given up on. Used by the
+ * container's error handler and by the parallel consumer mode alike.
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class RetryHandler {
     
-    private final IdempotencyService idempotencyService;
-    private final KafkaTemplate<String, Object> kafkaTemplate;
+    public static final String FAILURE_STAGE_HEADER = "x-failure-stage";
+    public static final String FAILURE_STAGE = "processing";
+    
+    // Records that cannot be read or are invalid fail the same way on every attempt and go straight
+    // to the DLQ; anything else, including bugs, is retried
+    public static final List<Class<? extends Exception>> NON_RETRYABLE_EXCEPTIONS = List.of(
+            DeserializationException.class,
+            MessageConversionException.class,
+            JsonProcessingException.class,
+            IllegalArgumentException.class);
+    
+    private final DeadLetterPublishingRecoverer deadLetterPublishingRecoverer;
+    private final StatusPublisher statusPublisher;
+    private final ObjectMapper objectMapper;
     
     @Value("${notification.processing.retry.max-attempts}")
     private int maxAttempts;
@@ -28,69 +52,72 @@ public class RetryHandler {
     @Value("${notification.processing.retry.max-interval-ms}")
     private long maxIntervalMs;
     
-    @Value("${notification.kafka.topics.input}")
-    private String retryTopic;
-    
     @Value("${notification.kafka.topics.dlq}")
     private String dlqTopic;
     
-    public boolean shouldRetry(NotificationEvent event) {
-        int currentRetryCount = event.getRetryCount() != null ? event.getRetryCount() : 0;
-        boolean shouldRetry = currentRetryCount < maxAttempts;
-        
-        if (!shouldRetry) {
-            log.warn("Max retry attempts ({}) reached for notification: {}", 
-                    maxAttempts, event.getNotificationId());
+    public boolean isRetryable(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            for (Class<? extends Exception> type : NON_RETRYABLE_EXCEPTIONS) {
+                if (type.isInstance(cause)) {
+                    return false;
+                }
+            }
         }
-        
-        return shouldRetry;
+        return true;
     }
     
-    public void scheduleRetry(NotificationEvent event, Exception exception) {
-        int currentRetryCount = event.getRetryCount() != null ? event.getRetryCount() : 0;
-        int nextRetryCount = currentRetryCount + 1;
+    public boolean shouldRetry(Throwable exception, int attempt) {
+        return attempt < maxAttempts && isRetryable(exception);
+    }
+    
+    /**
+     * Publishes the original record to the DLQ with its headers, the exception details and the
+     * failing stage, and marks the notification FAILED. Throws if the DLQ write or the status
+     * publish fails, so the record is not committed.
+     */
+    public void sendToDLQ(ConsumerRecord<?, ?> record, Exception exception) {
+        log.error("Sending record to DLQ {}. Key: {}, partition: {}, offset: {}, Error: {}",
+                dlqTopic, record.key(), record.partition(), record.offset(), exception.getMessage());
         
-        if (nextRetryCount >= maxAttempts) {
-            sendToDLQ(event, exception);
-            return;
+        deadLetterPublishingRecoverer.accept(record, exception);
+        log.info("Record sent to DLQ: {}", record.key());
+        publishFailed(record.value());
+    }
+    
+    private void publishFailed(Object value) {
+        if (value == null) {
+            return;  // Not deserializable; the notification id is unknown
         }
-        
-        long waitTime = calculateBackoffTime(nextRetryCount);
-        
-        log.info("Scheduling retry {} of {} for notification {} after {}ms. Error: {}", 
-                nextRetryCount, maxAttempts, event.getNotificationId(), waitTime, exception.getMessage());
-        
-        // Update retry count
-        event.setRetryCount(nextRetryCount);
-        idempotencyService.incrementRetryCount(event.getNotificationId());
-        
-        // In a real system, you'd use a scheduled retry mechanism
-        // For simplicity, we'll re-publish to the same topic after a delay
         try {
-            Thread.sleep(waitTime);
-            kafkaTemplate.send(retryTopic, event.getNotificationId(), event);
-            log.info("Retry scheduled successfully for notification: {}", event.getNotificationId());
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.error("Retry scheduling interrupted for notification: {}", event.getNotificationId());
-            sendToDLQ(event, e);
+            NotificationEvent event = value instanceof NotificationEvent notificationEvent
+                    ? notificationEvent : objectMapper.convertValue(value, NotificationEvent.class);
+            if (event.getNotificationId() != null) {
+                statusPublisher.publishAndWait(event.getNotificationId(), event.getCreatedAt(), "FAILED");
+            }
+        } catch (IllegalArgumentException e) {
+            log.debug("DLQ record is not a notification event: {}", e.getMessage());
         }
     }
     
-    public void sendToDLQ(NotificationEvent event, Exception exception) {
-        log.error("Sending notification to DLQ after {} retries. NotificationId: {}, Error: {}", 
-                event.getRetryCount(), event.getNotificationId(), exception.getMessage());
-        
-        // Add error information to the event
-        event.setRetryCount(event.getRetryCount() != null ? event.getRetryCount() : 0);
-        
-        kafkaTemplate.send(dlqTopic, event.getNotificationId(), event);
-        log.info("Notification sent to DLQ: {}", event.getNotificationId());
-    }
-    
-    private long calculateBackoffTime(int retryCount) {
+    public long calculateBackoffTime(int retryCount) {
         long backoff = (long) (initialIntervalMs * Math.pow(multiplier, retryCount - 1));
         return Math.min(backoff, maxIntervalMs);
     }
+    
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+    
+    public long getInitialIntervalMs() {
+        return initialIntervalMs;
+    }
+    
+    public double getMultiplier() {
+        return multiplier;
+    }
+    
+    public long getMaxIntervalMs() {
+        return maxIntervalMs;
+    }
 }
 
@@ -0,0 +1,181 @@
+package com.notification.processing.metrics;
+
+import com.notification.processing.consumer.ListenerConcurrencyController;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically samples committed offsets of the consumer group against the log start and end offsets
+ * of the input topic. Publishes per-partition and total lag plus the group's processing rate
+ * as gauges (suitable as HPA/KEDA external metrics) and feeds each sample to the
+ * {@link ListenerConcurrencyController}.
+ * <p>
+ * The delivery service has an identical copy (see Shared Code in docs/architecture.md);
+ * change both together.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ConsumerLagMonitor {
+    
+    private final MeterRegistry meterRegistry;
+    private final ListenerConcurrencyController concurrencyController;
+    
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+    
+    @Value("${spring.kafka.consumer.group-id}")
+    private String groupId;
+    
+    @Value("${notification.kafka.topics.input}")
+    private String inputTopic;
+    
+    @Value("${notification.kafka.scaling.admin-timeout-ms:5000}")
+    private long adminTimeoutMs;
+    
+    private final Map<TopicPartition, AtomicLong> partitionLag = new ConcurrentHashMap<>();
+    private final AtomicLong totalLag = new AtomicLong();
+    private volatile double processingRate;
+    
+    private AdminClient adminClient;
+    private long lastCommittedSum = -1;
+    private long lastSampleNanos;
+    
+    @PostConstruct
+    public void init() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        adminClient = AdminClient.create(config);
+        
+        Gauge.builder("notification.consumer.group.lag", totalLag, AtomicLong::get)
+                .description("Total consumer group lag on the input topic")
+                .tag("topic", inputTopic)
+                .register(meterRegistry);
+        Gauge.builder("notification.consumer.processing.rate", this, monitor -> monitor.processingRate)
+                .description("Records committed per second by the consumer group")
+                .tag("topic", inputTopic)
+                .baseUnit("records/s")
+                .register(meterRegistry);
+    }
+    
+    @PreDestroy
+    public void close() {
+        if (adminClient != null) {
+            adminClient.close();
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${notification.kafka.scaling.sample-interval-ms:10000}")
+    public void sample() {
+        try {
+            Map<TopicPartition, OffsetAndMetadata> committed = adminClient
+                    .listConsumerGroupOffsets(groupId)
+                    .partitionsToOffsetAndMetadata()
+                    .get(adminTimeoutMs, TimeUnit.MILLISECONDS);
+            
+            TopicDescription description = adminClient.describeTopics(List.of(inputTopic))
+                    .allTopicNames()
+                    .get(adminTimeoutMs, TimeUnit.MILLISECONDS)
+                    .get(inputTopic);
+            
+            Map<TopicPartition, OffsetSpec> latest = new HashMap<>();
+            Map<TopicPartition, OffsetSpec> earliest = new HashMap<>();
+            description.partitions().forEach(info -> {
+                TopicPartition partition = new TopicPartition(inputTopic, info.partition());
+                latest.put(partition, OffsetSpec.latest());
+                earliest.put(partition, OffsetSpec.earliest());
+            });
+            
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> endOffsets = adminClient
+                    .listOffsets(latest)
+                    .all()
+                    .get(adminTimeoutMs, TimeUnit.MILLISECONDS);
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> startOffsets = adminClient
+                    .listOffsets(earliest)
+                    .all()
+                    .get(adminTimeoutMs, TimeUnit.MILLISECONDS);
+            
+            long total = 0;
+            long committedSum = 0;
+            for (Map.Entry<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> entry : endOffsets.entrySet()) {
+                TopicPartition partition = entry.getKey();
+                long endOffset = entry.getValue().offset();
+                ListOffsetsResult.ListOffsetsResultInfo start = startOffsets.get(partition);
+                long logStartOffset = start != null ? start.offset() : 0;
+                OffsetAndMetadata position = committed.get(partition);
+                // Nothing committed yet, or committed before records were deleted by retention:
+                // the whole retained partition counts as backlog
+                long committedOffset = position != null ? position.offset() : 0;
+                long lag = Math.max(0, endOffset - Math.max(committedOffset, logStartOffset));
+                
+                lagGauge(partition).set(lag);
+                total += lag;
+                committedSum += committedOffset;
+            }
+            totalLag.set(total);
+            
+            long now = System.nanoTime();
+            if (lastCommittedSum >= 0) {
+                double elapsedSeconds = (now - lastSampleNanos) / 1_000_000_000.0;
+                processingRate = Math.max(0, committedSum - lastCommittedSum) / elapsedSeconds;
+            }
+            lastCommittedSum = committedSum;
+            lastSampleNanos = now;
+            
+            log.debug("Consumer lag for group {}: total={}, rate={}/s", groupId, total,
+                    String.format("%.1f", processingRate));
+            concurrencyController.onLagSample(total, processingRate, endOffsets.size());
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Could not sample consumer lag for group {}: {}", groupId, e.getMessage());
+        }
+    }
+    
+    public long getTotalLag() {
+        return totalLag.get();
+    }
+    
+    public double getProcessingRate() {
+        return processingRate;
+    }
+    
+    private AtomicLong lagGauge(TopicPartition partition) {
+        AtomicLong gauge = partitionLag.get(partition);
+        if (gauge == null) {
+            gauge = partitionLag.computeIfAbsent(partition, tp -> {
+                AtomicLong value = new AtomicLong();
+                Gauge.builder("notification.consumer.lag", value, AtomicLong::get)
+                        .description("Consumer group lag per partition")
+                        .tag("topic", tp.topic())
+                        .tag("partition", String.valueOf(tp.partition()))
+                        .register(meterRegistry);
+                return value;
+            });
+        }
+        return gauge;
+    }
+}
+
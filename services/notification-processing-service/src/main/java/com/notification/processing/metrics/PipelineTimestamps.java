@@ -0,0 +1,94 @@
+package com.notification.processing.metrics;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Wall-clock stage timestamps carried on Kafka headers from ingestion to delivery.
+ * <p>
+ * Values are epoch millis encoded as 8-byte big-endian longs; {@code 0} means the stage
+ * was not reached or the header was absent. Hops between services are measured as
+ * differences of these stamps (clamped at zero to tolerate clock skew between hosts),
+ * while in-process stage durations are measured with {@link System#nanoTime()}.
+ * <p>
+ * No service stamps the Kafka append time: {@code kafkaAppend} is the timestamp of the record
+ * being consumed (its producer's CreateTime, or the broker's append time on topics with
+ * {@code message.timestamp.type=LogAppendTime}) and is not forwarded to the next hop. Delivery
+ * is the last stage, so its start is only used in-process and its end is not stamped at all.
+ * <p>
+ * The ingestion and delivery services carry identical copies, as the services share no library
+ * (see Shared Code in docs/architecture.md); change all of them together.
+ */
+@Data
+@NoArgsConstructor
+public class PipelineTimestamps {
+    
+    public static final String INGEST_ACCEPT = "x-ts-ingest-accept";
+    public static final String PROCESSING_START = "x-ts-processing-start";
+    public static final String PROCESSING_END = "x-ts-processing-end";
+    
+    private long ingestAccept;
+    private long kafkaAppend;
+    private long processingStart;
+    private long processingEnd;
+    private long deliveryStart;
+    
+    /**
+     * Reads the stamps from an incoming record; its own timestamp is the Kafka append time of
+     * the hop it arrived on.
+     */
+    public static PipelineTimestamps fromHeaders(Headers headers, long recordTimestamp) {
+        PipelineTimestamps timestamps = new PipelineTimestamps();
+        timestamps.ingestAccept = read(headers, INGEST_ACCEPT);
+        timestamps.kafkaAppend = Math.max(0, recordTimestamp);
+        timestamps.processingStart = read(headers, PROCESSING_START);
+        timestamps.processingEnd = read(headers, PROCESSING_END);
+        return timestamps;
+    }
+    
+    public void writeTo(Headers headers) {
+        write(headers, INGEST_ACCEPT, ingestAccept);
+        write(headers, PROCESSING_START, processingStart);
+        write(headers, PROCESSING_END, processingEnd);
+    }
+    
+    /**
+     * Elapsed millis between two stamps, or {@code -1} when either is unknown.
+     * Negative differences caused by clock skew are reported as zero.
+     */
+    public static long elapsedMillis(long from, long to) {
+        if (from <= 0 || to <= 0) {
+            return -1;
+        }
+        return Math.max(0, to - from);
+    }
+    
+    public static void write(Headers headers, String name, long epochMillis) {
+        if (epochMillis <= 0) {
+            return;
+        }
+        byte[] value = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            value[i] = (byte) epochMillis;
+            epochMillis >>>= 8;
+        }
+        headers.remove(name);
+        headers.add(name, value);
+    }
+    
+    public static long read(Headers headers, String name) {
+        Header header = headers.lastHeader(name);
+        if (header == null || header.value() == null || header.value().length != 8) {
+            return 0;
+        }
+        byte[] value = header.value();
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (value[i] & 0xFF);
+        }
+        return result;
+    }
+}
+
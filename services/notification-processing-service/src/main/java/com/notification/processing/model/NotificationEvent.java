@@ -19,7 +19,9 @@ public class NotificationEvent {
     private String priority;  // HIGH, MEDIUM, LOW
     private List<String> channels;  // EMAIL, SMS, PUSH, WEBHOOK
     private String templateId;
-    private String data;
+    private String data;  // null when offloaded
+    private String dataRef;  // payload store key of offloaded data
+    private String dataHash;  // SHA-256 of offloaded data
     private LocalDateTime scheduledAt;
     private LocalDateTime createdAt;
     private Integer retryCount;  // Track retry attempts
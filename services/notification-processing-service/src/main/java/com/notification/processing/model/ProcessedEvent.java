@@ -19,7 +19,10 @@ public class ProcessedEvent {
     private String priority;
     private List<String> channels;
     private String templateId;
-    private String data;
+    private String data;  // null when offloaded
+    private String dataRef;  // payload store key of offloaded data
+    private String dataHash;  // SHA-256 of offloaded data
+    private LocalDateTime createdAt;
     private LocalDateTime processedAt;
     private String status;  // PROCESSED, FILTERED, FAILED
     private String processingNotes;
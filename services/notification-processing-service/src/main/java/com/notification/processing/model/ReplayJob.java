@@ -0,0 +1,33 @@
+package com.notification.processing.model;
+
+import com.notification.processing.dto.ReplayFilter;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplayJob {
+    private String jobId;
+    private ReplayFilter filter;
+    private int ratePerSecond;
+    private int parallelism;
+    private String status;  // RUNNING, PAUSED, COMPLETED, FAILED
+    private long scanned;
+    private long replayed;
+    private long failed;
+    private Map<Integer, Long> endOffsets;   // per DLQ partition, fixed when the job starts
+    private Map<Integer, Long> checkpoints;  // per DLQ partition, next offset to read
+    private String lastError;
+    private String owner;  // instance holding the lease while RUNNING
+    private Instant leaseUntil;
+    private Instant createdAt;
+    private Instant updatedAt;
+}
+
@@ -0,0 +1,94 @@
+package com.notification.processing.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, thread-safe Bloom filter over string ids. Ids are hashed once into two 64-bit
+ * values and the {@code k} bit positions are derived by double hashing, so callers probing
+ * several filters can hash an id a single time.
+ */
+public class BloomFilter {
+    
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashFunctions;
+    private final AtomicLong insertions = new AtomicLong();
+    
+    public BloomFilter(long bitCount, int hashFunctions) {
+        long wordCount = Math.max(1, (bitCount + 63) / 64);
+        this.words = new AtomicLongArray(Math.toIntExact(wordCount));
+        this.bitCount = wordCount * 64;
+        this.hashFunctions = hashFunctions;
+    }
+    
+    public static long optimalBitCount(long expectedInsertions, double falsePositiveRate) {
+        return (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+    }
+    
+    public static int optimalHashFunctions(long expectedInsertions, long bitCount) {
+        return Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+    
+    /**
+     * Two independent 64-bit hashes of the id (FNV-1a followed by two different finalizers).
+     */
+    public static long[] hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : id.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return new long[] {mix(hash), mix(hash ^ 0x9e3779b97f4a7c15L) | 1};
+    }
+    
+    public void put(long[] hashes) {
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = bitIndex(hashes, i);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+        insertions.incrementAndGet();
+    }
+    
+    public boolean mightContain(long[] hashes) {
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = bitIndex(hashes, i);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public long getSizeInBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+    
+    public long getInsertions() {
+        return insertions.get();
+    }
+    
+    public double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-hashFunctions * (double) insertions.get() / bitCount), hashFunctions);
+    }
+    
+    private long bitIndex(long[] hashes, int i) {
+        return ((hashes[0] + i * hashes[1]) & Long.MAX_VALUE) % bitCount;
+    }
+    
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb93fe1a85a53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
+
@@ -0,0 +1,665 @@
+package com.notification.processing.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notification.processing.dto.ReplayFilter;
+import com.notification.processing.dto.ReplayPreview;
+import com.notification.processing.dto.ReplayRequest;
+import com.notification.processing.handler.RetryHandler;
+import com.notification.processing.metrics.ConsumerLagMonitor;
+import com.notification.processing.model.ReplayJob;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Re-injects dead-lettered records from the DLQ into the events topic.
+ * <p>
+ * A job fixes the DLQ offset range to replay when it starts (records dead-lettered again during
+ * the replay are not picked up a second time), splits the DLQ partitions over its worker
+ * threads, and paces all workers with one shared rate limit. Injection also holds off while the
+ * processing consumer group's lag is above {@code notification.replay.max-consumer-lag}. After
+ * each polled batch the producer is flushed and the next offsets are checkpointed, so a paused,
+ * failed or interrupted job resumes without skipping records.
+ * <p>
+ * A running job holds a lease in the {@link ReplayCheckpointStore}, renewed every
+ * {@code lease-renew-interval-ms}. Other instances can only resume it once it is paused, failed,
+ * or its lease has expired because the instance running it died; pausing a job running elsewhere
+ * asks that instance to stop it at its next renewal. An instance that loses the lease stops too.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DlqReplayService {
+    
+    public static final String REPLAY_JOB_HEADER = "x-replay-job";
+    
+    private static final String DLT_HEADER_PREFIX = "kafka_dlt-";
+    private static final String PIPELINE_TIMESTAMP_PREFIX = "x-ts-";
+    
+    private final ReplayCheckpointStore checkpointStore;
+    private final ProducerFactory<String, byte[]> bytesProducerFactory;
+    private final ObjectMapper objectMapper;
+    private final ConsumerLagMonitor consumerLagMonitor;
+    
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+    
+    @Value("${notification.kafka.topics.dlq}")
+    private String dlqTopic;
+    
+    @Value("${notification.kafka.topics.input}")
+    private String targetTopic;
+    
+    @Value("${notification.replay.default-rate-per-second:500}")
+    private int defaultRatePerSecond;
+    
+    @Value("${notification.replay.max-rate-per-second:20000}")
+    private int maxRatePerSecond;
+    
+    @Value("${notification.replay.default-parallelism:4}")
+    private int defaultParallelism;
+    
+    @Value("${notification.replay.max-parallelism:12}")
+    private int maxParallelism;
+    
+    @Value("${notification.replay.max-consumer-lag:50000}")
+    private long maxConsumerLag;
+    
+    @Value("${notification.replay.preview-max-records:1000000}")
+    private long previewMaxRecords;
+    
+    @Value("${notification.replay.poll-timeout-ms:500}")
+    private long pollTimeoutMs;
+    
+    @Value("${notification.replay.lease-seconds:60}")
+    private long leaseSeconds;
+    
+    private final String instanceId = UUID.randomUUID().toString();
+    private KafkaTemplate<String, byte[]> replayTemplate;
+    private final Map<String, ActiveReplay> activeReplays = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        replayTemplate = new KafkaTemplate<>(bytesProducerFactory);
+    }
+    
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Workers checkpoint before exiting; the jobs can be resumed after the restart
+        activeReplays.values().forEach(replay -> replay.stopRequested = true);
+        for (ActiveReplay replay : activeReplays.values()) {
+            replay.workers.shutdown();
+            replay.workers.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+    
+    public ReplayPreview preview(ReplayFilter filter) {
+        ReplayFilter effectiveFilter = filter != null ? filter : new ReplayFilter();
+        Map<String, Long> byEventType = new TreeMap<>();
+        Map<String, Long> byError = new TreeMap<>();
+        long scanned = 0;
+        long matched = 0;
+        
+        try (KafkaConsumer<String, byte[]> consumer = createConsumer()) {
+            Map<TopicPartition, long[]> ranges = offsetRanges(consumer, effectiveFilter);
+            Map<TopicPartition, Long> remaining = new HashMap<>();
+            ranges.forEach((partition, range) -> {
+                if (range[0] < range[1]) {
+                    remaining.put(partition, range[1]);
+                }
+            });
+            consumer.assign(remaining.keySet());
+            remaining.keySet().forEach(partition -> consumer.seek(partition, ranges.get(partition)[0]));
+            
+            while (!remaining.isEmpty() && scanned < previewMaxRecords) {
+                ConsumerRecords<String, byte[]> records = consumer.poll(Duration.ofMillis(pollTimeoutMs));
+                for (TopicPartition partition : records.partitions()) {
+                    Long end = remaining.get(partition);
+                    if (end == null) {
+                        continue;
+                    }
+                    for (ConsumerRecord<String, byte[]> record : records.records(partition)) {
+                        if (record.offset() >= end || scanned >= previewMaxRecords) {
+                            break;
+                        }
+                        scanned++;
+                        String eventType = eventType(record);
+                        if (matches(record, eventType, effectiveFilter)) {
+                            matched++;
+                            byEventType.merge(eventType != null ? eventType : "UNKNOWN", 1L, Long::sum);
+                            byError.merge(errorType(record), 1L, Long::sum);
+                        }
+                    }
+                }
+                releaseFinished(consumer, remaining);
+            }
+            
+            return ReplayPreview.builder()
+                    .scanned(scanned)
+                    .matched(matched)
+                    .matchedByEventType(byEventType)
+                    .matchedByError(byError)
+                    .truncated(!remaining.isEmpty())
+                    .build();
+        }
+    }
+    
+    public ReplayJob start(ReplayRequest request) {
+        ReplayFilter filter = request.getFilter() != null ? request.getFilter() : new ReplayFilter();
+        int rate = request.getRatePerSecond() != null ? request.getRatePerSecond() : defaultRatePerSecond;
+        int parallelism = request.getParallelism() != null ? request.getParallelism() : defaultParallelism;
+        
+        Map<Integer, Long> startOffsets = new HashMap<>();
+        Map<Integer, Long> endOffsets = new HashMap<>();
+        try (KafkaConsumer<String, byte[]> consumer = createConsumer()) {
+            offsetRanges(consumer, filter).forEach((partition, range) -> {
+                startOffsets.put(partition.partition(), range[0]);
+                endOffsets.put(partition.partition(), range[1]);
+            });
+        }
+        
+        Instant now = Instant.now();
+        String jobId = UUID.randomUUID().toString();
+        checkpointStore.acquireLease(jobId, instanceId, leaseDuration());
+        ReplayJob job = ReplayJob.builder()
+                .jobId(jobId)
+                .filter(filter)
+                .ratePerSecond(Math.max(1, Math.min(maxRatePerSecond, rate)))
+                .parallelism(Math.max(1, Math.min(maxParallelism, parallelism)))
+                .status("RUNNING")
+                .owner(instanceId)
+                .leaseUntil(now.plus(leaseDuration()))
+                .endOffsets(endOffsets)
+                .checkpoints(new HashMap<>(startOffsets))
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+        checkpointStore.save(job);
+        
+        log.info("Starting DLQ replay {} from {} to {} at {}/s with {} workers. Filter: {}",
+                job.getJobId(), dlqTopic, targetTopic, job.getRatePerSecond(), job.getParallelism(), filter);
+        launch(job);
+        return job;
+    }
+    
+    public Optional<ReplayJob> pause(String jobId) {
+        ActiveReplay replay = activeReplays.get(jobId);
+        if (replay == null) {
+            Optional<ReplayJob> job = checkpointStore.find(jobId);
+            job.ifPresent(stored -> {
+                if (!"RUNNING".equals(stored.getStatus())) {
+                    throw new IllegalStateException("Replay " + jobId + " is " + stored.getStatus());
+                }
+                if (!checkpointStore.acquireLease(jobId, instanceId, leaseDuration())) {
+                    log.info("Requesting pause of DLQ replay {} running on another instance", jobId);
+                    checkpointStore.requestPause(jobId, leaseDuration());
+                    return;
+                }
+                // Orphaned: the instance that ran it died without pausing it
+                stored.setStatus("PAUSED");
+                stored.setOwner(null);
+                stored.setLeaseUntil(null);
+                stored.setUpdatedAt(Instant.now());
+                checkpointStore.save(stored);
+                checkpointStore.releaseLease(jobId, instanceId);
+            });
+            return job;
+        }
+        
+        replay.stopRequested = true;
+        log.info("Pausing DLQ replay {}", jobId);
+        return Optional.of(replay.snapshot());
+    }
+    
+    public Optional<ReplayJob> resume(String jobId) {
+        if (activeReplays.containsKey(jobId)) {
+            throw new IllegalStateException("Replay " + jobId + " is already running");
+        }
+        Optional<ReplayJob> job = checkpointStore.find(jobId);
+        job.ifPresent(stored -> {
+            if ("COMPLETED".equals(stored.getStatus())) {
+                throw new IllegalStateException("Replay " + jobId + " is already completed");
+            }
+            // Paused and failed jobs hold no lease, nor do RUNNING ones whose instance died
+            if (!checkpointStore.acquireLease(jobId, instanceId, leaseDuration())) {
+                throw new IllegalStateException("Replay " + jobId + " is running on another instance");
+            }
+            checkpointStore.clearPauseRequest(jobId);
+            Instant now = Instant.now();
+            stored.setStatus("RUNNING");
+            stored.setOwner(instanceId);
+            stored.setLeaseUntil(now.plus(leaseDuration()));
+            stored.setLastError(null);
+            stored.setUpdatedAt(now);
+            checkpointStore.save(stored);
+            
+            log.info("Resuming DLQ replay {} from checkpoints {}", jobId, stored.getCheckpoints());
+            launch(stored);
+        });
+        return job;
+    }
+    
+    public Optional<ReplayJob> getJob(String jobId) {
+        ActiveReplay replay = activeReplays.get(jobId);
+        return replay != null ? Optional.of(replay.snapshot()) : checkpointStore.find(jobId);
+    }
+    
+    public List<ReplayJob> listJobs() {
+        List<ReplayJob> jobs = new ArrayList<>();
+        for (ReplayJob job : checkpointStore.findAll()) {
+            ActiveReplay replay = activeReplays.get(job.getJobId());
+            jobs.add(replay != null ? replay.snapshot() : job);
+        }
+        return jobs;
+    }
+    
+    /**
+     * Renews the leases of the jobs running here. A job whose lease was lost, or whose pause was
+     * requested by another instance, is stopped. While Redis is unreachable jobs keep running.
+     */
+    @Scheduled(fixedDelayString = "${notification.replay.lease-renew-interval-ms:15000}")
+    public void renewLeases() {
+        for (ActiveReplay replay : activeReplays.values()) {
+            String jobId = replay.job.getJobId();
+            try {
+                if (!checkpointStore.renewLease(jobId, instanceId, leaseDuration())) {
+                    log.error("DLQ replay {} lost its lease, stopping it", jobId);
+                    replay.leaseLost = true;
+                    replay.stopRequested = true;
+                    continue;
+                }
+                synchronized (replay) {
+                    replay.job.setLeaseUntil(Instant.now().plus(leaseDuration()));
+                }
+                if (checkpointStore.isPauseRequested(jobId)) {
+                    log.info("Pausing DLQ replay {} as requested", jobId);
+                    replay.stopRequested = true;
+                }
+            } catch (Exception e) {
+                log.warn("Could not renew the lease of DLQ replay {}: {}", jobId, e.getMessage());
+            }
+        }
+    }
+    
+    private Duration leaseDuration() {
+        return Duration.ofSeconds(leaseSeconds);
+    }
+    
+    private void launch(ReplayJob job) {
+        List<Integer> pending = new ArrayList<>();
+        job.getEndOffsets().forEach((partition, end) -> {
+            if (job.getCheckpoints().getOrDefault(partition, end) < end) {
+                pending.add(partition);
+            }
+        });
+        
+        int workerCount = Math.max(1, Math.min(job.getParallelism(), pending.size()));
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable,
+                    "dlq-replay-" + job.getJobId().substring(0, 8) + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        ActiveReplay replay = new ActiveReplay(job, workers, workerCount);
+        activeReplays.put(job.getJobId(), replay);
+        
+        // Partitions dealt round-robin; each worker owns its own consumer
+        List<List<Integer>> assignments = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            assignments.add(new ArrayList<>());
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            assignments.get(i % workerCount).add(pending.get(i));
+        }
+        assignments.forEach(partitions -> workers.execute(() -> runWorker(replay, partitions)));
+        workers.shutdown();
+    }
+    
+    private void runWorker(ActiveReplay replay, List<Integer> partitions) {
+        ReplayJob job = replay.job;
+        AtomicReference<Throwable> sendError = new AtomicReference<>();
+        
+        try (KafkaConsumer<String, byte[]> consumer = createConsumer()) {
+            Map<TopicPartition, Long> remaining = new HashMap<>();
+            for (Integer partition : partitions) {
+                remaining.put(new TopicPartition(dlqTopic, partition), job.getEndOffsets().get(partition));
+            }
+            consumer.assign(remaining.keySet());
+            remaining.keySet().forEach(partition ->
+                    consumer.seek(partition, replay.checkpoints.get(partition.partition())));
+            
+            while (!remaining.isEmpty() && !replay.stopRequested) {
+                awaitDownstreamCapacity(replay);
+                
+                ConsumerRecords<String, byte[]> records = consumer.poll(Duration.ofMillis(pollTimeoutMs));
+                Map<TopicPartition, Long> nextOffsets = new HashMap<>();
+                
+                for (TopicPartition partition : records.partitions()) {
+                    Long end = remaining.get(partition);
+                    if (end == null) {
+                        continue;
+                    }
+                    for (ConsumerRecord<String, byte[]> record : records.records(partition)) {
+                        if (record.offset() >= end || replay.stopRequested) {
+                            break;
+                        }
+                        replay.scanned.incrementAndGet();
+                        // Only parse the payload when the filter needs it
+                        String eventType = job.getFilter().getEventType() != null ? eventType(record) : null;
+                        if (matches(record, eventType, job.getFilter())) {
+                            replay.rateLimiter.acquire();
+                            send(replay, record, sendError);
+                        }
+                        nextOffsets.put(partition, record.offset() + 1);
+                    }
+                }
+                
+                // Everything sent must be acknowledged before its offsets are checkpointed
+                replayTemplate.flush();
+                if (sendError.get() != null) {
+                    throw new IllegalStateException("Replay send failed", sendError.get());
+                }
+                
+                if (!replay.stopRequested) {
+                    // Skips offset gaps (compaction, transaction markers) the records don't show
+                    for (TopicPartition partition : remaining.keySet()) {
+                        nextOffsets.merge(partition, consumer.position(partition), Math::max);
+                    }
+                }
+                nextOffsets.forEach((partition, next) -> replay.checkpoints.put(partition.partition(),
+                        Math.min(next, remaining.get(partition))));
+                releaseFinished(replay, consumer, remaining);
+                replay.checkpoint(checkpointStore);
+            }
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            replay.stopRequested = true;
+        } catch (Exception e) {
+            log.error("DLQ replay {} worker failed on partitions {}: {}", job.getJobId(), partitions, e.getMessage(), e);
+            replay.failure = e;
+            replay.stopRequested = true;
+        } finally {
+            if (replay.runningWorkers.decrementAndGet() == 0) {
+                finish(replay);
+            }
+        }
+    }
+    
+    private void send(ActiveReplay replay, ConsumerRecord<String, byte[]> record, AtomicReference<Throwable> sendError) {
+        Headers headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            String key = header.key();
+            // Failure details and stale stage timestamps stay behind in the DLQ
+            if (!key.startsWith(DLT_HEADER_PREFIX) && !key.startsWith(PIPELINE_TIMESTAMP_PREFIX)
+                    && !key.equals(RetryHandler.FAILURE_STAGE_HEADER)) {
+                headers.add(header);
+            }
+        }
+        headers.add(REPLAY_JOB_HEADER, replay.job.getJobId().getBytes(StandardCharsets.UTF_8));
+        
+        ProducerRecord<String, byte[]> replayRecord =
+                new ProducerRecord<>(targetTopic, null, record.key(), record.value(), headers);
+        replayTemplate.send(replayRecord).whenComplete((result, error) -> {
+            if (error != null) {
+                replay.failed.incrementAndGet();
+                sendError.compareAndSet(null, error);
+            } else {
+                replay.replayed.incrementAndGet();
+            }
+        });
+    }
+    
+    private void awaitDownstreamCapacity(ActiveReplay replay) throws InterruptedException {
+        boolean logged = false;
+        while (consumerLagMonitor.getTotalLag() > maxConsumerLag && !replay.stopRequested) {
+            if (!logged) {
+                log.info("DLQ replay {} waiting: consumer lag {} above {}", replay.job.getJobId(),
+                        consumerLagMonitor.getTotalLag(), maxConsumerLag);
+                logged = true;
+            }
+            Thread.sleep(pollTimeoutMs);
+        }
+    }
+    
+    private void finish(ActiveReplay replay) {
+        ReplayJob job = replay.job;
+        activeReplays.remove(job.getJobId());
+        if (replay.leaseLost) {
+            // The job state belongs to the instance that took it over
+            log.warn("DLQ replay {} stopped here after losing its lease", job.getJobId());
+            return;
+        }
+        synchronized (replay) {
+            if (replay.failure != null) {
+                job.setStatus("FAILED");
+                job.setLastError(replay.failure.getMessage());
+            } else if (replay.isComplete()) {
+                job.setStatus("COMPLETED");
+            } else {
+                job.setStatus("PAUSED");
+            }
+            job.setOwner(null);
+            job.setLeaseUntil(null);
+        }
+        replay.checkpoint(checkpointStore);
+        checkpointStore.clearPauseRequest(job.getJobId());
+        checkpointStore.releaseLease(job.getJobId(), instanceId);
+        log.info("DLQ replay {} {}: scanned {}, replayed {}, failed {}", job.getJobId(), job.getStatus(),
+                job.getScanned(), job.getReplayed(), job.getFailed());
+    }
+    
+    private void releaseFinished(KafkaConsumer<String, byte[]> consumer, Map<TopicPartition, Long> remaining) {
+        releaseFinished(null, consumer, remaining);
+    }
+    
+    private void releaseFinished(ActiveReplay replay, KafkaConsumer<String, byte[]> consumer,
+                                 Map<TopicPartition, Long> remaining) {
+        List<TopicPartition> finished = new ArrayList<>();
+        remaining.forEach((partition, end) -> {
+            long next = replay != null
+                    ? replay.checkpoints.get(partition.partition())
+                    : consumer.position(partition);
+            if (next >= end) {
+                finished.add(partition);
+            }
+        });
+        if (!finished.isEmpty()) {
+            finished.forEach(remaining::remove);
+            consumer.pause(finished);
+        }
+    }
+    
+    /**
+     * Start and end offset per DLQ partition for the filter's time window; start equals end for
+     * partitions with nothing to replay.
+     */
+    private Map<TopicPartition, long[]> offsetRanges(KafkaConsumer<String, byte[]> consumer, ReplayFilter filter) {
+        List<TopicPartition> partitions = new ArrayList<>();
+        for (PartitionInfo info : consumer.partitionsFor(dlqTopic)) {
+            partitions.add(new TopicPartition(dlqTopic, info.partition()));
+        }
+        
+        Map<TopicPartition, Long> beginning = consumer.beginningOffsets(partitions);
+        Map<TopicPartition, Long> end = consumer.endOffsets(partitions);
+        Map<TopicPartition, OffsetAndTimestamp> fromOffsets = filter.getFrom() != null
+                ? consumer.offsetsForTimes(timestamps(partitions, filter.getFrom()))
+                : Map.of();
+        Map<TopicPartition, OffsetAndTimestamp> toOffsets = filter.getTo() != null
+                ? consumer.offsetsForTimes(timestamps(partitions, filter.getTo()))
+                : Map.of();
+        
+        Map<TopicPartition, long[]> ranges = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            long endOffset = end.get(partition);
+            long startOffset = beginning.get(partition);
+            if (filter.getFrom() != null) {
+                OffsetAndTimestamp from = fromOffsets.get(partition);
+                // No record at or after the start time
+                startOffset = from != null ? from.offset() : endOffset;
+            }
+            if (filter.getTo() != null) {
+                OffsetAndTimestamp to = toOffsets.get(partition);
+                if (to != null) {
+                    endOffset = to.offset();
+                }
+            }
+            ranges.put(partition, new long[] {startOffset, Math.max(startOffset, endOffset)});
+        }
+        return ranges;
+    }
+    
+    private Map<TopicPartition, Long> timestamps(List<TopicPartition> partitions, Instant time) {
+        Map<TopicPartition, Long> query = new HashMap<>();
+        partitions.forEach(partition -> query.put(partition, time.toEpochMilli()));
+        return query;
+    }
+    
+    private boolean matches(ConsumerRecord<String, byte[]> record, String eventType, ReplayFilter filter) {
+        if (filter.getFrom() != null && record.timestamp() < filter.getFrom().toEpochMilli()) {
+            return false;
+        }
+        if (filter.getTo() != null && record.timestamp() >= filter.getTo().toEpochMilli()) {
+            return false;
+        }
+        if (filter.getEventType() != null && !filter.getEventType().equalsIgnoreCase(eventType)) {
+            return false;
+        }
+        if (filter.getError() != null) {
+            String error = filter.getError().toLowerCase();
+            return contains(header(record, KafkaHeaders.DLT_EXCEPTION_FQCN), error)
+                    || contains(header(record, KafkaHeaders.DLT_EXCEPTION_CAUSE_FQCN), error)
+                    || contains(header(record, KafkaHeaders.DLT_EXCEPTION_MESSAGE), error);
+        }
+        return true;
+    }
+    
+    private String eventType(ConsumerRecord<String, byte[]> record) {
+        if (record.value() == null) {
+            return null;
+        }
+        try {
+            JsonNode eventType = objectMapper.readTree(record.value()).get("eventType");
+            return eventType != null && eventType.isTextual() ? eventType.asText() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    private String errorType(ConsumerRecord<String, byte[]> record) {
+        // The listener's exception wraps the actual cause
+        String fqcn = header(record, KafkaHeaders.DLT_EXCEPTION_CAUSE_FQCN);
+        if (fqcn == null) {
+            fqcn = header(record, KafkaHeaders.DLT_EXCEPTION_FQCN);
+        }
+        return fqcn != null ? fqcn.substring(fqcn.lastIndexOf('.') + 1) : "UNKNOWN";
+    }
+    
+    private String header(ConsumerRecord<String, byte[]> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+    
+    private boolean contains(String value, String lowerCaseNeedle) {
+        return value != null && value.toLowerCase().contains(lowerCaseNeedle);
+    }
+    
+    private KafkaConsumer<String, byte[]> createConsumer() {
+        // Partitions are assigned manually and progress is tracked in the checkpoints, so no group
+        Map<String, Object> config = new HashMap<>();
+        config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 500);
+        return new KafkaConsumer<>(config, new StringDeserializer(), new ByteArrayDeserializer());
+    }
+    
+    private static class ActiveReplay {
+        
+        private final ReplayJob job;
+        private final ExecutorService workers;
+        private final ReplayRateLimiter rateLimiter;
+        private final AtomicInteger runningWorkers;
+        private final Map<Integer, Long> checkpoints;
+        private final AtomicLong scanned;
+        private final AtomicLong replayed;
+        private final AtomicLong failed;
+        private volatile boolean stopRequested;
+        private volatile boolean leaseLost;
+        private volatile Exception failure;
+        
+        ActiveReplay(ReplayJob job, ExecutorService workers, int workerCount) {
+            this.job = job;
+            this.workers = workers;
+            this.rateLimiter = new ReplayRateLimiter(job.getRatePerSecond(), 100);
+            this.runningWorkers = new AtomicInteger(workerCount);
+            this.checkpoints = new ConcurrentHashMap<>(job.getCheckpoints());
+            this.scanned = new AtomicLong(job.getScanned());
+            this.replayed = new AtomicLong(job.getReplayed());
+            this.failed = new AtomicLong(job.getFailed());
+        }
+        
+        synchronized ReplayJob snapshot() {
+            job.setScanned(scanned.get());
+            job.setReplayed(replayed.get());
+            job.setFailed(failed.get());
+            job.setCheckpoints(new HashMap<>(checkpoints));
+            return job;
+        }
+        
+        synchronized void checkpoint(ReplayCheckpointStore store) {
+            if (leaseLost) {
+                return;
+            }
+            snapshot().setUpdatedAt(Instant.now());
+            store.save(job);
+        }
+        
+        boolean isComplete() {
+            return job.getEndOffsets().entrySet().stream()
+                    .allMatch(entry -> checkpoints.getOrDefault(entry.getKey(), 0L) >= entry.getValue());
+        }
+    }
+}
+
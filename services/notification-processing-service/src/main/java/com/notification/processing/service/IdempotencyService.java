@@ -1,53 +1,201 @@
 package com.notification.processing.service;
 
+import com.notification.processing.consumer.RebalanceTracker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
 
+/**
+ * Tracks processed notification ids for the idempotency TTL.
+ * <p>
+ * Ids are stored in Redis in per-bucket hashes ({@code notification:processed:<bucket>:<shard>},
+ * field = 16-byte UUID) that expire as a whole, so Redis keeps a few compact hashes per bucket
+ * instead of one string key with its own TTL per id. In front of Redis sits a rotating in-process
+ * Bloom filter of the ids this instance marked: if it has never seen an id, the id is new and
+ * Redis is skipped. That answer is only trusted for records appended a safety window after this
+ * instance last took over partitions, since earlier records may have been processed by the
+ * previous owner; those, and every possible duplicate, are checked in Redis.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class IdempotencyService {
     
     private final RedisTemplate<String, String> redisTemplate;
+    private final RebalanceTracker rebalanceTracker;
+    private final MeterRegistry meterRegistry;
     
     @Value("${notification.processing.idempotency.ttl-seconds}")
     private long ttlSeconds;
     
+    @Value("${notification.processing.idempotency.bucket-seconds:3600}")
+    private long bucketSeconds;
+    
+    @Value("${notification.processing.idempotency.redis-shards-per-bucket:8192}")
+    private int shardsPerBucket;
+    
+    @Value("${notification.processing.idempotency.duplicate-window-seconds:300}")
+    private long duplicateWindowSeconds;
+    
+    @Value("${notification.processing.idempotency.bloom.enabled:true}")
+    private boolean bloomEnabled;
+    
+    @Value("${notification.processing.idempotency.bloom.expected-ids-per-bucket:1000000}")
+    private long expectedIdsPerBucket;
+    
+    @Value("${notification.processing.idempotency.bloom.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+    
+    @Value("${notification.processing.idempotency.bloom.memory-budget-mb:64}")
+    private long memoryBudgetMb;
+    
     private static final String KEY_PREFIX = "notification:processed:";
+    private static final byte[] PROCESSED = "1".getBytes(StandardCharsets.UTF_8);
+    
+    private RotatingBloomFilter bloomFilter;
+    
+    private Counter localNew;
+    private Counter redisNew;
+    private Counter redisDuplicate;
+    
+    @PostConstruct
+    public void init() {
+        localNew = checkCounter("local_new");
+        redisNew = checkCounter("redis_new");
+        redisDuplicate = checkCounter("redis_duplicate");
+        
+        if (!bloomEnabled) {
+            return;
+        }
+        
+        int windowBuckets = (int) Math.ceil((double) ttlSeconds / bucketSeconds);
+        long bitsPerBucket = BloomFilter.optimalBitCount(expectedIdsPerBucket,
+                RotatingBloomFilter.bucketFalsePositiveRate(falsePositiveRate, windowBuckets));
+        long budgetBitsPerBucket = memoryBudgetMb * 1024 * 1024 * 8 / (windowBuckets + 1);
+        if (bitsPerBucket > budgetBitsPerBucket) {
+            log.warn("Bloom filter for {} ids per bucket at FPR {} needs {} MB, capping to the {} MB budget",
+                    expectedIdsPerBucket, falsePositiveRate,
+                    bitsPerBucket * (windowBuckets + 1) / 8 / 1024 / 1024, memoryBudgetMb);
+            bitsPerBucket = budgetBitsPerBucket;
+        }
+        int hashFunctions = BloomFilter.optimalHashFunctions(expectedIdsPerBucket, bitsPerBucket);
+        bloomFilter = new RotatingBloomFilter(bucketSeconds * 1000, windowBuckets, bitsPerBucket, hashFunctions);
+        
+        Gauge.builder("notification.idempotency.bloom.bytes", bloomFilter, RotatingBloomFilter::getSizeInBytes)
+                .description("Memory held by the local idempotency Bloom filters")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("notification.idempotency.bloom.ids", bloomFilter, RotatingBloomFilter::getInsertions)
+                .description("Ids tracked by the local idempotency Bloom filters")
+                .register(meterRegistry);
+        log.info("Idempotency Bloom filter: {} buckets of {}s, {} bits and {} hashes per bucket ({} bits per id)",
+                windowBuckets + 1, bucketSeconds, bitsPerBucket, hashFunctions,
+                String.format("%.1f", (double) bitsPerBucket / expectedIdsPerBucket));
+    }
     
-    public boolean isAlreadyProcessed(String notificationId) {
-        String key = KEY_PREFIX + notificationId;
-        Boolean exists = redisTemplate.hasKey(key);
-        boolean result = Boolean.TRUE.equals(exists);
+    /**
+     * @param appendTimestamp when the record carrying the notification was appended to Kafka
+     */
+    public boolean isAlreadyProcessed(String notificationId, long appendTimestamp) {
+        long now = System.currentTimeMillis();
+        long[] hashes = BloomFilter.hash(notificationId);
+        
+        if (bloomEnabled && !bloomFilter.mightContain(hashes, now)
+                && appendTimestamp - duplicateWindowSeconds * 1000 >= rebalanceTracker.getLastAssignmentMillis()) {
+            localNew.increment();
+            return false;
+        }
+        
+        // The id was marked at or after the original record was appended; a duplicate record
+        // follows its original within the duplicate window
+        long oldestBucket = Math.max(bucket(now - ttlSeconds * 1000),
+                bucket(appendTimestamp - duplicateWindowSeconds * 1000));
+        long newestBucket = bucket(now);
+        byte[] field = field(notificationId);
+        int shard = shard(hashes);
+        
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long bucket = oldestBucket; bucket <= newestBucket; bucket++) {
+                connection.hashCommands().hExists(key(bucket, shard), field);
+            }
+            return null;
+        });
+        boolean result = results.stream().anyMatch(Boolean.TRUE::equals);
         
         if (result) {
+            redisDuplicate.increment();
+            if (bloomEnabled) {
+                bloomFilter.put(hashes, now);
+            }
             log.info("Notification already processed (duplicate): {}", notificationId);
+        } else {
+            redisNew.increment();
         }
         
         return result;
     }
     
     public void markAsProcessed(String notificationId) {
-        String key = KEY_PREFIX + notificationId;
-        redisTemplate.opsForValue().set(key, "PROCESSED", Duration.ofSeconds(ttlSeconds));
+        long now = System.currentTimeMillis();
+        long bucket = bucket(now);
+        long[] hashes = BloomFilter.hash(notificationId);
+        byte[] key = key(bucket, shard(hashes));
+        
+        // The bucket hash expires as a whole once its newest possible id is past the TTL
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hSet(key, field(notificationId), PROCESSED);
+            connection.keyCommands().expireAt(key, (bucket + 1) * bucketSeconds + ttlSeconds);
+            return null;
+        });
+        
+        if (bloomEnabled) {
+            bloomFilter.put(hashes, now);
+        }
         log.debug("Marked notification as processed: {}", notificationId);
     }
     
-    public void incrementRetryCount(String notificationId) {
-        String key = KEY_PREFIX + notificationId + ":retry";
-        redisTemplate.opsForValue().increment(key);
-        redisTemplate.expire(key, Duration.ofSeconds(ttlSeconds));
+    private long bucket(long timestampMillis) {
+        return timestampMillis / 1000 / bucketSeconds;
+    }
+    
+    private int shard(long[] hashes) {
+        return (int) ((hashes[0] >>> 1) % shardsPerBucket);
+    }
+    
+    private byte[] key(long bucket, int shard) {
+        return (KEY_PREFIX + bucket + ":" + shard).getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private byte[] field(String notificationId) {
+        // 16 bytes instead of the 36-character string
+        try {
+            UUID uuid = UUID.fromString(notificationId);
+            return ByteBuffer.allocate(16)
+                    .putLong(uuid.getMostSignificantBits())
+                    .putLong(uuid.getLeastSignificantBits())
+                    .array();
+        } catch (IllegalArgumentException e) {
+            return notificationId.getBytes(StandardCharsets.UTF_8);
+        }
     }
     
-    public Long getRetryCount(String notificationId) {
-        String key = KEY_PREFIX + notificationId + ":retry";
-        String count = redisTemplate.opsForValue().get(key);
-        return count != null ? Long.parseLong(count) : 0L;
+    private Counter checkCounter(String result) {
+        return Counter.builder("notification.idempotency.checks")
+                .description("Idempotency checks by where they were answered")
+                .tag("result", result)
+                .register(meterRegistry);
     }
 }
 
@@ -1,17 +1,21 @@
 package com.notification.processing.service;
 
 import com.notification.processing.dto.UserPreferences;
-import com.notification.processing.handler.RetryHandler;
+import com.notification.processing.metrics.LatencyMetrics;
+import com.notification.processing.metrics.PipelineTimestamps;
 import com.notification.processing.model.NotificationEvent;
 import com.notification.processing.model.ProcessedEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
@@ -20,32 +24,57 @@ public class NotificationProcessor {
     
     private final UserPreferenceService userPreferenceService;
     private final IdempotencyService idempotencyService;
-    private final RetryHandler retryHandler;
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final PartitionKeyResolver partitionKeyResolver;
+    private final StatusPublisher statusPublisher;
+    private final LatencyMetrics latencyMetrics;
+    private final ExpiryPolicy expiryPolicy;
     
     @Value("${notification.kafka.topics.output}")
     private String outputTopic;
     
-    public void processNotification(NotificationEvent event) {
+    // Publish and offset commit are atomic, so redeliveries never reach read_committed consumers
+    @Value("${notification.kafka.exactly-once.enabled:false}")
+    private boolean exactlyOnce;
+    
+    /**
+     * @param recordKey key of the incoming record
+     */
+    public void processNotification(NotificationEvent event, String recordKey, PipelineTimestamps timestamps) {
         String notificationId = event.getNotificationId();
+        long startNanos = System.nanoTime();
+        timestamps.setProcessingStart(System.currentTimeMillis());
+        latencyMetrics.recordStageMillis(LatencyMetrics.STAGE_EVENTS_QUEUE, event.getPriority(),
+                LatencyMetrics.ALL_CHANNELS,
+                PipelineTimestamps.elapsedMillis(timestamps.getKafkaAppend(), timestamps.getProcessingStart()));
         
         try {
             log.info("Processing notification: {} with priority: {}", notificationId, event.getPriority());
             
             // Step 1: Check idempotency
-            if (idempotencyService.isAlreadyProcessed(notificationId)) {
+            if (!exactlyOnce && idempotencyService.isAlreadyProcessed(notificationId, timestamps.getKafkaAppend())) {
                 log.info("Skipping duplicate notification: {}", notificationId);
                 return;
             }
             
+            // Step 1a: Drop notifications too late to be useful, before the preference lookup; a late
+            // duplicate of a processed one was skipped above and is not reported as expired
+            if (expiryPolicy.isExpired(event.getEventType(), timestamps)) {
+                log.info("Dropping expired {} notification: {}", event.getEventType(), notificationId);
+                awaitUnlessTransactional(statusPublisher.publish(notificationId, event.getCreatedAt(),
+                        ExpiryPolicy.EXPIRED), "status " + ExpiryPolicy.EXPIRED + " of notification " + notificationId);
+                markAsProcessed(notificationId);
+                return;
+            }
+            
             // Step 2: Get user preferences
             UserPreferences preferences = userPreferenceService.getUserPreferences(event.getUserId());
             
             // Step 3: Check if event type is blocked
             if (userPreferenceService.isEventTypeBlocked(preferences, event.getEventType())) {
                 log.info("Event type {} is blocked for user: {}", event.getEventType(), event.getUserId());
-                publishProcessedEvent(event, "FILTERED", "Event type blocked by user");
-                idempotencyService.markAsProcessed(notificationId);
+                publishProcessedEvent(event, recordKey, "FILTERED", "Event type blocked by user", timestamps);
+                markAsProcessed(notificationId);
                 return;
             }
             
@@ -63,8 +92,8 @@ public class NotificationProcessor {
             
             if (filteredChannels.isEmpty()) {
                 log.info("No enabled channels for user: {}", event.getUserId());
-                publishProcessedEvent(event, "FILTERED", "All channels disabled by user");
-                idempotencyService.markAsProcessed(notificationId);
+                publishProcessedEvent(event, recordKey, "FILTERED", "All channels disabled by user", timestamps);
+                markAsProcessed(notificationId);
                 return;
             }
             
@@ -75,16 +104,37 @@ public class NotificationProcessor {
             processByPriority(event);
             
             // Step 8: Publish to processed topic
-            publishProcessedEvent(event, "PROCESSED", "Successfully processed");
+            publishProcessedEvent(event, recordKey, "PROCESSED", "Successfully processed", timestamps);
             
             // Step 9: Mark as processed
-            idempotencyService.markAsProcessed(notificationId);
+            markAsProcessed(notificationId);
             
             log.info("Successfully processed notification: {}", notificationId);
             
-        } catch (Exception e) {
-            log.error("Error processing notification: {}. Error: {}", notificationId, e.getMessage(), e);
-            handleProcessingError(event, e);
+        } catch (RuntimeException e) {
+            // Retried or dead-lettered by the consumer's error handling
+            log.error("Error processing notification: {}. Error: {}", notificationId, e.getMessage());
+            throw e;
+        } finally {
+            latencyMetrics.recordStage(LatencyMetrics.STAGE_PROCESSING, event.getPriority(),
+                    LatencyMetrics.ALL_CHANNELS, System.nanoTime() - startNanos);
+        }
+    }
+    
+    /**
+     * Without transactions the offset is committed, and the notification marked as processed, as
+     * soon as processing returns, so a publish that later fails would be lost: wait for it, and
+     * let a failure retry the record. With transactions a failed publish aborts the commit.
+     */
+    private void awaitUnlessTransactional(CompletableFuture<?> sent, String what) {
+        if (!exactlyOnce) {
+            statusPublisher.await(sent, what);
+        }
+    }
+    
+    private void markAsProcessed(String notificationId) {
+        if (!exactlyOnce) {
+            idempotencyService.markAsProcessed(notificationId);
         }
     }
     
@@ -107,7 +157,8 @@ public class NotificationProcessor {
         }
     }
     
-    private void publishProcessedEvent(NotificationEvent event, String status, String notes) {
+    private void publishProcessedEvent(NotificationEvent event, String recordKey, String status, String notes,
+                                       PipelineTimestamps timestamps) {
         ProcessedEvent processedEvent = ProcessedEvent.builder()
                 .notificationId(event.getNotificationId())
                 .userId(event.getUserId())
@@ -116,24 +167,30 @@ public class NotificationProcessor {
                 .channels(event.getChannels())
                 .templateId(event.getTemplateId())
                 .data(event.getData())
+                .dataRef(event.getDataRef())
+                .dataHash(event.getDataHash())
+                .createdAt(event.getCreatedAt())
                 .processedAt(LocalDateTime.now())
                 .status(status)
                 .processingNotes(notes)
                 .build();
         
-        kafkaTemplate.send(outputTopic, event.getNotificationId(), processedEvent);
+        // Offloaded data is not fetched here; the key ingestion derived from it is kept instead
+        String key = event.getDataRef() != null && recordKey != null
+                ? recordKey
+                : partitionKeyResolver.resolve(event.getNotificationId(), event.getUserId(), event.getData());
+        ProducerRecord<String, Object> record = new ProducerRecord<>(outputTopic, key, processedEvent);
+        timestamps.setProcessingEnd(System.currentTimeMillis());
+        timestamps.writeTo(record.headers());
+        
+        // Both sends are in flight before waiting on either
+        CompletableFuture<SendResult<String, Object>> sent = kafkaTemplate.send(record);
+        CompletableFuture<SendResult<String, Object>> statusSent =
+                statusPublisher.publish(event.getNotificationId(), event.getCreatedAt(), status);
+        awaitUnlessTransactional(sent, "processed event of notification " + event.getNotificationId());
+        awaitUnlessTransactional(statusSent, "status " + status + " of notification " + event.getNotificationId());
         log.info("Published processed event for notification: {} with status: {}", 
                 event.getNotificationId(), status);
     }
-    
-    private void handleProcessingError(NotificationEvent event, Exception exception) {
-        if (retryHandler.shouldRetry(event)) {
-            log.info("Scheduling retry for notification: {}", event.getNotificationId());
-            retryHandler.scheduleRetry(event, exception);
-        } else {
-            log.error("Max retries exceeded, sending to DLQ: {}", event.getNotificationId());
-            retryHandler.sendToDLQ(event, exception);
-        }
-    }
 }
 
@@ -0,0 +1,136 @@
+package com.notification.processing.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notification.processing.model.ReplayJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Persists DLQ replay jobs, including their per-partition checkpoints, in Redis so a paused or
+ * interrupted job can be resumed from where it stopped, also by another instance.
+ * <p>
+ * The instance running a job holds its lease, a key with a TTL that it renews while running, so
+ * no other instance resumes the job before the lease has expired.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReplayCheckpointStore {
+    
+    private static final String KEY_PREFIX = "notification:replay:job:";
+    private static final String JOBS_KEY = "notification:replay:jobs";
+    private static final String LEASE_PREFIX = "notification:replay:lease:";
+    private static final String PAUSE_PREFIX = "notification:replay:pause:";
+    
+    private static final RedisScript<Long> RENEW_IF_OWNER = new DefaultRedisScript<>("""
+            if redis.call('get', KEYS[1]) == ARGV[1] then
+                return redis.call('pexpire', KEYS[1], ARGV[2])
+            end
+            return 0
+            """, Long.class);
+    
+    private static final RedisScript<Long> RELEASE_IF_OWNER = new DefaultRedisScript<>("""
+            if redis.call('get', KEYS[1]) == ARGV[1] then
+                return redis.call('del', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+    
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${notification.replay.checkpoint-ttl-hours:168}")
+    private long ttlHours;
+    
+    public void save(ReplayJob job) {
+        try {
+            Duration ttl = Duration.ofHours(ttlHours);
+            redisTemplate.opsForValue().set(KEY_PREFIX + job.getJobId(), objectMapper.writeValueAsString(job), ttl);
+            redisTemplate.opsForSet().add(JOBS_KEY, job.getJobId());
+            redisTemplate.expire(JOBS_KEY, ttl);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize replay job " + job.getJobId(), e);
+        }
+    }
+    
+    public Optional<ReplayJob> find(String jobId) {
+        String json = redisTemplate.opsForValue().get(KEY_PREFIX + jobId);
+        if (json == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(json, ReplayJob.class));
+        } catch (JsonProcessingException e) {
+            log.error("Unreadable replay job {}: {}", jobId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+    
+    /**
+     * @return false if another instance holds a lease that has not expired
+     */
+    public boolean acquireLease(String jobId, String owner, Duration duration) {
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LEASE_PREFIX + jobId, owner, duration));
+    }
+    
+    /**
+     * @return false if the lease expired or was taken over by another instance
+     */
+    public boolean renewLease(String jobId, String owner, Duration duration) {
+        Long renewed = redisTemplate.execute(RENEW_IF_OWNER, List.of(LEASE_PREFIX + jobId), owner,
+                String.valueOf(duration.toMillis()));
+        return renewed != null && renewed == 1;
+    }
+    
+    public void releaseLease(String jobId, String owner) {
+        redisTemplate.execute(RELEASE_IF_OWNER, List.of(LEASE_PREFIX + jobId), owner);
+    }
+    
+    /**
+     * Asks the instance running the job to pause it at its next lease renewal.
+     */
+    public void requestPause(String jobId, Duration ttl) {
+        redisTemplate.opsForValue().set(PAUSE_PREFIX + jobId, "1", ttl);
+    }
+    
+    public boolean isPauseRequested(String jobId) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(PAUSE_PREFIX + jobId));
+    }
+    
+    public void clearPauseRequest(String jobId) {
+        redisTemplate.delete(PAUSE_PREFIX + jobId);
+    }
+    
+    public List<ReplayJob> findAll() {
+        Set<String> jobIds = redisTemplate.opsForSet().members(JOBS_KEY);
+        List<ReplayJob> jobs = new ArrayList<>();
+        if (jobIds == null) {
+            return jobs;
+        }
+        for (String jobId : jobIds) {
+            Optional<ReplayJob> job = find(jobId);
+            if (job.isPresent()) {
+                jobs.add(job.get());
+            } else {
+                // Job expired
+                redisTemplate.opsForSet().remove(JOBS_KEY, jobId);
+            }
+        }
+        jobs.sort(Comparator.comparing(ReplayJob::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder())));
+        return jobs;
+    }
+}
+
@@ -0,0 +1,33 @@
+package com.notification.processing.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces callers to a fixed rate shared across threads. Each permit reserves the next time slot;
+ * a caller that fell behind may catch up on at most {@code burstMillis} worth of slots.
+ */
+public class ReplayRateLimiter {
+    
+    private final long intervalNanos;
+    private final long burstNanos;
+    private long nextSlot = System.nanoTime();
+    
+    public ReplayRateLimiter(int permitsPerSecond, long burstMillis) {
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, permitsPerSecond);
+        this.burstNanos = TimeUnit.MILLISECONDS.toNanos(burstMillis);
+    }
+    
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            nextSlot = Math.max(nextSlot, now - burstNanos);
+            waitNanos = nextSlot - now;
+            nextSlot += intervalNanos;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
+
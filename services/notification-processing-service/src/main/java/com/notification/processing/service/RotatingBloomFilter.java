@@ -0,0 +1,92 @@
+package com.notification.processing.service;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bloom filter over a sliding time window, kept as one filter per time bucket. Inserts go to the
+ * current bucket's filter; lookups probe every bucket still inside the window. When a bucket
+ * falls out of the window its slot is reused, which is how ids expire without deletes.
+ */
+public class RotatingBloomFilter {
+    
+    private final long bucketMillis;
+    private final int windowBuckets;
+    private final long bitsPerBucket;
+    private final int hashFunctions;
+    private final AtomicReferenceArray<BucketFilter> slots;
+    
+    public RotatingBloomFilter(long bucketMillis, int windowBuckets, long bitsPerBucket, int hashFunctions) {
+        this.bucketMillis = bucketMillis;
+        this.windowBuckets = windowBuckets;
+        this.bitsPerBucket = bitsPerBucket;
+        this.hashFunctions = hashFunctions;
+        // One extra slot: the window spans parts of windowBuckets + 1 buckets
+        this.slots = new AtomicReferenceArray<>(windowBuckets + 1);
+    }
+    
+    /**
+     * The false-positive rate each bucket's filter needs for a lookup, which probes every slot,
+     * to stay within {@code falsePositiveRate} overall.
+     */
+    public static double bucketFalsePositiveRate(double falsePositiveRate, int windowBuckets) {
+        return 1 - Math.pow(1 - falsePositiveRate, 1.0 / (windowBuckets + 1));
+    }
+    
+    public void put(long[] hashes, long nowMillis) {
+        filterFor(nowMillis / bucketMillis).put(hashes);
+    }
+    
+    public boolean mightContain(long[] hashes, long nowMillis) {
+        long oldest = nowMillis / bucketMillis - windowBuckets;
+        for (int i = 0; i < slots.length(); i++) {
+            BucketFilter slot = slots.get(i);
+            if (slot != null && slot.bucket >= oldest && slot.filter.mightContain(hashes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public long getSizeInBytes() {
+        long bytes = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            BucketFilter slot = slots.get(i);
+            bytes += slot != null ? slot.filter.getSizeInBytes() : 0;
+        }
+        return bytes;
+    }
+    
+    public long getInsertions() {
+        long insertions = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            BucketFilter slot = slots.get(i);
+            insertions += slot != null ? slot.filter.getInsertions() : 0;
+        }
+        return insertions;
+    }
+    
+    private BloomFilter filterFor(long bucket) {
+        int index = (int) (bucket % slots.length());
+        BucketFilter slot = slots.get(index);
+        while (slot == null || slot.bucket < bucket) {
+            BucketFilter fresh = new BucketFilter(bucket, new BloomFilter(bitsPerBucket, hashFunctions));
+            if (slots.compareAndSet(index, slot, fresh)) {
+                return fresh.filter;
+            }
+            slot = slots.get(index);
+        }
+        return slot.filter;
+    }
+    
+    private static final class BucketFilter {
+        
+        private final long bucket;
+        private final BloomFilter filter;
+        
+        private BucketFilter(long bucket, BloomFilter filter) {
+            this.bucket = bucket;
+            this.filter = filter;
+        }
+    }
+}
+
@@ -0,0 +1,85 @@
+package com.notification.processing.service;
+
+import com.notification.processing.model.StatusUpdate;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Emits notification status transitions to the compacted status topic. The ingestion service
+ * coalesces them and writes them back to the notifications table in batches.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StatusPublisher {
+    
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    
+    @Value("${notification.kafka.topics.status}")
+    private String statusTopic;
+    
+    @Value("${notification.kafka.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+    
+    /**
+     * @return the send, already logged if it fails; callers that commit on its outcome wait on it
+     */
+    public CompletableFuture<SendResult<String, Object>> publish(String notificationId, LocalDateTime createdAt,
+                                                                 String status) {
+        StatusUpdate update = StatusUpdate.builder()
+                .notificationId(notificationId)
+                .status(status)
+                .stage("processing")
+                .createdAt(createdAt)
+                .updatedAt(LocalDateTime.now())
+                .build();
+        
+        // Keyed by notification id, so compaction keeps the latest status per notification
+        CompletableFuture<SendResult<String, Object>> sent = kafkaTemplate.send(statusTopic, notificationId, update);
+        sent.whenComplete((result, ex) -> {
+            if (ex != null) {
+                log.warn("Could not publish status {} for notification {}: {}", status, notificationId, ex.getMessage());
+            }
+        });
+        return sent;
+    }
+    
+    /**
+     * Publishes the status and waits until the broker has it.
+     *
+     * @throws IllegalStateException if it could not be published in time
+     */
+    public void publishAndWait(String notificationId, LocalDateTime createdAt, String status) {
+        await(publish(notificationId, createdAt, status), "status " + status + " of notification " + notificationId);
+    }
+    
+    /**
+     * Waits up to {@code notification.kafka.send-timeout-ms} for a send.
+     *
+     * @param what the record sent, for the exception message
+     * @throws IllegalStateException if the send failed or timed out, so the record being consumed is retried
+     */
+    public void await(CompletableFuture<?> sent, String what) {
+        try {
+            sent.get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing " + what, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not publish " + what + ": " + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Publishing " + what + " timed out after " + sendTimeoutMs + "ms");
+        }
+    }
+}
+
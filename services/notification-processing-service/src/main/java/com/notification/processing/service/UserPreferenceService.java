@@ -5,13 +5,21 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.notification.processing.dto.UserPreferences;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Reads user preferences, keeping recently used ones in a small local LRU cache. With events
+ * partitioned by user each user is handled by a single consumer, so the cache sees all of a
+ * user's traffic and a user's preferences are cached on one instance only.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -20,13 +28,41 @@ public class UserPreferenceService {
     private final JdbcTemplate jdbcTemplate;
     private final ObjectMapper objectMapper;
     
+    @Value("${notification.processing.preferences.cache.max-entries:50000}")
+    private int cacheMaxEntries;
+    
+    @Value("${notification.processing.preferences.cache.ttl-seconds:30}")
+    private long cacheTtlSeconds;
+    
+    private final Map<String, CachedPreferences> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedPreferences> eldest) {
+            return size() > cacheMaxEntries;
+        }
+    };
+    
+    private record CachedPreferences(UserPreferences preferences, long expiresAt) {
+    }
+    
     public UserPreferences getUserPreferences(String userId) {
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            CachedPreferences cached = cache.get(userId);
+            if (cached != null && cached.expiresAt() > now) {
+                return cached.preferences();
+            }
+        }
+        
         try {
             String sql = "SELECT preferences FROM users WHERE id = ?";
             String preferencesJson = jdbcTemplate.queryForObject(sql, String.class, userId);
             
             if (preferencesJson != null) {
-                return objectMapper.readValue(preferencesJson, UserPreferences.class);
+                UserPreferences preferences = objectMapper.readValue(preferencesJson, UserPreferences.class);
+                synchronized (cache) {
+                    cache.put(userId, new CachedPreferences(preferences, now + cacheTtlSeconds * 1000));
+                }
+                return preferences;
             }
         } catch (Exception e) {
             log.warn("Could not fetch preferences for user: {}. Using defaults. Error: {}", 
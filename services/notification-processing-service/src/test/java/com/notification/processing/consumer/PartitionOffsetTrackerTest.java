@@ -0,0 +1,76 @@
+package com.notification.processing.consumer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.Acknowledgment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartitionOffsetTrackerTest {
+    
+    @Test
+    void commitsOnlyUpToTheFirstOffsetStillInFlight() {
+        PartitionOffsetTracker tracker = new PartitionOffsetTracker();
+        Acknowledgment ack10 = ack();
+        Acknowledgment ack11 = ack();
+        Acknowledgment ack12 = ack();
+        tracker.dispatched(10, ack10);
+        tracker.dispatched(11, ack11);
+        tracker.dispatched(12, ack12);
+        
+        assertThat(tracker.completed(12)).isNull();
+        assertThat(tracker.completed(11)).isNull();
+        assertThat(tracker.firstPendingOffset()).isEqualTo(10);
+        
+        assertThat(tracker.completed(10)).isSameAs(ack12);
+        assertThat(tracker.firstPendingOffset()).isEqualTo(-1);
+        assertThat(tracker.oldestPendingMillis()).isZero();
+    }
+    
+    @Test
+    void returnsEachAcknowledgmentInOrderWhenRecordsCompleteInOrder() {
+        PartitionOffsetTracker tracker = new PartitionOffsetTracker();
+        Acknowledgment ack0 = ack();
+        Acknowledgment ack1 = ack();
+        tracker.dispatched(0, ack0);
+        tracker.dispatched(1, ack1);
+        
+        assertThat(tracker.completed(0)).isSameAs(ack0);
+        assertThat(tracker.firstPendingOffset()).isEqualTo(1);
+        assertThat(tracker.completed(1)).isSameAs(ack1);
+    }
+    
+    @Test
+    void reportsWhenTheRecordHoldingBackTheCommitWasDispatched() {
+        PartitionOffsetTracker tracker = new PartitionOffsetTracker();
+        long before = System.currentTimeMillis();
+        tracker.dispatched(5, ack());
+        tracker.dispatched(6, ack());
+        tracker.completed(6);
+        
+        assertThat(tracker.oldestPendingMillis()).isBetween(before, System.currentTimeMillis());
+    }
+    
+    @Test
+    void skipsRecordsFetchedBeforeARewind() {
+        PartitionOffsetTracker tracker = new PartitionOffsetTracker(20);
+        
+        assertThat(tracker.dispatched(21, ack())).isFalse();
+        assertThat(tracker.dispatched(22, ack())).isFalse();
+        assertThat(tracker.firstPendingOffset()).isEqualTo(-1);
+        
+        Acknowledgment ack20 = ack();
+        assertThat(tracker.dispatched(20, ack20)).isTrue();
+        assertThat(tracker.dispatched(21, ack())).isTrue();
+        assertThat(tracker.firstPendingOffset()).isEqualTo(20);
+        assertThat(tracker.completed(20)).isSameAs(ack20);
+    }
+    
+    private static Acknowledgment ack() {
+        return new Acknowledgment() {
+            @Override
+            public void acknowledge() {
+            }
+        };
+    }
+}
+
@@ -0,0 +1,68 @@
+package com.notification.processing.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTest {
+    
+    private static final int IDS = 100_000;
+    
+    @Test
+    void neverReportsAnInsertedIdAsNew() {
+        BloomFilter filter = sizedFor(IDS, 0.01);
+        String[] ids = new String[IDS];
+        for (int i = 0; i < IDS; i++) {
+            ids[i] = UUID.randomUUID().toString();
+            filter.put(BloomFilter.hash(ids[i]));
+        }
+        
+        for (String id : ids) {
+            assertThat(filter.mightContain(BloomFilter.hash(id))).isTrue();
+        }
+        assertThat(filter.getInsertions()).isEqualTo(IDS);
+    }
+    
+    @Test
+    void keepsFalsePositivesNearTheConfiguredRate() {
+        BloomFilter filter = sizedFor(IDS, 0.01);
+        for (int i = 0; i < IDS; i++) {
+            filter.put(BloomFilter.hash(UUID.randomUUID().toString()));
+        }
+        
+        int falsePositives = 0;
+        for (int i = 0; i < IDS; i++) {
+            if (filter.mightContain(BloomFilter.hash(UUID.randomUUID().toString()))) {
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / IDS).isLessThan(0.015);
+        assertThat(filter.expectedFalsePositiveRate()).isBetween(0.008, 0.012);
+    }
+    
+    @Test
+    void sizesForAboutTenBitsPerIdAtOnePercent() {
+        long bits = BloomFilter.optimalBitCount(1_000_000, 0.01);
+        
+        assertThat(bits / 1_000_000.0).isBetween(9.5, 9.7);
+        assertThat(BloomFilter.optimalHashFunctions(1_000_000, bits)).isEqualTo(7);
+        assertThat(new BloomFilter(bits, 7).getSizeInBytes()).isEqualTo((bits + 63) / 64 * Long.BYTES);
+    }
+    
+    @Test
+    void hashesTheSameIdTheSameWay() {
+        long[] first = BloomFilter.hash("3f1c9a52-8d7e-4b0a-9c61-2e5f7d8a9b10");
+        long[] second = BloomFilter.hash("3f1c9a52-8d7e-4b0a-9c61-2e5f7d8a9b10");
+        
+        assertThat(first).containsExactly(second);
+        assertThat(first[1] & 1).isEqualTo(1);
+    }
+    
+    private static BloomFilter sizedFor(long ids, double falsePositiveRate) {
+        long bits = BloomFilter.optimalBitCount(ids, falsePositiveRate);
+        return new BloomFilter(bits, BloomFilter.optimalHashFunctions(ids, bits));
+    }
+}
+
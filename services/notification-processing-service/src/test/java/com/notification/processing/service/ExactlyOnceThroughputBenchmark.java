@@ -0,0 +1,226 @@
+package com.notification.processing.service;
+
+import com.notification.processing.consumer.RebalanceTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Consume-transform-produce throughput of the processing pipeline's two duplicate guards under the
+ * same load: Kafka transactions (notification.kafka.exactly-once) and the Redis check and mark
+ * around the publish, with the Bloom filter off so every record makes both Redis round trips.
+ * A run without any guard is the baseline. All runs read the same pre-produced records from an
+ * embedded broker with the container and producer settings of KafkaConfig, so exactly-once
+ * commits one transaction per record. The listener only republishes, so the figures show the
+ * cost of the guard rather than of processing.
+ * <p>
+ * Not part of the regular build. Run with a Redis from docker-compose up, whose database 15 it
+ * flushes:
+ * <pre>
+ * mvn test -Dtest=ExactlyOnceThroughputBenchmark [-Dbenchmark.records=20000] [-Dbenchmark.partitions=3]
+ *          [-Dbenchmark.redis.host=localhost] [-Dbenchmark.redis.port=6379]
+ * </pre>
+ * Without a reachable Redis the Redis run is skipped.
+ */
+class ExactlyOnceThroughputBenchmark {
+    
+    private static final String INPUT_TOPIC = "benchmark.events";
+    private static final String OUTPUT_TOPIC = "benchmark.notifications";
+    private static final int DATABASE = 15;
+    
+    private static final int records = Integer.getInteger("benchmark.records", 20_000);
+    private static final int partitions = Integer.getInteger("benchmark.partitions", 3);
+    
+    private static EmbeddedKafkaBroker broker;
+    
+    @BeforeAll
+    static void startBroker() {
+        broker = new EmbeddedKafkaKraftBroker(1, partitions, INPUT_TOPIC, OUTPUT_TOPIC)
+                .brokerProperties(Map.of(
+                        "transaction.state.log.replication.factor", "1",
+                        "transaction.state.log.min.isr", "1",
+                        "group.initial.rebalance.delay.ms", "0"));
+        broker.afterPropertiesSet();
+        
+        try (KafkaProducer<String, String> producer = new KafkaProducer<>(producerConfig(false))) {
+            for (int i = 0; i < records; i++) {
+                String id = UUID.randomUUID().toString();
+                producer.send(new ProducerRecord<>(INPUT_TOPIC, "user-" + (i % 1000),
+                        "{\"notificationId\":\"" + id + "\",\"userId\":\"user-" + (i % 1000)
+                                + "\",\"eventType\":\"ORDER_SHIPPED\",\"channels\":[\"EMAIL\"]}"));
+            }
+        }
+    }
+    
+    @AfterAll
+    static void stopBroker() {
+        broker.destroy();
+    }
+    
+    @Test
+    void throughput() throws Exception {
+        double baselineRate = run("baseline", false, null);
+        double exactlyOnceRate = run("exactly-once", true, null);
+        System.out.printf("Exactly-once: %.0f%% of the baseline%n", 100 * exactlyOnceRate / baselineRate);
+        assertThat(exactlyOnceRate).isPositive();
+    }
+    
+    @Test
+    void redisThroughput() throws Exception {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("benchmark.redis.host", "localhost"), Integer.getInteger("benchmark.redis.port", 6379));
+        configuration.setDatabase(DATABASE);
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        try {
+            RedisTemplate<String, String> redisTemplate = new RedisTemplate<>();
+            redisTemplate.setConnectionFactory(connectionFactory);
+            redisTemplate.setKeySerializer(new StringRedisSerializer());
+            redisTemplate.setValueSerializer(new StringRedisSerializer());
+            redisTemplate.afterPropertiesSet();
+            Assumptions.assumeTrue(redisAvailable(redisTemplate), "No Redis to measure");
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.serverCommands().flushDb();
+                return null;
+            });
+            
+            IdempotencyService idempotencyService = new IdempotencyService(redisTemplate,
+                    new RebalanceTracker(null), new SimpleMeterRegistry());
+            ReflectionTestUtils.setField(idempotencyService, "ttlSeconds", 86_400L);
+            ReflectionTestUtils.setField(idempotencyService, "bucketSeconds", 3_600L);
+            ReflectionTestUtils.setField(idempotencyService, "shardsPerBucket", 8192);
+            ReflectionTestUtils.setField(idempotencyService, "bloomEnabled", false);
+            idempotencyService.init();
+            
+            assertThat(run("redis", false, idempotencyService)).isPositive();
+            
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.serverCommands().flushDb();
+                return null;
+            });
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+    
+    /**
+     * Consumes all input records in a new consumer group and republishes each one.
+     *
+     * @return records per second from the first record received to the last one acknowledged
+     */
+    private static double run(String name, boolean exactlyOnce, IdempotencyService idempotencyService)
+            throws InterruptedException {
+        DefaultKafkaProducerFactory<String, String> producerFactory = new DefaultKafkaProducerFactory<>(
+                producerConfig(exactlyOnce));
+        if (exactlyOnce) {
+            producerFactory.setTransactionIdPrefix("benchmark-" + name + "-tx-");
+        }
+        KafkaTemplate<String, String> kafkaTemplate = new KafkaTemplate<>(producerFactory);
+        
+        Map<String, Object> consumerConfig = new HashMap<>();
+        consumerConfig.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        consumerConfig.put(ConsumerConfig.GROUP_ID_CONFIG, "benchmark-" + name);
+        consumerConfig.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        consumerConfig.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        consumerConfig.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        consumerConfig.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        consumerConfig.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 100);
+        
+        ContainerProperties containerProperties = new ContainerProperties(INPUT_TOPIC);
+        containerProperties.setAckMode(exactlyOnce ? ContainerProperties.AckMode.MANUAL_IMMEDIATE
+                : ContainerProperties.AckMode.MANUAL);
+        if (exactlyOnce) {
+            containerProperties.setTransactionManager(new KafkaTransactionManager<>(producerFactory));
+        }
+        
+        CountDownLatch done = new CountDownLatch(records);
+        AtomicLong firstRecordNanos = new AtomicLong();
+        containerProperties.setMessageListener((AcknowledgingMessageListener<String, String>)
+                (ConsumerRecord<String, String> record, Acknowledgment acknowledgment) -> {
+                    firstRecordNanos.compareAndSet(0, System.nanoTime());
+                    String notificationId = record.value().substring(18, 54);
+                    if (idempotencyService == null
+                            || !idempotencyService.isAlreadyProcessed(notificationId, record.timestamp())) {
+                        kafkaTemplate.send(OUTPUT_TOPIC, record.key(), record.value());
+                        if (idempotencyService != null) {
+                            idempotencyService.markAsProcessed(notificationId);
+                        }
+                    }
+                    acknowledgment.acknowledge();
+                    done.countDown();
+                });
+        
+        ConcurrentMessageListenerContainer<String, String> container = new ConcurrentMessageListenerContainer<>(
+                new DefaultKafkaConsumerFactory<>(consumerConfig), containerProperties);
+        container.setConcurrency(partitions);
+        container.start();
+        try {
+            assertThat(done.await(10, TimeUnit.MINUTES)).as("%s run finished", name).isTrue();
+            double seconds = (System.nanoTime() - firstRecordNanos.get()) / 1e9;
+            double rate = records / seconds;
+            System.out.printf("%s: %d records in %.2f s, %.0f records/s%n", name, records, seconds, rate);
+            return rate;
+        } finally {
+            container.stop();
+            producerFactory.destroy();
+        }
+    }
+    
+    private static Map<String, Object> producerConfig(boolean exactlyOnce) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        config.put(ProducerConfig.ACKS_CONFIG, "all");
+        config.put(ProducerConfig.RETRIES_CONFIG, 3);
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        if (exactlyOnce) {
+            config.put(ProducerConfig.RETRY_BACKOFF_MS_CONFIG, 10);
+        }
+        return config;
+    }
+    
+    private static boolean redisAvailable(RedisTemplate<String, String> redisTemplate) {
+        try {
+            return "PONG".equals(redisTemplate.execute(RedisConnection::ping));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
+
@@ -0,0 +1,166 @@
+package com.notification.processing.service;
+
+import com.notification.processing.consumer.RebalanceTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Bytes per tracked id of the idempotency store: the local rotating Bloom filter at the default
+ * false-positive rate, and the Redis bucket hashes compared with the former one string key per id.
+ * <p>
+ * Not part of the regular build. Run with a Redis from docker-compose up, whose database 15 it
+ * flushes:
+ * <pre>
+ * mvn test -Dtest=IdempotencyMemoryBenchmark [-Dbenchmark.ids=1000000] [-Dbenchmark.redis-ids=100000]
+ *          [-Dbenchmark.redis.host=localhost] [-Dbenchmark.redis.port=6379]
+ * </pre>
+ * Without a reachable Redis only the Bloom filter is measured.
+ */
+class IdempotencyMemoryBenchmark {
+    
+    private static final long TTL_SECONDS = 86_400;
+    private static final long BUCKET_SECONDS = 3_600;
+    private static final int WINDOW_BUCKETS = (int) (TTL_SECONDS / BUCKET_SECONDS);
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int DATABASE = 15;
+    
+    private final int ids = Integer.getInteger("benchmark.ids", 1_000_000);
+    private final int redisIds = Integer.getInteger("benchmark.redis-ids", 100_000);
+    
+    private LettuceConnectionFactory connectionFactory;
+    private RedisTemplate<String, String> redisTemplate;
+    
+    @BeforeEach
+    void connect() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("benchmark.redis.host", "localhost"), Integer.getInteger("benchmark.redis.port", 6379));
+        configuration.setDatabase(DATABASE);
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(new StringRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+    }
+    
+    @AfterEach
+    void disconnect() {
+        connectionFactory.destroy();
+    }
+    
+    @Test
+    void bloomFilterBytesPerId() {
+        long idsPerBucket = ids / WINDOW_BUCKETS;
+        long bits = BloomFilter.optimalBitCount(idsPerBucket,
+                RotatingBloomFilter.bucketFalsePositiveRate(FALSE_POSITIVE_RATE, WINDOW_BUCKETS));
+        RotatingBloomFilter filter = new RotatingBloomFilter(BUCKET_SECONDS * 1000, WINDOW_BUCKETS, bits,
+                BloomFilter.optimalHashFunctions(idsPerBucket, bits));
+        
+        // Steady state: every slot holds a full bucket
+        for (int bucket = 0; bucket <= WINDOW_BUCKETS; bucket++) {
+            for (long i = 0; i < idsPerBucket; i++) {
+                filter.put(BloomFilter.hash(UUID.randomUUID().toString()), bucket * BUCKET_SECONDS * 1000);
+            }
+        }
+        long now = WINDOW_BUCKETS * BUCKET_SECONDS * 1000;
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(BloomFilter.hash(UUID.randomUUID().toString()), now)) {
+                falsePositives++;
+            }
+        }
+        
+        double bytesPerId = (double) filter.getSizeInBytes() / filter.getInsertions();
+        System.out.printf("Bloom filter: %d ids in %d buckets, %d bytes, %.2f bytes per id, %.2f%% false positives%n",
+                filter.getInsertions(), WINDOW_BUCKETS + 1, filter.getSizeInBytes(), bytesPerId,
+                100.0 * falsePositives / probes);
+        assertThat((double) falsePositives / probes).isLessThan(FALSE_POSITIVE_RATE * 1.5);
+    }
+    
+    @Test
+    void redisBytesPerId() {
+        Assumptions.assumeTrue(redisAvailable(), "No Redis to measure");
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        });
+        
+        IdempotencyService service = new IdempotencyService(redisTemplate, new RebalanceTracker(null),
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "ttlSeconds", TTL_SECONDS);
+        ReflectionTestUtils.setField(service, "bucketSeconds", BUCKET_SECONDS);
+        ReflectionTestUtils.setField(service, "shardsPerBucket", 8192);
+        ReflectionTestUtils.setField(service, "bloomEnabled", false);
+        service.init();
+        for (int i = 0; i < redisIds; i++) {
+            service.markAsProcessed(UUID.randomUUID().toString());
+        }
+        long bucketBytes = memoryUsage("notification:processed:*");
+        
+        // The former layout: one string key with its own TTL per id
+        for (int from = 0; from < redisIds; from += 1000) {
+            int batch = Math.min(1000, redisIds - from);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < batch; i++) {
+                    connection.stringCommands().setEx(("notification:legacy:" + UUID.randomUUID())
+                            .getBytes(StandardCharsets.UTF_8), Duration.ofDays(1).toSeconds(), "1".getBytes());
+                }
+                return null;
+            });
+        }
+        long keyBytes = memoryUsage("notification:legacy:*");
+        
+        System.out.printf("Redis: %d ids, bucket hashes %.1f bytes per id, string keys %.1f bytes per id%n",
+                redisIds, (double) bucketBytes / redisIds, (double) keyBytes / redisIds);
+        assertThat(bucketBytes).isLessThan(keyBytes);
+        
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        });
+    }
+    
+    private boolean redisAvailable() {
+        try {
+            return "PONG".equals(redisTemplate.execute(RedisConnection::ping));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+    
+    private long memoryUsage(String pattern) {
+        return redisTemplate.execute((RedisCallback<Long>) connection -> {
+            long bytes = 0;
+            try (Cursor<byte[]> keys = connection.keyCommands().scan(ScanOptions.scanOptions()
+                    .match(pattern).count(1000).build())) {
+                while (keys.hasNext()) {
+                    Object usage = connection.execute("MEMORY", "USAGE".getBytes(StandardCharsets.UTF_8),
+                            keys.next(), "SAMPLES".getBytes(StandardCharsets.UTF_8), "0".getBytes(StandardCharsets.UTF_8));
+                    bytes += usage instanceof Long value ? value : 0;
+                }
+            }
+            return bytes;
+        });
+    }
+}
+
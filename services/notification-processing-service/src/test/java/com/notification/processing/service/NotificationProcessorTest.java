@@ -0,0 +1,97 @@
+package com.notification.processing.service;
+
+import com.notification.processing.metrics.LatencyMetrics;
+import com.notification.processing.metrics.PipelineTimestamps;
+import com.notification.processing.model.NotificationEvent;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.NotEnoughReplicasException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NotificationProcessorTest {
+    
+    private final UserPreferenceService userPreferenceService = mock(UserPreferenceService.class);
+    private final IdempotencyService idempotencyService = mock(IdempotencyService.class);
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, Object> kafkaTemplate = mock(KafkaTemplate.class);
+    private final PartitionKeyResolver partitionKeyResolver = mock(PartitionKeyResolver.class);
+    private final ExpiryPolicy expiryPolicy = mock(ExpiryPolicy.class);
+    
+    private NotificationProcessor processor;
+    
+    @BeforeEach
+    void setUp() {
+        StatusPublisher statusPublisher = new StatusPublisher(kafkaTemplate);
+        ReflectionTestUtils.setField(statusPublisher, "statusTopic", "notification-status");
+        ReflectionTestUtils.setField(statusPublisher, "sendTimeoutMs", 1000L);
+        processor = new NotificationProcessor(userPreferenceService, idempotencyService, kafkaTemplate,
+                partitionKeyResolver, statusPublisher, mock(LatencyMetrics.class), expiryPolicy);
+        ReflectionTestUtils.setField(processor, "outputTopic", "notification-processed");
+        
+        when(userPreferenceService.filterChannels(any(), any())).thenReturn(List.of("EMAIL"));
+        when(partitionKeyResolver.resolve(anyString(), anyString(), any(String.class))).thenReturn("user-1");
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+    
+    @Test
+    void marksAsProcessedOnceThePublishHasLanded() {
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.completedFuture(null));
+        
+        processor.processNotification(event(), "user-1", timestamps());
+        
+        verify(idempotencyService).markAsProcessed("n-1");
+    }
+    
+    @Test
+    void failedPublishIsThrownAndNotMarkedAsProcessed() {
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.failedFuture(new NotEnoughReplicasException("1 of 3 in sync")));
+        
+        assertThatThrownBy(() -> processor.processNotification(event(), "user-1", timestamps()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("1 of 3 in sync");
+        verify(idempotencyService, never()).markAsProcessed(anyString());
+    }
+    
+    @Test
+    void publishThatNeverCompletesTimesOut() {
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new CompletableFuture<>());
+        
+        assertThatThrownBy(() -> processor.processNotification(event(), "user-1", timestamps()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("timed out");
+        verify(idempotencyService, never()).markAsProcessed(anyString());
+    }
+    
+    private static NotificationEvent event() {
+        return NotificationEvent.builder()
+                .notificationId("n-1")
+                .userId("user-1")
+                .eventType("ORDER_SHIPPED")
+                .priority("HIGH")
+                .channels(List.of("EMAIL"))
+                .data("{}")
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+    
+    private static PipelineTimestamps timestamps() {
+        return PipelineTimestamps.fromHeaders(new RecordHeaders(), System.currentTimeMillis());
+    }
+}
+
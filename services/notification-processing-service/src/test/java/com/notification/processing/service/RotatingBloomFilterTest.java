@@ -0,0 +1,55 @@
+package com.notification.processing.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RotatingBloomFilterTest {
+    
+    private static final long BUCKET_MILLIS = 1000;
+    
+    @Test
+    void remembersIdsWhileTheirBucketIsInTheWindow() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(BUCKET_MILLIS, 3, 1 << 16, 5);
+        long[] id = BloomFilter.hash("a");
+        filter.put(id, 10_500);
+        
+        assertThat(filter.mightContain(id, 10_500)).isTrue();
+        assertThat(filter.mightContain(id, 13_999)).isTrue();
+        assertThat(filter.mightContain(id, 14_000)).isFalse();
+    }
+    
+    @Test
+    void reusesTheSlotOfABucketThatLeftTheWindow() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(BUCKET_MILLIS, 3, 1 << 16, 5);
+        long[] old = BloomFilter.hash("old");
+        long[] fresh = BloomFilter.hash("fresh");
+        filter.put(old, 0);
+        filter.put(fresh, 4 * BUCKET_MILLIS);
+        
+        assertThat(filter.mightContain(old, 4 * BUCKET_MILLIS)).isFalse();
+        assertThat(filter.mightContain(fresh, 4 * BUCKET_MILLIS)).isTrue();
+        assertThat(filter.getInsertions()).isEqualTo(1);
+    }
+    
+    @Test
+    void sizesBucketsSoALookupOverAllOfThemMeetsTheRate() {
+        double bucketRate = RotatingBloomFilter.bucketFalsePositiveRate(0.01, 24);
+        
+        assertThat(1 - Math.pow(1 - bucketRate, 25)).isCloseTo(0.01, within(1e-9));
+    }
+    
+    @Test
+    void allocatesBucketsOnlyOnceWritten() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(BUCKET_MILLIS, 3, 1 << 16, 5);
+        assertThat(filter.getSizeInBytes()).isZero();
+        
+        filter.put(BloomFilter.hash("a"), 0);
+        filter.put(BloomFilter.hash("b"), BUCKET_MILLIS);
+        
+        assertThat(filter.getSizeInBytes()).isEqualTo(2 * (1 << 16) / 8);
+        assertThat(filter.getInsertions()).isEqualTo(2);
+    }
+}
+